@@ -0,0 +1,33 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Leaf node of the self-balancing tree that stores an arc of
+ *  the beachline. The arc knows its site, the breakpoints to its left and
+ *  right, the previous and next arcs on the beachline and the handle of its
+ *  circle event in the event queue.
+ *
+ **************************************************************************** */
+
+public class Arc extends Node {
+    int point; // index of the point it stores
+    Breakpoint left_intersection; // ref to the left intersesection of the arc
+    Breakpoint right_intersection; // ref to the rigth intersection of the arc
+    Arc prev; // reference to the previous arc on the beach line
+    Arc next; // reference to the next arc on the beach line
+    double xc; // the x-coordinate
+    double yc; // the y-coordinate
+    int event; // handle of the circle event in the event queue, -1 if none
+
+    public Arc() {
+        super(false);
+        this.event = -1;
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+
+    }
+}
@@ -0,0 +1,67 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Internal node of the self-balancing tree that stores a
+ *  breakpoint of the beachline, the intersection of the arcs left_point and
+ *  right_point. The class supports the methods xc_int(y), which computes
+ *  the x-cooordinate of the breakpoint, given the position of the sweepline
+ *  y, and yc_int(y) which computes the y-coordinate of the same
+ *  interseation.
+ *
+ **************************************************************************** */
+
+public class Breakpoint extends Node {
+    Arc left_point; // ref to the left point
+    Arc right_point; // ref to the right point
+    int vor_edge; // index of the voronoi edge the node traces out in the DCEL
+
+    public Breakpoint() {
+        super(true);
+        this.vor_edge = -1;
+    }
+
+    // compute x-coordiante of the intersection based on the position of the sweep line
+    public double xc_int(double y) {
+
+        Arc left_p = this.left_point; // left point
+        Arc right_p = this.right_point; // right points
+
+        // check if the two points have the same y-coordinate
+        if (left_p.yc == right_p.yc) {
+            return (left_p.xc + right_p.xc) / 2;
+        }
+
+        // check if the sweepline has the same y-coordinate as some of the 2 points
+        if (y == left_p.yc) return left_p.xc;
+        if (y == right_p.yc) return right_p.xc;
+
+
+        // find the x-coordinate of the intersection in the non-degenerate cases
+        double A = left_p.yc - right_p.yc;
+        double B = -2 * right_p.xc * (left_p.yc - y) + 2 * left_p.xc * (right_p.yc - y);
+        double C = right_p.xc * right_p.xc * (left_p.yc - y) - left_p.xc * left_p.xc * (
+                right_p.yc - y) - (right_p.yc - y) * (
+                left_p.yc - y) * (left_p.yc - right_p.yc);
+
+        return (-B - Math.sqrt(B * B - 4 * A * C)) / (2 * A);
+    }
+
+    // compute the y-coordinate of the intersection based on the position of the sweepline if the vor edge is vertical
+    public double yc_int(double y) {
+        Arc left_p = this.left_point; // left point
+        Arc right_p = this.right_point; // right points
+
+        double x = xc_int(y);
+        return (1.0 / (2 * (left_p.yc - y))) * (
+                (x - left_p.xc) * (x - left_p.xc) + left_p.yc * left_p.yc - y * y);
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+
+
+    }
+}
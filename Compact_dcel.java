@@ -0,0 +1,353 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Doubly connected edge list stored as parallel primitive
+ *  arrays. The vertex coordinates are in double[] arrays and the origin,
+ *  twin, next, prev and incident face of every half-edge are int[] indices.
+ *  The slope m and bias b of a Voronoi edge are stored once per edge and the
+ *  two half-edges of an edge are created together with consecutive indices
+ *  (Voronoi_editor moves them apart when it fills deleted slots).
+ *  Half-edges on the bounding box have no edge and no twin. The arrays grow
+ *  by doubling. The sweep writes into this structure directly. write() and
+ *  read() store the arrays in the memory-mapped file format of
+ *  Mapped_dcel.
+ *
+ *  A streaming DCEL (streaming()) does not keep the diagram: the vertices
+ *  are only counted, the origin of a half-edge is stored with the half-edge
+ *  and a voronoi edge is reused by the sweep once it is complete and has
+ *  been reported, so only the edges on the beachline take space.
+ *
+ **************************************************************************** */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class Compact_dcel implements Dcel_view {
+
+    // the vertices
+    int vertex_count;
+    double[] vx; // x-coordinates
+    double[] vy; // y-coordinates
+
+    // the half-edges
+    int half_edge_count;
+    int[] origin; // origin vertex
+    int[] twin; // twin half-edge
+    int[] next; // next half-edge on the face
+    int[] prev; // previous half-edge on the face
+    int[] face; // incident face
+    int[] edge; // the voronoi edge of the half-edge, -1 on the bounding box
+
+    // the voronoi edges
+    int edge_count;
+    double[] m; // slope, or the x-coordinate if the edge is vertical
+    double[] b; // bias
+    int[] edge_half_edge; // the first of the two half-edges of the edge
+    boolean[] vertical; // is the edge vertical
+    boolean[] upper_edge; // is the edge the bisector of the 2 topmost sites
+
+    // the faces
+    int face_count;
+    int[] face_edge; // a half-edge on the boundary of the face
+
+    // the state of a streaming DCEL
+    boolean recycle; // are the complete edges reused
+    double[] hx; // the origin of every half-edge, the vertices are not stored
+    double[] hy;
+    int[] free_edges; // stack of edges that can be reused
+    int free_count;
+    double x_min = Double.POSITIVE_INFINITY; // the extent of the vertices
+    double x_max = Double.NEGATIVE_INFINITY;
+    double y_min = Double.POSITIVE_INFINITY;
+    double y_max = Double.NEGATIVE_INFINITY;
+
+
+    // create an empty DCEL for the faces of N sites
+    public Compact_dcel(int N) {
+        this(N, 2 * N + 8, 6 * N + 16, 3 * N + 8);
+    }
+
+    // create an empty DCEL for the faces of N sites with space for the given
+    // number of vertices, half-edges and voronoi edges
+    Compact_dcel(int N, int vertices, int half_edges, int edges) {
+        vertices = Math.max(vertices, 1);
+        half_edges = Math.max(half_edges, 1);
+        edges = Math.max(edges, 1);
+        vx = new double[vertices];
+        vy = new double[vertices];
+        origin = new int[half_edges];
+        twin = new int[half_edges];
+        next = new int[half_edges];
+        prev = new int[half_edges];
+        face = new int[half_edges];
+        edge = new int[half_edges];
+        m = new double[edges];
+        b = new double[edges];
+        edge_half_edge = new int[edges];
+        vertical = new boolean[edges];
+        upper_edge = new boolean[edges];
+        face_count = N;
+        face_edge = new int[N];
+        Arrays.fill(face_edge, -1);
+    }
+
+    // empty the DCEL for the faces of N sites and keep the arrays, which
+    // already have the size of the last diagram
+    void reset(int N) {
+        vertex_count = 0;
+        half_edge_count = 0;
+        edge_count = 0;
+        free_count = 0;
+        if (face_edge.length < N) face_edge = new int[N];
+        face_count = N;
+        Arrays.fill(face_edge, 0, N, -1);
+    }
+
+    // create a streaming DCEL that only keeps the voronoi edges that are not
+    // complete yet, it has no faces and does not store the vertices
+    static Compact_dcel streaming() {
+        Compact_dcel d = new Compact_dcel(0, 1, 64, 32);
+        d.recycle = true;
+        d.hx = new double[64];
+        d.hy = new double[64];
+        d.free_edges = new int[32];
+        return d;
+    }
+
+    // add a vertex at (x, y) and return its index
+    public int add_vertex(double x, double y) {
+        if (recycle) {
+            x_min = Math.min(x_min, x);
+            x_max = Math.max(x_max, x);
+            y_min = Math.min(y_min, y);
+            y_max = Math.max(y_max, y);
+            return vertex_count++;
+        }
+        if (vertex_count == vx.length) {
+            vx = Arrays.copyOf(vx, 2 * vertex_count);
+            vy = Arrays.copyOf(vy, 2 * vertex_count);
+        }
+        vx[vertex_count] = x;
+        vy[vertex_count] = y;
+        return vertex_count++;
+    }
+
+    // add the voronoi edge with slope m and bias b between the faces i and j,
+    // returns the index of the edge. The half-edge of face i is
+    // edge_half_edge[e] and the half-edge of face j is its twin
+    public int add_edge(double m, double b, boolean vertical, int i, int j) {
+        if (free_count > 0) {
+            int e = free_edges[--free_count];
+            this.m[e] = m;
+            this.b[e] = b;
+            this.vertical[e] = vertical;
+            upper_edge[e] = false;
+            int h1 = edge_half_edge[e];
+            int h2 = twin[h1];
+            init_half_edge(h1, i, e);
+            init_half_edge(h2, j, e);
+            twin[h1] = h2;
+            twin[h2] = h1;
+            return e;
+        }
+        if (edge_count == this.m.length) {
+            int capacity = 2 * edge_count;
+            this.m = Arrays.copyOf(this.m, capacity);
+            this.b = Arrays.copyOf(this.b, capacity);
+            edge_half_edge = Arrays.copyOf(edge_half_edge, capacity);
+            this.vertical = Arrays.copyOf(this.vertical, capacity);
+            upper_edge = Arrays.copyOf(upper_edge, capacity);
+        }
+        int e = edge_count++;
+        this.m[e] = m;
+        this.b[e] = b;
+        this.vertical[e] = vertical;
+        upper_edge[e] = false;
+
+        int h1 = add_half_edge(i, e);
+        int h2 = add_half_edge(j, e);
+        twin[h1] = h2;
+        twin[h2] = h1;
+        edge_half_edge[e] = h1;
+        return e;
+    }
+
+    // add a face and return its index
+    public int add_face() {
+        if (face_count == face_edge.length) face_edge = Arrays.copyOf(face_edge, Math.max(2 * face_count, 1));
+        face_edge[face_count] = -1;
+        return face_count++;
+    }
+
+    // add a half-edge on the bounding box of face f and return its index
+    public int add_box_half_edge(int f) {
+        return add_half_edge(f, -1);
+    }
+
+    // add a half-edge of face f on the voronoi edge e
+    private int add_half_edge(int f, int e) {
+        if (half_edge_count == origin.length) {
+            int capacity = 2 * half_edge_count;
+            origin = Arrays.copyOf(origin, capacity);
+            twin = Arrays.copyOf(twin, capacity);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+            face = Arrays.copyOf(face, capacity);
+            edge = Arrays.copyOf(edge, capacity);
+            if (recycle) {
+                hx = Arrays.copyOf(hx, capacity);
+                hy = Arrays.copyOf(hy, capacity);
+            }
+        }
+        int h = half_edge_count++;
+        init_half_edge(h, f, e);
+        return h;
+    }
+
+    // reset half-edge h to a half-edge of face f on the voronoi edge e
+    private void init_half_edge(int h, int f, int e) {
+        origin[h] = -1;
+        twin[h] = -1;
+        next[h] = -1;
+        prev[h] = -1;
+        face[h] = f;
+        edge[h] = e;
+    }
+
+    // reuse the voronoi edge e and its half-edges in a streaming DCEL
+    public void release_edge(int e) {
+        if (free_count == free_edges.length) free_edges = Arrays.copyOf(free_edges, 2 * free_count);
+        free_edges[free_count++] = e;
+    }
+
+    // set the origin of half-edge h to vertex v at (x, y)
+    public void set_origin(int h, int v, double x, double y) {
+        origin[h] = v;
+        if (recycle) {
+            hx[h] = x;
+            hy[h] = y;
+        }
+    }
+
+    // the x-coordinate of the origin of half-edge h
+    public double origin_x(int h) {
+        return recycle ? hx[h] : vx[origin[h]];
+    }
+
+    // the y-coordinate of the origin of half-edge h
+    public double origin_y(int h) {
+        return recycle ? hy[h] : vy[origin[h]];
+    }
+
+    // the half-edge of the voronoi edge e on the side of face i
+    public int get_half_edge(int e, int i) {
+        int h = edge_half_edge[e];
+        if (face[h] == i) return h;
+        else return twin[h];
+    }
+
+    // set the destination of half-edge h to vertex v
+    public void set_destination(int h, int v) {
+        origin[twin[h]] = v;
+    }
+
+    // link half-edge h to the half-edge g that follows it on the face
+    public void link(int h, int g) {
+        next[h] = g;
+        prev[g] = h;
+    }
+
+    // write the DCEL to a binary file, see Mapped_dcel for the format
+    public void write(String file) throws IOException {
+        Mapped_dcel.write(this, null, null, file);
+    }
+
+    // read a DCEL written by write() into memory
+    public static Compact_dcel read(String file) throws IOException {
+        return Mapped_dcel.open(file).to_compact();
+    }
+
+
+    @Override
+    public int vertex_count() {
+        return vertex_count;
+    }
+
+    @Override
+    public double vertex_x(int v) {
+        return vx[v];
+    }
+
+    @Override
+    public double vertex_y(int v) {
+        return vy[v];
+    }
+
+    @Override
+    public int half_edge_count() {
+        return half_edge_count;
+    }
+
+    @Override
+    public int origin(int h) {
+        return origin[h];
+    }
+
+    // the destination is the origin of the twin, or of the next half-edge
+    // on the bounding box
+    @Override
+    public int destination(int h) {
+        if (twin[h] != -1) return origin[twin[h]];
+        if (next[h] != -1) return origin[next[h]];
+        return -1;
+    }
+
+    @Override
+    public int twin(int h) {
+        return twin[h];
+    }
+
+    @Override
+    public int next(int h) {
+        return next[h];
+    }
+
+    @Override
+    public int prev(int h) {
+        return prev[h];
+    }
+
+    @Override
+    public int face(int h) {
+        return face[h];
+    }
+
+    @Override
+    public boolean box_edge(int h) {
+        return edge[h] == -1;
+    }
+
+    @Override
+    public int face_count() {
+        return face_count;
+    }
+
+    @Override
+    public int face_half_edge(int f) {
+        return face_edge[f];
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+        Compact_dcel dcel = new Compact_dcel(2);
+        int e = dcel.add_edge(0.0, 0.5, false, 0, 1);
+        int h = dcel.get_half_edge(e, 0);
+        dcel.origin[h] = dcel.add_vertex(0.0, 0.5);
+        dcel.set_destination(h, dcel.add_vertex(1.0, 0.5));
+        System.out.println(dcel.origin(h) + " -> " + dcel.destination(h));
+        System.out.println(dcel.origin(dcel.twin(h)) + " -> " + dcel.destination(dcel.twin(h)));
+    }
+}
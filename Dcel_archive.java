@@ -0,0 +1,382 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Compressed archive of a DCEL file (see Mapped_dcel). The
+ *  vertex coordinates are quantized to a grid of 2^bits steps over the
+ *  bounding box x0..x1, y0..y1 of the diagram, the faces are written one
+ *  after the other and every face cycle is written as a sequence of
+ *  half-edge records. The indices of a record (the half-edge, its voronoi
+ *  edge, its twin and its origin) are differences with the previous record
+ *  and a vertex is written the first time it is the origin of a half-edge,
+ *  as the difference with the previous vertex on the cycle. All of them
+ *  are zig-zag varints, so the small differences along a cycle take one
+ *  or two bytes, and the whole stream is deflated. The next, prev and face
+ *  of a half-edge are given by its place in the cycles. The sites are
+ *  stored exactly and the lines of the edges are computed from them again
+ *  (when the DCEL has no sites the lines are stored as doubles).
+ *  compress() reads the DCEL through the mapping and expand() writes into
+ *  a new mapped DCEL file, so neither keeps the diagram on the heap: the
+ *  writer only has one bit per vertex. Only the half-edges on the face
+ *  cycles are archived, which in a finished diagram are all of them.
+ *
+ *  Usage: java Dcel_archive compress <dcel file> <archive> [bits]
+ *         java Dcel_archive expand <archive> <dcel file>
+ *
+ **************************************************************************** */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+public class Dcel_archive {
+
+    static final int MAGIC = 0x44415243; // "DARC"
+    static final int VERSION = 1;
+    static final int BITS = 32; // the default quantization of the coordinates
+
+
+    // compress a DCEL file with the default quantization
+    public static void compress(String dcel_file, String archive) throws IOException {
+        compress(dcel_file, archive, BITS);
+    }
+
+    // compress a DCEL file, the vertices are quantized to the given bits
+    // per coordinate, between 8 and 52
+    public static void compress(String dcel_file, String archive, int bits) throws IOException {
+        if (bits < 8 || bits > 52) throw new IllegalArgumentException("Bits must be in 8..52");
+        Mapped_dcel d = Mapped_dcel.open(dcel_file);
+        int N = d.face_count;
+        double[] box = extent(d);
+        Grid grid = new Grid(box, bits);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(new FileOutputStream(archive),
+                                         new Deflater(Deflater.BEST_SPEED)), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(N);
+            out.writeInt(d.vertex_count);
+            out.writeInt(d.half_edge_count);
+            out.writeInt(d.edge_count);
+            out.writeBoolean(d.sites);
+            out.writeByte(bits);
+            for (double c : box) out.writeDouble(c);
+            if (d.sites) {
+                for (int f = 0; f < N; f++) out.writeDouble(d.site_x.get(f));
+                for (int f = 0; f < N; f++) out.writeDouble(d.site_y.get(f));
+            }
+
+            // the previous record
+            int last_h = 0;
+            int last_e = 0;
+            int last_v = 0;
+            long last_qx = 0;
+            long last_qy = 0;
+            long[] written = new long[(d.vertex_count >> 6) + 1]; // the vertices written
+            for (int f = 0; f < N; f++) {
+
+                // the length of the cycle and whether it is closed
+                int first = d.face_edge.get(f);
+                int length = 0;
+                boolean closed = false;
+                for (int h = first; h != -1 && !closed; ) {
+                    length++;
+                    h = d.next.get(h);
+                    closed = h == first;
+                }
+                write_varint(out, (long) length << 1 | (closed ? 1 : 0));
+
+                int h = first;
+                for (int k = 0; k < length; k++) {
+                    write_varint(out, zigzag(h - last_h));
+                    last_h = h;
+
+                    // the edge, the flags are written with its first half-edge
+                    int e = d.edge.get(h);
+                    if (e == -1) write_varint(out, 0);
+                    else {
+                        boolean head = d.edge_half_edge.get(e) == h;
+                        long flags = (head ? 4 : 0) | d.vertical.get(e) << 1 | d.upper_edge.get(e);
+                        write_varint(out, (zigzag(e - last_e) + 1) << 3 | flags);
+                        write_varint(out, zigzag(d.twin.get(h) - h));
+                        last_e = e;
+                        if (head && !d.sites) {
+                            out.writeDouble(d.m.get(e));
+                            out.writeDouble(d.b.get(e));
+                        }
+                    }
+
+                    // the origin, with its coordinates the first time
+                    int v = d.origin.get(h);
+                    boolean fresh = v != -1 && (written[v >> 6] & 1L << v) == 0;
+                    write_varint(out, zigzag(v - last_v) << 1 | (fresh ? 1 : 0));
+                    last_v = v;
+                    if (fresh) {
+                        written[v >> 6] |= 1L << v;
+                        long qx = grid.qx(d.vx.get(v));
+                        long qy = grid.qy(d.vy.get(v));
+                        write_varint(out, zigzag(qx - last_qx));
+                        write_varint(out, zigzag(qy - last_qy));
+                        last_qx = qx;
+                        last_qy = qy;
+                    }
+                    h = d.next.get(h);
+                }
+            }
+        }
+    }
+
+    // expand an archive into a DCEL file
+    public static void expand(String archive, String dcel_file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new FileInputStream(archive)), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a DCEL archive: " + archive);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unknown archive version " + version);
+            int N = in.readInt();
+            int vertices = in.readInt();
+            int half_edges = in.readInt();
+            int edges = in.readInt();
+            boolean sites = in.readBoolean();
+            int bits = in.readByte();
+            double[] box = new double[4];
+            for (int k = 0; k < 4; k++) box[k] = in.readDouble();
+            Grid grid = new Grid(box, bits);
+
+            Mapped_dcel d = Mapped_dcel.create(dcel_file, N, vertices, half_edges, edges, sites);
+            if (sites) {
+                for (int f = 0; f < N; f++) d.site_x.put(f, in.readDouble());
+                for (int f = 0; f < N; f++) d.site_y.put(f, in.readDouble());
+            }
+
+            int last_h = 0;
+            int last_e = 0;
+            int last_v = 0;
+            long last_qx = 0;
+            long last_qy = 0;
+            for (int f = 0; f < N; f++) {
+                long cycle = read_varint(in);
+                int length = (int) (cycle >>> 1);
+                boolean closed = (cycle & 1) == 1;
+                int first = -1;
+                int previous = -1;
+                for (int k = 0; k < length; k++) {
+                    int h = last_h + unzigzag(read_varint(in));
+                    last_h = h;
+                    if (k == 0) first = h;
+                    else d.next.put(previous, h);
+                    d.prev.put(h, previous);
+                    d.face.put(h, f);
+
+                    long code = read_varint(in);
+                    if (code == 0) {
+                        d.edge.put(h, -1);
+                        d.twin.put(h, -1);
+                    }
+                    else {
+                        int e = last_e + unzigzag((code >>> 3) - 1);
+                        last_e = e;
+                        d.edge.put(h, e);
+                        d.twin.put(h, h + unzigzag(read_varint(in)));
+                        if ((code & 4) != 0) {
+                            d.edge_half_edge.put(e, h);
+                            d.vertical.put(e, (byte) (code >>> 1 & 1));
+                            d.upper_edge.put(e, (byte) (code & 1));
+                            if (!sites) {
+                                d.m.put(e, in.readDouble());
+                                d.b.put(e, in.readDouble());
+                            }
+                        }
+                    }
+
+                    long origin = read_varint(in);
+                    int v = last_v + unzigzag(origin >>> 1);
+                    last_v = v;
+                    d.origin.put(h, v);
+                    if ((origin & 1) == 1) {
+                        last_qx += unzigzag_long(read_varint(in));
+                        last_qy += unzigzag_long(read_varint(in));
+                        d.vx.put(v, grid.x(last_qx));
+                        d.vy.put(v, grid.y(last_qy));
+                    }
+                    previous = h;
+                }
+                d.face_edge.put(f, first);
+                if (length == 0) continue;
+                d.next.put(previous, closed ? first : -1);
+                if (closed) d.prev.put(first, previous);
+            }
+
+            // the lines of the edges are the bisectors of the sites on their sides
+            if (sites) {
+                Geometry geo = new Geometry();
+                for (int e = 0; e < edges; e++) {
+                    int h = d.edge_half_edge.get(e);
+                    int i = d.face.get(h);
+                    int j = d.face.get(d.twin.get(h));
+                    geo.bisector(d.site_x.get(i), d.site_y.get(i), d.site_x.get(j), d.site_y.get(j));
+                    d.m.put(e, geo.m);
+                    d.b.put(e, geo.b);
+                }
+            }
+        }
+    }
+
+    // the bounding box x0, x1, y0, y1 of the vertices and the sites
+    private static double[] extent(Mapped_dcel d) {
+        double[] box = { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                         Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        for (int v = 0; v < d.vertex_count; v++) {
+            box[0] = Math.min(box[0], d.vx.get(v));
+            box[1] = Math.max(box[1], d.vx.get(v));
+            box[2] = Math.min(box[2], d.vy.get(v));
+            box[3] = Math.max(box[3], d.vy.get(v));
+        }
+        if (d.vertex_count == 0) return new double[4];
+        return box;
+    }
+
+    // the quantization grid of the bounding box
+    private static class Grid {
+        double x0;
+        double y0;
+        double sx; // the steps of the grid
+        double sy;
+
+        Grid(double[] box, int bits) {
+            double steps = (1L << bits) - 1;
+            x0 = box[0];
+            y0 = box[2];
+            sx = (box[1] - box[0]) / steps;
+            sy = (box[3] - box[2]) / steps;
+        }
+
+        // the grid coordinates of x and y
+        long qx(double x) {
+            return sx == 0 ? 0 : Math.round((x - x0) / sx);
+        }
+
+        long qy(double y) {
+            return sy == 0 ? 0 : Math.round((y - y0) / sy);
+        }
+
+        // the coordinates of a grid point
+        double x(long q) {
+            return x0 + q * sx;
+        }
+
+        double y(long q) {
+            return y0 + q * sy;
+        }
+    }
+
+    // map a signed difference to an unsigned one, small magnitudes first
+    private static long zigzag(long a) {
+        return (a << 1) ^ (a >> 63);
+    }
+
+    // the inverse of zigzag()
+    private static long unzigzag_long(long z) {
+        return (z >>> 1) ^ -(z & 1);
+    }
+
+    // the inverse of zigzag() for a difference of indices
+    private static int unzigzag(long z) {
+        return (int) unzigzag_long(z);
+    }
+
+    // write an unsigned varint, 7 bits per byte with the high bit set on
+    // every byte but the last
+    private static void write_varint(DataOutputStream out, long z) throws IOException {
+        while ((z & ~0x7FL) != 0) {
+            out.write((int) (z & 0x7F) | 0x80);
+            z >>>= 7;
+        }
+        out.write((int) z);
+    }
+
+    // read an unsigned varint
+    private static long read_varint(DataInputStream in) throws IOException {
+        long z = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int c = in.read();
+            if (c == -1) throw new EOFException("Truncated DCEL archive");
+            z |= (long) (c & 0x7F) << shift;
+            if ((c & 0x80) == 0) return z;
+        }
+        throw new IOException("Bad varint in DCEL archive");
+    }
+
+
+    // unit testing
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("compress")) {
+            compress(args[1], args[2], args.length > 3 ? Integer.parseInt(args[3]) : BITS);
+            return;
+        }
+        if (args.length == 3 && args[0].equals("expand")) {
+            expand(args[1], args[2]);
+            return;
+        }
+
+        int N = 100000;
+        if (args.length > 0) N = Integer.parseInt(args[0]);
+        double[] xc = new double[N];
+        double[] yc = new double[N];
+        java.util.Random random = new java.util.Random(451);
+        for (int i = 0; i < N; i++) {
+            xc[i] = random.nextDouble();
+            yc[i] = random.nextDouble();
+        }
+        Voronoi_diagram diagram = Voronoi_diagram.compact(N, xc, yc);
+        java.io.File file = java.io.File.createTempFile("voronoi", ".dcel");
+        java.io.File archive = java.io.File.createTempFile("voronoi", ".darc");
+        java.io.File copy = java.io.File.createTempFile("voronoi", ".dcel");
+        diagram.save(file.getPath());
+
+        long start = System.nanoTime();
+        compress(file.getPath(), archive.getPath());
+        double compressed = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        expand(archive.getPath(), copy.getPath());
+        double expanded = (System.nanoTime() - start) / 1e6;
+
+        // the topology is the same and the vertices move less than a step
+        Mapped_dcel a = Mapped_dcel.open(file.getPath());
+        Mapped_dcel b = Mapped_dcel.open(copy.getPath());
+        boolean same = true;
+        double error = 0;
+        for (int h = 0; h < a.half_edge_count; h++) {
+            same = same && a.origin(h) == b.origin(h) && a.twin(h) == b.twin(h)
+                    && a.next(h) == b.next(h) && a.prev(h) == b.prev(h)
+                    && a.face(h) == b.face(h) && a.edge.get(h) == b.edge.get(h);
+        }
+        for (int e = 0; e < a.edge_count; e++) {
+            same = same && a.m.get(e) == b.m.get(e) && a.b.get(e) == b.b.get(e)
+                    && a.edge_half_edge.get(e) == b.edge_half_edge.get(e)
+                    && a.vertical.get(e) == b.vertical.get(e)
+                    && a.upper_edge.get(e) == b.upper_edge.get(e);
+        }
+        for (int v = 0; v < a.vertex_count; v++) {
+            error = Math.max(error, Math.abs(a.vertex_x(v) - b.vertex_x(v)));
+            error = Math.max(error, Math.abs(a.vertex_y(v) - b.vertex_y(v)));
+        }
+        System.out.printf("dcel %d bytes, archive %d bytes%n", file.length(), archive.length());
+        System.out.printf("compress %.1f ms, expand %.1f ms%n", compressed, expanded);
+        System.out.println("same topology: " + same);
+        System.out.println("largest vertex error: " + error);
+        file.delete();
+        archive.delete();
+        copy.delete();
+    }
+}
@@ -0,0 +1,54 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Read-only view of a doubly connected edge list where the
+ *  vertices, half-edges and faces are integer indices instead of objects.
+ *  A missing reference (for example the origin of an infinite half-edge
+ *  or the twin of an edge on the bounding box) is -1. Face i is the face of
+ *  site i.
+ *
+ **************************************************************************** */
+
+public interface Dcel_view {
+
+    // number of vertices
+    int vertex_count();
+
+    // the x-coordinate of vertex v
+    double vertex_x(int v);
+
+    // the y-coordinate of vertex v
+    double vertex_y(int v);
+
+    // number of half-edges
+    int half_edge_count();
+
+    // the origin vertex of half-edge h
+    int origin(int h);
+
+    // the destination vertex of half-edge h
+    int destination(int h);
+
+    // the twin of half-edge h
+    int twin(int h);
+
+    // the next half-edge on the face of h
+    int next(int h);
+
+    // the previous half-edge on the face of h
+    int prev(int h);
+
+    // the incident face of half-edge h
+    int face(int h);
+
+    // is half-edge h an edge on the bounding box
+    boolean box_edge(int h);
+
+    // number of faces
+    int face_count();
+
+    // a half-edge on the boundary of face f
+    int face_half_edge(int f);
+}
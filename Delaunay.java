@@ -0,0 +1,174 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  The Delaunay triangulation of the sites, read off the
+ *  DCEL of the Voronoi diagram. Every voronoi vertex inside the bounding
+ *  box joins the cells of three sites, which are a Delaunay triangle, and
+ *  every voronoi edge between two cells is a Delaunay edge. For a
+ *  half-edge h that leaves the vertex v the three sites are the face of
+ *  h, the face of its twin and the face of the twin of prev(h), and the
+ *  triangle is taken from the half-edge whose face is the smallest of the
+ *  three, so it is found once. A Delaunay edge is taken from the smaller
+ *  of its two half-edges. The triangles are stored as site triples in
+ *  counterclockwise order in one int[] and the edges as site pairs in
+ *  another. Four or more sites on a circle give voronoi vertices at the
+ *  same place, so they are split into triangles too.
+ *
+ *  The half-edges are cut into ranges that run in parallel on a
+ *  ForkJoinPool: the first pass counts the triangles and edges of every
+ *  range, a prefix sum gives every range its place in the arrays and the
+ *  second pass writes them. No object is made per triangle.
+ *
+ **************************************************************************** */
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+public class Delaunay {
+
+    static final int RANGE = 1 << 16; // the half-edges of a task
+
+    int triangle_count;
+    int[] triangles; // the sites of triangle t are triangles[3t], [3t + 1] and [3t + 2]
+    int edge_count;
+    int[] edges; // the sites of edge e are edges[2e] and edges[2e + 1]
+
+
+    // the Delaunay triangulation of the faces of a finished DCEL, on the
+    // common ForkJoinPool
+    public Delaunay(Dcel_view dcel) {
+        this(dcel, ForkJoinPool.commonPool());
+    }
+
+    // the Delaunay triangulation of the faces of a finished DCEL, on the pool
+    public Delaunay(Dcel_view dcel, ForkJoinPool pool) {
+        int H = dcel.half_edge_count();
+        int ranges = (H + RANGE - 1) / RANGE;
+        int[] first_triangle = new int[ranges + 1];
+        int[] first_edge = new int[ranges + 1];
+
+        // count, then write
+        for (int pass = 0; pass < 2; pass++) {
+            boolean store = pass == 1;
+            pool.submit(() -> IntStream.range(0, ranges).parallel().forEach(r -> {
+                int t = store ? first_triangle[r] : 0;
+                int e = store ? first_edge[r] : 0;
+                int hi = Math.min(H, (r + 1) * RANGE);
+                for (int h = r * RANGE; h < hi; h++) {
+                    if (triangle(dcel, h, store ? triangles : null, t)) t++;
+                    int g = dcel.twin(h);
+                    if (g > h) {
+                        if (store) {
+                            edges[2 * e] = dcel.face(h);
+                            edges[2 * e + 1] = dcel.face(g);
+                        }
+                        e++;
+                    }
+                }
+                if (!store) {
+                    first_triangle[r + 1] = t;
+                    first_edge[r + 1] = e;
+                }
+            })).join();
+
+            if (!store) {
+                for (int r = 0; r < ranges; r++) {
+                    first_triangle[r + 1] += first_triangle[r];
+                    first_edge[r + 1] += first_edge[r];
+                }
+                triangle_count = first_triangle[ranges];
+                edge_count = first_edge[ranges];
+                triangles = new int[3 * triangle_count];
+                edges = new int[2 * edge_count];
+            }
+        }
+    }
+
+    // is half-edge h the one the triangle of its origin is taken from, if so
+    // and out is not null write the triangle at place t of out. The faces
+    // around the origin are in clockwise order, so they are written from
+    // the last to the first
+    private static boolean triangle(Dcel_view dcel, int h, int[] out, int t) {
+        if (dcel.origin(h) == -1) return false;
+        int g = dcel.twin(h);
+        int p = dcel.prev(h);
+        if (g == -1 || p == -1) return false;
+        int k = dcel.twin(p);
+        if (k == -1) return false;
+        int a = dcel.face(h);
+        int b = dcel.face(g);
+        int c = dcel.face(k);
+        if (a >= b || a >= c) return false;
+        if (out != null) {
+            out[3 * t] = a;
+            out[3 * t + 1] = c;
+            out[3 * t + 2] = b;
+        }
+        return true;
+    }
+
+    // the number of triangles
+    public int triangle_count() {
+        return triangle_count;
+    }
+
+    // the k-th site (k = 0, 1, 2) of triangle t, counterclockwise
+    public int triangle(int t, int k) {
+        return triangles[3 * t + k];
+    }
+
+    // the number of edges
+    public int edge_count() {
+        return edge_count;
+    }
+
+    // the k-th site (k = 0, 1) of edge e
+    public int edge(int e, int k) {
+        return edges[2 * e + k];
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+        int N = 100000;
+        if (args.length > 0) N = Integer.parseInt(args[0]);
+        double[] xc = new double[N];
+        double[] yc = new double[N];
+        java.util.Random random = new java.util.Random(451);
+        for (int i = 0; i < N; i++) {
+            xc[i] = random.nextDouble();
+            yc[i] = random.nextDouble();
+        }
+        Voronoi_diagram diagram = Voronoi_diagram.compact(N, xc, yc);
+        long start = System.nanoTime();
+        Delaunay delaunay = new Delaunay(diagram.dcel());
+        double time = (System.nanoTime() - start) / 1e6;
+
+        // the edges on the hull are in one triangle, the others in two
+        java.util.HashMap<Long, Integer> sides = new java.util.HashMap<>();
+        int clockwise = 0;
+        for (int t = 0; t < delaunay.triangle_count(); t++) {
+            int a = delaunay.triangle(t, 0);
+            int b = delaunay.triangle(t, 1);
+            int c = delaunay.triangle(t, 2);
+            double cross = (xc[b] - xc[a]) * (yc[c] - yc[a]) - (yc[b] - yc[a]) * (xc[c] - xc[a]);
+            if (cross <= 0) clockwise++;
+            for (int k = 0; k < 3; k++) {
+                int i = delaunay.triangle(t, k);
+                int j = delaunay.triangle(t, (k + 1) % 3);
+                sides.merge((long) Math.min(i, j) << 32 | Math.max(i, j), 1, Integer::sum);
+            }
+        }
+        int hull = 0;
+        for (int count : sides.values()) if (count == 1) hull++;
+
+        // Euler: 2N - 2 - hull triangles and 3N - 3 - hull edges
+        System.out.printf("%d triangles, %d edges in %.1f ms%n", delaunay.triangle_count(),
+                          delaunay.edge_count(), time);
+        System.out.println("euler: " + (delaunay.triangle_count() == 2 * N - 2 - hull
+                && delaunay.edge_count() == 3 * N - 3 - hull && sides.size() == delaunay.edge_count()));
+        System.out.println("clockwise triangles: " + clockwise);
+    }
+}
@@ -0,0 +1,246 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Indexed priority queue of the circle events of the sweep.
+ *  Every event is identified by an integer handle and keyed on the primitive
+ *  coordinates (y, x) of the event point, the event with the largest y
+ *  (and then largest x) is the maximum. An event stores the arc that
+ *  disappears. The site events are not on the queue, the sweep merges the
+ *  sorted sites with it. Unlike a queue with lazy deletion, a circle event
+ *  that becomes invalid is removed from the heap right away with delete(),
+ *  or moved with changeKey() when the same arc gets a new circle event.
+ *  The handles of removed events are reused, and clear() keeps the arrays
+ *  for the next sweep. The class counts how many stale events were removed
+ *  before they reached the top of the queue.
+ *
+ **************************************************************************** */
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+public class Event_queue {
+    int n; // number of events on the queue
+    int[] pq; // binary heap of handles using 1-based indexing
+    int[] qp; // inverse of pq, qp[pq[i]] = i, -1 if the handle is not on the queue
+
+    // the fields of the events, indexed by handle
+    double[] ey; // the y-coordinate of the event
+    double[] ex; // the x-coordinate of the event
+    Arc[] node; // the disappearing arc
+
+    int used; // number of handles handed out so far
+    int[] free; // stack of handles that can be reused
+    int free_count; // number of handles on the free stack
+
+    long stale_avoided; // number of stale events removed before being popped
+
+
+    // create an empty event queue with space for capacity events
+    public Event_queue(int capacity) {
+        capacity = Math.max(capacity, 4);
+        pq = new int[capacity + 1];
+        qp = new int[capacity];
+        ey = new double[capacity];
+        ex = new double[capacity];
+        node = new Arc[capacity];
+        free = new int[capacity];
+        Arrays.fill(qp, -1);
+    }
+
+    // remove all the events and keep the arrays for the next sweep
+    public void clear() {
+        Arrays.fill(qp, 0, used, -1);
+        Arrays.fill(node, 0, used, null);
+        n = 0;
+        used = 0;
+        free_count = 0;
+        stale_avoided = 0;
+    }
+
+    // is the queue empty
+    public boolean isEmpty() {
+        return n == 0;
+    }
+
+    // number of events on the queue
+    public int size() {
+        return n;
+    }
+
+    // is the event with handle h on the queue
+    public boolean contains(int h) {
+        return h >= 0 && h < used && qp[h] != -1;
+    }
+
+    // insert a circle event for the arc a at (x, y), returns its handle
+    public int insert(Arc a, double y, double x) {
+        int h;
+        if (free_count > 0) {
+            h = free[--free_count];
+        }
+        else {
+            if (used == qp.length) resize(2 * qp.length);
+            h = used++;
+        }
+        ey[h] = y;
+        ex[h] = x;
+        node[h] = a;
+        n++;
+        pq[n] = h;
+        qp[h] = n;
+        swim(n);
+        return h;
+    }
+
+    // the handle of the maximum event
+    public int maxIndex() {
+        if (n == 0) throw new NoSuchElementException("Event queue underflow");
+        return pq[1];
+    }
+
+    // remove the maximum event and return its handle. The fields of the event
+    // can be read through the handle until the next insertion
+    public int delMax() {
+        int h = maxIndex();
+        remove_at(1);
+        return h;
+    }
+
+    // remove the event with handle h before it reaches the top of the queue
+    public void delete(int h) {
+        if (!contains(h)) throw new NoSuchElementException("Event is not on the queue");
+        remove_at(qp[h]);
+        node[h] = null;
+        stale_avoided++;
+    }
+
+    // move the event with handle h to (x, y), the old event becomes stale
+    public void changeKey(int h, double y, double x) {
+        if (!contains(h)) throw new NoSuchElementException("Event is not on the queue");
+        boolean up = compare(y, x, ey[h], ex[h]) > 0;
+        ey[h] = y;
+        ex[h] = x;
+        if (up) swim(qp[h]);
+        else sink(qp[h]);
+        stale_avoided++;
+    }
+
+    // increase the key of the event with handle h to (x, y)
+    public void increaseKey(int h, double y, double x) {
+        if (compare(y, x, ey[h], ex[h]) < 0)
+            throw new IllegalArgumentException("Key would not increase");
+        changeKey(h, y, x);
+    }
+
+    // decrease the key of the event with handle h to (x, y)
+    public void decreaseKey(int h, double y, double x) {
+        if (compare(y, x, ey[h], ex[h]) > 0)
+            throw new IllegalArgumentException("Key would not decrease");
+        changeKey(h, y, x);
+    }
+
+    // the y-coordinate of the event with handle h
+    public double y(int h) {
+        return ey[h];
+    }
+
+    // the x-coordinate of the event with handle h
+    public double x(int h) {
+        return ex[h];
+    }
+
+    // the disappearing arc of the event with handle h
+    public Arc node(int h) {
+        return node[h];
+    }
+
+    // remove the event at position k of the heap and free its handle
+    private void remove_at(int k) {
+        int h = pq[k];
+        exch(k, n--);
+        if (k <= n) {
+            swim(k);
+            sink(k);
+        }
+        qp[h] = -1;
+        free[free_count++] = h;
+    }
+
+    // resize the arrays indexed by handle
+    private void resize(int capacity) {
+        pq = Arrays.copyOf(pq, capacity + 1);
+        int old = qp.length;
+        qp = Arrays.copyOf(qp, capacity);
+        Arrays.fill(qp, old, capacity, -1);
+        ey = Arrays.copyOf(ey, capacity);
+        ex = Arrays.copyOf(ex, capacity);
+        node = Arrays.copyOf(node, capacity);
+        free = Arrays.copyOf(free, capacity);
+    }
+
+    // compare the points (xa, ya) and (xb, yb), first by y and then by x
+    static int compare(double ya, double xa, double yb, double xb) {
+        if (ya < yb) return -1;
+        if (ya > yb) return +1;
+        if (xa < xb) return -1;
+        if (xa > xb) return +1;
+        return 0;
+    }
+
+    // is the event at position i of the heap smaller than the one at j
+    private boolean less(int i, int j) {
+        int a = pq[i];
+        int b = pq[j];
+        return compare(ey[a], ex[a], ey[b], ex[b]) < 0;
+    }
+
+    // exchange the events at positions i and j of the heap
+    private void exch(int i, int j) {
+        int swap = pq[i];
+        pq[i] = pq[j];
+        pq[j] = swap;
+        qp[pq[i]] = i;
+        qp[pq[j]] = j;
+    }
+
+    // move the event at position k up the heap
+    private void swim(int k) {
+        while (k > 1 && less(k / 2, k)) {
+            exch(k, k / 2);
+            k = k / 2;
+        }
+    }
+
+    // move the event at position k down the heap
+    private void sink(int k) {
+        while (2 * k <= n) {
+            int j = 2 * k;
+            if (j < n && less(j, j + 1)) j++;
+            if (!less(k, j)) break;
+            exch(k, j);
+            k = j;
+        }
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+        Event_queue pq = new Event_queue(2);
+        pq.insert(new Arc(), 0.5, 0.1);
+        pq.insert(new Arc(), 0.9, 0.3);
+        int c = pq.insert(new Arc(), 0.7, 0.2);
+        pq.insert(new Arc(), 0.9, 0.4);
+        int d = pq.insert(new Arc(), 0.1, 0.2);
+        pq.delete(c);
+        pq.changeKey(d, 0.95, 0.0);
+
+        // prints the events at y = 0.95, 0.9 (x = 0.4), 0.9 (x = 0.3) and 0.5
+        while (!pq.isEmpty()) {
+            int h = pq.delMax();
+            System.out.println(pq.y(h) + " " + pq.x(h));
+        }
+        System.out.println("stale events avoided: " + pq.stale_avoided);
+    }
+}
@@ -0,0 +1,273 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  The geometric predicates and constructions used by the
+ *  sweep: the perpendicular bisector of two sites, the intersection of two
+ *  voronoi edges, the circle through three sites, the convergence test of
+ *  two breakpoints and the intersection of an edge with the bounding box,
+ *  and the orientation and in-circle tests of Voronoi_editor. Nothing is
+ *  allocated. A construction writes its result into the fields of the
+ *  Geometry object, which the caller reads before the next call, and the
+ *  predicates return primitives. The center of the circle and its lowest
+ *  point are computed together.
+ *
+ **************************************************************************** */
+
+public class Geometry {
+
+    // the last perpendicular bisector, y = m * x + b or x = m if vertical
+    double m;
+    double b;
+    boolean vertical;
+
+    // the last intersection point of two voronoi edges
+    double x;
+    double y;
+
+    // the last circle, with center (cx, cy), radius r and lowest y-coordinate
+    double cx;
+    double cy;
+    double r;
+    double lowest;
+
+    // the last intersection with the bounding box, (ax, ay) is the lower point
+    double ax;
+    double ay;
+    double bx;
+    double by;
+
+
+    // compute the perpendicular bisector of two points
+    public void bisector(double x1, double y1, double x2, double y2) {
+        if (y1 == y2) {
+            m = (x1 + x2) / 2;
+            b = 0;
+            vertical = true;
+            return;
+        }
+
+        m = -(x2 - x1) / (y2 - y1);
+        b = (y1 + y2) / 2 - m * (x1 + x2) / 2;
+        vertical = false;
+    }
+
+    // compute the intersection point of two lines, a vertical line is x = m
+    public void intersection(double m1, double b1, boolean vertical1,
+                             double m2, double b2, boolean vertical2) {
+        x = 0;
+        y = 0;
+        if (vertical1) {
+            x = m1;
+            y = m2 * m1 + b2;
+        }
+        if (vertical2) {
+            x = m2;
+            y = m1 * m2 + b1;
+        }
+        if (!vertical1 && !vertical2) {
+            x = (b2 - b1) / (m1 - m2);
+            y = m1 * x + b1;
+        }
+    }
+
+    // compute the center, the radius and the lowest y-coordinate of the
+    // circle through 3 points
+    public void circle(double x1, double y1, double x2, double y2, double x3, double y3) {
+        double x12 = x1 - x2;
+        double x13 = x1 - x3;
+
+        double y12 = y1 - y2;
+        double y13 = y1 - y3;
+
+        double y31 = y3 - y1;
+        double y21 = y2 - y1;
+
+        double x31 = x3 - x1;
+        double x21 = x2 - x1;
+
+        // x1^2 - x3^2
+        double sx13 = (x1 * x1 - x3 * x3);
+
+        // y1^2 - y3^2
+        double sy13 = (y1 * y1 - y3 * y3);
+
+        double sx21 = (x2 * x2 - x1 * x1);
+
+        double sy21 = (y2 * y2 - y1 * y1);
+
+        double f = ((sx13) * (x12)
+                + (sy13) * (x12)
+                + (sx21) * (x13)
+                + (sy21) * (x13))
+                / (2 * ((y31) * (x12) - (y21) * (x13)));
+        double g = ((sx13) * (y12)
+                + (sy13) * (y12)
+                + (sx21) * (y13)
+                + (sy21) * (y13))
+                / (2 * ((x31) * (y12) - (x21) * (y13)));
+
+        double p = -Math.pow(x1, 2) - Math.pow(y1, 2) -
+                2 * g * x1 - 2 * f * y1;
+
+        // eqn of circle be x^2 + y^2 + 2*g*x + 2*f*y + c = 0
+        // where centre is (h = -g, k = -f) and radius r
+        // as r^2 = h^2 + k^2 - c
+        cx = -g;
+        cy = -f;
+        r = Math.sqrt(cx * cx + cy * cy - p);
+        lowest = cy - r;
+    }
+
+    // does x lie in [a,b]
+    public static boolean lies_in(double x, double a, double b) {
+        return (x >= a) && (x <= b);
+    }
+
+    // compute the intersection of a line with the bounding box [x1, x2] x [y1, y2]
+    // the first point (ax, ay) is the lower one
+    public void intersection_box(double x1, double x2, double y1, double y2,
+                                 double m, double b, boolean vertical) {
+        ax = 0;
+        ay = 0;
+        bx = 0;
+        by = 0;
+
+        if (vertical) {
+            ax = m;
+            ay = y1;
+            bx = m;
+            by = y2;
+            return;
+        }
+
+        double i_y1 = (y1 - b) / m;
+        double i_y2 = (y2 - b) / m;
+        double i_x1 = (m * x1 + b);
+        double i_x2 = m * x2 + b;
+
+        if (lies_in(i_y1, x1, x2) && lies_in(i_y2, x1, x2)) {
+            ax = i_y1;
+            ay = y1;
+            bx = i_y2;
+            by = y2;
+        }
+        if (lies_in(i_y1, x1, x2) && lies_in(i_x1, y1, y2)) {
+            ax = i_y1;
+            ay = y1;
+            bx = x1;
+            by = i_x1;
+        }
+        if (lies_in(i_y1, x1, x2) && lies_in(i_x2, y1, y2)) {
+            ax = i_y1;
+            ay = y1;
+            bx = x2;
+            by = i_x2;
+        }
+        if (lies_in(i_y2, x1, x2) && lies_in(i_x1, y1, y2)) {
+            ax = x1;
+            ay = i_x1;
+            bx = i_y2;
+            by = y2;
+        }
+        if (lies_in(i_y2, x1, x2) && lies_in(i_x2, y1, y2)) {
+            ax = x2;
+            ay = i_x2;
+            bx = i_y2;
+            by = y2;
+        }
+        if (lies_in(i_x2, y1, y2) && lies_in(i_x1, y1, y2)) {
+            if (i_x1 > i_x2) {
+                ax = x2;
+                ay = i_x2;
+                bx = x1;
+                by = i_x1;
+            }
+            else {
+                ax = x1;
+                ay = i_x1;
+                bx = x2;
+                by = i_x2;
+            }
+        }
+    }
+
+    // compute the sqaured distance between two points
+    public static double squared_distance(double xa, double ya, double xb, double yb) {
+        return (xa - xb) * (xa - xb) + (ya - yb) * (ya - yb);
+    }
+
+    // twice the signed area of the triangle a, b, c, positive if the points
+    // are in counterclockwise order
+    public static double area(double xa, double ya, double xb, double yb, double xc, double yc) {
+        return (xb - xa) * (yc - ya) - (yb - ya) * (xc - xa);
+    }
+
+    // positive if d is inside the circle through a, b and c, which are in
+    // counterclockwise order, negative if it is outside
+    public static double incircle(double xa, double ya, double xb, double yb, double xc, double yc,
+                                  double xd, double yd) {
+        double adx = xa - xd;
+        double ady = ya - yd;
+        double bdx = xb - xd;
+        double bdy = yb - yd;
+        double cdx = xc - xd;
+        double cdy = yc - yd;
+        return (adx * adx + ady * ady) * (bdx * cdy - cdx * bdy)
+                - (bdx * bdx + bdy * bdy) * (adx * cdy - cdx * ady)
+                + (cdx * cdx + cdy * cdy) * (adx * bdy - bdx * ady);
+    }
+
+    // ccw function of the points a, b and c
+    public static int ccw(double xa, double ya, double xb, double yb, double xc, double yc) {
+        double det = -(xa * (yb - yc) + xb * (yc - ya) + xc * (ya - yb));
+        if (det != 0) {
+            if (det < 0) return -1;
+            else return 1;
+        }
+        else {
+            if (((xb - xa) * (xc - xa) < 0) || ((yb - ya) * (yc - ya) < 0)) {
+                return -2;
+            }
+            else {
+                if (Math.abs(xb - xa) + Math.abs(yb - ya) >= Math.abs(xc - xa) + Math
+                        .abs(yc - ya)) {
+                    return 0;
+                }
+                else return 2;
+            }
+        }
+    }
+
+    // do the breakpoints between the arcs of the sites 1, 2 and 2, 3 converge
+    public static boolean is_convergent(double x1, double y1, double x2, double y2,
+                                        double x3, double y3) {
+        return ccw(x3, y3, x2, y2, x1, y1) == -1;
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+        Geometry geo = new Geometry();
+
+        // the circle through (0, 1), (1, 0) and (-1, 0) has center (0, 0)
+        geo.circle(0, 1, 1, 0, -1, 0);
+        System.out.println(geo.cx + " " + geo.cy + " " + geo.r + " " + geo.lowest);
+
+        // the bisectors of (0, 1), (1, 0) and of (1, 0), (-1, 0) meet at the center
+        geo.bisector(0, 1, 1, 0);
+        double m = geo.m;
+        double b = geo.b;
+        boolean vertical = geo.vertical;
+        geo.bisector(1, 0, -1, 0);
+        geo.intersection(m, b, vertical, geo.m, geo.b, geo.vertical);
+        System.out.println(geo.x + " " + geo.y);
+
+        // the line y = x cuts the box [-1, 1] x [-1, 1] at its corners
+        geo.intersection_box(-1, 1, -1, 1, 1, 0, false);
+        System.out.println(geo.ax + " " + geo.ay + " " + geo.bx + " " + geo.by);
+
+        System.out.println(is_convergent(-1, 0, 0, 1, 1, 0));
+    }
+}
@@ -0,0 +1,1647 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Moves the sites of a finished Voronoi diagram between the
+ *  frames of a simulation without running the sweep again. The sites keep
+ *  their indices and the DCEL of the last frame is kept. Its vertices are
+ *  computed again from the new sites in one parallel pass: a vertex inside
+ *  the bounding box is the center of the circle of its three faces, a
+ *  vertex on the box is where the bisector of its two faces crosses its
+ *  side of the box. The bisectors of the edges are updated in the same
+ *  pass.
+ *
+ *  A small step changes the structure only where a voronoi edge shrinks to
+ *  nothing and comes back between the other two faces at its ends, which
+ *  is a flip of the Delaunay edge. A second parallel pass checks every
+ *  edge: an edge between two vertices inside the box is a Delaunay edge
+ *  between two triangles, it is flipped if the fourth site is inside the
+ *  circle of the other three. The flips then run from a queue as in
+ *  Lawson's algorithm: a flip reuses the two vertices, the two half-edges
+ *  and the edge, relinks the four edges around them and queues them again.
+ *  A triangle that turned over during the step is flipped first with a
+ *  neighbor whose triangle did not. When no such flip exists, as when two
+ *  sites almost meet, the sites of the triangle are held where they were
+ *  and the vertices of their faces are computed again; the held sites are
+ *  removed and added again by the editor at the end of the move.
+ *
+ *  Near the bounding box there are three more changes. A vertex with an
+ *  edge to the box can leave the box, or its triangle can turn over when a
+ *  site crosses the convex hull: the vertex and the edge to the box are
+ *  deleted and the face in the middle gets a box half-edge between its two
+ *  other edges, which now end on the box. When the box half-edge of a face
+ *  shrinks to nothing, or its two edges cross before they reach the box,
+ *  the opposite happens. An edge to the box that moves past a corner of
+ *  the box moves to the next side, and the box half-edge between it and
+ *  the corner changes face. A change near the box that depends on the one
+ *  next to it waits until the others are done; if none of the waiting
+ *  ones can go first, the box half-edges are closed out of order. Corners
+ *  whose edges moved past each other turn in passes until none is left,
+ *  and a step that would turn a corner whose neighbors are not ready is
+ *  halved first. A vertex that leaves the box with no edge to the box
+ *  grows the box to hold it. The deleted half-edges and edges are filled
+ *  with the last ones of their arrays at the end, as in Voronoi_editor.
+ *
+ *  The diagram is built again from all the sites if a site moved more than
+ *  a threshold, by default half of the mean spacing of the sites. A step
+ *  with too many held sites is done in parts, and the diagram is built
+ *  again if the parts get too small or the kept structure cannot be
+ *  repaired. A tangle on the convex hull holds sites on the hull as a last
+ *  resort: the editor cannot remove them in place, so they are moved to
+ *  the end of the step by a second move. The object graph, if the diagram
+ *  has one, is updated in place.
+ *
+ *  fallbacks() counts the steps under the threshold that were built again
+ *  anyway. With 2e4 uniform sites moved 0.05 to 0.3 mean spacings a frame
+ *  none of 120 frames fell back, at 0.45 about 2 in 120; with 5000 sites
+ *  about 1 frame in 200.
+ *
+ **************************************************************************** */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+public class Kinetic_voronoi {
+
+    static final int RANGE = 1 << 14; // the elements of a task
+    static final double MOTION_LIMIT = 0.5; // the largest step repaired in place, in mean spacings
+    static final int SPLITS = 6; // the times a step can be halved
+    static final int HOLDS = 64; // the sites that can always be held, or N / HOLDS if more
+
+    // the states of an edge
+    static final byte OK = 0;
+    static final byte FLIP = 1; // its Delaunay edge is not locally Delaunay
+    static final byte FAIL = 2; // it cannot be repaired
+
+    // where the center of a triangle is
+    static final int INSIDE = 0; // in the box
+    static final int OUTSIDE = 1; // out of the box
+    static final int TURNED = 2; // the triangle is clockwise, the center is not stored
+
+    // how a vertex is repaired
+    static final byte FREE = 0; // it is valid
+    static final byte POP = 1; // it may leave the box through its edge to the box
+    static final byte TURN = 2; // its triangle turned over and one of its edges is flipped
+    static final byte TANGLE = 3; // its triangle turned over and no edge can be flipped
+    static final byte CORNER = 4; // it is on the box and its edge moved past a corner
+    static final byte WAIT = 5; // it left the box and waits for the vertices next to it
+
+    Voronoi_diagram diagram; // the diagram that is moved
+    Voronoi_editor editor; // its editor, which has a half-edge of every vertex
+    Compact_dcel dcel; // its DCEL
+    boolean objects; // does the diagram have an object graph
+    double motion_limit = MOTION_LIMIT;
+
+    byte[] state; // of every edge after the new vertices are computed
+    boolean[] queued; // is the edge in the queue
+    byte[] kind; // how every vertex is repaired
+    Voronoi_editor.Int_list queue = new Voronoi_editor.Int_list(); // the edges to check
+    Voronoi_editor.Int_list pops = new Voronoi_editor.Int_list(); // the vertices that may leave the box
+    Voronoi_editor.Int_list turns = new Voronoi_editor.Int_list(); // the turned vertices
+    Voronoi_editor.Int_list plan = new Voronoi_editor.Int_list(); // the edges the turned vertices flip
+    boolean[] matched; // is the vertex an end of an edge in the plan
+    Voronoi_editor.Int_list tangles = new Voronoi_editor.Int_list(); // the vertices no flip can repair
+    Voronoi_editor.Int_list corners = new Voronoi_editor.Int_list(); // the box vertices past a corner
+    Voronoi_editor.Int_list waits = new Voronoi_editor.Int_list(); // the vertices that wait to leave the box
+    Voronoi_editor.Int_list drops = new Voronoi_editor.Int_list(); // the box half-edges that may close
+    Voronoi_editor.Int_list late = new Voronoi_editor.Int_list(); // the box half-edges that close after the waits
+    Voronoi_editor.Int_list touched = new Voronoi_editor.Int_list(); // the half-edges changed
+    double[] beyond = new double[4]; // the box grown to the vertices that left it without an edge to it
+    double[] from_x; // the sites before the move, or where they are held
+    double[] from_y;
+    double[] to_x; // the sites after the move
+    double[] to_y;
+    double done; // the part of the step that is repaired
+    boolean least; // is the part of the step tried the smallest one
+    int kept; // the held sites before the part of the step tried
+    boolean[] held; // does the site stay where it is until the end of the move
+    Voronoi_editor.Int_list holds = new Voronoi_editor.Int_list(); // the held sites
+    Geometry geo = new Geometry();
+    volatile boolean failed; // set by the parallel passes
+    volatile boolean split; // the step has to be split
+    boolean nested; // is this the move of the held sites on the hull
+    boolean retry; // is a waiting vertex tried again
+
+    int flips; // the changes of the last move
+    int rebuilds; // the moves that built the diagram again
+    int fallbacks; // the moves under the motion limit that could not be repaired
+
+
+    // the kinetic updates of the finished diagram
+    public Kinetic_voronoi(Voronoi_diagram diagram) {
+        this.diagram = diagram;
+    }
+
+    // move every site i to (x[i], y[i]), on the pool. Returns the number of
+    // changes of the structure, or -1 if the diagram was built again. The
+    // coordinates are copied into the arrays of the diagram, which are its
+    // own after the first edit: if the arrays given to the constructor are
+    // changed in place before the first move, the step is not known
+    public int move(double[] x, double[] y, ForkJoinPool pool) {
+        int N = diagram.N;
+        if (x.length < N || y.length < N) throw new IllegalArgumentException("Fewer coordinates than sites");
+        if (diagram.editor == null) diagram.editor = new Voronoi_editor(diagram);
+        double[] xc = diagram.xc;
+        double[] yc = diagram.yc;
+
+        // the largest step and the extent of the new sites
+        int ranges = (N + RANGE - 1) / RANGE;
+        double[] range_step = new double[ranges];
+        double[] range_box = new double[4 * ranges];
+        failed = false;
+        pool.submit(() -> IntStream.range(0, ranges).parallel().forEach(r -> {
+            int hi = Math.min(N, (r + 1) * RANGE);
+            double step = 0;
+            double x0 = Double.POSITIVE_INFINITY;
+            double x1 = Double.NEGATIVE_INFINITY;
+            double y0 = Double.POSITIVE_INFINITY;
+            double y1 = Double.NEGATIVE_INFINITY;
+            for (int i = r * RANGE; i < hi; i++) {
+                if (Double.isNaN(x[i]) || Double.isNaN(y[i])) failed = true;
+                step = Math.max(step, Geometry.squared_distance(xc[i], yc[i], x[i], y[i]));
+                x0 = Math.min(x0, x[i]);
+                x1 = Math.max(x1, x[i]);
+                y0 = Math.min(y0, y[i]);
+                y1 = Math.max(y1, y[i]);
+            }
+            range_step[r] = step;
+            range_box[4 * r] = x0;
+            range_box[4 * r + 1] = x1;
+            range_box[4 * r + 2] = y0;
+            range_box[4 * r + 3] = y1;
+        })).join();
+        if (failed) {
+            failed = false;
+            throw new IllegalArgumentException("A site is NaN");
+        }
+        double step = 0;
+        double x0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY;
+        double y0 = Double.POSITIVE_INFINITY;
+        double y1 = Double.NEGATIVE_INFINITY;
+        for (int r = 0; r < ranges; r++) {
+            step = Math.max(step, range_step[r]);
+            x0 = Math.min(x0, range_box[4 * r]);
+            x1 = Math.max(x1, range_box[4 * r + 1]);
+            y0 = Math.min(y0, range_box[4 * r + 2]);
+            y1 = Math.max(y1, range_box[4 * r + 3]);
+        }
+        double spacing = Math.sqrt((x1 - x0) * (y1 - y0) / N);
+        double limit = motion_limit * spacing;
+        if (N < 3 || !(step <= limit * limit)) return rebuild(x, y);
+
+        editor = diagram.editor;
+        dcel = diagram.dcel;
+        objects = diagram.vor_faces != null;
+        editor.next_epoch();
+        editor.dead_half_edges.clear();
+        editor.dead_edges.clear();
+        editor.dead_vertices.clear();
+        touched.clear();
+        flips = 0;
+        if (from_x == null || from_x.length < N) {
+            from_x = new double[N];
+            from_y = new double[N];
+            held = new boolean[N];
+        }
+        System.arraycopy(xc, 0, from_x, 0, N);
+        System.arraycopy(yc, 0, from_y, 0, N);
+        to_x = x == xc ? Arrays.copyOf(x, N) : x;
+        to_y = y == yc ? Arrays.copyOf(y, N) : y;
+
+        // the sites are moved in parts of the step, from the last part that
+        // was repaired
+        done = 0;
+        double part = 1;
+        while (done < 1) {
+            double t = Math.min(1, done + part);
+            least = part < 1.0 / (1 << SPLITS);
+            kept = holds.n;
+            place_sites(t, pool);
+            if (recompute(pool)) {
+                if (!repair()) return fall_back();
+                done = t;
+                part *= 2;
+                continue;
+            }
+            boolean smaller = split;
+            clear();
+            if (!smaller || part < 1.0 / (1 << SPLITS)) return fall_back();
+            part /= 2;
+        }
+        if (objects) update_objects(pool);
+        editor.compact(objects);
+        diagram.locator = null;
+        if (holds.n > 0 && !add_held()) return fall_back();
+        if (diagram.editor != null) diagram.editor.grid();
+        if (holds.n == 0) return flips;
+
+        // the held sites on the convex hull move in a move of their own,
+        // in which all the other sites are where they go
+        for (int k = 0; k < holds.n; k++) held[holds.a[k]] = false;
+        holds.clear();
+        if (nested) return fall_back();
+        int changes = flips;
+        nested = true;
+        int more = move(to_x, to_y, pool);
+        nested = false;
+        flips = more == -1 ? -1 : changes + more;
+        return flips;
+    }
+
+    // the number of moves that built the diagram again
+    public int rebuilds() {
+        return rebuilds;
+    }
+
+    // the number of moves under the motion limit that could not be repaired
+    // in place and built the diagram again
+    public int fallbacks() {
+        return fallbacks;
+    }
+
+    // hold site i where it is after the part done of the step, and compute
+    // the bisectors and the vertices of its face again. A site on the
+    // convex hull is only held if hull is true: the editor cannot remove
+    // it in place. Returns false if the site is not held
+    private boolean hold(int i, boolean hull) {
+        if (held[i]) return true;
+        int f = dcel.face_edge[i];
+        if (!hull && on_hull(i)) return false;
+        held[i] = true;
+        holds.add(i);
+        from_x[i] += done * (to_x[i] - from_x[i]);
+        from_y[i] += done * (to_y[i] - from_y[i]);
+        diagram.xc[i] = from_x[i];
+        diagram.yc[i] = from_y[i];
+        int h = f;
+        do {
+            int e = dcel.edge[h];
+            if (e == -1) {
+                classify(dcel.origin[h]);
+                h = dcel.next[h];
+                continue;
+            }
+            int g = dcel.edge_half_edge[e];
+            int a = dcel.face[g];
+            int b = dcel.face[dcel.twin[g]];
+            geo.bisector(diagram.xc[a], diagram.yc[a], diagram.xc[b], diagram.yc[b]);
+            dcel.m[e] = geo.m;
+            dcel.b[e] = geo.b;
+            dcel.vertical[e] = geo.vertical;
+            classify(dcel.origin[h]);
+            h = dcel.next[h];
+        } while (h != f);
+        return true;
+    }
+
+    // hold the sites of the faces around vertex v inside the box, see
+    // hold(). Returns false if none of them is held now that was not before
+    private boolean hold_around(int v, boolean hull) {
+        int before = holds.n;
+        int g = editor.vertex_edge[v];
+        for (int l = 0; l < 3; l++) {
+            hold(dcel.face[g], hull);
+            g = dcel.next[dcel.twin[g]];
+        }
+        return holds.n > before;
+    }
+
+    // is face i on the convex hull: it has a box half-edge
+    private boolean on_hull(int i) {
+        int f = dcel.face_edge[i];
+        int h = f;
+        do {
+            if (dcel.edge[h] == -1) return true;
+            h = dcel.next[h];
+        } while (h != f);
+        return false;
+    }
+
+    // remove every held site inside the hull and add it again where it
+    // goes, with the editor, which starts the walk to its face at a
+    // neighbor. The site that the editor moves to the index of the removed
+    // one swaps its face with the added one. A held site that is where it
+    // goes stays, the held sites on the hull are left in holds. Returns
+    // false if a face is not closed
+    private boolean add_held() {
+        int n = 0;
+        for (int k = 0; k < holds.n; k++) {
+            int i = holds.a[k];
+            if (from_x[i] == to_x[i] && from_y[i] == to_y[i]) {
+                held[i] = false;
+                continue;
+            }
+            if (diagram.editor != null && on_hull(i)) {
+                holds.a[n++] = i;
+                continue;
+            }
+            held[i] = false;
+            int last = diagram.N - 1;
+            Compact_dcel dcel = diagram.dcel;
+            int near = dcel.face[dcel.twin[dcel.face_edge[i]]];
+            diagram.removeSite(i);
+            if (near == last) near = i;
+            if (diagram.editor == null) diagram.addSite(to_x[i], to_y[i]);
+            else diagram.editor.add_site(to_x[i], to_y[i], near);
+            if (i != last && !swap_faces(i, last)) {
+                for (k++; k < holds.n; k++) held[holds.a[k]] = false;
+                holds.n = n;
+                return false;
+            }
+        }
+        holds.n = n;
+        return true;
+    }
+
+    // swap the indices of the faces i and j
+    private boolean swap_faces(int i, int j) {
+        Compact_dcel dcel = diagram.dcel;
+        int fi = dcel.face_edge[i];
+        int fj = dcel.face_edge[j];
+        if (!closed_face(dcel, fi) || !closed_face(dcel, fj)) return false;
+        int h = fi;
+        do {
+            dcel.face[h] = j;
+            h = dcel.next[h];
+        } while (h != fi);
+        h = fj;
+        do {
+            dcel.face[h] = i;
+            h = dcel.next[h];
+        } while (h != fj);
+        dcel.face_edge[i] = fj;
+        dcel.face_edge[j] = fi;
+        double[] xc = diagram.xc;
+        double[] yc = diagram.yc;
+        double t = xc[i];
+        xc[i] = xc[j];
+        xc[j] = t;
+        t = yc[i];
+        yc[i] = yc[j];
+        yc[j] = t;
+        if (diagram.vor_faces != null) {
+            Face face = diagram.vor_faces[i];
+            diagram.vor_faces[i] = diagram.vor_faces[j];
+            diagram.vor_faces[j] = face;
+            diagram.vor_faces[i].index = i;
+            diagram.vor_faces[j].index = j;
+        }
+        return true;
+    }
+
+    // is the cycle of half-edge h closed
+    private static boolean closed_face(Compact_dcel dcel, int h) {
+        if (h == -1) return false;
+        int g = h;
+        do {
+            g = dcel.next[g];
+            if (g == -1) return false;
+        } while (g != h);
+        return true;
+    }
+
+    // move the sites that are not held to the part t of the way from where
+    // they were to where they go
+    private void place_sites(double t, ForkJoinPool pool) {
+        int N = diagram.N;
+        double[] xc = diagram.xc;
+        double[] yc = diagram.yc;
+        if (t == 1) {
+            System.arraycopy(to_x, 0, xc, 0, N);
+            System.arraycopy(to_y, 0, yc, 0, N);
+            for (int k = 0; k < holds.n; k++) {
+                xc[holds.a[k]] = from_x[holds.a[k]];
+                yc[holds.a[k]] = from_y[holds.a[k]];
+            }
+            return;
+        }
+        pool.submit(() -> IntStream.range(0, (N + RANGE - 1) / RANGE).parallel().forEach(r -> {
+            for (int i = r * RANGE; i < Math.min(N, (r + 1) * RANGE); i++) {
+                xc[i] = held[i] ? from_x[i] : from_x[i] + t * (to_x[i] - from_x[i]);
+                yc[i] = held[i] ? from_y[i] : from_y[i] + t * (to_y[i] - from_y[i]);
+            }
+        })).join();
+    }
+
+    // empty the lists of the repair
+    private void clear() {
+        failed = false;
+        split = false;
+        if (queued != null) for (int k = 0; k < queue.n; k++) queued[queue.a[k]] = false;
+        if (kind != null) Arrays.fill(kind, FREE);
+        queue.clear();
+        pops.clear();
+        turns.clear();
+        plan.clear();
+        tangles.clear();
+        corners.clear();
+        waits.clear();
+        drops.clear();
+        late.clear();
+    }
+
+    // build the diagram again from where the sites go, after a step under
+    // the motion limit that could not be repaired
+    private int fall_back() {
+        fallbacks++;
+        return rebuild(to_x, to_y);
+    }
+
+    // build the diagram again from the sites (x, y)
+    private int rebuild(double[] x, double[] y) {
+        int N = diagram.N;
+        clear();
+        for (int k = 0; k < holds.n; k++) held[holds.a[k]] = false;
+        holds.clear();
+        if (x != diagram.xc) System.arraycopy(x, 0, diagram.xc, 0, N);
+        if (y != diagram.yc) System.arraycopy(y, 0, diagram.yc, 0, N);
+        diagram.rebuild();
+        rebuilds++;
+        flips = -1;
+        return -1;
+    }
+
+    // compute the vertices and the bisectors from the moved sites, plan the
+    // repair of the vertices that are not valid, then find the state of
+    // every edge and the box half-edges that may close. The box grows and
+    // the vertices are computed again if a vertex without an edge to the
+    // box left it. Returns false if the structure cannot be repaired, and
+    // sets split if it can be with a smaller step
+    private boolean recompute(ForkJoinPool pool) {
+        int H = dcel.half_edge_count;
+        int ranges = (H + RANGE - 1) / RANGE;
+        if (state == null || state.length < dcel.m.length) {
+            state = new byte[dcel.m.length];
+            queued = new boolean[dcel.m.length];
+        }
+        if (kind == null || kind.length < dcel.vx.length) kind = new byte[dcel.vx.length];
+        do {
+            beyond[0] = diagram.x0;
+            beyond[1] = diagram.x1;
+            beyond[2] = diagram.y0;
+            beyond[3] = diagram.y1;
+            compute(pool);
+        } while (!failed && grow_box());
+        if (failed) return false;
+
+        // a box vertex whose edge cannot go around the corner yet meets the
+        // edge past the corner in the same step: the step is split before
+        // anything is changed, unless it is the smallest part
+        if (!least && !turn_corners()) {
+            split = true;
+            return false;
+        }
+        if (!untangle()) return false;
+
+        pool.submit(() -> IntStream.range(0, ranges).parallel().forEach(r -> {
+            int hi = Math.min(H, (r + 1) * RANGE);
+            for (int h = r * RANGE; h < hi && !failed; h++) {
+                if (dead(h)) continue;
+                int e = dcel.edge[h];
+                if (e == -1) {
+                    if (left(h) && (dcel.edge[dcel.prev[h]] == -1 || box_run(h))) continue;
+                    synchronized (drops) {
+                        drops.add(h);
+                    }
+                }
+                else if (dcel.edge_half_edge[e] == h) {
+                    state[e] = status(e);
+                    if (state[e] == FAIL) failed = true;
+                }
+            }
+        })).join();
+        return !failed;
+    }
+
+    // compute the vertices and the bisectors from the moved sites, in
+    // parallel, and sort the vertices into the lists of the repair
+    private void compute(ForkJoinPool pool) {
+        int H = dcel.half_edge_count;
+        int ranges = (H + RANGE - 1) / RANGE;
+        failed = false;
+        split = false;
+        pool.submit(() -> IntStream.range(0, ranges).parallel().forEach(r -> {
+            Geometry g = new Geometry();
+            int hi = Math.min(H, (r + 1) * RANGE);
+            for (int h = r * RANGE; h < hi && !failed; h++) {
+                if (dead(h)) continue;
+                if (!closed(h)) {
+                    failed = true;
+                    break;
+                }
+                int e = dcel.edge[h];
+                if (e == -1) continue;
+                int a = dcel.face[h];
+                int b = dcel.face[dcel.twin[h]];
+                if (dcel.edge_half_edge[e] == h) {
+                    g.bisector(diagram.xc[a], diagram.yc[a], diagram.xc[b], diagram.yc[b]);
+                    dcel.m[e] = g.m;
+                    dcel.b[e] = g.b;
+                    dcel.vertical[e] = g.vertical;
+                }
+
+                // the vertex is computed from the half-edge of its smallest
+                // face, or from the one voronoi half-edge that leaves it if
+                // it is on the box
+                int v = dcel.origin[h];
+                int k = dcel.twin[dcel.prev[h]];
+                if (k == -1) {
+                    box_vertex(v, a, b);
+                    continue;
+                }
+                int c = dcel.face[k];
+                if (a > b || a > c) continue;
+                mark(v, center(v, a, c, b));
+            }
+        })).join();
+    }
+
+    // grow the box to the vertices without an edge to the box that left it,
+    // with the margin of Voronoi_diagram.bounding_box(). The box vertices
+    // keep their sides and the lists of the repair are emptied for the
+    // next pass. Returns false if no vertex left the box
+    private boolean grow_box() {
+        if (beyond[0] == diagram.x0 && beyond[1] == diagram.x1
+                && beyond[2] == diagram.y0 && beyond[3] == diagram.y1) return false;
+        resize(beyond[0], beyond[1], beyond[2], beyond[3]);
+        clear();
+        return true;
+    }
+
+    // grow the box to vertex v, which left it during the repair without an
+    // edge to it, see grow_box(). The box vertices move to where their
+    // edges leave the new box and the box half-edges that may close are
+    // queued. Returns false if a box vertex is lost
+    private boolean grow_box(int v) {
+        resize(Math.min(diagram.x0, dcel.vx[v] - 0.1), Math.max(diagram.x1, dcel.vx[v] + 0.1),
+               Math.min(diagram.y0, dcel.vy[v] - 0.1), Math.max(diagram.y1, dcel.vy[v] + 0.1));
+        for (int h = 0; h < dcel.half_edge_count; h++) {
+            if (dcel.edge[h] != -1 || dead(h)) continue;
+            int g = dcel.twin[dcel.prev[h]];
+            if (g != -1 && kind[dcel.origin[h]] == FREE) {
+                box_vertex(dcel.origin[h], dcel.face[g], dcel.face[dcel.twin[g]]);
+            }
+        }
+        for (int h = 0; h < dcel.half_edge_count; h++) {
+            if (dcel.edge[h] != -1 || dead(h)) continue;
+            if (!(left(h) && (dcel.edge[dcel.prev[h]] == -1 || box_run(h)))) drops.add(h);
+        }
+        return !failed;
+    }
+
+    // make x0..x1, y0..y1 the box, which contains the old one. The box
+    // vertices keep their places along their sides
+    private void resize(double x0, double x1, double y0, double y1) {
+        for (int h = 0; h < dcel.half_edge_count; h++) {
+            if (dcel.edge[h] != -1 || dead(h)) continue;
+            int v = dcel.origin[h];
+            if (dcel.vx[v] == diagram.x0) dcel.vx[v] = x0;
+            else if (dcel.vx[v] == diagram.x1) dcel.vx[v] = x1;
+            if (dcel.vy[v] == diagram.y0) dcel.vy[v] = y0;
+            else if (dcel.vy[v] == diagram.y1) dcel.vy[v] = y1;
+        }
+        diagram.x0 = x0;
+        diagram.x1 = x1;
+        diagram.y0 = y0;
+        diagram.y1 = y1;
+    }
+
+    // repair the turned triangles before the edges are checked. Every
+    // turned vertex is matched with a neighbor, turned or not, such that
+    // flipping their edge gives two counterclockwise triangles, and no
+    // vertex is in two flips. The turned vertices left unmatched and the
+    // turned vertices at the box that cannot be cut off are tangles: they
+    // hold their sites where the structure was valid, which moves the
+    // vertices of their faces, and the matching starts again. Nothing is
+    // changed until every turned vertex is matched, then the flips are
+    // done. Returns false, and sets split, if nothing more can be held or
+    // too many sites are held
+    private boolean untangle() {
+        int budget = Math.max(HOLDS, diagram.N / HOLDS);
+        if (matched == null || matched.length < kind.length) matched = new boolean[kind.length];
+        while (true) {
+            turns.sort();
+            int n = 0;
+            for (int k = 0; k < turns.n; k++) {
+                int v = turns.a[k];
+                if (kind[v] == TURN && (n == 0 || turns.a[n - 1] != v)) turns.a[n++] = v;
+            }
+            turns.n = n;
+            plan.clear();
+            for (int k = 0; k < turns.n; k++) {
+                int v = turns.a[k];
+                if (matched[v]) continue;
+                int e = match_edge(v);
+                if (e == -1) {
+                    kind[v] = TANGLE;
+                    tangles.add(v);
+                    continue;
+                }
+                int h = dcel.edge_half_edge[e];
+                matched[dcel.origin[h]] = true;
+                matched[dcel.origin[dcel.twin[h]]] = true;
+                plan.add(e);
+            }
+            for (int k = 0; k < pops.n; k++) {
+                int v = pops.a[k];
+                if (kind[v] != POP || !turned(v) || cut(v, ray(v), false)) continue;
+                kind[v] = TANGLE;
+                tangles.add(v);
+            }
+            for (int k = 0; k < plan.n; k++) {
+                int h = dcel.edge_half_edge[plan.a[k]];
+                matched[dcel.origin[h]] = false;
+                matched[dcel.origin[dcel.twin[h]]] = false;
+            }
+            if (tangles.n == 0) break;
+
+            // the sites on the hull are held only if nothing else can be,
+            // and not in the move of the held sites on the hull, which
+            // splits its step instead
+            int before = holds.n;
+            hold_tangles(false);
+            if (holds.n == before && !nested) hold_tangles(true);
+            if (holds.n == before || holds.n - kept > budget) {
+                split = true;
+                return false;
+            }
+
+            // the tangles whose faces were held already are sorted again
+            n = tangles.n;
+            for (int k = 0; k < n; k++) {
+                if (kind[tangles.a[k]] == TANGLE) classify(tangles.a[k]);
+            }
+            System.arraycopy(tangles.a, n, tangles.a, 0, tangles.n - n);
+            tangles.n -= n;
+        }
+
+        // the flips, which change only the triangles of their two ends
+        for (int k = 0; k < plan.n; k++) {
+            int e = plan.a[k];
+            int h = dcel.edge_half_edge[e];
+            int a = dcel.face[h];
+            kind[dcel.origin[h]] = FREE;
+            kind[dcel.origin[dcel.twin[h]]] = FREE;
+            flip(e);
+            if (dcel.face[h] == a) failed = true;
+            flips++;
+        }
+        plan.clear();
+        turns.clear();
+        return !failed;
+    }
+
+    // hold the sites of the tangles, see hold(). A tangle whose sites are
+    // held already holds the sites of the triangles around it
+    private void hold_tangles(boolean hull) {
+        for (int k = 0; k < tangles.n; k++) {
+            int v = tangles.a[k];
+            if (kind[v] != TANGLE || hold_around(v, hull)) continue;
+            int g = editor.vertex_edge[v];
+            for (int l = 0; l < 3; l++) {
+                int w = dcel.destination(g);
+                if (dcel.twin[dcel.next[g]] != -1) hold_around(w, hull);
+                g = dcel.next[dcel.twin[g]];
+            }
+        }
+    }
+
+    // the first edge of turned vertex v that can be flipped with a vertex
+    // that is not matched, -1 if none
+    private int match_edge(int v) {
+        int g = editor.vertex_edge[v];
+        for (int k = 0; k < 3; k++) {
+            int e = dcel.edge[g];
+            if (flippable(e) && !matched[dcel.destination(g)]) return e;
+            g = dcel.next[dcel.twin[g]];
+        }
+        return -1;
+    }
+
+    // is the triangle of vertex v inside the box turned over
+    private boolean turned(int v) {
+        int g = editor.vertex_edge[v];
+        return !ccw(dcel.face[g], dcel.face[dcel.twin[dcel.prev[g]]], dcel.face[dcel.twin[g]]);
+    }
+
+    // compute vertex v again from its faces and sort it into the lists of
+    // the repair
+    private void classify(int v) {
+        int g = editor.vertex_edge[v];
+        if (dcel.edge[g] == -1) {
+            g = dcel.twin[dcel.prev[g]];
+            if (g == -1) return; // a corner of the box
+        }
+        int a = dcel.face[g];
+        int b = dcel.face[dcel.twin[g]];
+        int k = dcel.twin[dcel.prev[g]];
+        if (k == -1) box_vertex(v, a, b);
+        else mark(v, center(v, a, dcel.face[k], b));
+    }
+
+    // sort vertex v inside the box, whose center is where, into the lists
+    // of the repair. A vertex with an edge to the box is cut off by the box
+    // if it leaves it, one without an edge to the box that leaves it makes
+    // the box grow, a turned vertex flips an edge, any other one is a
+    // tangle
+    private void mark(int v, int where) {
+        if (where == INSIDE) kind[v] = FREE;
+        else if (ray(v) != -1) add(pops, v, POP);
+        else if (where == OUTSIDE) {
+            synchronized (beyond) {
+                beyond[0] = Math.min(beyond[0], dcel.vx[v] - 0.1);
+                beyond[1] = Math.max(beyond[1], dcel.vx[v] + 0.1);
+                beyond[2] = Math.min(beyond[2], dcel.vy[v] - 0.1);
+                beyond[3] = Math.max(beyond[3], dcel.vy[v] + 0.1);
+            }
+            add(tangles, v, TANGLE);
+        }
+        else if (where == TURNED && untangle_edge(v) != -1) add(turns, v, TURN);
+        else add(tangles, v, TANGLE);
+    }
+
+    // add vertex v of the kind k to the list, from any thread
+    private void add(Voronoi_editor.Int_list list, int v, byte k) {
+        kind[v] = k;
+        synchronized (list) {
+            list.add(v);
+        }
+    }
+
+    // repair the structure: the box vertices past a corner first, then the
+    // vertices that left the box, the box half-edges that closed and the
+    // flips, until there is nothing left to do. A box vertex whose edge
+    // cannot go around the corner yet waits for the changes next to it and
+    // is placed at the end, as does a box half-edge that closes out of
+    // order. Returns false if the structure cannot be
+    // repaired
+    private boolean repair() {
+        for (int k = 0; k < queue.n; k++) queued[queue.a[k]] = false;
+        queue.clear();
+        for (int e = 0; e < dcel.edge_count; e++) {
+            if (state[e] == FLIP && !dead(dcel.edge_half_edge[e])) push(e);
+        }
+        int limit = flips + Math.max(64, dcel.edge_count / 2);
+        turn_all();
+        while (true) {
+            if (pops.n > 0) {
+                int v = pops.a[--pops.n];
+                if (kind[v] != POP) continue;
+                kind[v] = FREE;
+                if (!pop_out(v)) return false;
+            }
+            else if (drops.n > 0) {
+                if (!drop_in(drops.a[--drops.n], false)) return false;
+            }
+            else if (queue.n > 0) {
+                int e = queue.a[--queue.n];
+                queued[e] = false;
+                if (dead(dcel.edge_half_edge[e])) continue;
+                byte s = status(e);
+                if (s == FAIL) return false;
+                if (s == OK) continue;
+                if (!flip(e)) return false;
+            }
+            else if (waits.n > 0) {
+                int v = waits.a[--waits.n];
+                if (kind[v] != WAIT) continue;
+                kind[v] = FREE;
+                retry = true;
+                boolean cut = pop_out(v);
+                retry = false;
+                if (!cut) return false;
+            }
+            else if (late.n > 0) {
+                if (!drop_late()) return false;
+            }
+            else if (corners.n > 0) {
+                turn_all();
+                if (corners.n == 0) continue;
+                int v = corners.a[--corners.n];
+                if (kind[v] != CORNER) continue;
+                kind[v] = FREE;
+                if (!settle_corner(v)) return false;
+            }
+            else return true;
+            if (++flips > limit) return false;
+        }
+    }
+
+    // turn the box vertices past a corner that can go around it now, in
+    // passes while one of them turns, since the edges of a run of box
+    // vertices far from the sites turn together and the one next to the
+    // corner goes first. The others are left in corners
+    private void turn_all() {
+        int before;
+        do {
+            before = corners.n;
+            int n = 0;
+            for (int k = 0; k < corners.n; k++) {
+                int v = corners.a[k];
+                if (kind[v] != CORNER) continue;
+                if (turn_corner(v, true)) {
+                    kind[v] = FREE;
+                    flips++;
+                }
+                else corners.a[n++] = v;
+            }
+            corners.n = n;
+        } while (corners.n > 0 && corners.n < before);
+    }
+
+    // close the box half-edges that waited, in passes while one of them
+    // closes, since a half-edge may wait for the one next to it. Returns
+    // false if none of them can close
+    private boolean drop_late() {
+        Voronoi_editor.Int_list pass = late;
+        late = new Voronoi_editor.Int_list();
+        int n = 0;
+        for (int k = 0; k < pass.n; k++) {
+            int h = pass.a[k];
+            int before = late.n;
+            if (!drop_in(h, false)) return false;
+            if (late.n > before) n++;
+        }
+        if (n < pass.n) return true;
+
+        // none of them closes in order: close the first one that can close
+        // anyway, the box half-edges next to it that it turns over close
+        // after it
+        for (int k = 0; k < late.n; k++) {
+            int h = late.a[k];
+            int before = late.n;
+            if (!drop_in(h, true) || late.n > before) {
+                late.n = before;
+                continue;
+            }
+            System.arraycopy(late.a, k + 1, late.a, k, late.n - k - 1);
+            late.n--;
+            return true;
+        }
+        return false;
+    }
+
+    // add edge e to the queue
+    private void push(int e) {
+        if (e >= queued.length) {
+            queued = Arrays.copyOf(queued, dcel.m.length);
+            state = Arrays.copyOf(state, dcel.m.length);
+        }
+        if (queued[e]) return;
+        queued[e] = true;
+        queue.add(e);
+    }
+
+    // add vertex v to the vertices that may leave the box
+    private void pend(int v) {
+        if (kind[v] != FREE) return;
+        kind[v] = POP;
+        pops.add(v);
+    }
+
+    // the state of edge e. An edge between two vertices inside the box is
+    // checked with the circle of one of its triangles and the fourth site,
+    // an edge to the box must keep its direction. An edge at a vertex that
+    // is still to be repaired waits for it
+    private byte status(int e) {
+        int h = dcel.edge_half_edge[e];
+        int t = dcel.twin[h];
+        if (kind[dcel.origin[h]] != FREE || kind[dcel.origin[t]] != FREE) return OK;
+        int p = dcel.twin[dcel.prev[h]];
+        int q = dcel.twin[dcel.prev[t]];
+        if (p == -1 || q == -1) return left(h) && left(t) ? OK : FAIL;
+        int a = dcel.face[h];
+        int b = dcel.face[t];
+        int c = dcel.face[p];
+        int d = dcel.face[q];
+        double[] xc = diagram.xc;
+        double[] yc = diagram.yc;
+        double in = Geometry.incircle(xc[a], yc[a], xc[c], yc[c], xc[b], yc[b], xc[d], yc[d]);
+        return in > 0 ? FLIP : OK;
+    }
+
+    // flip edge e between the faces a and b, whose ends are the vertices of
+    // a, c, b and of b, d, a. It becomes the edge between c and d, and its
+    // ends the vertices of a, c, d and of c, b, d. Returns false if the
+    // faces around it are not as expected
+    private boolean flip(int e) {
+        int h = dcel.edge_half_edge[e];
+        int t = dcel.twin[h];
+        int pa = dcel.prev[h];
+        int na = dcel.next[h];
+        int pb = dcel.prev[t];
+        int nb = dcel.next[t];
+        int ca = dcel.twin[pa];
+        int cb = dcel.twin[nb];
+        int da = dcel.twin[na];
+        int db = dcel.twin[pb];
+        if (ca == -1 || cb == -1 || da == -1 || db == -1) return false;
+        int a = dcel.face[h];
+        int b = dcel.face[t];
+        int c = dcel.face[ca];
+        int d = dcel.face[da];
+        if (dcel.face[cb] != c || dcel.face[db] != d || c == d) return false;
+        if (!ccw(a, c, d) || !ccw(c, b, d)) return false;
+        int P = dcel.origin[h];
+        int Q = dcel.origin[t];
+        int p = center(P, a, c, d);
+        int q = center(Q, c, b, d);
+        if (p == TURNED || q == TURNED) return false;
+
+        // a and b lose the edge, c and d gain it
+        dcel.link(pa, na);
+        dcel.link(pb, nb);
+        dcel.link(cb, h);
+        dcel.link(h, ca);
+        dcel.link(da, t);
+        dcel.link(t, db);
+        dcel.face[h] = c;
+        dcel.face[t] = d;
+        set_origin(na, P);
+        set_origin(t, P);
+        set_origin(nb, Q);
+        set_origin(h, Q);
+        if (dcel.face_edge[a] == h) dcel.face_edge[a] = pa;
+        if (dcel.face_edge[b] == t) dcel.face_edge[b] = pb;
+        geo.bisector(diagram.xc[c], diagram.yc[c], diagram.xc[d], diagram.yc[d]);
+        dcel.m[e] = geo.m;
+        dcel.b[e] = geo.b;
+        dcel.vertical[e] = geo.vertical;
+        dcel.upper_edge[e] = false;
+        touch(h, t, pa, na);
+        touch(pb, nb, ca, cb);
+        touch(da, db, -1, -1);
+
+        if (p == OUTSIDE) pend(P);
+        if (q == OUTSIDE) pend(Q);
+        return check_around(pa) && check_around(na) && check_around(pb) && check_around(nb);
+    }
+
+    // vertex v left the box, or its triangle turned over. It is cut off by
+    // the box if it has an edge to the box, else an edge of its triangle is
+    // flipped. A vertex that left the box past the end of the next edge to
+    // the box, or without an edge to the box, waits for the changes next
+    // to it, after which the box grows to a vertex still without one.
+    // Returns false if nothing can be done
+    private boolean pop_out(int v) {
+        int g = editor.vertex_edge[v];
+        if (dcel.twin[g] == -1 || dcel.twin[dcel.prev[g]] == -1) return true; // on the box now
+        int where = center(v, dcel.face[g], dcel.face[dcel.twin[dcel.prev[g]]], dcel.face[dcel.twin[g]]);
+        if (where == INSIDE) return check_vertex(v);
+        int ha = ray(v);
+        if (ha != -1 && cut(v, ha, true)) return !failed;
+        if (where == OUTSIDE && !retry) {
+            kind[v] = WAIT;
+            waits.add(v);
+            return true;
+        }
+        if (where == OUTSIDE && ha == -1) return grow_box(v) && check_vertex(v);
+        return where == TURNED && flip_turned(v);
+    }
+
+    // the triangle of vertex v turned over: one of its sites crossed the
+    // Delaunay edge of the other two, and flipping that edge leaves two
+    // counterclockwise triangles. Returns false if no edge of v can be
+    // flipped
+    private boolean flip_turned(int v) {
+        int e = untangle_edge(v);
+        return e != -1 && flip(e);
+    }
+
+    // the first edge of vertex v that can be flipped, -1 if none
+    private int untangle_edge(int v) {
+        int g = editor.vertex_edge[v];
+        for (int k = 0; k < 3; k++) {
+            int t = dcel.twin[g];
+            if (t == -1) return -1;
+            if (flippable(dcel.edge[g])) return dcel.edge[g];
+            g = dcel.next[t];
+        }
+        return -1;
+    }
+
+    // can edge e be flipped: both of its ends are vertices of two triangles
+    // inside the box and the flipped triangles are counterclockwise
+    private boolean flippable(int e) {
+        int h = dcel.edge_half_edge[e];
+        int t = dcel.twin[h];
+        int ca = dcel.twin[dcel.prev[h]];
+        int da = dcel.twin[dcel.next[h]];
+        if (ca == -1 || da == -1 || dcel.twin[dcel.prev[t]] == -1 || dcel.twin[dcel.next[t]] == -1) return false;
+        int c = dcel.face[ca];
+        int d = dcel.face[da];
+        return c != d && ccw(dcel.face[h], c, d) && ccw(c, dcel.face[t], d);
+    }
+
+    // cut vertex v off with the box. Its edge ha to the box, between the
+    // faces a and b, is deleted and the face c between the other two edges
+    // of v gets a box half-edge from the end of the edge of b and c to the
+    // end of the edge of c and a. Returns false, without changing anything,
+    // if the new ends are not in order on the side of the box of the
+    // deleted end, and sets failed if the edges around v cannot be repaired.
+    // Only checks that the cut can be done if apply is false
+    private boolean cut(int v, int ha, boolean apply) {
+        int hb = dcel.twin[ha];
+        int B = dcel.origin[hb];
+        int a = dcel.face[ha];
+        int b = dcel.face[hb];
+        int pa = dcel.prev[ha];
+        int ka = dcel.next[ha];
+        int kb = dcel.prev[hb];
+        int nb = dcel.next[hb];
+        if (dcel.edge[kb] != -1 || dcel.edge[pa] == -1 || dcel.edge[nb] == -1) return false;
+        int ca = dcel.twin[pa];
+        int cb = dcel.twin[nb];
+        int c = dcel.face[ca];
+        if (dcel.face[cb] != c) return false;
+        int s = side(B);
+        if (s == -1) return false;
+        double bc = exit(s, c, b);
+        double ac = exit(s, a, c);
+        double first = along(s, dcel.origin[kb]);
+        double last = along(s, dcel.destination(ka));
+        if (!(bc < ac)) return false;
+        if (!apply) return true;
+
+        place(B, s, bc);
+        place(v, s, ac);
+        int kc = dcel.add_box_half_edge(c);
+        if (objects) diagram.vor_half_edges.add(new Half_Edge(0, 0));
+        dcel.link(pa, ka);
+        dcel.link(kb, nb);
+        dcel.link(cb, kc);
+        dcel.link(kc, ca);
+        set_origin(kc, B);
+        set_origin(nb, B);
+        set_origin(ka, v);
+        set_origin(ca, v);
+        if (dcel.face_edge[a] == ha) dcel.face_edge[a] = pa;
+        if (dcel.face_edge[b] == hb) dcel.face_edge[b] = kb;
+        kill(ha);
+        kill(hb);
+        editor.dead_edges.add(dcel.edge[ha]);
+        touch(kc, pa, ka, kb);
+        touch(nb, ca, cb, -1);
+        if (!check_around(pa) || !check_around(nb)) failed = true;
+        return true;
+    }
+
+    // the box half-edge k of face c shrank to nothing, or the edges of c
+    // before and after it cross: they now meet at a vertex inside the box,
+    // from which a new edge between the faces a and b across them goes to
+    // the box. A new vertex out of order on the box, or outside of it,
+    // waits for the changes next to it, unless force is true, which only
+    // needs the new edge to cross the box next to k. Returns false if k is
+    // not alone between two edges, or if force is true and the new vertex
+    // is outside of the box
+    private boolean drop_in(int k, boolean force) {
+        if (dead(k) || left(k) && box_run(k)) return true;
+        return close_run(k, force);
+    }
+
+    // close the run of box half-edges of face c that k is in, see drop_in():
+    // k alone, or k and the box half-edge next to it with a corner of the
+    // box between them. The new edge crosses the box before or after the
+    // corner, and the face on that side gets the corner
+    private boolean close_run(int k, boolean force) {
+        int k1 = k;
+        int k2 = k;
+        if (dcel.edge[dcel.prev[k]] == -1) k1 = dcel.prev[k];
+        else if (dcel.edge[dcel.next[k]] == -1) k2 = dcel.next[k];
+        int cb = dcel.prev[k1];
+        int ca = dcel.next[k2];
+        if (dcel.edge[cb] == -1 || dcel.edge[ca] == -1) return false;
+        int pa = dcel.twin[ca];
+        int nb = dcel.twin[cb];
+        int a = dcel.face[pa];
+        int b = dcel.face[nb];
+        int c = dcel.face[k];
+        int ka = dcel.next[pa];
+        int kb = dcel.prev[nb];
+        if (dcel.edge[ka] != -1 || dcel.edge[kb] != -1 || a == b) return false;
+        int v = dcel.origin[ca];
+        int B = dcel.origin[k1];
+        int K = dcel.origin[k2];
+        int s = side(B);
+        if (s == -1) return false;
+        double ab = exit(s, a, b);
+        double first = along(s, dcel.origin[kb]);
+        double last;
+        boolean past = false; // does the new edge cross after the corner
+        if (k1 == k2) {
+            if (side(v) != s) return false;
+            last = along(s, dcel.destination(ka));
+        }
+        else {
+            if (!corner(K)) return false;
+            last = along(s, K);
+            if (!(first < ab && ab < last)) {
+                past = true;
+                s = box_side(K, v);
+                ab = exit(s, a, b);
+                first = along(s, K);
+                last = along(s, dcel.destination(ka));
+            }
+        }
+        double x = dcel.vx[v];
+        double y = dcel.vy[v];
+        if (force ? Double.isNaN(ab) : !(first < ab && ab < last)) {
+            late.add(k);
+            return true;
+        }
+        if (center(v, b, a, c) != INSIDE) {
+            dcel.vx[v] = x;
+            dcel.vy[v] = y;
+            if (force) return false;
+            late.add(k);
+            return true;
+        }
+
+        place(B, s, ab);
+        geo.bisector(diagram.xc[a], diagram.yc[a], diagram.xc[b], diagram.yc[b]);
+        int e = dcel.add_edge(geo.m, geo.b, geo.vertical, a, b);
+        int ha = dcel.edge_half_edge[e];
+        int hb = dcel.twin[ha];
+        if (objects) {
+            while (diagram.vor_half_edges.size() < dcel.half_edge_count) {
+                diagram.vor_half_edges.add(new Half_Edge(0, 0));
+            }
+            while (diagram.vor_edges.size() < dcel.edge_count) diagram.vor_edges.add(new Voronoi_edge(0, 0));
+        }
+        dcel.link(pa, ha);
+        dcel.link(hb, nb);
+        dcel.link(cb, ca);
+        if (k1 == k2) {
+            dcel.link(ha, ka);
+            dcel.link(kb, hb);
+            set_origin(ka, B);
+            kill(k1);
+        }
+        else if (!past) {
+            // the new edge crosses before the corner, a gets the corner
+            dcel.link(ha, k1);
+            dcel.link(k1, ka);
+            dcel.link(kb, hb);
+            dcel.face[k1] = a;
+            set_origin(k1, B);
+            set_origin(ka, K);
+            kill(k2);
+        }
+        else {
+            // the new edge crosses after the corner, b gets the corner
+            dcel.link(ha, ka);
+            dcel.link(kb, k2);
+            dcel.link(k2, hb);
+            dcel.face[k2] = b;
+            set_origin(k2, K);
+            set_origin(ka, B);
+            kill(k1);
+        }
+        set_origin(hb, B);
+        set_origin(nb, v);
+        set_origin(ca, v);
+        set_origin(ha, v);
+        kind[B] = FREE;
+        kind[v] = FREE;
+        if (dcel.face_edge[c] == k1 || dcel.face_edge[c] == k2) dcel.face_edge[c] = ca;
+        touch(ha, hb, pa, ka);
+        touch(kb, nb, ca, cb);
+        touch(k1, k2, -1, -1);
+        return check_around(ha) && check_around(pa) && check_around(nb);
+    }
+
+    // the half-edge from vertex v to the box, if v has exactly one edge to
+    // the box, else -1
+    private int ray(int v) {
+        int g = editor.vertex_edge[v];
+        int ray = -1;
+        for (int k = 0; k < 3; k++) {
+            if (dcel.twin[g] == -1) return -1;
+            if (dcel.edge[dcel.next[g]] == -1) {
+                if (ray != -1) return -1;
+                ray = g;
+            }
+            g = dcel.next[dcel.twin[g]];
+        }
+        return g == editor.vertex_edge[v] ? ray : -1;
+    }
+
+    // check the three edges of vertex v
+    private boolean check_vertex(int v) {
+        int g = editor.vertex_edge[v];
+        for (int k = 0; k < 3; k++) {
+            if (!check_around(g)) return false;
+            g = dcel.next[dcel.twin[g]];
+        }
+        return true;
+    }
+
+    // check the edge of half-edge h after one of its ends moved and queue it
+    // if it has to be flipped. The box half-edges next to an edge to the box
+    // are queued if they may close
+    private boolean check_around(int h) {
+        int e = dcel.edge[h];
+        byte s = status(e);
+        if (s == FAIL) return false;
+        if (s == FLIP) push(e);
+        int t = dcel.twin[h];
+        if (dcel.twin[dcel.prev[h]] != -1 && dcel.twin[dcel.prev[t]] != -1) return true;
+        box_runs(h);
+        box_runs(t);
+        return true;
+    }
+
+    // queue the box half-edges before and after half-edge h if their runs
+    // do not hold
+    private void box_runs(int h) {
+        int n = dcel.next[h];
+        int p = dcel.prev[h];
+        if (dcel.edge[n] == -1 && !(left(n) && box_run(n))) drops.add(n);
+        if (dcel.edge[p] == -1 && !(left(p) && box_run(p))) drops.add(p);
+    }
+
+    // is the site of the face of h strictly left of h
+    private boolean left(int h) {
+        int u = dcel.origin[h];
+        int v = dcel.destination(h);
+        int f = dcel.face[h];
+        return Geometry.area(dcel.vx[u], dcel.vy[u], dcel.vx[v], dcel.vy[v],
+                             diagram.xc[f], diagram.yc[f]) > 0;
+    }
+
+    // the box half-edges of a face from the one before box half-edge h to
+    // the one after it lie between two voronoi half-edges, which must not
+    // cross: if they do a vertex outside of the box has moved into it
+    private boolean box_run(int h) {
+        int s = h;
+        while (dcel.edge[dcel.prev[s]] == -1) {
+            s = dcel.prev[s];
+            if (s == h) return true;
+        }
+        int in = dcel.prev[s];
+        int out = s;
+        while (dcel.edge[out] == -1) out = dcel.next[out];
+        if (out == in) return true;
+        int a = dcel.origin[in];
+        int b = dcel.destination(in);
+        int c = dcel.origin[out];
+        int d = dcel.destination(out);
+        double[] vx = dcel.vx;
+        double[] vy = dcel.vy;
+        double abc = Geometry.area(vx[a], vy[a], vx[b], vy[b], vx[c], vy[c]);
+        double abd = Geometry.area(vx[a], vy[a], vx[b], vy[b], vx[d], vy[d]);
+        double cda = Geometry.area(vx[c], vy[c], vx[d], vy[d], vx[a], vy[a]);
+        double cdb = Geometry.area(vx[c], vy[c], vx[d], vy[d], vx[b], vy[b]);
+        return !((abc > 0) != (abd > 0) && abc != 0 && abd != 0
+                && (cda > 0) != (cdb > 0) && cda != 0 && cdb != 0);
+    }
+
+    // are the sites a, b, c counterclockwise, in the same arithmetic as
+    // center()
+    private boolean ccw(int a, int b, int c) {
+        double[] xc = diagram.xc;
+        double[] yc = diagram.yc;
+        return (xc[b] - xc[a]) * (yc[c] - yc[a]) - (yc[b] - yc[a]) * (xc[c] - xc[a]) > 0;
+    }
+
+    // move vertex v to the center of the circle of the sites a, b, c and
+    // tell where it is. The center is not stored if the sites are not
+    // counterclockwise
+    private int center(int v, int a, int b, int c) {
+        double[] xc = diagram.xc;
+        double[] yc = diagram.yc;
+        double bx = xc[b] - xc[a];
+        double by = yc[b] - yc[a];
+        double cx = xc[c] - xc[a];
+        double cy = yc[c] - yc[a];
+        double d = 2 * (bx * cy - by * cx);
+        if (!(d > 0)) return TURNED;
+        double bb = bx * bx + by * by;
+        double cc = cx * cx + cy * cy;
+        double x = xc[a] + (cy * bb - by * cc) / d;
+        double y = yc[a] + (bx * cc - cx * bb) / d;
+        dcel.vx[v] = x;
+        dcel.vy[v] = y;
+        return x >= diagram.x0 && x <= diagram.x1 && y >= diagram.y0 && y <= diagram.y1 ? INSIDE : OUTSIDE;
+    }
+
+    // move vertex v on the box along its side to where its edge, between
+    // the faces a and b, leaves the box. If the edge no longer leaves
+    // through that side the vertex is added to the corners
+    private void box_vertex(int v, int a, int b) {
+        int s = side(v);
+        if (s == -1) {
+            failed = true;
+            return;
+        }
+        double t = exit(s, b, a);
+        if (Double.isNaN(t)) add(corners, v, CORNER);
+        else place(v, s, t);
+    }
+
+    // the voronoi edge of box vertex B, between the faces a and b, moved
+    // past a corner K of the box. B moves to the other side of K and the
+    // box half-edge between B and K changes face: it goes from b to a if
+    // K was after B counterclockwise, from a to b if it was before. Returns
+    // false if the bisector does not cross the side after or before K
+    // between K and the next vertex on it. Only checks that the turn can be
+    // done if apply is false
+    private boolean turn_corner(int B, boolean apply) {
+        int g = editor.vertex_edge[B];
+        if (dcel.edge[g] == -1) g = dcel.twin[dcel.prev[g]];
+        if (g == -1) return false;
+        int t = dcel.twin[g];
+        int a = dcel.face[g];
+        int b = dcel.face[t];
+        int ka = dcel.prev[g];
+        int kb = dcel.next[t];
+        if (dcel.edge[ka] != -1 || dcel.edge[kb] != -1) return false;
+
+        // the corner after B
+        int K = dcel.destination(kb);
+        int k2 = dcel.next[kb];
+        if (corner(K) && dcel.edge[k2] == -1) {
+            int end = dcel.destination(k2);
+            int s = box_side(K, end);
+            double c = exit(s, b, a);
+            if (along(s, K) < c && c < along(s, end)) {
+                if (!apply) return true;
+                place(B, s, c);
+                dcel.link(ka, kb);
+                dcel.link(kb, g);
+                dcel.link(t, k2);
+                dcel.face[kb] = a;
+                set_origin(kb, K);
+                set_origin(k2, B);
+                if (dcel.face_edge[b] == kb) dcel.face_edge[b] = k2;
+                touch(ka, kb, k2, g);
+                touch(t, -1, -1, -1);
+                return check_around(g);
+            }
+        }
+
+        // the corner before B
+        K = dcel.origin[ka];
+        int k0 = dcel.prev[ka];
+        if (corner(K) && dcel.edge[k0] == -1) {
+            int start = dcel.origin[k0];
+            int s = box_side(start, K);
+            double c = exit(s, b, a);
+            if (along(s, start) < c && c < along(s, K)) {
+                if (!apply) return true;
+                place(B, s, c);
+                dcel.link(k0, g);
+                dcel.link(t, ka);
+                dcel.link(ka, kb);
+                dcel.face[ka] = b;
+                set_origin(ka, B);
+                set_origin(kb, K);
+                if (dcel.face_edge[a] == ka) dcel.face_edge[a] = k0;
+                touch(k0, ka, kb, g);
+                touch(t, -1, -1, -1);
+                return check_around(g);
+            }
+        }
+        return false;
+    }
+
+    // can every box vertex past a corner go around it now, or after the
+    // box vertex next to it that is past the corner too
+    private boolean turn_corners() {
+        for (int k = 0; k < corners.n; k++) {
+            int B = corners.a[k];
+            if (turn_corner(B, false)) continue;
+            int g = editor.vertex_edge[B];
+            if (dcel.edge[g] == -1) g = dcel.twin[dcel.prev[g]];
+            if (g == -1) return false;
+            if (kind[dcel.origin[dcel.prev[g]]] != CORNER
+                    && kind[dcel.destination(dcel.next[dcel.twin[g]])] != CORNER) return false;
+        }
+        return true;
+    }
+
+    // place box vertex B, which waited for the changes next to it, on its
+    // side of the box or around a corner, or close the face between its
+    // edge and the edge past the corner
+    private boolean settle_corner(int B) {
+        int g = editor.vertex_edge[B];
+        if (dcel.edge[g] == -1) g = dcel.twin[dcel.prev[g]];
+        if (g == -1) return false;
+        int s = side(B);
+        double t = exit(s, dcel.face[dcel.twin[g]], dcel.face[g]);
+        if (Double.isNaN(t)) {
+            if (turn_corner(B, false)) return turn_corner(B, true);
+
+            // the edge crossed the edge of the box vertex past the corner:
+            // the face between them left the hull
+            int ka = dcel.prev[g];
+            int kb = dcel.next[dcel.twin[g]];
+            return corner(dcel.origin[ka]) && dcel.edge[dcel.prev[ka]] == -1 && close_run(ka, true)
+                    || corner(dcel.destination(kb)) && dcel.edge[dcel.next[kb]] == -1 && close_run(kb, true);
+        }
+        place(B, s, t);
+        return check_around(g);
+    }
+
+    // is vertex v a corner of the box
+    private boolean corner(int v) {
+        double x = dcel.vx[v];
+        double y = dcel.vy[v];
+        return (x == diagram.x0 || x == diagram.x1) && (y == diagram.y0 || y == diagram.y1);
+    }
+
+    // the side of the box between its vertices u and w
+    private int box_side(int u, int w) {
+        if (dcel.vx[u] == dcel.vx[w]) return dcel.vx[u] == diagram.x1 ? 1 : 3;
+        return dcel.vy[u] == diagram.y0 ? 0 : 2;
+    }
+
+    // the side of the box of vertex v: 0 bottom, 1 right, 2 top, 3 left, or
+    // -1 if v is not on the box
+    private int side(int v) {
+        double x = dcel.vx[v];
+        double y = dcel.vy[v];
+        if (x == diagram.x1) return 1;
+        if (x == diagram.x0) return 3;
+        if (y == diagram.y0) return 0;
+        if (y == diagram.y1) return 2;
+        return -1;
+    }
+
+    // the place of vertex v along side s of the box, counterclockwise
+    private double along(int s, int v) {
+        if (s == 0) return dcel.vx[v];
+        if (s == 1) return dcel.vy[v];
+        if (s == 2) return -dcel.vx[v];
+        return -dcel.vy[v];
+    }
+
+    // the place counterclockwise along side s of the box where the edge
+    // between the faces a and b, with a on its left, leaves the box, NaN if
+    // it leaves it through another side. The bisector crosses the box twice
+    // and the edge goes in the direction of b - a turned left
+    private double exit(int s, int a, int b) {
+        double dx = diagram.xc[b] - diagram.xc[a];
+        double dy = diagram.yc[b] - diagram.yc[a];
+        boolean out = s == 0 ? dx < 0 : s == 1 ? dy < 0 : s == 2 ? dx > 0 : dy > 0;
+        return out ? cross_side(s, a, b) : Double.NaN;
+    }
+
+    // the place counterclockwise along side s of the box where the bisector
+    // of the sites a and b crosses it, NaN if it does not
+    private double cross_side(int s, int a, int b) {
+        double[] xc = diagram.xc;
+        double[] yc = diagram.yc;
+        double dx = xc[b] - xc[a];
+        double dy = yc[b] - yc[a];
+        double w = dx * (xc[a] + xc[b]) / 2 + dy * (yc[a] + yc[b]) / 2; // dx x + dy y = w on the bisector
+        if (s == 1 || s == 3) {
+            double y = (w - dx * (s == 1 ? diagram.x1 : diagram.x0)) / dy;
+            if (!(y >= diagram.y0 && y <= diagram.y1)) return Double.NaN;
+            return s == 1 ? y : -y;
+        }
+        double x = (w - dy * (s == 0 ? diagram.y0 : diagram.y1)) / dx;
+        if (!(x >= diagram.x0 && x <= diagram.x1)) return Double.NaN;
+        return s == 0 ? x : -x;
+    }
+
+    // move vertex v to the place t counterclockwise along side s of the box
+    private void place(int v, int s, double t) {
+        if (s == 0 || s == 2) {
+            dcel.vx[v] = s == 0 ? t : -t;
+            dcel.vy[v] = s == 0 ? diagram.y0 : diagram.y1;
+        }
+        else {
+            dcel.vx[v] = s == 1 ? diagram.x1 : diagram.x0;
+            dcel.vy[v] = s == 1 ? t : -t;
+        }
+    }
+
+    // set the origin of half-edge h to vertex v
+    private void set_origin(int h, int v) {
+        dcel.origin[h] = v;
+        editor.vertex_edge[v] = h;
+    }
+
+    // delete half-edge h, its slot is filled at the end of the move
+    private void kill(int h) {
+        if (h >= editor.dead_mark.length) editor.dead_mark = Arrays.copyOf(editor.dead_mark, dcel.origin.length);
+        editor.dead_mark[h] = editor.epoch;
+        editor.dead_half_edges.add(h);
+    }
+
+    // was half-edge h deleted by this move
+    private boolean dead(int h) {
+        return h < editor.dead_mark.length && editor.dead_mark[h] == editor.epoch;
+    }
+
+    // remember the half-edges whose objects have to be updated, -1 is none
+    private void touch(int h, int g, int k, int l) {
+        if (!objects) return;
+        if (h != -1) touched.add(h);
+        if (g != -1) touched.add(g);
+        if (k != -1) touched.add(k);
+        if (l != -1) touched.add(l);
+    }
+
+    // is h a half-edge of a closed face cycle, the sweep leaves a face
+    // open on some degenerate inputs
+    private boolean closed(int h) {
+        return dcel.next[h] != -1 && dcel.prev[h] != -1 && dcel.origin[h] != -1;
+    }
+
+    // copy the moved vertices and bisectors to the object graph and update
+    // the objects of the half-edges that were changed
+    private void update_objects(ForkJoinPool pool) {
+        ArrayList<Vertex> vertices = diagram.vor_vertices;
+        ArrayList<Voronoi_edge> edges = diagram.vor_edges;
+        ArrayList<Half_Edge> half_edges = diagram.vor_half_edges;
+        int V = dcel.vertex_count;
+        int E = dcel.edge_count;
+        int H = dcel.half_edge_count;
+        pool.submit(() -> IntStream.range(0, (Math.max(V, H) + RANGE - 1) / RANGE).parallel().forEach(r -> {
+            for (int v = r * RANGE; v < Math.min(V, (r + 1) * RANGE); v++) {
+                Vertex vertex = vertices.get(v);
+                vertex.xc = dcel.vx[v];
+                vertex.yc = dcel.vy[v];
+            }
+            for (int e = r * RANGE; e < Math.min(E, (r + 1) * RANGE); e++) {
+                Voronoi_edge edge = edges.get(e);
+                edge.m = dcel.m[e];
+                edge.b = dcel.b[e];
+                edge.vertical = dcel.vertical[e];
+            }
+            for (int h = r * RANGE; h < Math.min(H, (r + 1) * RANGE); h++) {
+                int e = dcel.edge[h];
+                if (e == -1) continue;
+                Half_Edge half_edge = half_edges.get(h);
+                half_edge.m = dcel.m[e];
+                half_edge.b = dcel.b[e];
+            }
+        })).join();
+        for (int k = 0; k < touched.n; k++) {
+            int h = touched.a[k];
+            if (dead(h)) continue;
+            editor.update_objects(h);
+            int f = dcel.face[h];
+            diagram.vor_faces[f].half_edge = half_edges.get(dcel.face_edge[f]);
+        }
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+        int N = 20000;
+        int frames = 20;
+        if (args.length > 0) N = Integer.parseInt(args[0]);
+        if (args.length > 1) frames = Integer.parseInt(args[1]);
+        java.util.Random random = new java.util.Random(451);
+        double[] xc = new double[N];
+        double[] yc = new double[N];
+        double[] vx = new double[N];
+        double[] vy = new double[N];
+        for (int i = 0; i < N; i++) {
+            xc[i] = 0.1 + 0.8 * random.nextDouble();
+            yc[i] = 0.1 + 0.8 * random.nextDouble();
+            double angle = 2 * Math.PI * random.nextDouble();
+            vx[i] = Math.cos(angle);
+            vy[i] = Math.sin(angle);
+        }
+
+        // move every site a tenth of the spacing per frame, with the object
+        // graph, and compare with a new diagram
+        Voronoi_diagram diagram = new Voronoi_diagram(N, Arrays.copyOf(xc, N), Arrays.copyOf(yc, N));
+        double speed = 0.1 * Math.sqrt(0.64 / N);
+        boolean same = true;
+        boolean consistent = true;
+        long changes = 0;
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            for (int i = 0; i < N; i++) {
+                xc[i] += speed * vx[i];
+                yc[i] += speed * vy[i];
+            }
+            int f = diagram.moveSites(xc, yc);
+            if (f > 0) changes += f;
+            if (frame % 5 == 4) {
+                same &= Voronoi_editor.same_triangles(diagram, Voronoi_diagram.compact(N, xc, yc));
+                consistent &= diagram.editor == null || diagram.editor.check();
+            }
+        }
+        double time = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%d frames in %.1f ms, %d changes, %d rebuilt%n", frames, time, changes,
+                          diagram.moveFallbacks());
+        System.out.println("same triangles as a new diagram: " + same);
+        System.out.println("consistent: " + consistent);
+
+        // a step of several spacings builds the diagram again
+        for (int i = 0; i < N; i++) xc[i] += 5 * Math.sqrt(0.64 / N) * vx[i];
+        System.out.println("large step rebuilt: " + (diagram.moveSites(xc, yc) == -1));
+        System.out.println("same triangles as a new diagram: "
+                                   + Voronoi_editor.same_triangles(diagram, Voronoi_diagram.compact(N, xc, yc)));
+    }
+}
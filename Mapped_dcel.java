@@ -0,0 +1,345 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Read-only DCEL over a memory-mapped file. The file has a
+ *  64 byte header (the magic number "DCE2", the version, the number of
+ *  faces, vertices, half-edges and voronoi edges and whether the sites are
+ *  stored) followed by the arrays of Compact_dcel, each starting at a
+ *  multiple of 8 bytes, little-endian: the vertex coordinates, the slopes
+ *  and biases of the edges, the sites of the faces, the origin, twin, next,
+ *  prev, face and edge of every half-edge (edge -1 is a half-edge on the
+ *  bounding box), the first half-edge of every edge and face and the flags
+ *  of the edges. open() maps every array and the accessors read the
+ *  mapping directly, nothing is deserialized and the pages are shared by
+ *  all the processes that map the file. Face f is the cell of site f. The
+ *  accessors only use absolute reads, so any number of threads can walk
+ *  the same Mapped_dcel. Every array has to fit in 2 GB (N up to about 80
+ *  million sites).
+ *
+ **************************************************************************** */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class Mapped_dcel implements Dcel_view {
+
+    static final int MAGIC = 0x44434532; // "DCE2"
+    static final int VERSION = 1;
+    static final int HEADER = 64; // bytes before the arrays
+
+    int face_count;
+    int vertex_count;
+    int half_edge_count;
+    int edge_count;
+    boolean sites; // are the sites of the faces stored
+
+    DoubleBuffer vx;
+    DoubleBuffer vy;
+    DoubleBuffer m;
+    DoubleBuffer b;
+    DoubleBuffer site_x;
+    DoubleBuffer site_y;
+    IntBuffer origin;
+    IntBuffer twin;
+    IntBuffer next;
+    IntBuffer prev;
+    IntBuffer face;
+    IntBuffer edge;
+    IntBuffer edge_half_edge;
+    IntBuffer face_edge;
+    ByteBuffer vertical;
+    ByteBuffer upper_edge;
+
+
+    // write the DCEL and, if xc is not null, the sites of its faces to a file
+    public static void write(Compact_dcel d, double[] xc, double[] yc, String file)
+            throws IOException {
+        int N = d.face_count;
+        Mapped_dcel f = create(file, N, d.vertex_count, d.half_edge_count, d.edge_count,
+                               xc != null);
+        f.vx.put(0, d.vx, 0, d.vertex_count);
+        f.vy.put(0, d.vy, 0, d.vertex_count);
+        f.m.put(0, d.m, 0, d.edge_count);
+        f.b.put(0, d.b, 0, d.edge_count);
+        if (xc != null) {
+            f.site_x.put(0, xc, 0, N);
+            f.site_y.put(0, yc, 0, N);
+        }
+        f.origin.put(0, d.origin, 0, d.half_edge_count);
+        f.twin.put(0, d.twin, 0, d.half_edge_count);
+        f.next.put(0, d.next, 0, d.half_edge_count);
+        f.prev.put(0, d.prev, 0, d.half_edge_count);
+        f.face.put(0, d.face, 0, d.half_edge_count);
+        f.edge.put(0, d.edge, 0, d.half_edge_count);
+        f.edge_half_edge.put(0, d.edge_half_edge, 0, d.edge_count);
+        f.face_edge.put(0, d.face_edge, 0, N);
+        for (int e = 0; e < d.edge_count; e++) {
+            f.vertical.put(e, (byte) (d.vertical[e] ? 1 : 0));
+            f.upper_edge.put(e, (byte) (d.upper_edge[e] ? 1 : 0));
+        }
+    }
+
+    // create a file for a DCEL with the given counts and map it for writing,
+    // the arrays are filled in through the buffers of the result
+    static Mapped_dcel create(String file, int N, int vertices, int half_edges, int edges,
+                              boolean sites) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            ByteBuffer header = map(channel, FileChannel.MapMode.READ_WRITE, 0, HEADER);
+            header.putInt(MAGIC).putInt(VERSION).putInt(N).putInt(vertices)
+                  .putInt(half_edges).putInt(edges).putInt(sites ? 1 : 0);
+            Mapped_dcel d = new Mapped_dcel();
+            d.face_count = N;
+            d.vertex_count = vertices;
+            d.half_edge_count = half_edges;
+            d.edge_count = edges;
+            d.sites = sites;
+            d.map_arrays(channel, FileChannel.MapMode.READ_WRITE);
+            if (channel.size() < d.size()) channel.write(ByteBuffer.allocate(1), d.size() - 1);
+            return d;
+        }
+    }
+
+    // map a DCEL file read-only
+    public static Mapped_dcel open(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER) throw new IOException("Not a DCEL file: " + file);
+            ByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            if (header.getInt() != MAGIC) throw new IOException("Not a DCEL file: " + file);
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException("Unknown DCEL file version " + version);
+
+            // the mappings stay valid after the channel is closed
+            Mapped_dcel d = new Mapped_dcel();
+            d.face_count = header.getInt();
+            d.vertex_count = header.getInt();
+            d.half_edge_count = header.getInt();
+            d.edge_count = header.getInt();
+            d.sites = header.getInt() == 1;
+            if (channel.size() < d.size()) throw new IOException("Truncated DCEL file: " + file);
+            d.map_arrays(channel, FileChannel.MapMode.READ_ONLY);
+            return d;
+        }
+    }
+
+    // the sizes in bytes of the arrays in the order of the file, the sites
+    // are empty if they are not stored
+    private long[] sections() {
+        long V = vertex_count;
+        long H = half_edge_count;
+        long E = edge_count;
+        long S = sites ? face_count : 0;
+        return new long[] { 8 * V, 8 * V, 8 * E, 8 * E, 8 * S, 8 * S, 4 * H, 4 * H, 4 * H, 4 * H,
+                            4 * H, 4 * H, 4 * E, 4L * face_count, E, E };
+    }
+
+    // the size of the file
+    private long size() {
+        long position = HEADER;
+        for (long bytes : sections()) position = end(position, bytes);
+        return position;
+    }
+
+    // map every array of the file after the header, a read-write mapping
+    // grows the file
+    private void map_arrays(FileChannel channel, FileChannel.MapMode mode) throws IOException {
+        long[] bytes = sections();
+        ByteBuffer[] a = new ByteBuffer[bytes.length];
+        long position = HEADER;
+        for (int k = 0; k < bytes.length; k++) {
+            a[k] = map(channel, mode, position, bytes[k]);
+            position = end(position, bytes[k]);
+        }
+        vx = a[0].asDoubleBuffer();
+        vy = a[1].asDoubleBuffer();
+        m = a[2].asDoubleBuffer();
+        b = a[3].asDoubleBuffer();
+        site_x = a[4].asDoubleBuffer();
+        site_y = a[5].asDoubleBuffer();
+        origin = a[6].asIntBuffer();
+        twin = a[7].asIntBuffer();
+        next = a[8].asIntBuffer();
+        prev = a[9].asIntBuffer();
+        face = a[10].asIntBuffer();
+        edge = a[11].asIntBuffer();
+        edge_half_edge = a[12].asIntBuffer();
+        face_edge = a[13].asIntBuffer();
+        vertical = a[14];
+        upper_edge = a[15];
+    }
+
+    // copy the mapped arrays into a Compact_dcel
+    public Compact_dcel to_compact() {
+        Compact_dcel d = new Compact_dcel(face_count, vertex_count, half_edge_count, edge_count);
+        d.vertex_count = vertex_count;
+        d.half_edge_count = half_edge_count;
+        d.edge_count = edge_count;
+        vx.get(0, d.vx, 0, vertex_count);
+        vy.get(0, d.vy, 0, vertex_count);
+        m.get(0, d.m, 0, edge_count);
+        b.get(0, d.b, 0, edge_count);
+        origin.get(0, d.origin, 0, half_edge_count);
+        twin.get(0, d.twin, 0, half_edge_count);
+        next.get(0, d.next, 0, half_edge_count);
+        prev.get(0, d.prev, 0, half_edge_count);
+        face.get(0, d.face, 0, half_edge_count);
+        edge.get(0, d.edge, 0, half_edge_count);
+        edge_half_edge.get(0, d.edge_half_edge, 0, edge_count);
+        face_edge.get(0, d.face_edge, 0, face_count);
+        for (int e = 0; e < edge_count; e++) {
+            d.vertical[e] = vertical.get(e) != 0;
+            d.upper_edge[e] = upper_edge.get(e) != 0;
+        }
+        return d;
+    }
+
+    // the end of a section of the given bytes that starts at position,
+    // rounded up to a multiple of 8
+    private static long end(long position, long bytes) {
+        return (position + bytes + 7) & ~7L;
+    }
+
+    // map bytes of the channel from position, little-endian
+    private static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position,
+                                  long bytes) throws IOException {
+        if (bytes > Integer.MAX_VALUE) throw new IOException("An array of the DCEL is over 2 GB");
+        return channel.map(mode, position, bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // the x-coordinate of the site of face f, NaN if the sites are not stored
+    public double site_x(int f) {
+        return sites ? site_x.get(f) : Double.NaN;
+    }
+
+    // the y-coordinate of the site of face f, NaN if the sites are not stored
+    public double site_y(int f) {
+        return sites ? site_y.get(f) : Double.NaN;
+    }
+
+    @Override
+    public int vertex_count() {
+        return vertex_count;
+    }
+
+    @Override
+    public double vertex_x(int v) {
+        return vx.get(v);
+    }
+
+    @Override
+    public double vertex_y(int v) {
+        return vy.get(v);
+    }
+
+    @Override
+    public int half_edge_count() {
+        return half_edge_count;
+    }
+
+    @Override
+    public int origin(int h) {
+        return origin.get(h);
+    }
+
+    // the destination is the origin of the twin, or of the next half-edge
+    // on the bounding box
+    @Override
+    public int destination(int h) {
+        int t = twin.get(h);
+        if (t != -1) return origin.get(t);
+        int n = next.get(h);
+        if (n != -1) return origin.get(n);
+        return -1;
+    }
+
+    @Override
+    public int twin(int h) {
+        return twin.get(h);
+    }
+
+    @Override
+    public int next(int h) {
+        return next.get(h);
+    }
+
+    @Override
+    public int prev(int h) {
+        return prev.get(h);
+    }
+
+    @Override
+    public int face(int h) {
+        return face.get(h);
+    }
+
+    @Override
+    public boolean box_edge(int h) {
+        return edge.get(h) == -1;
+    }
+
+    @Override
+    public int face_count() {
+        return face_count;
+    }
+
+    @Override
+    public int face_half_edge(int f) {
+        return face_edge.get(f);
+    }
+
+
+    // unit testing
+    public static void main(String[] args) throws IOException {
+        int N = 100000;
+        if (args.length > 0) N = Integer.parseInt(args[0]);
+        double[] xc = new double[N];
+        double[] yc = new double[N];
+        java.util.Random random = new java.util.Random(451);
+        for (int i = 0; i < N; i++) {
+            xc[i] = random.nextDouble();
+            yc[i] = random.nextDouble();
+        }
+
+        long start = System.nanoTime();
+        Voronoi_diagram diagram = Voronoi_diagram.compact(N, xc, yc);
+        double build = (System.nanoTime() - start) / 1e6;
+        java.io.File file = java.io.File.createTempFile("voronoi", ".dcel");
+        diagram.save(file.getPath());
+
+        start = System.nanoTime();
+        Mapped_dcel mapped = open(file.getPath());
+        double open = (System.nanoTime() - start) / 1e6;
+
+        // walk every face of both DCELs
+        Dcel_view d = diagram.dcel();
+        boolean same = d.vertex_count() == mapped.vertex_count()
+                && d.half_edge_count() == mapped.half_edge_count();
+        for (int f = 0; f < N && same; f++) {
+            same = mapped.site_x(f) == xc[f] && mapped.site_y(f) == yc[f]
+                    && d.face_half_edge(f) == mapped.face_half_edge(f);
+            int h = d.face_half_edge(f);
+            do {
+                same = same && d.origin(h) == mapped.origin(h) && d.twin(h) == mapped.twin(h)
+                        && d.next(h) == mapped.next(h) && d.prev(h) == mapped.prev(h)
+                        && d.face(h) == mapped.face(h) && d.box_edge(h) == mapped.box_edge(h)
+                        && d.destination(h) == mapped.destination(h)
+                        && d.vertex_x(d.origin(h)) == mapped.vertex_x(mapped.origin(h))
+                        && d.vertex_y(d.origin(h)) == mapped.vertex_y(mapped.origin(h));
+                h = d.next(h);
+            } while (same && h != d.face_half_edge(f));
+        }
+        System.out.printf("build %.1f ms, open %.1f ms, %d bytes%n", build, open, file.length());
+        file.delete();
+        System.out.println("same DCEL: " + same);
+    }
+}
@@ -0,0 +1,844 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Builds the Voronoi diagram in parallel. The sites are
+ *  sorted by x (rounded to floats, the order only needs to be close) and
+ *  split into vertical strips with the same number of sites. Every strip
+ *  runs the sequential sweep on its sites plus a halo of the sites on both
+ *  sides of it, on a ForkJoinPool. The sites on the first LAYERS convex
+ *  layers are swept with every strip, since the sites near the boundary have
+ *  neighbours far away in x. The cell of a site of the
+ *  strip is kept if it is certified to be its cell in the diagram of all
+ *  the sites: every vertex of the cell has an empty circle (no site is
+ *  closer to the vertex than the sites of the cell) and an infinite cell
+ *  belongs to a site on the convex hull and has its two infinite edges with
+ *  the neighbours of the site on the hull. If a cell is not certified the
+ *  halo of the strip is doubled and the strip is swept again.
+ *
+ *  The certified cells are stitched into one DCEL along the seams. Every
+ *  vertex and every voronoi edge is created once, by the cell of the
+ *  smallest site around it, and the other cells find it by the sites around
+ *  it. The infinite edges are cut with the bounding box and the infinite
+ *  faces are closed as in the sequential construction. The vertices,
+ *  half-edges and faces of the result are the same as in the sequential
+ *  diagram, only numbered in a different order. If the strips cannot be
+ *  certified (degenerate inputs), the diagram is built sequentially.
+ *
+ **************************************************************************** */
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+public class Parallel_voronoi {
+
+    static final int MIN_STRIP = 4096; // the fewest sites in a strip
+    static final int LAYERS = 10; // the convex layers added to every strip
+    static final double EPS = 1e-10; // relative tolerance of the empty circle test
+
+    int N; // number of sites
+    double[] xc; // the x-coordinates of the sites
+    double[] yc; // the y-coordinates of the sites
+    ForkJoinPool pool; // the pool that runs the strips
+
+    int[] by_x; // the sites sorted by x
+    int[] rank; // the position of every site in by_x
+    Strip[] strips; // the strips
+
+    // neighbours of the sites on the convex hull, -1 if not on the hull
+    int[] hull_prev;
+    int[] hull_next;
+    int[] hull_sites; // the sites on the hull
+
+    // a grid of G x G cells over the sites for the empty circle test
+    int G;
+    double gx; // the lower left corner of the grid
+    double gy;
+    double gw; // the size of a cell
+    double gh;
+    int[] grid_start; // the sites of cell c are grid_sites[grid_start[c]..grid_start[c + 1])
+    int[] grid_sites;
+
+    // the cells of all the sites in the stitched DCEL
+    int[] cell_he; // the first half-edge of the cell
+    int[] cell_deg; // the number of half-edges of the cell
+    boolean[] cell_open; // is the cell infinite
+    int[] across; // the site across every half-edge
+
+    Voronoi_diagram diagram; // the diagram being assembled
+    volatile boolean failed; // could the cells not be certified or stitched
+
+
+    // the cells of the sites by_x[lo..hi) of a strip
+    static class Strip {
+        int lo;
+        int hi;
+        int halo; // the number of sites on each side of the strip that are swept too
+        long swept; // the number of sites swept for the strip, over all the halos
+
+        // the cells, in the order of by_x
+        int[] deg; // the number of half-edges of the cell
+        boolean[] open; // is the cell infinite
+
+        // the half-edges of the cells, one after the other
+        int entries;
+        int[] across; // the site across the half-edge
+        double[] ox; // the origin of the half-edge, NaN if it is infinite
+        double[] oy;
+
+        int vertices; // the vertices created by the cells of the strip
+        int edges; // the voronoi edges created by the cells of the strip
+
+        // where the half-edges, vertices and edges of the strip start in the DCEL
+        int half_edge_base;
+        int vertex_base;
+        int edge_base;
+
+        // the extent of the sites and vertices of the strip
+        double x_min = Double.POSITIVE_INFINITY;
+        double x_max = Double.NEGATIVE_INFINITY;
+        double y_min = Double.POSITIVE_INFINITY;
+        double y_max = Double.NEGATIVE_INFINITY;
+
+        Geometry geo = new Geometry(); // the geometry kernel of the strip
+    }
+
+
+    // prepare the parallel build of the diagram of N sites
+    public Parallel_voronoi(int N, double[] xc, double[] yc, ForkJoinPool pool) {
+        this.N = N;
+        this.xc = xc;
+        this.yc = yc;
+        this.pool = pool;
+    }
+
+    // build the diagram, if objects is false the object graph is not built
+    public Voronoi_diagram build(boolean objects) {
+        int S = Math.min(pool.getParallelism(), N / MIN_STRIP);
+        if (!split(S)) return new Voronoi_diagram(N, xc, yc, true, objects);
+
+        // sweep the strips and keep the certified cells
+        run(S, s -> sweep(strips[s]));
+        if (failed) return new Voronoi_diagram(N, xc, yc, true, objects);
+
+        Voronoi_diagram result = assemble();
+        if (result == null) return new Voronoi_diagram(N, xc, yc, true, objects);
+        if (objects) result.build_object_graph();
+        return result;
+    }
+
+    // split the sites into S strips, returns false if the diagram should be
+    // built sequentially
+    boolean split(int S) {
+        if (S < 2) return false;
+        order();
+        strips = new Strip[S];
+        for (int s = 0; s < S; s++) {
+            strips[s] = new Strip();
+            strips[s].lo = (int) ((long) N * s / S);
+            strips[s].hi = (int) ((long) N * (s + 1) / S);
+            strips[s].halo = Math.max(64, 3 * (int) Math.sqrt(N));
+        }
+        grid();
+        hull();
+        return hull_sites.length <= N / (2 * S);
+    }
+
+    // stitch the certified cells of the strips, cut the infinite edges and
+    // close the infinite faces. Returns null if the cells do not fit
+    Voronoi_diagram assemble() {
+        stitch();
+        if (failed) return null;
+        close();
+        return diagram;
+    }
+
+    // run task(s) for the strips s = 0..S-1 on the pool
+    private void run(int S, java.util.function.IntConsumer task) {
+        pool.submit(() -> IntStream.range(0, S).parallel().forEach(task)).join();
+    }
+
+    // sort the sites by x, the strips only need the order to be close to the
+    // order by x so the keys are the x-coordinates rounded to floats
+    private void order() {
+        long[] key = new long[N];
+        pool.submit(() -> IntStream.range(0, N).parallel().forEach(i -> {
+            int f = Float.floatToIntBits((float) xc[i]);
+            f ^= (f >> 31) & 0x7fffffff; // the order of the ints is the order of the floats
+            key[i] = ((long) f << 32) | i;
+        })).join();
+        Arrays.parallelSort(key);
+
+        by_x = new int[N];
+        rank = new int[N];
+        pool.submit(() -> IntStream.range(0, N).parallel().forEach(k -> {
+            int i = (int) key[k];
+            by_x[k] = i;
+            rank[i] = k;
+        })).join();
+    }
+
+    // find the neighbours of the sites on the convex hull (counterclockwise),
+    // the sites on the sides of the hull are kept. The hull and the first
+    // LAYERS convex layers are computed from the sites that are among the
+    // highest and lowest of their column or the leftmost and rightmost of
+    // their row of the grid, and the sites that are not strictly inside the
+    // hull of those
+    private void hull() {
+        hull_prev = new int[N];
+        hull_next = new int[N];
+        Arrays.fill(hull_prev, -1);
+        Arrays.fill(hull_next, -1);
+
+        // the candidates, sorted by x
+        boolean[] candidate = new boolean[N];
+        for (int c = 0; c < G; c++) {
+            extremes(candidate, c, G); // the lowest of column c
+            extremes(candidate, (G - 1) * G + c, -G); // the highest of column c
+            extremes(candidate, c * G, 1); // the leftmost of row c
+            extremes(candidate, c * G + G - 1, -1); // the rightmost of row c
+        }
+        int[] sorted = candidates(candidate);
+        int n = sorted.length;
+        int[] chain = new int[2 * n];
+        int k = chain(sorted, n, chain);
+
+        // add the sites the grid missed, then the hull is exact
+        if (k < 3) {
+            Arrays.fill(candidate, true);
+        }
+        else {
+            int[] polygon = Arrays.copyOf(chain, k);
+            pool.submit(() -> IntStream.range(0, N).parallel().forEach(i -> {
+                if (!candidate[i] && !inside(polygon, i)) candidate[i] = true;
+            })).join();
+        }
+        sorted = candidates(candidate);
+        n = sorted.length;
+        chain = new int[2 * n];
+        k = chain(sorted, n, chain);
+        for (int t = 0; t < k; t++) {
+            int p = chain[t];
+            int q = chain[(t + 1) % k];
+            hull_next[p] = q;
+            hull_prev[q] = p;
+        }
+
+        // peel the layers
+        hull_sites = new int[n];
+        int count = 0;
+        for (int layer = 0; layer < LAYERS && n > 2; layer++) {
+            k = chain(sorted, n, chain);
+            for (int t = 0; t < k; t++) {
+                candidate[chain[t]] = false;
+                hull_sites[count++] = chain[t];
+            }
+            int m = 0;
+            for (int t = 0; t < n; t++) {
+                if (candidate[sorted[t]]) sorted[m++] = sorted[t];
+            }
+            n = m;
+        }
+        hull_sites = Arrays.copyOf(hull_sites, count);
+    }
+
+    // mark the sites of the grid cells start, start + step, ... of a column
+    // (step G or -G) or a row (step 1 or -1) until more than LAYERS sites
+    // are marked
+    private void extremes(boolean[] candidate, int start, int step) {
+        int marked = 0;
+        for (int t = 0; t < G && marked <= LAYERS; t++) {
+            int c = start + t * step;
+            for (int k = grid_start[c]; k < grid_start[c + 1]; k++) {
+                candidate[grid_sites[k]] = true;
+                marked++;
+            }
+        }
+    }
+
+    // the marked sites sorted by x
+    private int[] candidates(boolean[] candidate) {
+        int n = 0;
+        for (int i = 0; i < N; i++) {
+            if (candidate[i]) n++;
+        }
+        int[] sites = new int[n];
+        double[] cx = new double[n];
+        double[] cy = new double[n];
+        n = 0;
+        for (int i = 0; i < N; i++) {
+            if (!candidate[i]) continue;
+            sites[n] = i;
+            cx[n] = xc[i];
+            cy[n] = yc[i];
+            n++;
+        }
+        int[] sorted = Site_sort.x_order(n, cx, cy);
+        for (int t = 0; t < n; t++) {
+            sorted[t] = sites[sorted[t]];
+        }
+        return sorted;
+    }
+
+    // is the site p strictly inside the convex polygon (counterclockwise),
+    // binary search for the triangle of the fan from polygon[0] containing p
+    private boolean inside(int[] polygon, int p) {
+        int k = polygon.length;
+        int v = polygon[0];
+        if (cross(v, polygon[1], p) <= 0 || cross(v, polygon[k - 1], p) >= 0) return false;
+        int lo = 1;
+        int hi = k - 1;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (cross(v, polygon[mid], p) >= 0) lo = mid;
+            else hi = mid;
+        }
+        return cross(polygon[lo], polygon[hi], p) > 0;
+    }
+
+    // the convex hull of the sites sorted[0..n) (sorted by x) counterclockwise
+    // into chain, returns the number of sites on it
+    private int chain(int[] sorted, int n, int[] chain) {
+        int k = 0;
+        for (int t = 0; t < n; t++) {
+            int p = sorted[t];
+            while (k >= 2 && cross(chain[k - 2], chain[k - 1], p) < 0) k--;
+            chain[k++] = p;
+        }
+        int lower = k + 1;
+        for (int t = n - 2; t >= 0; t--) {
+            int p = sorted[t];
+            while (k >= lower && cross(chain[k - 2], chain[k - 1], p) < 0) k--;
+            chain[k++] = p;
+        }
+        return k - 1; // the first site closes the chain
+    }
+
+    // the cross product of the vectors a -> b and a -> c
+    private double cross(int a, int b, int c) {
+        return (xc[b] - xc[a]) * (yc[c] - yc[a]) - (yc[b] - yc[a]) * (xc[c] - xc[a]);
+    }
+
+    // put the sites into a grid with about 2 sites per cell
+    private void grid() {
+        double x_min = xc[0];
+        double x_max = xc[0];
+        double y_min = yc[0];
+        double y_max = yc[0];
+        for (int i = 0; i < N; i++) {
+            if (xc[i] < x_min) x_min = xc[i];
+            if (xc[i] > x_max) x_max = xc[i];
+            if (yc[i] < y_min) y_min = yc[i];
+            if (yc[i] > y_max) y_max = yc[i];
+        }
+
+        G = Math.max(1, (int) Math.sqrt(N / 2.0));
+        gx = x_min;
+        gy = y_min;
+        gw = Math.max((x_max - x_min) / G, Double.MIN_NORMAL);
+        gh = Math.max((y_max - y_min) / G, Double.MIN_NORMAL);
+
+        grid_start = new int[G * G + 1];
+        grid_sites = new int[N];
+        int[] cell = new int[N];
+        for (int i = 0; i < N; i++) {
+            cell[i] = grid_row(yc[i]) * G + grid_column(xc[i]);
+            grid_start[cell[i] + 1]++;
+        }
+        for (int c = 0; c < G * G; c++) {
+            grid_start[c + 1] += grid_start[c];
+        }
+        int[] next = Arrays.copyOf(grid_start, G * G);
+        for (int i = 0; i < N; i++) {
+            grid_sites[next[cell[i]]++] = i;
+        }
+    }
+
+    // the column of the grid of the x-coordinate x
+    private int grid_column(double x) {
+        int c = (int) ((x - gx) / gw);
+        return Math.max(0, Math.min(G - 1, c));
+    }
+
+    // the row of the grid of the y-coordinate y
+    private int grid_row(double y) {
+        int r = (int) ((y - gy) / gh);
+        return Math.max(0, Math.min(G - 1, r));
+    }
+
+    // is no site other than g, j and l closer to the vertex (x, y) of their
+    // cells than the site g
+    private boolean empty_circle(double x, double y, int g, int j, int l) {
+        double r2 = Geometry.squared_distance(x, y, xc[g], yc[g]);
+        double r = Math.sqrt(r2);
+        double limit = r2 * (1 - EPS);
+        int c0;
+        int c1;
+        int r0 = grid_row(y - r);
+        int r1 = grid_row(y + r);
+        for (int row = r0; row <= r1; row++) {
+
+            // only the columns of the row that the circle reaches
+            double low = gy + row * gh;
+            double dy = Math.max(0, Math.max(low - y, y - (low + gh)));
+            if (dy > r) continue;
+            double w = Math.sqrt(r2 - dy * dy);
+            c0 = grid_column(x - w);
+            c1 = grid_column(x + w);
+            for (int c = row * G + c0; c <= row * G + c1; c++) {
+                for (int k = grid_start[c]; k < grid_start[c + 1]; k++) {
+                    int i = grid_sites[k];
+                    if (i == j || i == l) continue;
+                    if (Geometry.squared_distance(x, y, xc[i], yc[i]) < limit) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // sweep the strip with its halo until all its cells are certified
+    private void sweep(Strip strip) {
+        while (!failed) {
+            int[] sites = local_sites(strip);
+            int n = sites.length;
+            double[] lx = new double[n];
+            double[] ly = new double[n];
+            for (int k = 0; k < n; k++) {
+                lx[k] = xc[sites[k]];
+                ly[k] = yc[sites[k]];
+            }
+            strip.swept += n;
+            Voronoi_diagram local = new Voronoi_diagram(n, lx, ly, false, false);
+            local.generateVoronoi();
+
+            if (cells(strip, local.dcel, first_cell(strip)) && certify(strip, sites)) return;
+            grow_halo(strip);
+        }
+    }
+
+    // the sites swept for the strip: the sites of the strip and the halo, and
+    // the sites on the hull so that only the cells of the sites on the hull
+    // are infinite. The cells of the strip start at first_cell(strip)
+    int[] local_sites(Strip strip) {
+        int a = Math.max(0, strip.lo - strip.halo);
+        int b = Math.min(N, strip.hi + strip.halo);
+        int[] sites = Arrays.copyOfRange(by_x, a, b + hull_sites.length);
+        int n = b - a;
+        for (int p : hull_sites) {
+            if (rank[p] < a || rank[p] >= b) sites[n++] = p;
+        }
+        return Arrays.copyOf(sites, n);
+    }
+
+    // the position of the first site of the strip in local_sites(strip)
+    static int first_cell(Strip strip) {
+        return strip.lo - Math.max(0, strip.lo - strip.halo);
+    }
+
+    // double the halo of a strip whose cells were not certified. If the
+    // halo already covered all the sites, the input is degenerate and the
+    // build fails
+    void grow_halo(Strip strip) {
+        if (strip.lo - strip.halo <= 0 && strip.hi + strip.halo >= N) failed = true;
+        strip.halo *= 2;
+    }
+
+    // copy the cells of the strip out of the DCEL of a sweep in which the
+    // cells of the strip start at first_cell, the sites across the
+    // half-edges are the faces of the sweep. Returns false if a cell is not
+    // a chain or a cycle of half-edges
+    static boolean cells(Strip strip, Compact_dcel d, int first_cell) {
+        int cells = strip.hi - strip.lo;
+        strip.deg = new int[cells];
+        strip.open = new boolean[cells];
+        strip.entries = 0;
+        strip.across = new int[7 * cells];
+        strip.ox = new double[7 * cells];
+        strip.oy = new double[7 * cells];
+
+        for (int c = 0; c < cells; c++) {
+            int li = first_cell + c; // the site in the sweep of the strip
+            int start = d.face_edge[li];
+            if (start == -1) return false;
+
+            // find the first half-edge of the cell, the cell is finite if the
+            // half-edges make a cycle
+            int first = start;
+            boolean open = true;
+            while (d.prev[first] != -1) {
+                first = d.prev[first];
+                if (first == start) {
+                    open = false;
+                    break;
+                }
+            }
+
+            // copy the half-edges of the cell
+            int base = strip.entries;
+            int h = first;
+            int last = first;
+            do {
+                if (strip.entries == strip.across.length) grow(strip);
+                int k = strip.entries++;
+                strip.across[k] = d.face[d.twin[h]];
+                int o = d.origin[h];
+                if (o == -1) {
+                    if (!open || k != base) return false;
+                    strip.ox[k] = Double.NaN;
+                    strip.oy[k] = Double.NaN;
+                }
+                else {
+                    strip.ox[k] = d.vx[o];
+                    strip.oy[k] = d.vy[o];
+                }
+                last = h;
+                h = d.next[h];
+                if (strip.entries - base > d.half_edge_count) return false;
+            } while (h != -1 && h != first);
+            int deg = strip.entries - base;
+            strip.deg[c] = deg;
+            strip.open[c] = open;
+
+            // an infinite cell starts and ends at infinity
+            if (open && (deg < 2 || d.origin[d.twin[last]] != -1)) return false;
+        }
+        return true;
+    }
+
+    // certify the cells of the strip, copied by cells() out of the sweep of
+    // the given sites, and count the vertices and edges they create. Returns
+    // false if a cell is not certified
+    boolean certify(Strip strip, int[] sites) {
+        int cells = strip.hi - strip.lo;
+        strip.vertices = 0;
+        strip.edges = 0;
+        for (int k = 0; k < strip.entries; k++) {
+            strip.across[k] = sites[strip.across[k]];
+        }
+
+        int base = 0;
+        for (int c = 0; c < cells; base += strip.deg[c], c++) {
+            int g = by_x[strip.lo + c]; // the site
+            int deg = strip.deg[c];
+            boolean open = strip.open[c];
+
+            // an infinite cell belongs to a site on the hull, with the
+            // neighbours on the hull across its infinite edges
+            if (open) {
+                if (hull_next[g] == -1) return false;
+                int p = strip.across[base];
+                int q = strip.across[base + deg - 1];
+                boolean same = (p == hull_prev[g] && q == hull_next[g])
+                        || (p == hull_next[g] && q == hull_prev[g]);
+                if (!same) return false;
+            }
+
+            // check the vertices of the cell, a vertex is checked by the
+            // smallest site of the strip around it
+            for (int k = base; k < base + deg; k++) {
+                if (Double.isNaN(strip.ox[k])) continue;
+                int j = strip.across[k];
+                int l = strip.across[previous(k, base, deg, open)];
+                if (owner(g, j, l, strip) && !empty_circle(strip.ox[k], strip.oy[k], g, j, l))
+                    return false;
+
+                // the vertices and edges created by the cell
+                if (g < j && g < l) strip.vertices++;
+            }
+            for (int k = base; k < base + deg; k++) {
+                if (g < strip.across[k]) strip.edges++;
+            }
+        }
+        return true;
+    }
+
+    // the half-edge before the k-th half-edge of the cell that starts at
+    // base, the first half-edge of an infinite cell has none and is its own
+    static int previous(int k, int base, int deg, boolean open) {
+        if (k > base) return k - 1;
+        if (open) return k;
+        return base + deg - 1;
+    }
+
+    // is g the smallest of the sites g, j, l that are in the strip
+    private boolean owner(int g, int j, int l, Strip strip) {
+        if (g > j && rank[j] >= strip.lo && rank[j] < strip.hi) return false;
+        if (g > l && rank[l] >= strip.lo && rank[l] < strip.hi) return false;
+        return true;
+    }
+
+    // double the half-edge buffers of the strip
+    private static void grow(Strip strip) {
+        int capacity = 2 * strip.across.length;
+        strip.across = Arrays.copyOf(strip.across, capacity);
+        strip.ox = Arrays.copyOf(strip.ox, capacity);
+        strip.oy = Arrays.copyOf(strip.oy, capacity);
+    }
+
+    // stitch the cells of the strips into one DCEL
+    private void stitch() {
+        int half_edges = 0;
+        int vertices = 0;
+        int edges = 0;
+        for (Strip strip : strips) {
+            strip.half_edge_base = half_edges;
+            strip.vertex_base = vertices;
+            strip.edge_base = edges;
+            half_edges += strip.entries;
+            vertices += strip.vertices;
+            edges += strip.edges;
+        }
+
+        // leave space for the vertices and half-edges on the bounding box
+        int box = 4 * (int) Math.sqrt(N) + 16;
+        Compact_dcel dcel = new Compact_dcel(N, vertices + box, half_edges + 2 * box, edges);
+        dcel.vertex_count = vertices;
+        dcel.half_edge_count = half_edges;
+        dcel.edge_count = edges;
+        diagram = new Voronoi_diagram(N, xc, yc, dcel);
+
+        cell_he = new int[N];
+        cell_deg = new int[N];
+        cell_open = new boolean[N];
+        across = new int[half_edges];
+
+        // create the vertices and edges owned by the cells, then link
+        run(strips.length, s -> create(strips[s], dcel));
+        run(strips.length, s -> link(strips[s], dcel));
+    }
+
+    // create the vertices and voronoi edges of the cells of the strip that
+    // belong to them
+    private void create(Strip strip, Compact_dcel dcel) {
+        int vertex = strip.vertex_base;
+        int edge = strip.edge_base;
+        int k = 0;
+        for (int c = 0; c < strip.deg.length; c++) {
+            int g = by_x[strip.lo + c];
+            int deg = strip.deg[c];
+            boolean open = strip.open[c];
+            int base = k;
+            cell_he[g] = strip.half_edge_base + base;
+            cell_deg[g] = deg;
+            cell_open[g] = open;
+            dcel.face_edge[g] = strip.half_edge_base + base;
+
+            // the extent of the sites
+            strip.x_min = Math.min(strip.x_min, xc[g]);
+            strip.x_max = Math.max(strip.x_max, xc[g]);
+            strip.y_min = Math.min(strip.y_min, yc[g]);
+            strip.y_max = Math.max(strip.y_max, yc[g]);
+
+            for (; k < base + deg; k++) {
+                int h = strip.half_edge_base + k;
+                int j = strip.across[k];
+                across[h] = j;
+                dcel.origin[h] = -1;
+                dcel.edge[h] = -1;
+
+                // the vertex at the origin
+                int l = strip.across[previous(k, base, deg, open)];
+                if (!Double.isNaN(strip.ox[k]) && g < j && g < l) {
+                    double x = strip.ox[k];
+                    double y = strip.oy[k];
+                    dcel.vx[vertex] = x;
+                    dcel.vy[vertex] = y;
+                    dcel.origin[h] = vertex++;
+                    strip.x_min = Math.min(strip.x_min, x);
+                    strip.x_max = Math.max(strip.x_max, x);
+                    strip.y_min = Math.min(strip.y_min, y);
+                    strip.y_max = Math.max(strip.y_max, y);
+                }
+
+                // the voronoi edge
+                if (g < j) {
+                    int e = edge++;
+                    strip.geo.bisector(xc[g], yc[g], xc[j], yc[j]);
+                    dcel.m[e] = strip.geo.m;
+                    dcel.b[e] = strip.geo.b;
+                    dcel.vertical[e] = strip.geo.vertical;
+                    dcel.edge_half_edge[e] = h;
+                    dcel.edge[h] = e;
+                }
+            }
+        }
+    }
+
+    // set the twins, the vertices and edges that belong to other cells and
+    // the links of the half-edges of the cells of the strip
+    private void link(Strip strip, Compact_dcel dcel) {
+        int k = 0;
+        for (int c = 0; c < strip.deg.length; c++) {
+            int g = by_x[strip.lo + c];
+            int deg = strip.deg[c];
+            boolean open = strip.open[c];
+            int base = k;
+            for (; k < base + deg; k++) {
+                int h = strip.half_edge_base + k;
+                int j = strip.across[k];
+                dcel.face[h] = g;
+
+                // the links on the face
+                if (k > base) dcel.prev[h] = h - 1;
+                else if (open) dcel.prev[h] = -1;
+                else dcel.prev[h] = h + deg - 1;
+                if (k < base + deg - 1) dcel.next[h] = h + 1;
+                else if (open) dcel.next[h] = -1;
+                else dcel.next[h] = h - deg + 1;
+
+                // the twin is the half-edge of the cell across
+                int twin = find(j, g, -1);
+                if (twin == -1) {
+                    failed = true;
+                    return;
+                }
+                dcel.twin[h] = twin;
+                if (dcel.edge[h] == -1) dcel.edge[h] = dcel.edge[twin];
+
+                // the vertex belongs to the smallest of the 3 sites around
+                // it. In the cell of j it is the origin of the half-edge
+                // across l after the one across g, in the cell of l it is
+                // the origin of the half-edge across g after the one across j
+                int l = strip.across[previous(k, base, deg, open)];
+                if (!Double.isNaN(strip.ox[k]) && dcel.origin[h] == -1) {
+                    int v;
+                    if (j < l) v = find(j, l, g);
+                    else v = find(l, g, j);
+                    if (v == -1 || dcel.origin[v] == -1) {
+                        failed = true;
+                        return;
+                    }
+                    dcel.origin[h] = dcel.origin[v];
+                }
+            }
+        }
+    }
+
+    // the half-edge of the cell of site o across which is site p and, if q is
+    // not -1, whose previous half-edge is across site q. Returns -1 if there
+    // is none
+    private int find(int o, int p, int q) {
+        int base = cell_he[o];
+        int deg = cell_deg[o];
+        for (int h = base; h < base + deg; h++) {
+            if (across[h] != p) continue;
+            if (q == -1) return h;
+            if (h == base && cell_open[o]) continue;
+            int before = h > base ? h - 1 : base + deg - 1;
+            if (across[before] == q) return h;
+        }
+        return -1;
+    }
+
+    // cut the infinite edges with the bounding box and close the infinite faces
+    private void close() {
+        Compact_dcel dcel = diagram.dcel;
+
+        // the bounding box of the sites and the vertices
+        double x_min = Double.POSITIVE_INFINITY;
+        double x_max = Double.NEGATIVE_INFINITY;
+        double y_min = Double.POSITIVE_INFINITY;
+        double y_max = Double.NEGATIVE_INFINITY;
+        for (Strip strip : strips) {
+            x_min = Math.min(x_min, strip.x_min);
+            x_max = Math.max(x_max, strip.x_max);
+            y_min = Math.min(y_min, strip.y_min);
+            y_max = Math.max(y_max, strip.y_max);
+        }
+        diagram.x0 = x_min - 0.1;
+        diagram.x1 = x_max + 0.1;
+        diagram.y0 = y_min - 0.1;
+        diagram.y1 = y_max + 0.1;
+
+        // the infinite cells, in the order of the strips
+        int[] open = new int[N];
+        int count = 0;
+        for (Strip strip : strips) {
+            for (int c = 0; c < strip.deg.length; c++) {
+                if (strip.open[c]) open[count++] = by_x[strip.lo + c];
+            }
+        }
+
+        // the first half-edge of an infinite cell comes from infinity, it
+        // starts where its edge leaves the box
+        Geometry geo = diagram.geo;
+        for (int t = 0; t < count; t++) {
+            int g = open[t];
+            int h = cell_he[g];
+            int j = across[h];
+            int l = across[h + 1];
+            int v = dcel.origin[dcel.twin[h]];
+
+            // the edge goes away from the third site l at its vertex
+            double ux = -(yc[j] - yc[g]);
+            double uy = xc[j] - xc[g];
+            if (ux * (xc[g] - xc[l]) + uy * (yc[g] - yc[l]) < 0) {
+                ux = -ux;
+                uy = -uy;
+            }
+            diagram.intersection_box(dcel.edge[h]);
+            double da = (geo.ax - dcel.vx[v]) * ux + (geo.ay - dcel.vy[v]) * uy;
+            double db = (geo.bx - dcel.vx[v]) * ux + (geo.by - dcel.vy[v]) * uy;
+            if (da > db) dcel.origin[h] = dcel.add_vertex(geo.ax, geo.ay);
+            else dcel.origin[h] = dcel.add_vertex(geo.bx, geo.by);
+        }
+
+        // close the infinite faces
+        int lb = dcel.add_vertex(diagram.x0, diagram.y0);
+        int rb = dcel.add_vertex(diagram.x1, diagram.y0);
+        int lu = dcel.add_vertex(diagram.x0, diagram.y1);
+        int ru = dcel.add_vertex(diagram.x1, diagram.y1);
+        for (int t = 0; t < count; t++) {
+            diagram.close_infinite_face(open[t], lb, rb, lu, ru);
+        }
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+        int N = 50000;
+        if (args.length > 0) N = Integer.parseInt(args[0]);
+        double[] xc = new double[N];
+        double[] yc = new double[N];
+        java.util.Random random = new java.util.Random(451);
+        for (int i = 0; i < N; i++) {
+            xc[i] = random.nextDouble();
+            yc[i] = random.nextDouble();
+        }
+
+        Voronoi_diagram sequential = new Voronoi_diagram(N, xc, yc, true, false);
+        Voronoi_diagram parallel = new Parallel_voronoi(N, xc, yc, new ForkJoinPool(4)).build(false);
+        System.out.println("vertices: " + sequential.dcel.vertex_count + " " + parallel.dcel.vertex_count);
+        System.out.println("half-edges: " + sequential.dcel.half_edge_count + " " + parallel.dcel.half_edge_count);
+        System.out.println("same diagram: " + Arrays.equals(faces(sequential), faces(parallel)));
+    }
+
+    // the vertices around every face as a list of coordinates, each face starts
+    // at its smallest vertex, to compare two diagrams up to the numbering
+    static double[] faces(Voronoi_diagram diagram) {
+        Compact_dcel d = diagram.dcel;
+        double[] out = new double[2 * d.half_edge_count + diagram.N];
+        int k = 0;
+        for (int i = 0; i < diagram.N; i++) {
+            int start = d.face_edge[i];
+            int min = start;
+            int h = start;
+            do {
+                int v = d.origin[h];
+                int m = d.origin[min];
+                if (d.vx[v] < d.vx[m] || (d.vx[v] == d.vx[m] && d.vy[v] < d.vy[m])) min = h;
+                h = d.next[h];
+            } while (h != start);
+            out[k++] = i;
+            h = min;
+            do {
+                out[k++] = d.vx[d.origin[h]];
+                out[k++] = d.vy[d.origin[h]];
+                h = d.next[h];
+            } while (h != min);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,301 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Point location in the Voronoi diagram: locate(x, y) is the
+ *  index of the site whose cell contains (x, y), that is the nearest site.
+ *  A uniform grid of about one cell per site covers the sites and every
+ *  grid cell stores the nearest site to its center. A query starts at the
+ *  site of its grid cell and walks to the neighbor (the site across a
+ *  voronoi edge of the face) that is closest to the query until no
+ *  neighbor is closer. On the Delaunay graph this greedy walk always ends
+ *  at the nearest site, so the answer is exact, and it takes a few steps
+ *  since the start is already close. The neighbors are read from the
+ *  arrays of a Site_graph. Nothing is written after the constructor, so
+ *  any number of threads can query at the same time.
+ *
+ *  locateAll() answers a batch of queries. The grid cells are numbered
+ *  along a Hilbert curve and the queries are sorted by the number of their
+ *  cell with a counting sort, so that consecutive queries are close. The
+ *  sorted order is cut into chunks that run in parallel on a ForkJoinPool.
+ *  Every query of a chunk walks from the answer of the query before it,
+ *  which is a few faces away, and the faces it touches are mostly in the
+ *  cache already.
+ *
+ **************************************************************************** */
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+public class Point_locator {
+
+    static final int CHUNK = 1 << 14; // the queries of a task of locateAll()
+
+    int N; // number of sites
+    double[] xc; // the x-coordinates of the sites
+    double[] yc; // the y-coordinates of the sites
+
+    // the neighbors of the sites, the neighbors of site i are
+    // neighbor[first[i]] .. neighbor[first[i + 1] - 1]
+    Site_graph graph;
+    int[] first;
+    int[] neighbor;
+
+    // the grid of start sites over x0..x1, y0..y1
+    double x0;
+    double y0;
+    double cell_x; // the size of a grid cell
+    double cell_y;
+    int columns;
+    int rows;
+    int[] start; // the nearest site to the center of every grid cell, row by row
+    volatile int[] curve; // the place of every grid cell on the Hilbert curve
+
+
+    // build the locator of the faces of a finished DCEL of N sites
+    public Point_locator(int N, double[] xc, double[] yc, Dcel_view dcel) {
+        if (N < 1) throw new IllegalArgumentException("Need at least one site");
+        this.N = N;
+        this.xc = xc;
+        this.yc = yc;
+        graph = new Site_graph(dcel);
+        first = graph.offsets;
+        neighbor = graph.neighbors;
+        grid();
+    }
+
+    // size the grid over the sites and find the start site of every cell,
+    // the cells are visited in a snake order so that every walk starts at
+    // the answer of the cell next to it
+    private void grid() {
+        double x1 = xc[0];
+        double y1 = yc[0];
+        x0 = x1;
+        y0 = y1;
+        for (int i = 1; i < N; i++) {
+            x0 = Math.min(x0, xc[i]);
+            x1 = Math.max(x1, xc[i]);
+            y0 = Math.min(y0, yc[i]);
+            y1 = Math.max(y1, yc[i]);
+        }
+
+        // square cells, about one per site
+        double w = Math.max(x1 - x0, Double.MIN_NORMAL);
+        double h = Math.max(y1 - y0, Double.MIN_NORMAL);
+        double side = Math.sqrt(w * h / N);
+        columns = (int) Math.max(1, Math.min(Math.ceil(w / side), N));
+        rows = (int) Math.max(1, Math.min(Math.ceil(h / side), N));
+        while ((long) columns * rows > 4L * N + 4) {
+            if (columns > rows) columns = (columns + 1) / 2;
+            else rows = (rows + 1) / 2;
+        }
+        cell_x = w / columns;
+        cell_y = h / rows;
+
+        start = new int[columns * rows];
+        int site = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int k = 0; k < columns; k++) {
+                int c = r % 2 == 0 ? k : columns - 1 - k;
+                site = walk(site, x0 + (c + 0.5) * cell_x, y0 + (r + 0.5) * cell_y);
+                start[r * columns + c] = site;
+            }
+        }
+    }
+
+    // the index of the site nearest to (x, y)
+    public int locate(double x, double y) {
+        return walk(start[cell(x, y)], x, y);
+    }
+
+    // find the site nearest to every query (qx[q], qy[q]) and store it in
+    // out[q], on the common ForkJoinPool
+    public void locateAll(double[] qx, double[] qy, int[] out) {
+        locateAll(qx, qy, out, ForkJoinPool.commonPool());
+    }
+
+    // find the site nearest to every query and store it in out, on the pool
+    public void locateAll(double[] qx, double[] qy, int[] out, ForkJoinPool pool) {
+        int Q = qx.length;
+        if (qy.length != Q || out.length < Q) throw new IllegalArgumentException("Arrays differ in length");
+        if (Q <= CHUNK) {
+            for (int q = 0; q < Q; q++) out[q] = locate(qx[q], qy[q]);
+            return;
+        }
+
+        // the place on the curve of the grid cell of every query
+        int[] rank = curve();
+        int[] key = new int[Q];
+        pool.submit(() -> IntStream.range(0, Q).parallel().forEach(q -> {
+            key[q] = rank[cell(qx[q], qy[q])];
+        })).join();
+
+        // sort the queries by their key with a counting sort
+        int[] position = new int[rank.length + 1];
+        for (int q = 0; q < Q; q++) position[key[q] + 1]++;
+        for (int k = 0; k < rank.length; k++) position[k + 1] += position[k];
+        int[] sorted = new int[Q];
+        for (int q = 0; q < Q; q++) sorted[position[key[q]]++] = q;
+
+        int chunks = (Q + CHUNK - 1) / CHUNK;
+        pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(c -> {
+            int lo = c * CHUNK;
+            int hi = Math.min(lo + CHUNK, Q);
+            int q = sorted[lo];
+            int p = locate(qx[q], qy[q]);
+            out[q] = p;
+            for (int k = lo + 1; k < hi; k++) {
+                q = sorted[k];
+                p = walk(p, qx[q], qy[q]);
+                out[q] = p;
+            }
+        })).join();
+    }
+
+    // the grid cell of (x, y), the points outside of the grid are in the
+    // closest cell on its border
+    private int cell(double x, double y) {
+        int c = (int) ((x - x0) / cell_x);
+        int r = (int) ((y - y0) / cell_y);
+        c = Math.max(0, Math.min(c, columns - 1));
+        r = Math.max(0, Math.min(r, rows - 1));
+        return r * columns + c;
+    }
+
+    // the place of every grid cell along a Hilbert curve, computed by the
+    // first batch. The curve fills the smallest square of side 2^bits that
+    // covers the grid and skips the points outside of the grid. A grid much
+    // longer than wide is numbered row by row in a snake order instead
+    private int[] curve() {
+        int[] rank = curve;
+        if (rank != null) return rank;
+        int bits = 0;
+        while ((1 << bits) < Math.max(columns, rows)) bits++;
+        rank = new int[columns * rows];
+        long points = 1L << (2 * bits);
+        if (points > 16L * rank.length) {
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < columns; c++) {
+                    rank[r * columns + c] = r * columns + (r % 2 == 0 ? c : columns - 1 - c);
+                }
+            }
+        }
+        else {
+            int k = 0;
+            for (long d = 0; d < points; d++) {
+                long p = hilbert(d, bits);
+                int x = (int) (p >>> 32);
+                int y = (int) p;
+                if (x < columns && y < rows) rank[y * columns + x] = k++;
+            }
+        }
+        curve = rank;
+        return rank;
+    }
+
+    // the point at distance d along the Hilbert curve that fills the square
+    // of side 2^bits, returns x << 32 | y
+    static long hilbert(long d, int bits) {
+        int x = 0;
+        int y = 0;
+        for (int s = 1; s < 1 << bits; s <<= 1) {
+            int rx = (int) (1 & (d >>> 1));
+            int ry = (int) (1 & (d ^ rx));
+
+            // rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+            x += s * rx;
+            y += s * ry;
+            d >>>= 2;
+        }
+        return (long) x << 32 | y;
+    }
+
+    // walk from site p to the neighbor closest to (x, y) until there is
+    // none closer than the current site
+    int walk(int p, double x, double y) {
+        double best = Geometry.squared_distance(x, y, xc[p], yc[p]);
+        while (true) {
+            int next = p;
+            for (int k = first[p]; k < first[p + 1]; k++) {
+                int q = neighbor[k];
+                double d = Geometry.squared_distance(x, y, xc[q], yc[q]);
+                if (d < best) {
+                    best = d;
+                    next = q;
+                }
+            }
+            if (next == p) return p;
+            p = next;
+        }
+    }
+
+    // the index of the site nearest to (x, y) by scanning all the sites
+    public static int brute_force(int N, double[] xc, double[] yc, double x, double y) {
+        int nearest = 0;
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < N; i++) {
+            double d = Geometry.squared_distance(x, y, xc[i], yc[i]);
+            if (d < best) {
+                best = d;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+        int N = 100000;
+        if (args.length > 0) N = Integer.parseInt(args[0]);
+        double[] xc = new double[N];
+        double[] yc = new double[N];
+        java.util.Random random = new java.util.Random(451);
+        for (int i = 0; i < N; i++) {
+            xc[i] = random.nextDouble();
+            yc[i] = random.nextDouble();
+        }
+        Voronoi_diagram diagram = Voronoi_diagram.compact(N, xc, yc);
+        Point_locator locator = new Point_locator(N, xc, yc, diagram.dcel());
+
+        // compare with the brute force, also outside of the sites
+        int wrong = 0;
+        for (int k = 0; k < 2000; k++) {
+            double x = 1.4 * random.nextDouble() - 0.2;
+            double y = 1.4 * random.nextDouble() - 0.2;
+            int a = locator.locate(x, y);
+            int b = brute_force(N, xc, yc, x, y);
+            if (Geometry.squared_distance(x, y, xc[a], yc[a])
+                    != Geometry.squared_distance(x, y, xc[b], yc[b])) wrong++;
+        }
+        System.out.println("grid " + locator.columns + " x " + locator.rows + ", wrong: " + wrong);
+
+        // the batch gives the same sites as the single queries
+        int Q = 1000000;
+        double[] qx = new double[Q];
+        double[] qy = new double[Q];
+        for (int q = 0; q < Q; q++) {
+            qx[q] = random.nextDouble();
+            qy[q] = random.nextDouble();
+        }
+        int[] out = new int[Q];
+        locator.locateAll(qx, qy, out);
+        int differ = 0;
+        for (int q = 0; q < Q; q++) {
+            int p = locator.locate(qx[q], qy[q]);
+            if (Geometry.squared_distance(qx[q], qy[q], xc[p], yc[p])
+                    != Geometry.squared_distance(qx[q], qy[q], xc[out[q]], yc[out[q]])) differ++;
+        }
+        System.out.println("locateAll differs from locate: " + differ);
+    }
+}
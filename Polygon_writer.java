@@ -0,0 +1,344 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Writes the faces of a finished diagram (after update_dcel)
+ *  as polygons, either as a GeoJSON FeatureCollection with one Feature per
+ *  site or as WKT with one POLYGON per line, line i is the cell of site i.
+ *  The face cycles are walked through the integer indices of a Dcel_view
+ *  and the coordinates are formatted straight into the bytes of a
+ *  ByteBuffer with a fixed number of decimals, no String is made for a
+ *  face or a number (except a number too large for a long after scaling,
+ *  which is written with Double.toString()). The buffer is reused and is
+ *  written to the channel when it is full. The cycles are counterclockwise,
+ *  as GeoJSON wants the outer rings, and the first vertex is repeated at
+ *  the end. A face that is not a closed cycle has a null geometry (GeoJSON)
+ *  or is POLYGON EMPTY (WKT).
+ *
+ *  The parallel write formats ranges of faces into buffers of their own on
+ *  a ForkJoinPool and writes the buffers in the order of the faces, so the
+ *  output is the same as the one of the sequential write. Only a batch of
+ *  ranges is formatted at a time and the buffers are reused by the next
+ *  batch, so the memory does not grow with the number of faces.
+ *
+ *  Usage: java Polygon_writer [N] [geojson | wkt] [file]
+ *
+ **************************************************************************** */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+public class Polygon_writer {
+
+    static final int BUFFER = 1 << 20; // the size of the output buffer
+    static final int RANGE = 1 << 12; // the number of faces formatted by a task
+    static final int NUMBER = 48; // the most bytes of a formatted number
+
+    static final byte[] GEOJSON_HEAD = ascii("{\"type\":\"FeatureCollection\",\"features\":[\n");
+    static final byte[] GEOJSON_TAIL = ascii("\n]}\n");
+    static final byte[] FEATURE = ascii("{\"type\":\"Feature\",\"properties\":{\"site\":");
+    static final byte[] POLYGON = ascii("},\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[");
+    static final byte[] NULL_GEOMETRY = ascii("},\"geometry\":null}");
+    static final byte[] WKT_POLYGON = ascii("POLYGON ((");
+    static final byte[] WKT_EMPTY = ascii("POLYGON EMPTY\n");
+
+    Dcel_view dcel; // the faces to write
+    boolean geojson; // GeoJSON or WKT
+    int decimals; // the decimals of the coordinates
+    long scale; // 10^decimals
+    Buffer out; // the reused buffer of the sequential write
+    Buffer[] batch; // the reused buffers of the parallel write
+
+
+    // a writer of the faces of the DCEL with the given number of decimals,
+    // between 0 and 15
+    public Polygon_writer(Dcel_view dcel, boolean geojson, int decimals) {
+        if (decimals < 0 || decimals > 15) throw new IllegalArgumentException("Decimals must be in 0..15");
+        this.dcel = dcel;
+        this.geojson = geojson;
+        this.decimals = decimals;
+        this.scale = 1;
+        for (int k = 0; k < decimals; k++) scale *= 10;
+    }
+
+    // write the polygons to a file
+    public void write(String file) throws IOException {
+        try (FileChannel channel = create(file)) {
+            write(channel);
+        }
+    }
+
+    // write the polygons to a file in parallel on the pool
+    public void write(String file, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = create(file)) {
+            write(channel, pool);
+        }
+    }
+
+    // write the polygons to the channel
+    public void write(WritableByteChannel channel) throws IOException {
+        if (out == null) out = new Buffer(ByteBuffer.allocateDirect(BUFFER));
+        out.channel = channel;
+        try {
+            head();
+            for (int f = 0; f < dcel.face_count(); f++) {
+                face(out, f);
+            }
+            tail();
+            out.flush();
+        }
+        catch (java.io.UncheckedIOException e) {
+            throw e.getCause();
+        }
+        finally {
+            out.bytes.clear();
+            out.channel = null;
+        }
+    }
+
+    // write the polygons to the channel, ranges of faces are formatted in
+    // parallel on the pool and written in order
+    public void write(WritableByteChannel channel, ForkJoinPool pool) throws IOException {
+        if (out == null) out = new Buffer(ByteBuffer.allocateDirect(BUFFER));
+        if (batch == null || batch.length != 2 * pool.getParallelism()) {
+            batch = new Buffer[2 * pool.getParallelism()];
+            for (int k = 0; k < batch.length; k++) {
+                batch[k] = new Buffer(ByteBuffer.allocate(BUFFER / 4));
+            }
+        }
+        int F = dcel.face_count();
+        int ranges = (F + RANGE - 1) / RANGE;
+        out.channel = channel;
+        try {
+            head();
+            out.flush();
+            for (int first = 0; first < ranges; first += batch.length) {
+                int start = first;
+                int count = Math.min(batch.length, ranges - first);
+                pool.submit(() -> IntStream.range(0, count).parallel().forEach(k -> {
+                    int lo = (start + k) * RANGE;
+                    int hi = Math.min(lo + RANGE, F);
+                    for (int f = lo; f < hi; f++) {
+                        face(batch[k], f);
+                    }
+                })).join();
+                for (int k = 0; k < count; k++) {
+                    batch[k].channel = channel;
+                    batch[k].flush();
+                    batch[k].channel = null;
+                }
+            }
+            tail();
+            out.flush();
+        }
+        finally {
+            out.bytes.clear();
+            out.channel = null;
+            for (Buffer b : batch) b.bytes.clear();
+        }
+    }
+
+    // the start of the output
+    private void head() throws IOException {
+        if (!geojson) return;
+        out.ensure(GEOJSON_HEAD.length);
+        out.bytes.put(GEOJSON_HEAD);
+    }
+
+    // the end of the output
+    private void tail() throws IOException {
+        if (!geojson) return;
+        out.ensure(GEOJSON_TAIL.length);
+        out.bytes.put(GEOJSON_TAIL);
+    }
+
+    // format face f into the buffer
+    private void face(Buffer b, int f) {
+
+        // the length of the cycle and whether it is closed
+        int first = dcel.face_half_edge(f);
+        int length = 0;
+        boolean closed = false;
+        for (int h = first; h != -1 && !closed; ) {
+            if (dcel.origin(h) == -1) break;
+            length++;
+            h = dcel.next(h);
+            closed = h == first;
+        }
+        b.ensure(FEATURE.length + POLYGON.length + NUMBER + (length + 1) * (2 * NUMBER + 4));
+        ByteBuffer bytes = b.bytes;
+
+        if (geojson) {
+            if (f > 0) bytes.put((byte) ',').put((byte) '\n');
+            bytes.put(FEATURE);
+            b.integer(f);
+            if (!closed) {
+                bytes.put(NULL_GEOMETRY);
+                return;
+            }
+            bytes.put(POLYGON);
+        }
+        else {
+            if (!closed) {
+                bytes.put(WKT_EMPTY);
+                return;
+            }
+            bytes.put(WKT_POLYGON);
+        }
+
+        // the vertices of the cycle and the first one again
+        int h = first;
+        for (int k = 0; k <= length; k++) {
+            int v = dcel.origin(h);
+            if (geojson) {
+                if (k > 0) bytes.put((byte) ',');
+                bytes.put((byte) '[');
+                b.number(dcel.vertex_x(v));
+                bytes.put((byte) ',');
+                b.number(dcel.vertex_y(v));
+                bytes.put((byte) ']');
+            }
+            else {
+                if (k > 0) bytes.put((byte) ',').put((byte) ' ');
+                b.number(dcel.vertex_x(v));
+                bytes.put((byte) ' ');
+                b.number(dcel.vertex_y(v));
+            }
+            h = dcel.next(h);
+        }
+        if (geojson) bytes.put((byte) ']').put((byte) ']').put((byte) '}').put((byte) '}');
+        else bytes.put((byte) ')').put((byte) ')').put((byte) '\n');
+    }
+
+    // a buffer of formatted bytes, when it is full it is written to its
+    // channel, or grows if it has none
+    private class Buffer {
+        ByteBuffer bytes;
+        WritableByteChannel channel;
+        byte[] digits = new byte[20]; // the digits of a number, last first
+
+        Buffer(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        // make room for n more bytes
+        void ensure(int n) {
+            if (bytes.remaining() >= n) return;
+            if (channel != null) {
+                try {
+                    flush();
+                }
+                catch (IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            }
+            if (bytes.remaining() >= n) return;
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * bytes.capacity(), bytes.position() + n));
+            bytes.flip();
+            larger.put(bytes);
+            bytes = larger;
+        }
+
+        // write the bytes to the channel
+        void flush() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) channel.write(bytes);
+            bytes.clear();
+        }
+
+        // put the decimal digits of a non-negative long
+        void integer(long a) {
+            int n = 0;
+            do {
+                digits[n++] = (byte) ('0' + a % 10);
+                a /= 10;
+            } while (a != 0);
+            while (n > 0) bytes.put(digits[--n]);
+        }
+
+        // put x rounded to the decimals of the writer, without trailing zeros
+        void number(double x) {
+            double scaled = Math.abs(x) * scale;
+            if (!(scaled < 9e18)) {
+                for (char c : Double.toString(x).toCharArray()) bytes.put((byte) c);
+                return;
+            }
+            long a = Math.round(scaled);
+            if (x < 0 && a != 0) bytes.put((byte) '-');
+            integer(a / scale);
+            long fraction = a % scale;
+            if (fraction == 0) return;
+            int n = decimals;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                n--;
+            }
+            bytes.put((byte) '.');
+            for (int k = n - 1; k >= 0; k--) {
+                digits[k] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            bytes.put(digits, 0, n);
+        }
+    }
+
+    // create or truncate a file for writing
+    private static FileChannel create(String file) throws IOException {
+        return FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    // the bytes of an ASCII string
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+
+    // unit testing
+    public static void main(String[] args) throws IOException {
+        int N = 100000;
+        boolean geojson = true;
+        if (args.length > 0) N = Integer.parseInt(args[0]);
+        if (args.length > 1) geojson = args[1].equals("geojson");
+        double[] xc = new double[N];
+        double[] yc = new double[N];
+        java.util.Random random = new java.util.Random(451);
+        for (int i = 0; i < N; i++) {
+            xc[i] = random.nextDouble();
+            yc[i] = random.nextDouble();
+        }
+        Voronoi_diagram diagram = Voronoi_diagram.compact(N, xc, yc);
+        Polygon_writer writer = new Polygon_writer(diagram.dcel(), geojson, 9);
+        if (args.length > 2) {
+            writer.write(args[2], ForkJoinPool.commonPool());
+            return;
+        }
+
+        java.io.File sequential = java.io.File.createTempFile("voronoi", ".txt");
+        java.io.File parallel = java.io.File.createTempFile("voronoi", ".txt");
+        long start = System.nanoTime();
+        writer.write(sequential.getPath());
+        double time = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        writer.write(parallel.getPath(), ForkJoinPool.commonPool());
+        double parallel_time = (System.nanoTime() - start) / 1e6;
+
+        byte[] a = java.nio.file.Files.readAllBytes(sequential.toPath());
+        byte[] b = java.nio.file.Files.readAllBytes(parallel.toPath());
+        System.out.printf("%d bytes, sequential %.1f ms, parallel %.1f ms%n", a.length, time,
+                          parallel_time);
+        System.out.println("same output: " + java.util.Arrays.equals(a, b));
+        String text = new String(a, 0, Math.min(a.length, 300), StandardCharsets.US_ASCII);
+        System.out.println(text.substring(0, text.lastIndexOf('\n') + 1));
+        sequential.delete();
+        parallel.delete();
+    }
+}
@@ -5,29 +5,116 @@
  *
  *  Description:  Implements a self-balancing tree to represent the beachline
  *  and the breakpoints. The balancing operations are the same as in an AVL
- *  tree.
+ *  tree. After reset() the tree hands out the nodes of the last sweep
+ *  again instead of allocating new ones.
  *
  **************************************************************************** */
 
+import java.util.Arrays;
+
 public class SBT {
     Node root; // the root of the tree
     int size; // the size of the tree
 
-    // the most recent node an operation has been done to, added just for
-    // convenience for later
+    // the most recent node an operation has been done to, the finger search
+    // starts from its arc
     Node most_recent;
 
+    Arc last; // the arc of the most recently inserted site
+    boolean finger; // search from last or most_recent instead of the root
+    long evaluations; // number of breakpoints computed by the searches
+
     // the x- and y- coordinates of the sites
     double[] xc;
     double[] yc;
 
+    // the nodes of the last sweeps, handed out again after reset() if
+    // pooled is true
+    boolean pooled;
+    Arc[] arcs = new Arc[0];
+    int arc_count;
+    Breakpoint[] breakpoints = new Breakpoint[0];
+    int breakpoint_count;
+
     // initialize the self-balancing tree
     public SBT(double[] xc, double[] yc) {
         this.xc = xc;
         this.yc = yc;
         root = null;
         size = 0;
+        finger = false;
+
+    }
+
+    // empty the tree for a sweep of the sites (xc, yc), the nodes of the
+    // last sweep are kept and reused
+    void reset(double[] xc, double[] yc) {
+        this.xc = xc;
+        this.yc = yc;
+        root = null;
+        size = 0;
+        most_recent = null;
+        last = null;
+        evaluations = 0;
+        pooled = true;
+        arc_count = 0;
+        breakpoint_count = 0;
+    }
+
+    // a new arc, from the pool if the tree keeps its nodes
+    private Arc new_arc() {
+        if (!pooled) return new Arc();
+        if (arc_count == arcs.length) {
+            arcs = Arrays.copyOf(arcs, Math.max(2 * arc_count, 16));
+        }
+        Arc a = arcs[arc_count];
+        if (a == null) {
+            a = new Arc();
+            arcs[arc_count] = a;
+        }
+        else {
+            clear(a);
+            a.point = 0;
+            a.left_intersection = null;
+            a.right_intersection = null;
+            a.prev = null;
+            a.next = null;
+            a.xc = 0;
+            a.yc = 0;
+            a.event = -1;
+        }
+        arc_count++;
+        return a;
+    }
+
+    // a new breakpoint, from the pool if the tree keeps its nodes
+    private Breakpoint new_breakpoint() {
+        if (!pooled) return new Breakpoint();
+        if (breakpoint_count == breakpoints.length) {
+            breakpoints = Arrays.copyOf(breakpoints, Math.max(2 * breakpoint_count, 16));
+        }
+        Breakpoint b = breakpoints[breakpoint_count];
+        if (b == null) {
+            b = new Breakpoint();
+            breakpoints[breakpoint_count] = b;
+        }
+        else {
+            clear(b);
+            b.left_point = null;
+            b.right_point = null;
+            b.vor_edge = -1;
+        }
+        breakpoint_count++;
+        return b;
+    }
 
+    // reset the links of a reused node
+    private static void clear(Node node) {
+        node.left = null;
+        node.right = null;
+        node.parent = null;
+        node.parent_orientation = false;
+        node.height = 1;
     }
 
     // max function, return the max of a and b
@@ -56,11 +143,6 @@ public class SBT {
 
         // Perform rotation
         // adjust the parent pointers
-        if (T2 == null) {
-            System.out.println(t.right.point);
-            System.out.println(t.left.point);
-        }
-
         T2.parent = t;
         T2.parent_orientation = false;
 
@@ -149,28 +231,78 @@ public class SBT {
 
 
     // get the arc right above the point with index i in the arrays xc, and yc, with a current position of the sweepline y
-    public Node get(Node node, int i, double y) {
-
-        // if node is internal we have found it
-        if (!node.internal) {
-            return node;
-        }
-
-        // else do standard binary search in the tree
-        else {
-
-            double xc_int = node.xc_int(y);
-
-
-            // perform bst search
-            if (xc[i] < xc_int) {
-                return get(node.left, i, y);
+    // the search descends from node
+    public Arc get(Node node, int i, double y) {
+        double x = xc[i];
+
+        // do standard binary search in the tree until we reach a leaf
+        while (node.internal) {
+            if (x < breakpoint(node, y)) {
+                node = node.left;
             }
             else {
-                return get(node.right, i, y);
+                node = node.right;
             }
+        }
+        return (Arc) node;
+    }
 
+    // get the arc right above the point with index i with a finger search from
+    // the arc of the last inserted site, or of the most recent operation if
+    // that arc is gone. The search walks to the next or
+    // previous breakpoint of that arc and then up the tree until a breakpoint
+    // on the other side of the point bounds the subtree, and descends from
+    // there. Close consecutive sites take O(1) breakpoints instead of O(logn)
+    public Arc search(int i, double y) {
+        if (!finger || most_recent == null) return get(root, i, y);
+
+        Arc f = last;
+        if (!on_beachline(f)) {
+            if (most_recent.internal) f = ((Breakpoint) most_recent).left_point;
+            else f = (Arc) most_recent;
         }
+        double x = xc[i];
+
+        // check if the point is below the arc of the finger
+        Breakpoint l = f.left_intersection;
+        Breakpoint r = f.right_intersection;
+        boolean right;
+        if (r != null && x >= breakpoint(r, y)) right = true;
+        else if (l != null && x < breakpoint(l, y)) right = false;
+        else return f;
+
+        // the point is to the right of r (left of l), go up until the
+        // subtree is bounded by a breakpoint to the right (left) of the point
+        Node node;
+        if (right) node = r;
+        else node = l;
+        while (node.parent != null) {
+            Node p = node.parent;
+            if (right && !node.parent_orientation) {
+                if (x < breakpoint(p, y)) break;
+            }
+            if (!right && node.parent_orientation) {
+                if (x >= breakpoint(p, y)) break;
+            }
+            node = p;
+        }
+
+        // the subtree of node has the arc, we know on which side of node it is
+        if (right) return get(node.right, i, y);
+        else return get(node.left, i, y);
+    }
+
+    // is the arc still on the beachline, the neighbours of a deleted or split
+    // arc no longer point to it
+    private boolean on_beachline(Arc f) {
+        if (f == null) return false;
+        return (f.prev == null || f.prev.next == f) && (f.next == null || f.next.prev == f);
+    }
+
+    // the x-coordinate of the breakpoint of the internal node with the sweepline at y
+    private double breakpoint(Node node, double y) {
+        evaluations++;
+        return ((Breakpoint) node).xc_int(y);
     }
 
 
@@ -178,9 +310,10 @@ public class SBT {
     public Node insert(Node node, int i, double y) {
         // check if the tree is empty, if so create a new node
         if (node == null) {
-            Node newnode = new Node();
+            Arc newnode = new_arc();
             newnode.point = i;
-            newnode.internal = false;
+            newnode.xc = xc[i];
+            newnode.yc = yc[i];
             size = size + 1;
             return newnode;
         }
@@ -188,154 +321,14 @@ public class SBT {
         // if we go the leaf we need, then create a new smaller subtree instead of the leaf to represent the newly appeared arc on the beachline
         // reset pointers
         if (!node.internal) {
-            // handle case if the first two points have the same y-coordinate
-            if (yc[node.point] == yc[i]) {
-                Node a = new Node();
-                Node b = new Node();
-                Node c = new Node();
-
-                a.left = b;
-                a.right = c;
-                b.parent = a;
-                c.parent = a;
-                b.parent_orientation = false;
-                c.parent_orientation = true;
-                a.internal = true;
-                b.internal = false;
-                c.internal = false;
-
-                if (xc[node.point] > xc[i]) {
-                    b.point = i;
-                    c.point = node.point;
-                    b.right_intersection = a;
-                    c.left_intersection = a;
-                    a.left_point = b;
-                    a.right_point = c;
-                    a.height = 2;
-                    b.height = 1;
-                    c.height = 1;
-                    b.xc = xc[i];
-                    b.yc = yc[i];
-                    c.xc = xc[node.point];
-                    c.yc = yc[node.point];
-                    b.next = c;
-                    c.prev = b;
-
-                }
-                else {
-                    c.point = i;
-                    b.point = node.point;
-                    c.right_intersection = a;
-                    b.left_intersection = a;
-                    a.left_point = c;
-                    a.right_point = b;
-                    a.height = 2;
-                    b.height = 1;
-                    c.height = 1;
-                    c.xc = xc[i];
-                    c.yc = yc[i];
-                    b.xc = xc[node.point];
-                    b.yc = yc[node.point];
-
-                    c.next = b;
-                    b.prev = c;
-                }
-                size = size + 2;
-                most_recent = a;
-                return a;
-
-            }
-            else {
-                Node a = new Node();
-                Node b = new Node();
-                Node c = new Node();
-                Node d = new Node();
-                Node e = new Node();
-
-                Node prev_n = node.prev;
-                Node next_n = node.next;
-                Node x = node.parent;
-                if (x != null) {
-                    if (node.parent_orientation) {
-                        x.right = a;
-                    }
-                    else {
-                        x.left = a;
-                    }
-                }
-                // set pointers for a
-                a.parent = node.parent;
-                a.parent_orientation = node.parent_orientation;
-                a.left_point = b;
-                a.right_point = d;
-                a.internal = true;
-                a.left = b;
-                a.right = c;
-                a.height = 3;
-
-                // set pointers for b
-                b.internal = false;
-                b.point = node.point;
-                b.xc = xc[node.point];
-                b.yc = yc[node.point];
-                b.prev = prev_n;
-                if (prev_n != null) {
-                    prev_n.next = b;
-                }
-                b.next = d;
-                b.parent = a;
-                b.parent_orientation = false;
-                b.left_intersection = node.left_intersection;
-                b.right_intersection = a;
-
-                // set pointers for c
-                c.parent = a;
-                c.parent_orientation = true;
-                c.internal = true;
-                c.left = d;
-                c.right = e;
-                c.left_point = d;
-                c.right_point = e;
-                c.height = 2;
-
-                // set pointers for d
-                d.parent = c;
-                d.parent_orientation = false;
-                d.point = i;
-                d.xc = xc[i];
-                d.yc = yc[i];
-                d.internal = false;
-                d.next = e;
-                d.prev = b;
-                d.left_intersection = a;
-                d.right_intersection = c;
-
-                // set pointers for e
-                e.parent = c;
-                e.parent_orientation = true;
-                e.point = node.point;
-                e.xc = xc[node.point];
-                e.yc = yc[node.point];
-                e.internal = false;
-                e.next = next_n;
-                if (next_n != null) {
-                    next_n.prev = e;
-                }
-                e.prev = d;
-                e.right_intersection = node.right_intersection;
-                e.left_intersection = c;
-
-                size = size + 4; // update size
-                most_recent = d; // update most recent
-                return a;
-            }
+            return split((Arc) node, i);
         }
 
         // if node is internal do binary search by comparing the x cooridnate of the query point with the x-coordinates of the breakpoints
         // also balance the tree with rotations
         else {
 
-            double xc_int = node.xc_int(y);
+            double xc_int = ((Breakpoint) node).xc_int(y);
 
 
             // perform bst search
@@ -391,9 +384,171 @@ public class SBT {
     }
 
 
+    // replace the leaf by a smaller subtree that represents the newly appeared
+    // arc of site i on the beachline, reset pointers and return the subtree
+    private Node split(Arc leaf, int i) {
+        // handle case if the first two points have the same y-coordinate
+        if (yc[leaf.point] == yc[i]) {
+            Breakpoint a = new_breakpoint();
+            Arc b = new_arc();
+            Arc c = new_arc();
+
+            a.left = b;
+            a.right = c;
+            b.parent = a;
+            c.parent = a;
+            b.parent_orientation = false;
+            c.parent_orientation = true;
+
+            if (xc[leaf.point] > xc[i]) {
+                b.point = i;
+                c.point = leaf.point;
+                b.right_intersection = a;
+                c.left_intersection = a;
+                a.left_point = b;
+                a.right_point = c;
+                a.height = 2;
+                b.height = 1;
+                c.height = 1;
+                b.xc = xc[i];
+                b.yc = yc[i];
+                c.xc = xc[leaf.point];
+                c.yc = yc[leaf.point];
+                b.next = c;
+                c.prev = b;
+                last = b;
+
+            }
+            else {
+                c.point = i;
+                b.point = leaf.point;
+                c.right_intersection = a;
+                b.left_intersection = a;
+                a.left_point = c;
+                a.right_point = b;
+                a.height = 2;
+                b.height = 1;
+                c.height = 1;
+                c.xc = xc[i];
+                c.yc = yc[i];
+                b.xc = xc[leaf.point];
+                b.yc = yc[leaf.point];
+
+                c.next = b;
+                b.prev = c;
+                last = c;
+            }
+            size = size + 2;
+            most_recent = a;
+            return a;
+
+        }
+        else {
+            Breakpoint a = new_breakpoint();
+            Arc b = new_arc();
+            Breakpoint c = new_breakpoint();
+            Arc d = new_arc();
+            Arc e = new_arc();
+
+            Arc prev_n = leaf.prev;
+            Arc next_n = leaf.next;
+            Node x = leaf.parent;
+            if (x != null) {
+                if (leaf.parent_orientation) {
+                    x.right = a;
+                }
+                else {
+                    x.left = a;
+                }
+            }
+            // set pointers for a
+            a.parent = leaf.parent;
+            a.parent_orientation = leaf.parent_orientation;
+            a.left_point = b;
+            a.right_point = d;
+            a.left = b;
+            a.right = c;
+            a.height = 3;
+
+            // set pointers for b
+            b.point = leaf.point;
+            b.xc = xc[leaf.point];
+            b.yc = yc[leaf.point];
+            b.prev = prev_n;
+            if (prev_n != null) {
+                prev_n.next = b;
+            }
+            b.next = d;
+            b.parent = a;
+            b.parent_orientation = false;
+            b.left_intersection = leaf.left_intersection;
+            b.right_intersection = a;
+
+            // set pointers for c
+            c.parent = a;
+            c.parent_orientation = true;
+            c.left = d;
+            c.right = e;
+            c.left_point = d;
+            c.right_point = e;
+            c.height = 2;
+
+            // set pointers for d
+            d.parent = c;
+            d.parent_orientation = false;
+            d.point = i;
+            d.xc = xc[i];
+            d.yc = yc[i];
+            d.next = e;
+            d.prev = b;
+            d.left_intersection = a;
+            d.right_intersection = c;
+
+            // set pointers for e
+            e.parent = c;
+            e.parent_orientation = true;
+            e.point = leaf.point;
+            e.xc = xc[leaf.point];
+            e.yc = yc[leaf.point];
+            e.next = next_n;
+            if (next_n != null) {
+                next_n.prev = e;
+            }
+            e.prev = d;
+            e.right_intersection = leaf.right_intersection;
+            e.left_intersection = c;
+
+            size = size + 4; // update size
+            most_recent = d; // update most recent
+            last = d;
+            return a;
+        }
+    }
+
+    // insert the site i below the arc leaf found by search() and rebalance
+    // the tree from the leaf up, without searching from the root again
+    public void insert(Arc leaf, int i) {
+        Node parent = leaf.parent;
+        boolean orientation = leaf.parent_orientation;
+        Node a = split(leaf, i);
+
+        // attach the subtree in the place of the leaf
+        a.parent = parent;
+        a.parent_orientation = orientation;
+        if (parent == null) {
+            root = a;
+        }
+        else {
+            if (orientation) parent.right = a;
+            else parent.left = a;
+            rebalance(parent);
+        }
+    }
+
+
     // delete a node and update the pointers
-    public void delete(Node node) {
-        Node current = new Node();
+    public void delete(Arc node) {
+        Node current;
 
         // delete the node and set the pointers accordingly
 
@@ -410,15 +565,15 @@ public class SBT {
                 c.left = b;
             }
             b.parent_orientation = a.parent_orientation;
-            Node prev_n = node.prev;
-            Node next_n = node.next;
+            Arc prev_n = node.prev;
+            Arc next_n = node.next;
             if (prev_n != null) {
                 prev_n.next = next_n;
             }
             if (next_n != null) {
                 next_n.prev = prev_n;
             }
-            Node intersection = node.right_intersection;
+            Breakpoint intersection = node.right_intersection;
             if (intersection != null) {
                 intersection.left_point = prev_n;
                 prev_n.right_intersection = intersection;
@@ -441,11 +596,11 @@ public class SBT {
                 c.left = b;
             }
             b.parent_orientation = a.parent_orientation;
-            Node prev_n = node.prev;
-            Node next_n = node.next;
+            Arc prev_n = node.prev;
+            Arc next_n = node.next;
             prev_n.next = next_n;
             next_n.prev = prev_n;
-            Node intersection = node.left_intersection;
+            Breakpoint intersection = node.left_intersection;
 
             if (intersection != null) {
                 intersection.right_point = next_n;
@@ -459,6 +614,12 @@ public class SBT {
         size = size - 2; // update size
 
         // balance the tree by performing rotations
+        rebalance(current);
+    }
+
+    // update the heights and balance the tree by performing rotations from
+    // current up to the root
+    private void rebalance(Node current) {
         while (current != null) {
 
             // update the height
@@ -504,7 +665,7 @@ public class SBT {
         while (current.left != null) {
             current = current.left;
         }
-        Node t = current;
+        Arc t = (Arc) current;
         while (t != null) {
             System.out.print(t.point + ", ");
             t = t.next;
@@ -544,18 +705,18 @@ public class SBT {
         tree.root = tree.insert(tree.root, 0, 0.8);
         tree.root = tree.insert(tree.root, 1, 0.7);
         tree.root = tree.insert(tree.root, 2, 0.6);
-        Node p = tree.root.left.right.right;
+        Arc p = (Arc) tree.root.left.right.right;
         tree.delete(p);
         tree.root = tree.insert(tree.root, 3, 0.5);
-        Node s = tree.root.right.left.left;
+        Arc s = (Arc) tree.root.right.left.left;
         tree.delete(s);
         tree.root = tree.insert(tree.root, 4, 0.4);
-        Node k = tree.root.left.right;
+        Arc k = (Arc) tree.root.left.right;
         tree.delete(k);
         tree.root = tree.insert(tree.root, 5, 0.3);
-        tree.delete(tree.root.left.left.right);
-        tree.delete(tree.root.left.right.right);
-        System.out.println(tree.root.right.right.xc_int(0.2));
+        tree.delete((Arc) tree.root.left.left.right);
+        tree.delete((Arc) tree.root.left.right.right);
+        System.out.println(((Breakpoint) tree.root.right.right).xc_int(0.2));
 
 
     }
@@ -0,0 +1,258 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Proximity analytics over the neighbors of the Voronoi
+ *  diagram. The nearest neighbor of a site always shares a voronoi edge
+ *  with it, so all the nearest neighbors are found in one parallel pass
+ *  over the Site_graph, in time linear in the number of its edges. The
+ *  Euclidean minimum spanning tree is a subgraph of the Delaunay
+ *  triangulation, so Kruskal only has to sort the at most 3N neighbor
+ *  edges: the edges are sorted in parallel by their length rounded to a
+ *  float and the runs of equal floats are sorted again by the exact
+ *  length, then the edges are added in that order with a union-find.
+ *  The edges are primitive arrays of site pairs.
+ *
+ **************************************************************************** */
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+public class Site_analytics {
+
+    int N; // number of sites
+    double[] xc; // the x-coordinates of the sites
+    double[] yc; // the y-coordinates of the sites
+    Site_graph graph; // the sites that share a voronoi edge
+
+
+    // the analytics of N sites with the neighbors of their diagram
+    public Site_analytics(int N, double[] xc, double[] yc, Site_graph graph) {
+        this.N = N;
+        this.xc = xc;
+        this.yc = yc;
+        this.graph = graph;
+    }
+
+    // the nearest other site of every site, -1 for a site with no neighbor,
+    // on the common ForkJoinPool
+    public int[] nearest_neighbors() {
+        return nearest_neighbors(ForkJoinPool.commonPool());
+    }
+
+    // the nearest other site of every site, on the pool
+    public int[] nearest_neighbors(ForkJoinPool pool) {
+        int[] nearest = new int[N];
+        pool.submit(() -> IntStream.range(0, N).parallel().forEach(i -> {
+            int best = -1;
+            double d = Double.POSITIVE_INFINITY;
+            for (int k = graph.offsets[i]; k < graph.offsets[i + 1]; k++) {
+                int j = graph.neighbors[k];
+                double e = Geometry.squared_distance(xc[i], yc[i], xc[j], yc[j]);
+                if (e < d) {
+                    d = e;
+                    best = j;
+                }
+            }
+            nearest[i] = best;
+        })).join();
+        return nearest;
+    }
+
+    // the edges of the Euclidean minimum spanning tree, on the common
+    // ForkJoinPool, see minimum_spanning_tree(pool)
+    public int[] minimum_spanning_tree() {
+        return minimum_spanning_tree(ForkJoinPool.commonPool());
+    }
+
+    // the edges of the Euclidean minimum spanning tree as site pairs, edge
+    // k joins the sites 2k and 2k + 1 of the result. There are N - 1 edges,
+    // or fewer if the neighbors do not connect all the sites
+    public int[] minimum_spanning_tree(ForkJoinPool pool) {
+
+        // every neighbor edge once, from the smaller site
+        int[] from = new int[N + 1];
+        pool.submit(() -> IntStream.range(0, N).parallel().forEach(i -> {
+            int count = 0;
+            for (int k = graph.offsets[i]; k < graph.offsets[i + 1]; k++) {
+                if (graph.neighbors[k] > i) count++;
+            }
+            from[i + 1] = count;
+        })).join();
+        for (int i = 0; i < N; i++) from[i + 1] += from[i];
+        int E = from[N];
+        int[] a = new int[E];
+        int[] b = new int[E];
+        long[] key = new long[E];
+        pool.submit(() -> IntStream.range(0, N).parallel().forEach(i -> {
+            int e = from[i];
+            for (int k = graph.offsets[i]; k < graph.offsets[i + 1]; k++) {
+                int j = graph.neighbors[k];
+                if (j < i) continue;
+                a[e] = i;
+                b[e] = j;
+                float length = (float) Geometry.squared_distance(xc[i], yc[i], xc[j], yc[j]);
+                key[e] = (long) Float.floatToIntBits(length) << 32 | e;
+                e++;
+            }
+        })).join();
+
+        // sort by the float length, then the runs of equal floats by the
+        // exact length
+        Arrays.parallelSort(key);
+        for (int lo = 0; lo < E; ) {
+            int hi = lo + 1;
+            while (hi < E && key[hi] >>> 32 == key[lo] >>> 32) hi++;
+            if (hi - lo > 1) sort_run(key, lo, hi, a, b);
+            lo = hi;
+        }
+
+        // Kruskal with a union-find with path halving and union by size
+        int[] parent = new int[N];
+        int[] size = new int[N];
+        for (int i = 0; i < N; i++) {
+            parent[i] = i;
+            size[i] = 1;
+        }
+        int[] tree = new int[2 * Math.max(N - 1, 0)];
+        int edges = 0;
+        for (int k = 0; k < E && edges < N - 1; k++) {
+            int e = (int) key[k];
+            int r = find(parent, a[e]);
+            int s = find(parent, b[e]);
+            if (r == s) continue;
+            if (size[r] < size[s]) {
+                int t = r;
+                r = s;
+                s = t;
+            }
+            parent[s] = r;
+            size[r] += size[s];
+            tree[2 * edges] = a[e];
+            tree[2 * edges + 1] = b[e];
+            edges++;
+        }
+        return edges == N - 1 ? tree : Arrays.copyOf(tree, 2 * edges);
+    }
+
+    // sort the keys lo to hi - 1, whose lengths round to the same float, by
+    // the exact length. The bits of a non-negative double are in its order,
+    // and the doubles that round to one float are less than 2^31 apart
+    // unless the float is 0 or subnormal, so the bits less the smallest
+    // replace the float in the high half of the key
+    private void sort_run(long[] key, int lo, int hi, int[] a, int[] b) {
+        long least = Long.MAX_VALUE;
+        long most = Long.MIN_VALUE;
+        for (int k = lo; k < hi; k++) {
+            long bits = Double.doubleToLongBits(length((int) key[k], a, b));
+            least = Math.min(least, bits);
+            most = Math.max(most, bits);
+        }
+        if (most - least < 1L << 31) {
+            for (int k = lo; k < hi; k++) {
+                long bits = Double.doubleToLongBits(length((int) key[k], a, b));
+                key[k] = bits - least << 32 | (int) key[k];
+            }
+            Arrays.parallelSort(key, lo, hi);
+            return;
+        }
+        Integer[] run = new Integer[hi - lo];
+        for (int k = lo; k < hi; k++) run[k - lo] = (int) key[k];
+        Arrays.sort(run, (e, f) -> Double.compare(length(e, a, b), length(f, a, b)));
+        for (int k = lo; k < hi; k++) key[k] = run[k - lo];
+    }
+
+    // the squared length of edge e
+    private double length(int e, int[] a, int[] b) {
+        return Geometry.squared_distance(xc[a[e]], yc[a[e]], xc[b[e]], yc[b[e]]);
+    }
+
+    // the root of the set of i, halving the path on the way
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    // the total length of the edges given as site pairs
+    public double length(int[] pairs) {
+        double total = 0;
+        for (int k = 0; k < pairs.length; k += 2) {
+            total += Math.sqrt(Geometry.squared_distance(xc[pairs[k]], yc[pairs[k]],
+                                                         xc[pairs[k + 1]], yc[pairs[k + 1]]));
+        }
+        return total;
+    }
+
+    // the nearest other site of every site by comparing all the pairs
+    public static int[] brute_force_nearest(int N, double[] xc, double[] yc) {
+        int[] nearest = new int[N];
+        for (int i = 0; i < N; i++) {
+            int best = -1;
+            double d = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < N; j++) {
+                double e = Geometry.squared_distance(xc[i], yc[i], xc[j], yc[j]);
+                if (j != i && e < d) {
+                    d = e;
+                    best = j;
+                }
+            }
+            nearest[i] = best;
+        }
+        return nearest;
+    }
+
+    // the length of the minimum spanning tree of all the pairs, with Prim
+    public static double brute_force_tree(int N, double[] xc, double[] yc) {
+        double[] d = new double[N];
+        boolean[] done = new boolean[N];
+        Arrays.fill(d, Double.POSITIVE_INFINITY);
+        d[0] = 0;
+        double total = 0;
+        for (int k = 0; k < N; k++) {
+            int u = -1;
+            for (int i = 0; i < N; i++) {
+                if (!done[i] && (u == -1 || d[i] < d[u])) u = i;
+            }
+            done[u] = true;
+            total += Math.sqrt(d[u]);
+            for (int i = 0; i < N; i++) {
+                if (!done[i]) d[i] = Math.min(d[i], Geometry.squared_distance(xc[u], yc[u], xc[i], yc[i]));
+            }
+        }
+        return total;
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+        int N = 5000;
+        if (args.length > 0) N = Integer.parseInt(args[0]);
+        double[] xc = new double[N];
+        double[] yc = new double[N];
+        java.util.Random random = new java.util.Random(451);
+        for (int i = 0; i < N; i++) {
+            xc[i] = random.nextDouble();
+            yc[i] = random.nextDouble();
+        }
+        Voronoi_diagram diagram = Voronoi_diagram.compact(N, xc, yc);
+        Site_analytics analytics = diagram.analytics();
+
+        int[] nearest = analytics.nearest_neighbors();
+        int[] brute = brute_force_nearest(N, xc, yc);
+        int wrong = 0;
+        for (int i = 0; i < N; i++) {
+            if (Geometry.squared_distance(xc[i], yc[i], xc[nearest[i]], yc[nearest[i]])
+                    != Geometry.squared_distance(xc[i], yc[i], xc[brute[i]], yc[brute[i]])) wrong++;
+        }
+        int[] tree = analytics.minimum_spanning_tree();
+        System.out.println("nearest neighbors that differ from the brute force: " + wrong);
+        System.out.println("tree edges: " + tree.length / 2);
+        System.out.println("tree length " + analytics.length(tree) + ", with Prim "
+                                   + brute_force_tree(N, xc, yc));
+    }
+}
@@ -0,0 +1,180 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Binary files of sites. A file has a 16 byte header (the
+ *  magic number "VSIT", the version and the number of sites N as a long)
+ *  followed by the N x-coordinates and then the N y-coordinates as packed
+ *  little-endian doubles, the same layout as the text input (N, all x,
+ *  all y). The file is read through a memory-mapped FileChannel straight
+ *  into the xc and yc arrays the Voronoi_diagram constructor takes, in
+ *  windows of at most 1 GB so that files over 2 GB can be mapped too.
+ *  convert() turns a text input into a binary file without keeping the
+ *  sites in memory.
+ *
+ *  Usage: java Site_file convert <text file> <binary file>
+ *         java Site_file <binary file>
+ *
+ **************************************************************************** */
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class Site_file {
+
+    static final int MAGIC = 0x56534954; // "VSIT"
+    static final int VERSION = 1;
+    static final int HEADER = 16; // bytes before the coordinates
+    static final long WINDOW = 1L << 30; // the largest mapped window in bytes
+
+
+    // read the sites of a binary file, returns { xc, yc }
+    public static double[][] read(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            long N = header(channel, file);
+            double[] xc = new double[(int) N];
+            double[] yc = new double[(int) N];
+            read(channel, HEADER, xc);
+            read(channel, HEADER + 8 * N, yc);
+            return new double[][] { xc, yc };
+        }
+    }
+
+    // read the number of sites of the file and check the header
+    private static long header(FileChannel channel, String file) throws IOException {
+        if (channel.size() < HEADER) throw new IOException("Not a site file: " + file);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt() != MAGIC) throw new IOException("Not a site file: " + file);
+        int version = buffer.getInt();
+        if (version != VERSION) throw new IOException("Unknown site file version " + version);
+        long N = buffer.getLong();
+        if (N < 0 || N > Integer.MAX_VALUE - 8)
+            throw new IOException("Bad number of sites " + N + " in " + file);
+        if (channel.size() < HEADER + 16 * N) throw new IOException("Truncated site file: " + file);
+        return N;
+    }
+
+    // read a.length doubles starting at byte position of the channel
+    private static void read(FileChannel channel, long position, double[] a) throws IOException {
+        int done = 0;
+        while (done < a.length) {
+            int count = (int) Math.min(a.length - done, WINDOW / 8);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                  position + 8L * done, 8L * count);
+            buffer.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(a, done, count);
+            done += count;
+        }
+    }
+
+    // write N sites to a binary file
+    public static void write(String file, int N, double[] xc, double[] yc) throws IOException {
+        try (FileChannel channel = create(file, N)) {
+            write(channel, HEADER, xc, N);
+            write(channel, HEADER + 8L * N, yc, N);
+        }
+    }
+
+    // create a binary file for N sites and write its header
+    private static FileChannel create(String file, long N) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                                               StandardOpenOption.TRUNCATE_EXISTING,
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(N);
+        return channel;
+    }
+
+    // write the first N doubles of a starting at byte position of the channel
+    private static void write(FileChannel channel, long position, double[] a, int N)
+            throws IOException {
+        int done = 0;
+        while (done < N) {
+            int count = (int) Math.min(N - done, WINDOW / 8);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                                                  position + 8L * done, 8L * count);
+            buffer.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().put(a, done, count);
+            done += count;
+        }
+    }
+
+    // convert a text input (N, then the N x-coordinates, then the N
+    // y-coordinates, separated by white space) into a binary file. The
+    // numbers are copied one window at a time
+    public static void convert(String text, String binary) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(text), 1 << 16)) {
+            long N = (long) Double.parseDouble(next(in));
+            if (N < 0 || N > Integer.MAX_VALUE - 8) throw new IOException("Bad number of sites " + N);
+            try (FileChannel channel = create(binary, N)) {
+                double[] window = new double[(int) Math.min(2 * N, 1 << 20)];
+                long done = 0;
+                while (done < 2 * N) {
+                    int count = (int) Math.min(2 * N - done, window.length);
+                    for (int k = 0; k < count; k++) {
+                        String token = next(in);
+                        if (token == null) throw new IOException("Expected " + 2 * N + " coordinates");
+                        window[k] = Double.parseDouble(token);
+                    }
+                    write(channel, HEADER + 8 * done, window, count);
+                    done += count;
+                }
+            }
+        }
+    }
+
+    // the next token separated by white space, null at the end of the input
+    private static String next(BufferedReader in) throws IOException {
+        StringBuilder token = new StringBuilder();
+        int c = in.read();
+        while (c != -1 && Character.isWhitespace(c)) c = in.read();
+        while (c != -1 && !Character.isWhitespace(c)) {
+            token.append((char) c);
+            c = in.read();
+        }
+        return token.length() == 0 ? null : token.toString();
+    }
+
+
+    // unit testing
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("convert")) {
+            convert(args[1], args[2]);
+            return;
+        }
+        if (args.length == 1) {
+            long start = System.nanoTime();
+            double[][] sites = read(args[0]);
+            System.out.printf("read %d sites in %.1f ms%n", sites[0].length,
+                              (System.nanoTime() - start) / 1e6);
+            return;
+        }
+
+        // write a text input, convert it and read it back
+        java.io.File text = java.io.File.createTempFile("sites", ".txt");
+        java.io.File binary = java.io.File.createTempFile("sites", ".bin");
+        try (java.io.PrintWriter out = new java.io.PrintWriter(text)) {
+            out.println(3);
+            out.println("0.5 -1.25e-3 2");
+            out.println("1 0.75 -3.5");
+        }
+        convert(text.getPath(), binary.getPath());
+        double[][] sites = read(binary.getPath());
+
+        // prints 0.5 1.0, -0.00125 0.75 and 2.0 -3.5
+        for (int i = 0; i < sites[0].length; i++) {
+            System.out.println(sites[0][i] + " " + sites[1][i]);
+        }
+        text.delete();
+        binary.delete();
+    }
+}
@@ -0,0 +1,126 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  The sites that share a voronoi edge, in compressed sparse
+ *  row form: the neighbors of site i are neighbors[offsets[i]] up to
+ *  neighbors[offsets[i + 1] - 1], in counterclockwise order around the
+ *  site. The half-edges on the bounding box have no twin and give no
+ *  neighbor. The graph is built in two parallel passes over the face
+ *  cycles on a ForkJoinPool: the first counts the voronoi edges of every
+ *  face, a prefix sum of the counts gives the offsets and the second
+ *  writes the site across every half-edge. degree() and neighbor() read
+ *  the arrays without allocating, as in
+ *
+ *      for (int k = 0; k < graph.degree(i); k++) visit(graph.neighbor(i, k));
+ *
+ **************************************************************************** */
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+public class Site_graph {
+
+    int N; // number of sites
+    int[] offsets; // the neighbors of site i start at offsets[i], N + 1 entries
+    int[] neighbors; // the neighbors of all the sites
+
+
+    // the neighbors of the faces of a finished DCEL, on the common ForkJoinPool
+    public Site_graph(Dcel_view dcel) {
+        this(dcel, ForkJoinPool.commonPool());
+    }
+
+    // the neighbors of the faces of a finished DCEL, on the pool
+    public Site_graph(Dcel_view dcel, ForkJoinPool pool) {
+        N = dcel.face_count();
+        offsets = new int[N + 1];
+        pool.submit(() -> IntStream.range(0, N).parallel().forEach(f -> {
+            offsets[f + 1] = neighbors(dcel, f, null, 0);
+        })).join();
+        for (int f = 0; f < N; f++) offsets[f + 1] += offsets[f];
+        neighbors = new int[offsets[N]];
+        pool.submit(() -> IntStream.range(0, N).parallel().forEach(f -> {
+            neighbors(dcel, f, neighbors, offsets[f]);
+        })).join();
+    }
+
+    // count the sites across the voronoi edges of face f and, if out is not
+    // null, write them to out from place k on
+    private static int neighbors(Dcel_view dcel, int f, int[] out, int k) {
+        int count = 0;
+        int h = dcel.face_half_edge(f);
+        int end = h;
+        while (h != -1) {
+            if (!dcel.box_edge(h)) {
+                if (out != null) out[k + count] = dcel.face(dcel.twin(h));
+                count++;
+            }
+            h = dcel.next(h);
+            if (h == end) break;
+        }
+        return count;
+    }
+
+    // number of sites
+    public int size() {
+        return N;
+    }
+
+    // the number of neighbors of site i
+    public int degree(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    // the k-th neighbor of site i
+    public int neighbor(int i, int k) {
+        return neighbors[offsets[i] + k];
+    }
+
+    // the offsets of the neighbors of every site, N + 1 entries. The array
+    // is not copied
+    public int[] offsets() {
+        return offsets;
+    }
+
+    // the neighbors of all the sites. The array is not copied
+    public int[] neighbors() {
+        return neighbors;
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+        int N = 100000;
+        if (args.length > 0) N = Integer.parseInt(args[0]);
+        double[] xc = new double[N];
+        double[] yc = new double[N];
+        java.util.Random random = new java.util.Random(451);
+        for (int i = 0; i < N; i++) {
+            xc[i] = random.nextDouble();
+            yc[i] = random.nextDouble();
+        }
+        Voronoi_diagram diagram = Voronoi_diagram.compact(N, xc, yc);
+        long start = System.nanoTime();
+        Site_graph graph = new Site_graph(diagram.dcel());
+        double time = (System.nanoTime() - start) / 1e6;
+
+        // the graph is symmetric and has the edges of the triangulation
+        boolean symmetric = true;
+        for (int i = 0; i < N; i++) {
+            for (int k = 0; k < graph.degree(i); k++) {
+                int j = graph.neighbor(i, k);
+                boolean found = false;
+                for (int l = 0; l < graph.degree(j); l++) found |= graph.neighbor(j, l) == i;
+                symmetric &= found;
+            }
+        }
+        Delaunay delaunay = diagram.delaunay();
+        System.out.printf("%d neighbors in %.1f ms, mean degree %.3f%n", graph.neighbors.length,
+                          time, (double) graph.neighbors.length / N);
+        System.out.println("symmetric: " + symmetric);
+        System.out.println("same as the Delaunay edges: "
+                                   + (graph.neighbors.length == 2 * delaunay.edge_count()));
+    }
+}
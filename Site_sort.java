@@ -0,0 +1,153 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Sorts the sites into the order in which the sweepline meets
+ *  them, by decreasing y-coordinate and then by decreasing x-coordinate (the
+ *  same order in which the event queue would pop them). The sort is an LSD
+ *  radix sort of the site indices on the bits of the doubles: every double
+ *  is mapped to a 64-bit key whose unsigned order is the order of the
+ *  sweep, the keys are sorted 11 bits at a time and the digits on which all
+ *  keys agree are skipped. The x-coordinate is sorted first and the stable
+ *  passes on the y-coordinate keep that order among equal y's.
+ *
+ **************************************************************************** */
+
+import java.util.Arrays;
+
+public class Site_sort {
+
+    static final int BITS = 11; // bits per digit
+    static final int RADIX = 1 << BITS; // number of buckets
+    static final int MASK = RADIX - 1;
+    static final int DIGITS = (64 + BITS - 1) / BITS; // digits per key
+
+    // the indices of the N sites in the order of the sweep
+    public static int[] sweep_order(int N, double[] xc, double[] yc) {
+        int[] order = new int[N];
+        sweep_order(N, xc, yc, order, new int[N], new long[N], new long[N],
+                    new int[DIGITS][RADIX + 1]);
+        return order;
+    }
+
+    // store the indices of the N sites in the order of the sweep in
+    // order[0..N), with the scratch arrays of at least N entries and the
+    // counts of the digits given by the caller, who reuses them
+    static void sweep_order(int N, double[] xc, double[] yc, int[] order, int[] order_aux,
+                            long[] key, long[] key_aux, int[][] count) {
+
+        // sort on the secondary key first
+        for (int i = 0; i < N; i++) {
+            order[i] = i;
+            key[i] = descending(xc[i]);
+        }
+        sort(N, order, key, order_aux, key_aux, count);
+
+        // then do stable passes on the y-coordinate
+        for (int i = 0; i < N; i++) {
+            key[i] = descending(yc[order[i]]);
+        }
+        sort(N, order, key, order_aux, key_aux, count);
+    }
+
+    // the indices of the N sites by increasing x-coordinate and then by
+    // increasing y-coordinate, the order of the vertical strips
+    public static int[] x_order(int N, double[] xc, double[] yc) {
+        int[] order = new int[N];
+        int[] order_aux = new int[N];
+        long[] key = new long[N];
+        long[] key_aux = new long[N];
+
+        // sort on the secondary key first
+        for (int i = 0; i < N; i++) {
+            order[i] = i;
+            key[i] = ~descending(yc[i]);
+        }
+        sort(N, order, key, order_aux, key_aux);
+
+        // then do stable passes on the x-coordinate
+        for (int i = 0; i < N; i++) {
+            key[i] = ~descending(xc[order[i]]);
+        }
+        sort(N, order, key, order_aux, key_aux);
+
+        return order;
+    }
+
+    // map a double to a key whose unsigned order is the decreasing order of
+    // the doubles, -0.0 and 0.0 get the same key
+    static long descending(double d) {
+        long bits = Double.doubleToLongBits(d + 0.0);
+        long ascending = bits ^ ((bits >> 63) | Long.MIN_VALUE);
+        return ~ascending;
+    }
+
+    // stable sort of order[0..N) by the unsigned keys key[0..N), the keys
+    // are moved together with the indices
+    static void sort(int N, int[] order, long[] key, int[] order_aux, long[] key_aux) {
+        sort(N, order, key, order_aux, key_aux, new int[DIGITS][RADIX + 1]);
+    }
+
+    // sort with the counts of the digits in count, DIGITS rows of RADIX + 1
+    // entries that are cleared first
+    static void sort(int N, int[] order, long[] key, int[] order_aux, long[] key_aux,
+                     int[][] count) {
+        if (N < 2) return;
+
+        // count the digits of all passes at once
+        for (int[] c : count) Arrays.fill(c, 0);
+        for (int i = 0; i < N; i++) {
+            long k = key[i];
+            for (int d = 0; d < DIGITS; d++) {
+                count[d][(int) ((k >>> (d * BITS)) & MASK) + 1]++;
+            }
+        }
+
+        for (int d = 0; d < DIGITS; d++) {
+            int[] c = count[d];
+
+            // skip the digit if all the keys agree on it
+            if (c[(int) ((key[0] >>> (d * BITS)) & MASK) + 1] == N) continue;
+
+            // compute the starting positions of the buckets
+            for (int r = 0; r < RADIX; r++) {
+                c[r + 1] += c[r];
+            }
+
+            // distribute
+            int shift = d * BITS;
+            for (int i = 0; i < N; i++) {
+                int j = c[(int) ((key[i] >>> shift) & MASK)]++;
+                order_aux[j] = order[i];
+                key_aux[j] = key[i];
+            }
+
+            // copy back
+            System.arraycopy(order_aux, 0, order, 0, N);
+            System.arraycopy(key_aux, 0, key, 0, N);
+        }
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+        int N = 8;
+        double[] xc = { 0.5, 0.1, -0.0, 0.3, 0.2, 0.0, -1.5, 0.7 };
+        double[] yc = { 0.2, 0.9, 0.9, -0.4, 0.9, 0.2, 1e-9, -3.0 };
+
+        // prints 4 1 2 0 5 6 3 7
+        int[] order = sweep_order(N, xc, yc);
+        for (int i = 0; i < N; i++) {
+            System.out.print(order[i] + " ");
+        }
+        System.out.println();
+
+        // prints 6 5 2 1 4 3 0 7
+        order = x_order(N, xc, yc);
+        for (int i = 0; i < N; i++) {
+            System.out.print(order[i] + " ");
+        }
+        System.out.println();
+    }
+}
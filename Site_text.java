@@ -0,0 +1,340 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Parallel reader of the text input: N, then the N
+ *  x-coordinates, then the N y-coordinates, separated by white space. The
+ *  file is memory-mapped and split into byte ranges that are parsed on a
+ *  ForkJoinPool. A number belongs to the range in which it starts. A first
+ *  pass counts the numbers of every range, so that the second pass knows
+ *  the index of the first number of its range and writes the values
+ *  straight into xc and yc. The numbers are parsed from the bytes without
+ *  Scanner, regular expressions or strings: the digits go into a long w and
+ *  the value w * 10^q is rounded correctly with the algorithm of Eisel and
+ *  Lemire, a multiplication of w with a 128-bit approximation of 5^q. In
+ *  the rare cases where the approximation cannot decide the rounding (and
+ *  for more than 18 digits or subnormal results) Double.parseDouble()
+ *  parses the token.
+ *
+ *  Usage: java Site_text <text file>
+ *
+ **************************************************************************** */
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+public class Site_text {
+
+    static final int RANGE = 1 << 24; // the bytes of a range
+    static final int MAX_TOKEN = 1024; // the longest number, in bytes
+
+    // the 128-bit approximations of 5^q for q = MIN_Q..MAX_Q, normalized so
+    // that the highest bit is set: truncated for q >= 0 and rounded up
+    // from 2^b / 5^-q for q < 0
+    static final int MIN_Q = -342;
+    static final int MAX_Q = 308;
+    static final long[] POW5_HIGH = new long[MAX_Q - MIN_Q + 1];
+    static final long[] POW5_LOW = new long[MAX_Q - MIN_Q + 1];
+
+    static {
+        java.math.BigInteger mask = java.math.BigInteger.ONE.shiftLeft(64).subtract(
+                java.math.BigInteger.ONE);
+        for (int q = MIN_Q; q <= MAX_Q; q++) {
+            java.math.BigInteger c;
+            if (q >= 0) {
+                c = java.math.BigInteger.valueOf(5).pow(q);
+                int bits = c.bitLength();
+                c = bits <= 128 ? c.shiftLeft(128 - bits) : c.shiftRight(bits - 128);
+            }
+            else {
+                java.math.BigInteger power = java.math.BigInteger.valueOf(5).pow(-q);
+                int z = power.subtract(java.math.BigInteger.ONE).bitLength(); // 2^z >= 5^-q
+                int b = q >= -27 ? z + 127 : 2 * z + 128;
+                c = java.math.BigInteger.ONE.shiftLeft(b).divide(power).add(
+                        java.math.BigInteger.ONE);
+                if (c.bitLength() > 128) c = c.shiftRight(c.bitLength() - 128);
+            }
+            POW5_HIGH[q - MIN_Q] = c.shiftRight(64).longValue();
+            POW5_LOW[q - MIN_Q] = c.and(mask).longValue();
+        }
+    }
+
+    FileChannel channel;
+    long size; // the size of the file in bytes
+    int ranges; // the number of byte ranges
+    long[] first; // the index of the first number of every range
+    long N; // the number of sites
+    double[] xc;
+    double[] yc;
+
+
+    // read the sites of a text file on the common pool, returns { xc, yc }
+    public static double[][] read(String file) throws IOException {
+        return read(file, ForkJoinPool.commonPool());
+    }
+
+    // read the sites of a text file on the given pool, returns { xc, yc }
+    public static double[][] read(String file, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            Site_text text = new Site_text();
+            text.channel = channel;
+            text.size = channel.size();
+            text.ranges = (int) Math.max(1, (text.size + RANGE - 1) / RANGE);
+            text.parse(pool);
+            return new double[][] { text.xc, text.yc };
+        }
+    }
+
+    // count the numbers of the ranges, read N and parse the coordinates
+    private void parse(ForkJoinPool pool) throws IOException {
+        long[] count = new long[ranges];
+        run(pool, r -> count[r] = scan(r, false));
+        first = new long[ranges];
+        long total = 0;
+        for (int r = 0; r < ranges; r++) {
+            first[r] = total;
+            total += count[r];
+        }
+        if (total == 0) throw new IOException("The input is empty");
+
+        // N is the first number
+        double n = first_number();
+        N = n == Math.rint(n) ? (long) n : -1;
+        if (N < 0 || N > Integer.MAX_VALUE - 8) throw new IOException("Bad number of sites " + N);
+        if (total != 2 * N + 1)
+            throw new IOException("Expected " + (2 * N + 1) + " numbers, found " + total);
+        xc = new double[(int) N];
+        yc = new double[(int) N];
+        run(pool, r -> scan(r, true));
+    }
+
+    // run task(r) for every range on the pool, IOExceptions are rethrown
+    private void run(ForkJoinPool pool, Range_task task) throws IOException {
+        try {
+            pool.submit(() -> IntStream.range(0, ranges).parallel().forEach(r -> {
+                try {
+                    task.run(r);
+                }
+                catch (IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            })).join();
+        }
+        catch (java.io.UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // a task on one range
+    private interface Range_task {
+        void run(int r) throws IOException;
+    }
+
+    // count the numbers that start in the range r, or parse them into N, xc
+    // and yc if store is true. Returns the number of numbers
+    private long scan(int r, boolean store) throws IOException {
+        long start = (long) r * RANGE;
+        long end = Math.min(size, start + RANGE);
+        long from = Math.max(0, start - 1); // the byte before the range
+        long to = Math.min(size, end + MAX_TOKEN); // the last number may go past the end
+        byte[] buffer = new byte[(int) (to - from)];
+        channel.map(FileChannel.MapMode.READ_ONLY, from, to - from).get(buffer);
+
+        int p = (int) (start - from);
+        int limit = (int) (end - from);
+        int length = (int) (to - from);
+
+        // skip the rest of a number that started in the previous range
+        if (start > 0 && !space(buffer[p - 1])) {
+            while (p < limit && !space(buffer[p])) p++;
+        }
+
+        long index = store ? first[r] : 0;
+        long count = 0;
+        while (true) {
+            while (p < limit && space(buffer[p])) p++;
+            if (p >= limit) break;
+            int q = p;
+            while (q < length && !space(buffer[q])) q++;
+            if (q == length && to < size) throw new IOException("A number is too long");
+            if (store) store(index + count, parse(buffer, p, q));
+            count++;
+            p = q;
+        }
+        return count;
+    }
+
+    // the first number of the input
+    private double first_number() throws IOException {
+        long to = Math.min(size, RANGE + MAX_TOKEN);
+        byte[] buffer = new byte[(int) to];
+        channel.map(FileChannel.MapMode.READ_ONLY, 0, to).get(buffer);
+        int p = 0;
+        while (space(buffer[p])) p++;
+        int q = p;
+        while (q < to && !space(buffer[q])) q++;
+        return parse(buffer, p, q);
+    }
+
+    // store the k-th number of the input, the first one is N
+    private void store(long k, double value) {
+        if (k == 0) return;
+        if (k <= N) xc[(int) (k - 1)] = value;
+        else yc[(int) (k - 1 - N)] = value;
+    }
+
+    // is the byte white space
+    private static boolean space(byte c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+    }
+
+    // parse the number in the bytes [p, q) of the buffer
+    static double parse(byte[] buffer, int p, int q) {
+        int k = p;
+        boolean negative = false;
+        if (buffer[k] == '-' || buffer[k] == '+') {
+            negative = buffer[k] == '-';
+            k++;
+        }
+
+        // the digits, without the decimal point
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean point = false;
+        boolean any = false;
+        for (; k < q; k++) {
+            byte c = buffer[k];
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (digits > 0 || c != '0') {
+                    if (digits < 18) {
+                        mantissa = 10 * mantissa + (c - '0');
+                        digits++;
+                        if (point) exponent--;
+                    }
+                    else {
+                        digits++;
+                        if (!point) exponent++;
+                    }
+                }
+                else if (point) exponent--;
+            }
+            else if (c == '.' && !point) point = true;
+            else break;
+        }
+
+        // the exponent
+        if (any && k < q && (buffer[k] == 'e' || buffer[k] == 'E')) {
+            k++;
+            boolean negative_exponent = false;
+            if (k < q && (buffer[k] == '-' || buffer[k] == '+')) {
+                negative_exponent = buffer[k] == '-';
+                k++;
+            }
+            int e = 0;
+            boolean exponent_digits = false;
+            for (; k < q; k++) {
+                byte c = buffer[k];
+                if (c < '0' || c > '9') break;
+                exponent_digits = true;
+                if (e < 100000) e = 10 * e + (c - '0');
+            }
+            if (!exponent_digits) return slow(buffer, p, q);
+            exponent += negative_exponent ? -e : e;
+        }
+        if (!any || k != q) return slow(buffer, p, q);
+
+        if (digits == 0) return negative ? -0.0 : 0.0;
+        if (digits > 18) return slow(buffer, p, q);
+        long bits = eisel_lemire(mantissa, exponent);
+        if (bits == -1) return slow(buffer, p, q);
+        double value = Double.longBitsToDouble(bits);
+        return negative ? -value : value;
+    }
+
+    // the bits of the double closest to w * 10^q for w > 0, or -1 if the
+    // 128-bit approximation of 5^q cannot decide the rounding or the result
+    // is subnormal or too large
+    static long eisel_lemire(long w, int q) {
+        if (q < MIN_Q || q > MAX_Q) return -1;
+        int lz = Long.numberOfLeadingZeros(w);
+        w <<= lz;
+
+        // the highest 128 bits of w times the approximation of 5^q
+        long high = POW5_HIGH[q - MIN_Q];
+        long upper = multiply_high(w, high);
+        long lower = w * high;
+        if ((upper & 0x1FF) == 0x1FF && Long.compareUnsigned(lower + w, lower) < 0) {
+            long low = POW5_LOW[q - MIN_Q];
+            long product_low = w * low;
+            long product_middle = lower + multiply_high(w, low);
+            if (Long.compareUnsigned(product_middle, lower) < 0) upper++;
+            if (product_middle + 1 == 0 && (upper & 0x1FF) == 0x1FF
+                    && Long.compareUnsigned(product_low + w, product_low) < 0) return -1;
+            lower = product_middle;
+        }
+
+        // the mantissa with 54 bits and a leading 1
+        long upper_bit = upper >>> 63;
+        long mantissa = upper >>> (upper_bit + 9);
+        lz += (int) (1 ^ upper_bit);
+        long exponent = (((152170L + 65536L) * q) >> 16) + 1024 + 63 - lz;
+        if (exponent <= 0) return -1;
+
+        // exactly halfway, the rounding needs more precision
+        if (lower == 0 && (upper & 0x1FF) == 0 && (mantissa & 3) == 1) return -1;
+        mantissa = (mantissa + 1) >>> 1;
+        if (mantissa >= 1L << 53) {
+            mantissa = 1L << 52;
+            exponent++;
+        }
+        if (exponent > 2046) return -1;
+        return (mantissa & ~(1L << 52)) | (exponent << 52);
+    }
+
+    // the highest 64 bits of the unsigned 128-bit product of a and b
+    private static long multiply_high(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    // parse the number in the bytes [p, q) of the buffer with Double.parseDouble
+    private static double slow(byte[] buffer, int p, int q) {
+        char[] chars = new char[q - p];
+        for (int k = p; k < q; k++) {
+            chars[k - p] = (char) buffer[k];
+        }
+        return Double.parseDouble(new String(chars));
+    }
+
+
+    // unit testing
+    public static void main(String[] args) throws IOException {
+        if (args.length == 1) {
+            long start = System.nanoTime();
+            double[][] sites = read(args[0]);
+            System.out.printf("read %d sites in %.1f ms%n", sites[0].length,
+                              (System.nanoTime() - start) / 1e6);
+            return;
+        }
+
+        java.io.File text = java.io.File.createTempFile("sites", ".txt");
+        try (java.io.PrintWriter out = new java.io.PrintWriter(text)) {
+            out.println(4);
+            out.println("0.5 -1.25e-3 2 0.30000000000000004");
+            out.println("1\t0.75\r\n-3.5 +7E2");
+        }
+        double[][] sites = read(text.getPath());
+        text.delete();
+
+        // prints 0.5 1.0, -0.00125 0.75, 2.0 -3.5 and 0.30000000000000004 700.0
+        for (int i = 0; i < sites[0].length; i++) {
+            System.out.println(sites[0][i] + " " + sites[1][i]);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Builds many independent Voronoi diagrams at the same time
+ *  on a ForkJoinPool with a fixed number of threads. The diagrams are
+ *  small and independent, so every diagram is one task and the pool
+ *  steals whole diagrams between its threads. Every thread of the pool
+ *  has its own Voronoi_builder, so after the first diagrams of a thread
+ *  its builds allocate almost nothing.
+ *
+ *  A diagram of a builder is emptied by the next build of the same thread,
+ *  so a diagram is only handed to code that runs on that thread before the
+ *  next build: buildAll() passes every diagram to a Receiver on the thread
+ *  that built it, and submit() returns a CompletableFuture of what a
+ *  function computes from the diagram. submitAll() returns a future for
+ *  every site set. submit() without a function builds the diagram with
+ *  compact() instead, so that it can outlive the task. A receiver that
+ *  waits for a task of the pool, as a parallel stream does, can run
+ *  another build on the same thread before it returns: that build takes
+ *  a second builder of the thread, so the diagram of the receiver stays
+ *  valid.
+ *
+ **************************************************************************** */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+public class Voronoi_batch implements AutoCloseable {
+
+    // receives the diagrams of buildAll()
+    public interface Receiver {
+
+        // the diagram of site set k, valid until the method returns. Called
+        // on the thread that built it, by several threads at the same time
+        void diagram(int k, Voronoi_diagram diagram);
+    }
+
+    // the builders of a thread, the first depth of them are in use by the
+    // builds that run on the thread
+    static class Builders {
+        Voronoi_builder[] builders = new Voronoi_builder[1];
+        int depth;
+    }
+
+    ForkJoinPool pool; // the threads that build the diagrams
+    boolean owned; // is the pool closed with the batch
+    ThreadLocal<Builders> builders = ThreadLocal.withInitial(Builders::new);
+
+
+    // create a batch on a new pool of the given number of threads, the pool
+    // is shut down by close()
+    public Voronoi_batch(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+        this.pool = new ForkJoinPool(threads);
+        this.owned = true;
+    }
+
+    // create a batch on the given pool, which close() does not shut down
+    public Voronoi_batch(ForkJoinPool pool) {
+        if (pool == null) throw new IllegalArgumentException("The pool is null");
+        this.pool = pool;
+    }
+
+    // the number of threads of the pool
+    public int threads() {
+        return pool.getParallelism();
+    }
+
+    // build the diagram of the sites (xc[k], yc[k]) for every k and pass it
+    // to the receiver, returns when all the diagrams are done
+    public void buildAll(double[][] xc, double[][] yc, Receiver receiver) {
+        if (xc.length != yc.length) throw new IllegalArgumentException("Arrays differ in length");
+        if (receiver == null) throw new IllegalArgumentException("The receiver is null");
+        pool.submit(() -> IntStream.range(0, xc.length).parallel().forEach(k -> {
+            build(xc[k], yc[k], diagram -> {
+                receiver.diagram(k, diagram);
+                return null;
+            });
+        })).join();
+    }
+
+    // the future of what f computes from the diagram of the sites (xc, yc).
+    // The diagram is only valid while f runs
+    public <R> CompletableFuture<R> submit(double[] xc, double[] yc,
+                                           Function<Voronoi_diagram, R> f) {
+        if (xc.length != yc.length) throw new IllegalArgumentException("Arrays differ in length");
+        return CompletableFuture.supplyAsync(() -> build(xc, yc, f), pool);
+    }
+
+    // the future of the diagram of the sites (xc, yc), built with compact()
+    // so that it can be kept
+    public CompletableFuture<Voronoi_diagram> submit(double[] xc, double[] yc) {
+        if (xc.length != yc.length) throw new IllegalArgumentException("Arrays differ in length");
+        return CompletableFuture.supplyAsync(() -> Voronoi_diagram.compact(xc.length, xc, yc), pool);
+    }
+
+    // the futures of what f computes from the diagram of every site set
+    public <R> List<CompletableFuture<R>> submitAll(double[][] xc, double[][] yc,
+                                                    Function<Voronoi_diagram, R> f) {
+        if (xc.length != yc.length) throw new IllegalArgumentException("Arrays differ in length");
+        List<CompletableFuture<R>> futures = new ArrayList<>(xc.length);
+        for (int k = 0; k < xc.length; k++) futures.add(submit(xc[k], yc[k], f));
+        return futures;
+    }
+
+    // build the diagram of the sites (xc, yc) with a free builder of the
+    // thread and return what f computes from it
+    private <R> R build(double[] xc, double[] yc, Function<Voronoi_diagram, R> f) {
+        if (xc.length != yc.length) throw new IllegalArgumentException("Arrays differ in length");
+        Builders b = builders.get();
+        if (b.depth == b.builders.length) b.builders = Arrays.copyOf(b.builders, 2 * b.depth);
+        if (b.builders[b.depth] == null) b.builders[b.depth] = new Voronoi_builder();
+        Voronoi_builder builder = b.builders[b.depth++];
+        try {
+            return f.apply(builder.build(xc.length, xc, yc));
+        }
+        finally {
+            b.depth--;
+        }
+    }
+
+    // shut down the pool if the batch created it
+    public void close() {
+        if (owned) pool.shutdown();
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+        int N = 200;
+        int M = 5000;
+        if (args.length > 0) N = Integer.parseInt(args[0]);
+        if (args.length > 1) M = Integer.parseInt(args[1]);
+        java.util.Random random = new java.util.Random(451);
+        double[][] xc = new double[M][N];
+        double[][] yc = new double[M][N];
+        for (int k = 0; k < M; k++) {
+            for (int i = 0; i < N; i++) {
+                xc[k][i] = random.nextDouble();
+                yc[k][i] = random.nextDouble();
+            }
+        }
+
+        // compare every diagram of the receiver and the futures with the
+        // sequential constructor
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        try (Voronoi_batch batch = new Voronoi_batch(threads)) {
+            boolean[] same = new boolean[M];
+            batch.buildAll(xc, yc, (k, diagram) -> same[k] = Voronoi_editor.same_triangles(
+                    diagram, Voronoi_diagram.compact(xc[k].length, xc[k], yc[k])));
+            List<CompletableFuture<Boolean>> futures = batch.submitAll(
+                    xc, yc, diagram -> Voronoi_editor.same_triangles(
+                            diagram, Voronoi_diagram.compact(diagram.N, diagram.xc, diagram.yc)));
+            int differ = 0;
+            for (int k = 0; k < M; k++) {
+                if (!same[k] || !futures.get(k).join()) differ++;
+            }
+            System.out.println(M + " diagrams on " + batch.threads() + " threads, differ: " + differ);
+
+            Voronoi_diagram kept = batch.submit(xc[0], yc[0]).join();
+            System.out.println("kept diagram same as a new one: "
+                                       + Voronoi_editor.same_triangles(
+                    kept, Voronoi_diagram.compact(N, xc[0], yc[0])));
+        }
+    }
+}
@@ -0,0 +1,733 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Benchmark harness for the Voronoi diagram construction.
+ *  Times every phase of the Voronoi_diagram constructor separately
+ *  (initialization, generateVoronoi, bounding_box, cut_edges, cut_first_edge,
+ *  update_dcel and building the object graph from the primitive DCEL) and
+ *  the whole constructor end to end, for a range of input sizes N. For
+ *  every phase it reports the mean time per operation, the number of bytes
+ *  allocated per operation, the allocation rate and the garbage collections
+ *  that happened while the phase was running.
+ *
+ *  Usage: java Voronoi_benchmark [N ...]
+ *  With no arguments N runs over 1e3, 1e4, 1e5, 1e6 and 1e7. Run with a
+ *  large heap (e.g. -Xmx16g) for the biggest sizes.
+ *
+ *  Usage: java Voronoi_benchmark search [N ...]
+ *  Compares the beachline search from the root with the finger search from
+ *  the last inserted arc, on uniform sites and on sites scanned row by row.
+ *
+ *  Usage: java Voronoi_benchmark parallel [N ...]
+ *  Compares the sequential constructor with the parallel build on pools of
+ *  1, 2, 4, ... threads up to the number of cores, and reports the sites
+ *  swept by the strips per site (the extra work of the halos).
+ *
+ *  Usage: java Voronoi_benchmark parse [N ...]
+ *  Writes N random sites in the text input format and times reading them
+ *  with Scanner, with the parallel parser of Site_text and, after
+ *  converting them, from the binary format of Site_file.
+ *
+ *  Usage: java Voronoi_benchmark locate [N ...]
+ *  Times locate() and the batch locateAll() on 1M random queries with 1, 2,
+ *  4, ... threads up to the number of cores and the brute force scan of
+ *  the sites on a sample of the queries, and checks that they find sites
+ *  at the same distance.
+ *
+ *  Usage: java Voronoi_benchmark analytics [N ...]
+ *  Times the site graph, all nearest neighbors and the minimum spanning
+ *  tree of Site_analytics on a built diagram, and the O(N^2) brute force
+ *  nearest neighbors, timed on a sample of the sites and scaled to N, on
+ *  uniform sites and on a grid with a jitter of 1e-6 of the spacing.
+ *
+ *  Usage: java Voronoi_benchmark insert [N ...]
+ *  Times addSite() and removeSite() on a built diagram of N sites, with
+ *  and without the object graph, against building the diagram of N + 1
+ *  sites again. The removals of sites on the hull rebuild the diagram and
+ *  are counted.
+ *
+ *  Usage: java Voronoi_benchmark kinetic [N ...]
+ *  Moves N random sites with constant velocities for 20 frames of 0.05,
+ *  0.10 and 0.15 of the mean spacing of the sites and times moveSites()
+ *  per frame against building the diagram of every frame again. The
+ *  frames that moveSites() could not repair and built again are counted.
+ *
+ *  Usage: java Voronoi_benchmark builder [N ...]
+ *  Builds 1e6 / N diagrams of N random sites with compact() and with one
+ *  Voronoi_builder and reports the time, the bytes allocated and the
+ *  garbage collections per diagram.
+ *
+ *  Usage: java Voronoi_benchmark batch [N ...]
+ *  Builds 2e6 / N diagrams of N random sites one after the other with
+ *  compact() and with Voronoi_batch on 1, 2, 4, ... threads up to the
+ *  number of cores, with buildAll() and with the futures of submitAll(),
+ *  and reports the diagrams per second and the speedup.
+ *
+ **************************************************************************** */
+
+import edu.princeton.cs.algs4.StdRandom;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+
+public class Voronoi_benchmark {
+
+    // the phases of the constructor in the order they run
+    static final String[] PHASES = {
+            "init", "generateVoronoi", "bounding_box", "cut_edges", "cut_first_edge",
+            "update_dcel", "object_graph", "end_to_end"
+    };
+
+    static final int WARMUP = 2; // number of untimed runs of each phase
+    static final long MIN_TIME = 1000000000L; // time each phase for at least 1s
+    static final int MIN_RUNS = 3; // and at least 3 times
+    static final long MAX_WALL = 20000000000L; // unless preparing the runs takes 20s
+
+    // measures the allocations of the current thread
+    static final com.sun.management.ThreadMXBean THREADS
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // the result of measuring one phase
+    static class Result {
+        int runs; // number of timed runs
+        double ns; // mean time per run in nanoseconds
+        double bytes; // mean number of bytes allocated per run
+        long gc_count; // number of collections during the timed runs
+        long gc_time; // time spent in collections in milliseconds
+    }
+
+    // generate N sites uniformly at random in the unit square
+    static double[][] random_sites(int N, long seed) {
+        StdRandom.setSeed(seed);
+        double[] xc = new double[N];
+        double[] yc = new double[N];
+        for (int i = 0; i < N; i++) {
+            xc[i] = StdRandom.uniform();
+            yc[i] = StdRandom.uniform();
+        }
+        return new double[][] { xc, yc };
+    }
+
+    // generate about N sites on a jittered grid of sqrt(N) rows, scanned row
+    // by row from left to right with the y-coordinate slightly decreasing
+    static double[][] row_sites(int N, long seed) {
+        StdRandom.setSeed(seed);
+        int k = (int) Math.ceil(Math.sqrt(N));
+        double[] xc = new double[N];
+        double[] yc = new double[N];
+        for (int i = 0; i < N; i++) {
+            int row = i / k;
+            int col = i % k;
+            xc[i] = (col + 0.3 * StdRandom.uniform()) / k;
+            yc[i] = 1 - (row + 0.5 * col / k) / k + 1e-9 * StdRandom.uniform();
+        }
+        return new double[][] { xc, yc };
+    }
+
+    // generate N sites on a grid of sqrt(N) rows with a jitter of 1e-6 of
+    // the spacing, so that most neighbor distances are almost equal
+    static double[][] grid_sites(int N, long seed) {
+        StdRandom.setSeed(seed);
+        int k = (int) Math.ceil(Math.sqrt(N));
+        double[] xc = new double[N];
+        double[] yc = new double[N];
+        for (int i = 0; i < N; i++) {
+            xc[i] = (i % k + 1e-6 * StdRandom.uniform()) / k;
+            yc[i] = (i / k + 1e-6 * StdRandom.uniform()) / k;
+        }
+        return new double[][] { xc, yc };
+    }
+
+    // create a diagram that has run all the phases before the phase p
+    static Voronoi_diagram prepare(int p, int N, double[] xc, double[] yc) {
+        Voronoi_diagram diagram = new Voronoi_diagram(N, xc, yc, false);
+        if (p > 1) diagram.generateVoronoi();
+        if (p > 2) set_bounding_box(diagram, diagram.bounding_box());
+        if (p > 3) diagram.cut_edges(diagram.tree.root);
+        if (p > 4) diagram.cut_first_edge();
+        if (p > 5) diagram.update_dcel();
+        return diagram;
+    }
+
+    // store the parameters returned by bounding_box() in the diagram
+    static void set_bounding_box(Voronoi_diagram diagram, double[] a) {
+        diagram.x0 = a[0];
+        diagram.x1 = a[1];
+        diagram.y0 = a[2];
+        diagram.y1 = a[3];
+    }
+
+    // run the phase p once on a prepared diagram, returns the diagram
+    static Object run(int p, Voronoi_diagram diagram, int N, double[] xc, double[] yc) {
+        switch (p) {
+            case 0:
+                return new Voronoi_diagram(N, xc, yc, false);
+            case 1:
+                diagram.generateVoronoi();
+                break;
+            case 2:
+                set_bounding_box(diagram, diagram.bounding_box());
+                break;
+            case 3:
+                diagram.cut_edges(diagram.tree.root);
+                break;
+            case 4:
+                diagram.cut_first_edge();
+                break;
+            case 5:
+                diagram.update_dcel();
+                break;
+            case 6:
+                diagram.build_object_graph();
+                break;
+            default:
+                return new Voronoi_diagram(N, xc, yc);
+        }
+        return diagram;
+    }
+
+    // total number of collections and time spent in them so far
+    static long[] gc_totals() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] { count, time };
+    }
+
+    // measure the phase p on N sites
+    static Result measure(int p, int N, double[] xc, double[] yc) {
+        long thread = Thread.currentThread().getId();
+        Object sink = null;
+
+        for (int k = 0; k < WARMUP; k++) {
+            sink = run(p, prepare(p, N, xc, yc), N, xc, yc);
+        }
+
+        Result r = new Result();
+        long total_ns = 0;
+        long total_bytes = 0;
+        long wall = System.nanoTime();
+        while (r.runs < MIN_RUNS
+                || (total_ns < MIN_TIME && System.nanoTime() - wall < MAX_WALL)) {
+            Voronoi_diagram diagram = p == 0 || p == 7 ? null : prepare(p, N, xc, yc);
+
+            // only count the collections that happen while the phase runs
+            long[] gc_start = gc_totals();
+            long bytes = THREADS.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            sink = run(p, diagram, N, xc, yc);
+            total_ns += System.nanoTime() - start;
+            total_bytes += THREADS.getThreadAllocatedBytes(thread) - bytes;
+            long[] gc_end = gc_totals();
+
+            r.gc_count += gc_end[0] - gc_start[0];
+            r.gc_time += gc_end[1] - gc_start[1];
+            r.runs++;
+        }
+
+        r.ns = (double) total_ns / r.runs;
+        r.bytes = (double) total_bytes / r.runs;
+        if (sink == null) throw new IllegalStateException();
+        return r;
+    }
+
+    // print one row of the result table
+    static void print(int N, String phase, Result r) {
+        double ms = r.ns / 1e6;
+        double mb_per_s = r.ns == 0 ? 0 : (r.bytes / (1 << 20)) / (r.ns / 1e9);
+        System.out.printf("%10d  %-16s %6d %14.3f %16.0f %12.1f %8d %8d%n", N, phase, r.runs,
+                          ms, r.bytes, mb_per_s, r.gc_count, r.gc_time);
+    }
+
+    // time generateVoronoi with the root or the finger search of the beachline,
+    // returns the mean time per run in nanoseconds and the breakpoints
+    // computed per site
+    static double[] measure_search(boolean finger, int N, double[] xc, double[] yc) {
+        long total_ns = 0;
+        long evaluations = 0;
+        int runs = 0;
+        for (int k = 0; k < WARMUP + MIN_RUNS || total_ns < MIN_TIME; k++) {
+            Voronoi_diagram diagram = new Voronoi_diagram(N, xc, yc, false);
+            diagram.tree.finger = finger;
+            long start = System.nanoTime();
+            diagram.generateVoronoi();
+            if (k < WARMUP) continue;
+            total_ns += System.nanoTime() - start;
+            evaluations += diagram.tree.evaluations;
+            runs++;
+        }
+        return new double[] { (double) total_ns / runs, (double) evaluations / runs / N };
+    }
+
+    // compare the root and the finger search of the beachline
+    static void search(int[] sizes) {
+        System.out.printf("%10s  %-8s %14s %14s %14s %14s %8s%n", "N", "sites", "root ms/op",
+                          "finger ms/op", "root bp/site", "finger bp/site", "auto");
+        for (int N : sizes) {
+            for (int d = 0; d < 2; d++) {
+                double[][] sites = d == 0 ? random_sites(N, 451) : row_sites(N, 451);
+                double[] root = measure_search(false, N, sites[0], sites[1]);
+                double[] finger = measure_search(true, N, sites[0], sites[1]);
+                boolean auto = new Voronoi_diagram(N, sites[0], sites[1], false).tree.finger;
+                System.out.printf("%10d  %-8s %14.3f %14.3f %14.2f %14.2f %8s%n", N,
+                                  d == 0 ? "uniform" : "rows", root[0] / 1e6, finger[0] / 1e6,
+                                  root[1], finger[1], auto ? "finger" : "root");
+            }
+        }
+    }
+
+    // time the construction of the diagram, sequential if pool is null,
+    // returns the mean time per run in nanoseconds and the sites swept per
+    // site by the strips of the last run
+    static double[] measure_parallel(ForkJoinPool pool, int N, double[] xc, double[] yc) {
+        long total_ns = 0;
+        double swept = 1;
+        int runs = 0;
+        for (int k = 0; k < WARMUP + MIN_RUNS || total_ns < MIN_TIME; k++) {
+            long start = System.nanoTime();
+            if (pool == null) {
+                new Voronoi_diagram(N, xc, yc, true, false);
+            }
+            else {
+                Parallel_voronoi builder = new Parallel_voronoi(N, xc, yc, pool);
+                Voronoi_diagram diagram = builder.build(false);
+                swept = 1;
+                if (diagram.tree == null) {
+                    long total = 0;
+                    for (Parallel_voronoi.Strip strip : builder.strips) total += strip.swept;
+                    swept = (double) total / N;
+                }
+            }
+            if (k < WARMUP) continue;
+            total_ns += System.nanoTime() - start;
+            runs++;
+        }
+        return new double[] { (double) total_ns / runs, swept };
+    }
+
+    // compare the sequential and the parallel construction
+    static void parallel(int[] sizes) {
+        System.out.printf("%10s  %-10s %14s %10s %14s%n", "N", "threads", "ms/op", "speedup",
+                          "swept/site");
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int N : sizes) {
+            double[][] sites = random_sites(N, 451);
+            double sequential = measure_parallel(null, N, sites[0], sites[1])[0];
+            System.out.printf("%10d  %-10s %14.3f %10.2f %14.2f%n", N, "sequential",
+                              sequential / 1e6, 1.0, 1.0);
+            for (int threads = 1; threads <= cores; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                double[] r = measure_parallel(pool, N, sites[0], sites[1]);
+                pool.shutdown();
+                System.out.printf("%10d  %-10d %14.3f %10.2f %14.2f%n", N, threads, r[0] / 1e6,
+                                  sequential / r[0], r[1]);
+            }
+        }
+    }
+
+    // read the text input with Scanner, as the main of Voronoi_diagram does
+    static double[][] scanner(File file) throws IOException {
+        try (Scanner in = new Scanner(file)) {
+            int N = in.nextInt();
+            double[] xc = new double[N];
+            double[] yc = new double[N];
+            for (int i = 0; i < N; i++) xc[i] = in.nextDouble();
+            for (int i = 0; i < N; i++) yc[i] = in.nextDouble();
+            return new double[][] { xc, yc };
+        }
+    }
+
+    // time reading N sites with Scanner, Site_text and Site_file
+    static void parse(int[] sizes) throws IOException {
+        System.out.printf("%10s  %-10s %12s %10s %10s%n", "N", "reader", "ms/op", "MB/s", "speedup");
+        for (int N : sizes) {
+            double[][] sites = random_sites(N, 451);
+            File text = File.createTempFile("sites", ".txt");
+            File binary = File.createTempFile("sites", ".bin");
+            try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(text), 1 << 16))) {
+                out.println(N);
+                for (double x : sites[0]) out.println(x);
+                for (double y : sites[1]) out.println(y);
+            }
+            Site_file.convert(text.getPath(), binary.getPath());
+
+            double scanner = 0;
+            String[] readers = { "scanner", "site_text", "site_file" };
+            for (int r = 0; r < readers.length; r++) {
+                long total_ns = 0;
+                int runs = 0;
+                for (int k = 0; k < WARMUP + MIN_RUNS || total_ns < MIN_TIME; k++) {
+                    long start = System.nanoTime();
+                    double[][] read;
+                    if (r == 0) read = scanner(text);
+                    else if (r == 1) read = Site_text.read(text.getPath());
+                    else read = Site_file.read(binary.getPath());
+                    long ns = System.nanoTime() - start;
+                    if (read[0].length != N) throw new IllegalStateException();
+                    if (k < WARMUP) continue;
+                    total_ns += ns;
+                    runs++;
+                    if (r == 0 && total_ns > MAX_WALL) break;
+                }
+                double ns = (double) total_ns / runs;
+                if (r == 0) scanner = ns;
+                long bytes = r == 2 ? binary.length() : text.length();
+                System.out.printf("%10d  %-10s %12.1f %10.1f %10.1f%n", N, readers[r], ns / 1e6,
+                                  (bytes / (double) (1 << 20)) / (ns / 1e9), scanner / ns);
+            }
+            text.delete();
+            binary.delete();
+        }
+    }
+
+    // time locate(), or locateAll() if batch, on the queries with the given
+    // number of threads, returns the mean time per query in nanoseconds
+    static double measure_locate(Voronoi_diagram diagram, double[] qx, double[] qy, int threads,
+                                 boolean batch) {
+        int Q = qx.length;
+        int[] out = new int[Q];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long total_ns = 0;
+        int runs = 0;
+        for (int k = 0; k < WARMUP + MIN_RUNS || total_ns < MIN_TIME; k++) {
+            long start = System.nanoTime();
+            if (batch) diagram.locator().locateAll(qx, qy, out, pool);
+            else pool.submit(() -> java.util.stream.IntStream.range(0, threads).parallel().forEach(t -> {
+                for (int q = t; q < Q; q += threads) out[q] = diagram.locate(qx[q], qy[q]);
+            })).join();
+            if (k < WARMUP) continue;
+            total_ns += System.nanoTime() - start;
+            runs++;
+        }
+        pool.shutdown();
+        return (double) total_ns / runs / Q;
+    }
+
+    // compare locate() with the brute force scan of the sites
+    static void locate(int[] sizes) {
+        System.out.printf("%10s  %-12s %12s %14s %10s%n", "N", "method", "ns/query", "queries/s",
+                          "speedup");
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int N : sizes) {
+            double[][] sites = random_sites(N, 451);
+            double[][] queries = random_sites(1000000, 452);
+            Voronoi_diagram diagram = Voronoi_diagram.compact(N, sites[0], sites[1]);
+            diagram.locate(0, 0);
+
+            // the brute force on a sample small enough to finish
+            int sample = (int) Math.max(100, Math.min(100000, 2e9 / N / 10));
+            int[] nearest = new int[sample];
+            long start = System.nanoTime();
+            for (int q = 0; q < sample; q++) {
+                nearest[q] = Point_locator.brute_force(N, sites[0], sites[1], queries[0][q],
+                                                       queries[1][q]);
+            }
+            double brute = (double) (System.nanoTime() - start) / sample;
+            int wrong = 0;
+            for (int q = 0; q < sample; q++) {
+                int a = diagram.locate(queries[0][q], queries[1][q]);
+                int b = nearest[q];
+                if (Geometry.squared_distance(queries[0][q], queries[1][q], sites[0][a], sites[1][a])
+                        != Geometry.squared_distance(queries[0][q], queries[1][q], sites[0][b],
+                                                     sites[1][b])) wrong++;
+            }
+            System.out.printf("%10d  %-12s %12.1f %14.0f %10.2f%n", N, "brute_force", brute,
+                              1e9 / brute, 1.0);
+            for (int batch = 0; batch < 2; batch++) {
+                for (int threads = 1; threads <= cores; threads *= 2) {
+                    double ns = measure_locate(diagram, queries[0], queries[1], threads, batch == 1);
+                    System.out.printf("%10d  %-12s %12.1f %14.0f %10.2f%n", N,
+                                      (batch == 1 ? "locateAll/" : "locate/") + threads, ns,
+                                      1e9 / ns, brute / ns);
+                }
+            }
+            if (wrong > 0) System.out.printf("%10d  %d of %d queries differ from the brute force%n",
+                                             N, wrong, sample);
+        }
+    }
+
+    // time a task, returns the mean time per run in nanoseconds
+    static double measure_task(Runnable task) {
+        long total_ns = 0;
+        int runs = 0;
+        for (int k = 0; k < WARMUP + MIN_RUNS || total_ns < MIN_TIME; k++) {
+            long start = System.nanoTime();
+            task.run();
+            if (k < WARMUP) continue;
+            total_ns += System.nanoTime() - start;
+            runs++;
+            if (total_ns > MAX_WALL) break;
+        }
+        return (double) total_ns / runs;
+    }
+
+    // compare the analytics on the neighbors with the brute force
+    static void analytics(int[] sizes) {
+        System.out.printf("%10s  %-8s %-18s %12s%n", "N", "sites", "task", "ms/op");
+        for (int N : sizes) {
+            for (int d = 0; d < 2; d++) {
+                double[][] sites = d == 0 ? random_sites(N, 451) : grid_sites(N, 451);
+                double[] xc = sites[0];
+                double[] yc = sites[1];
+                String layout = d == 0 ? "uniform" : "grid";
+                Voronoi_diagram diagram = Voronoi_diagram.compact(N, xc, yc);
+                Site_analytics analytics = diagram.analytics();
+                double[] ns = {
+                        measure_task(diagram::site_graph),
+                        measure_task(analytics::nearest_neighbors),
+                        measure_task(analytics::minimum_spanning_tree)
+                };
+                String[] tasks = { "site_graph", "nearest_neighbors", "spanning_tree" };
+                for (int k = 0; k < tasks.length; k++) {
+                    System.out.printf("%10d  %-8s %-18s %12.1f%n", N, layout, tasks[k], ns[k] / 1e6);
+                }
+
+                // the brute force of a sample of the sites
+                int sample = Math.min(N, 1000);
+                long start = System.nanoTime();
+                long sink = 0;
+                for (int i = 0; i < sample; i++) {
+                    double r = Double.POSITIVE_INFINITY;
+                    for (int j = 0; j < N; j++) {
+                        if (j != i) r = Math.min(r, Geometry.squared_distance(xc[i], yc[i], xc[j], yc[j]));
+                    }
+                    sink += (long) (r * 1e12);
+                }
+                double brute = (double) (System.nanoTime() - start) / sample * N;
+                System.out.printf("%10d  %-8s %-18s %12.1f%n", N, layout, "brute_force (est.)", brute / 1e6);
+                if (sink == -1) System.out.println();
+            }
+        }
+    }
+
+    // compare the insertion of sites into a built diagram with a new build
+    static void insert(int[] sizes) {
+        System.out.printf("%10s  %-18s %12s%n", "N", "method", "us/site");
+        for (int N : sizes) {
+            int M = 10000;
+            double[][] sites = random_sites(N + M, 451);
+            double[] xc = java.util.Arrays.copyOf(sites[0], N);
+            double[] yc = java.util.Arrays.copyOf(sites[1], N);
+            for (int objects = 0; objects < 2; objects++) {
+                Voronoi_diagram diagram = objects == 1 ? new Voronoi_diagram(N, xc, yc)
+                                                       : Voronoi_diagram.compact(N, xc, yc);
+                diagram.addSite(sites[0][N], sites[1][N]);
+                long start = System.nanoTime();
+                for (int i = N + 1; i < N + M; i++) diagram.addSite(sites[0][i], sites[1][i]);
+                double us = (System.nanoTime() - start) / 1e3 / (M - 1);
+                System.out.printf("%10d  %-18s %12.2f%n", N, objects == 1 ? "addSite/objects" : "addSite", us);
+
+                // the removals, without the ones that build the diagram again
+                java.util.Random random = new java.util.Random(453);
+                long total = 0;
+                int rebuilt = 0;
+                for (int k = 0; k < M; k++) {
+                    Voronoi_editor editor = diagram.editor;
+                    start = System.nanoTime();
+                    diagram.removeSite(random.nextInt(diagram.N));
+                    long ns = System.nanoTime() - start;
+                    if (diagram.editor == editor) total += ns;
+                    else rebuilt++;
+                }
+                System.out.printf("%10d  %-18s %12.2f   (%d rebuilt)%n", N,
+                                  objects == 1 ? "removeSite/objects" : "removeSite",
+                                  total / 1e3 / (M - rebuilt), rebuilt);
+            }
+            double ns = measure_task(() -> Voronoi_diagram.compact(N + 1, sites[0], sites[1]));
+            System.out.printf("%10d  %-18s %12.2f%n", N, "compact(N + 1)", ns / 1e3);
+        }
+    }
+
+    // compare the frames of moving sites repaired by moveSites() with a new
+    // build of every frame
+    static void kinetic(int[] sizes) {
+        System.out.printf("%10s  %-18s %12s%n", "N", "method", "ms/frame");
+        for (int N : sizes) {
+            int frames = 20;
+            for (double speed : new double[] { 0.05, 0.10, 0.15 }) {
+                double[][] sites = random_sites(N, 451);
+                double[] xc = sites[0];
+                double[] yc = sites[1];
+                double[] vx = new double[N];
+                double[] vy = new double[N];
+                double step = speed / Math.sqrt(N);
+                for (int i = 0; i < N; i++) {
+                    double angle = 2 * Math.PI * StdRandom.uniform();
+                    vx[i] = step * Math.cos(angle);
+                    vy[i] = step * Math.sin(angle);
+                }
+                Voronoi_diagram diagram = Voronoi_diagram.compact(N, xc.clone(), yc.clone());
+                long total = 0;
+                for (int f = 0; f < frames; f++) {
+                    for (int i = 0; i < N; i++) {
+                        xc[i] += vx[i];
+                        yc[i] += vy[i];
+                    }
+                    long start = System.nanoTime();
+                    diagram.moveSites(xc, yc);
+                    total += System.nanoTime() - start;
+                }
+                System.out.printf("%10d  %-18s %12.1f   (%d of %d rebuilt)%n", N,
+                                  String.format("moveSites %.2f", speed), total / 1e6 / frames,
+                                  diagram.moveFallbacks(), frames);
+            }
+            double[][] sites = random_sites(N, 451);
+            double ns = measure_task(() -> Voronoi_diagram.compact(N, sites[0], sites[1]));
+            System.out.printf("%10d  %-18s %12.1f%n", N, "compact(N)", ns / 1e6);
+        }
+    }
+
+    // compare new diagrams with the diagrams of a Voronoi_builder that
+    // reuses its buffers, on many diagrams of N sites
+    static void builder(int[] sizes) {
+        System.out.printf("%10s  %-16s %8s %14s %16s %8s %8s%n", "N", "method", "runs",
+                          "us/op", "bytes/op", "gc.count", "gc.ms");
+        long thread = Thread.currentThread().getId();
+        for (int N : sizes) {
+            int M = Math.max(10, 1000000 / N);
+            double[][][] sets = new double[16][][];
+            for (int k = 0; k < sets.length; k++) sets[k] = random_sites(N, 451 + k);
+            for (int method = 0; method < 2; method++) {
+                Voronoi_builder builder = new Voronoi_builder();
+                long sink = 0;
+                for (int pass = 0; pass <= WARMUP; pass++) {
+                    long[] gc_start = gc_totals();
+                    long bytes = THREADS.getThreadAllocatedBytes(thread);
+                    long start = System.nanoTime();
+                    for (int k = 0; k < M; k++) {
+                        double[][] set = sets[k % sets.length];
+                        Voronoi_diagram diagram = method == 0 ? Voronoi_diagram.compact(N, set[0], set[1])
+                                                              : builder.build(N, set[0], set[1]);
+                        sink += diagram.dcel.edge_count;
+                    }
+                    long ns = System.nanoTime() - start;
+                    bytes = THREADS.getThreadAllocatedBytes(thread) - bytes;
+                    long[] gc_end = gc_totals();
+                    if (pass < WARMUP) continue;
+                    System.out.printf("%10d  %-16s %8d %14.2f %16.0f %8d %8d%n", N,
+                                      method == 0 ? "compact" : "Voronoi_builder", M, ns / 1e3 / M,
+                                      (double) bytes / M, gc_end[0] - gc_start[0], gc_end[1] - gc_start[1]);
+                }
+                if (sink == -1) System.out.println();
+            }
+        }
+    }
+
+    // the throughput of Voronoi_batch on many diagrams of N sites by the
+    // number of threads
+    static void batch(int[] sizes) {
+        System.out.printf("%10s  %-12s %8s %14s %10s%n", "N", "method", "threads", "diagrams/s",
+                          "speedup");
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int N : sizes) {
+            int M = Math.max(16, 2000000 / N);
+            double[][] xc = new double[M][];
+            double[][] yc = new double[M][];
+            for (int k = 0; k < M; k++) {
+                double[][] sites = random_sites(N, 451 + k);
+                xc[k] = sites[0];
+                yc[k] = sites[1];
+            }
+            long[] sink = new long[M];
+            double sequential = measure_task(() -> {
+                for (int k = 0; k < M; k++) {
+                    sink[k] = Voronoi_diagram.compact(N, xc[k], yc[k]).dcel.edge_count;
+                }
+            });
+            System.out.printf("%10d  %-12s %8d %14.0f %10.2f%n", N, "compact", 1,
+                              M / (sequential / 1e9), 1.0);
+            for (int threads = 1; threads <= cores; threads *= 2) {
+                try (Voronoi_batch batch = new Voronoi_batch(threads)) {
+                    double all = measure_task(() -> batch.buildAll(
+                            xc, yc, (k, diagram) -> sink[k] = diagram.dcel.edge_count));
+                    double futures = measure_task(() -> {
+                        for (java.util.concurrent.CompletableFuture<Integer> f
+                                : batch.submitAll(xc, yc, diagram -> diagram.dcel.edge_count)) {
+                            f.join();
+                        }
+                    });
+                    System.out.printf("%10d  %-12s %8d %14.0f %10.2f%n", N, "buildAll", threads,
+                                      M / (all / 1e9), sequential / all);
+                    System.out.printf("%10d  %-12s %8d %14.0f %10.2f%n", N, "submitAll", threads,
+                                      M / (futures / 1e9), sequential / futures);
+                }
+            }
+        }
+    }
+
+    // run the benchmarks
+    public static void main(String[] args) throws IOException {
+        String mode = args.length > 0 && !Character.isDigit(args[0].charAt(0)) ? args[0] : "";
+        boolean search = mode.equals("search");
+        int skip = mode.isEmpty() ? 0 : 1;
+
+        int[] sizes = { 1000, 10000, 100000, 1000000, 10000000 };
+        if (args.length > skip) {
+            sizes = new int[args.length - skip];
+            for (int i = skip; i < args.length; i++) {
+                sizes[i - skip] = (int) Double.parseDouble(args[i]);
+            }
+        }
+
+        if (search) {
+            search(sizes);
+            return;
+        }
+        if (mode.equals("parallel")) {
+            parallel(sizes);
+            return;
+        }
+        if (mode.equals("parse")) {
+            parse(sizes);
+            return;
+        }
+        if (mode.equals("locate")) {
+            locate(sizes);
+            return;
+        }
+        if (mode.equals("analytics")) {
+            analytics(sizes);
+            return;
+        }
+        if (mode.equals("insert")) {
+            insert(sizes);
+            return;
+        }
+        if (mode.equals("kinetic")) {
+            kinetic(sizes);
+            return;
+        }
+        if (mode.equals("builder")) {
+            builder(sizes);
+            return;
+        }
+        if (mode.equals("batch")) {
+            batch(sizes);
+            return;
+        }
+
+        System.out.printf("%10s  %-16s %6s %14s %16s %12s %8s %8s%n", "N", "phase", "runs",
+                          "ms/op", "bytes/op", "MB/s alloc", "gc.count", "gc.ms");
+        for (int N : sizes) {
+            double[][] sites = random_sites(N, 451);
+            for (int p = 0; p < PHASES.length; p++) {
+                print(N, PHASES[p], measure(p, N, sites[0], sites[1]));
+            }
+            Voronoi_diagram diagram = new Voronoi_diagram(N, sites[0], sites[1]);
+            System.out.printf("%10d  stale circle events removed from the queue: %d%n", N,
+                              diagram.pq.stale_avoided);
+        }
+    }
+}
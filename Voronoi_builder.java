@@ -0,0 +1,130 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Builds many Voronoi diagrams one after the other with the
+ *  same buffers. A new Voronoi_diagram allocates its DCEL arrays, its
+ *  event queue, the arrays of the sort of the sites and a node for every
+ *  arc and breakpoint of the beachline. The builder keeps one diagram and
+ *  every build empties it with reset() and sweeps the new sites into it:
+ *  the arrays keep the size of the largest diagram so far and the tree
+ *  hands out the nodes of the last sweep again, so after the first builds
+ *  a build of a diagram of about the same size allocates almost nothing.
+ *
+ *  The diagram returned by build() belongs to the builder and is emptied
+ *  by the next build or reset(), a diagram that must outlive it is built
+ *  with Voronoi_diagram.compact() instead. A builder is used by one thread
+ *  at a time.
+ *
+ **************************************************************************** */
+
+public class Voronoi_builder {
+
+    boolean objects; // whether the diagrams have the object graph
+    Voronoi_diagram diagram; // the diagram of the last build, null before the first
+
+    // the scratch arrays of the sort of the sites
+    int[] order = new int[0];
+    int[] order_aux = new int[0];
+    long[] key = new long[0];
+    long[] key_aux = new long[0];
+    int[][] count = new int[Site_sort.DIGITS][Site_sort.RADIX + 1];
+
+    int builds; // number of diagrams built
+
+
+    // create a builder of diagrams without the object graph, the consumer
+    // walks the DCEL through dcel()
+    public Voronoi_builder() {
+        this(false);
+    }
+
+    // create a builder, if objects is true the diagrams also have the object
+    // graph, whose objects are allocated by every build
+    public Voronoi_builder(boolean objects) {
+        this.objects = objects;
+    }
+
+    // build the Voronoi diagram of the N sites (xc, yc) with the buffers of
+    // the last build. The diagram is valid until the next build or reset()
+    public Voronoi_diagram build(int N, double[] xc, double[] yc) {
+        if (xc.length < N || yc.length < N) throw new IllegalArgumentException("Arrays are too short");
+        builds++;
+        if (diagram == null) {
+            diagram = new Voronoi_diagram(N, xc, yc, true, objects);
+            return diagram;
+        }
+        if (order.length < N) {
+            order = new int[N];
+            order_aux = new int[N];
+            key = new long[N];
+            key_aux = new long[N];
+        }
+        Site_sort.sweep_order(N, xc, yc, order, order_aux, key, key_aux, count);
+        diagram.reset(N, xc, yc, order);
+        diagram.build();
+        return diagram;
+    }
+
+    // empty the diagram of the last build and keep its buffers for the next
+    // one, so that the builder does not hold on to the sites
+    public void reset() {
+        if (diagram != null) diagram.reset(0, new double[0], new double[0], order);
+    }
+
+    // the number of diagrams built
+    public int builds() {
+        return builds;
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+        int N = 1000;
+        int M = 2000;
+        if (args.length > 0) N = Integer.parseInt(args[0]);
+        if (args.length > 1) M = Integer.parseInt(args[1]);
+        java.util.Random random = new java.util.Random(451);
+        com.sun.management.ThreadMXBean threads
+                = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        // diagrams of N to 2N sites, every 100th compared with a new one
+        Voronoi_builder builder = new Voronoi_builder();
+        double[] xc = new double[2 * N];
+        double[] yc = new double[2 * N];
+        int differ = 0;
+        long bytes = 0;
+        for (int k = 0; k < M; k++) {
+            int n = N + random.nextInt(N + 1);
+            for (int i = 0; i < n; i++) {
+                xc[i] = random.nextDouble();
+                yc[i] = random.nextDouble();
+            }
+            long before = threads.getThreadAllocatedBytes(thread);
+            Voronoi_diagram diagram = builder.build(n, xc, yc);
+            if (k >= M / 2) bytes += threads.getThreadAllocatedBytes(thread) - before;
+            if (k % 100 == 0) {
+                Voronoi_diagram fresh = Voronoi_diagram.compact(n, xc.clone(), yc.clone());
+                if (!Voronoi_editor.same_triangles(diagram, fresh)) differ++;
+            }
+        }
+        System.out.println(M + " diagrams, differ from a new build: " + differ);
+        System.out.printf("bytes allocated per build: %.0f%n", (double) bytes / (M - M / 2));
+
+        // a builder with the object graph
+        Voronoi_builder objects = new Voronoi_builder(true);
+        for (int k = 0; k < 3; k++) {
+            for (int i = 0; i < N; i++) {
+                xc[i] = random.nextDouble();
+                yc[i] = random.nextDouble();
+            }
+            Voronoi_diagram diagram = objects.build(N, xc, yc);
+            System.out.println("objects: " + diagram.faceCount() + " faces, "
+                                       + diagram.vor_edges.size() + " edges");
+        }
+        objects.reset();
+        System.out.println("builds: " + objects.builds());
+    }
+}
@@ -6,29 +6,42 @@
  *  Description:  Implements Fortune's sweepline algorithm for computing the
  *  Voronoi diagram of a set of n points in the plane. The algorithm also
  *  handles degenrate cases when 2 of the points have the same y-coordinate.
- *  Returns the Voronoi diagram in a doubly connected edge list.
+ *  Returns the Voronoi diagram in a doubly connected edge list. The sweep
+ *  writes the DCEL into primitive arrays (Compact_dcel), the object graph
+ *  of Vertex, Half_Edge, Voronoi_edge and Face is built from them at the
+ *  end unless the diagram is created with compact(). A Voronoi_listener
+ *  receives the vertices and the edges while the sweep creates them, and
+ *  without retaining the diagram the sweep only keeps the edges on the
+ *  beachline.
  *
  **************************************************************************** */
 
-import edu.princeton.cs.algs4.MaxPQ;
 import edu.princeton.cs.algs4.StdDraw;
 import edu.princeton.cs.algs4.StdRandom;
 
 import java.awt.Color;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 public class Voronoi_diagram {
 
     int N; // number of point sites
+    Compact_dcel dcel; // the DCEL in primitive arrays, written by the sweep
+    boolean objects; // whether to build the object graph of the DCEL
+
+    // the object graph of the DCEL, built from dcel at the end
     ArrayList<Voronoi_edge> vor_edges; // the vornoi edges
     ArrayList<Vertex> vor_vertices; // the voronoi vertices
-    Face[] vor_faces; // the faces
+    Face[] vor_faces; // the faces in the first N entries, an edit grows it by doubling, see faceCount()
     ArrayList<Half_Edge> vor_half_edges; // the half edges
-    MaxPQ<Event> pq;// the event queue
+
+    int[] order; // the sites in the order in which the sweepline meets them
+    Event_queue pq; // the queue of the circle events
     double[] xc; // the x-coordinates of the sites
     double[] yc; // the y-coordinates of the sites
 
-    Voronoi_edge first_vertical; // the first vertical edge if ti exists
+    int first_vertical; // the first vertical edge if it exists, -1 otherwise
 
     double ycurr; // the current position of the sweepline
 
@@ -42,17 +55,51 @@ public class Voronoi_diagram {
     // O(logn) insertion and deletion
     SBT tree;
 
+    Geometry geo; // scratch state of the geometric constructions
+
+    Voronoi_listener listener; // receives the vertices and edges, or null
+
+    volatile Point_locator locator; // the point location index, built by the first query
+    Voronoi_editor editor; // edits the diagram in place, made by the first edit
+    Kinetic_voronoi kinetic; // moves the sites in place, made by the first move
+
 
     // create the Voronoi diagram
     public Voronoi_diagram(int N, double[] xc, double[] yc) {
+        this(N, xc, yc, true, true);
+    }
 
-        // initialize the faces, one for each site
-        vor_faces = new Face[N];
-        for (int i = 0; i < N; i++) {
-            Face face = new Face();
-            face.index = i;
-            vor_faces[i] = face;
-        }
+    // create the Voronoi diagram, if build is false only the faces and the
+    // event queue are initialized and the phases can be run one at a time
+    Voronoi_diagram(int N, double[] xc, double[] yc, boolean build) {
+        this(N, xc, yc, build, true);
+    }
+
+    // create the Voronoi diagram, if objects is false the diagram is only
+    // available through dcel() and the object graph is not built
+    Voronoi_diagram(int N, double[] xc, double[] yc, boolean build, boolean objects) {
+        this(N, xc, yc, build, objects, new Compact_dcel(N));
+    }
+
+    // create the Voronoi diagram and report its vertices and edges to the
+    // listener while they are created. If retain is false the diagram is not
+    // kept, the DCEL only holds the edges that are not complete yet
+    public Voronoi_diagram(int N, double[] xc, double[] yc, Voronoi_listener listener,
+                           boolean retain) {
+        this(N, xc, yc, false, retain, retain ? new Compact_dcel(N) : Compact_dcel.streaming());
+        if (listener == null) throw new IllegalArgumentException("The listener is null");
+        this.listener = listener;
+        build();
+    }
+
+    // create the Voronoi diagram that writes into the given DCEL
+    private Voronoi_diagram(int N, double[] xc, double[] yc, boolean build, boolean objects,
+                            Compact_dcel dcel) {
+
+        // initialize the DCEL
+        this.dcel = dcel;
+        this.objects = objects;
+        this.first_vertical = -1;
 
         // initialize the vor edges
         this.vor_edges = new ArrayList<>();
@@ -70,600 +117,493 @@ public class Voronoi_diagram {
         this.xc = xc;
         this.yc = yc;
 
-        // initialize the event queue with the sites
-        pq = new MaxPQ<>(N);
+        // sort the sites once, the site events never change
+        order = Site_sort.sweep_order(N, xc, yc);
 
-        for (int i = 0; i < N; i++) {
-            Node newnode = new Node();
-            newnode.point = i;
-            newnode.xc = xc[i];
-            newnode.yc = yc[i];
-            newnode.internal = false;
-            Event event = new Event(yc[i], xc[i], newnode);
-            event.index = i;
-            event.site_event = true;
-            newnode.event = event;
-            pq.insert(event);
-        }
+        // initialize the queue of the circle events, on uniform inputs only
+        // about sqrt(N) of them are live at the same time
+        pq = new Event_queue(4 * (int) Math.sqrt(N) + 16);
 
 
-        // initialize the self-balancing tree
+        // initialize the self-balancing tree, search the beachline from the
+        // last inserted arc if consecutive sites are close in x
         tree = new SBT(xc, yc);
+        tree.finger = local_order();
 
+        // initialize the geometry kernel
+        geo = new Geometry();
 
-        // generate the voronoi diagram
-        generateVoronoi();
-
+        if (build) build();
+    }
 
-        // initialize the bounding box parameters
-        double[] a = bounding_box();
-        x0 = a[0];
-        x1 = a[1];
-        y0 = a[2];
-        y1 = a[3];
+    // create a diagram of N sites around a DCEL that is assembled outside the
+    // sweep, as the parallel build does. The sweep state is not initialized
+    Voronoi_diagram(int N, double[] xc, double[] yc, Compact_dcel dcel) {
+        this.N = N;
+        this.xc = xc;
+        this.yc = yc;
+        this.dcel = dcel;
+        this.first_vertical = -1;
+        this.vor_edges = new ArrayList<>();
+        this.vor_vertices = new ArrayList<>();
+        this.vor_half_edges = new ArrayList<>();
+        geo = new Geometry();
+    }
 
-        // cut the edges
-        cut_edges(tree.root);
+    // create the Voronoi diagram in parallel on the common ForkJoinPool, the
+    // diagram is the same as the one of the sequential constructor
+    public static Voronoi_diagram parallel(int N, double[] xc, double[] yc) {
+        return parallel(N, xc, yc, ForkJoinPool.commonPool(), true);
+    }
 
-        // cut the first edge if it vertical and neccessary
-        cut_first_edge();
+    // create the Voronoi diagram in parallel on the given pool, if objects is
+    // false the object graph is not built
+    public static Voronoi_diagram parallel(int N, double[] xc, double[] yc, ForkJoinPool pool,
+                                           boolean objects) {
+        return new Parallel_voronoi(N, xc, yc, pool).build(objects);
+    }
 
-        // update the DCEL with the edges on the boudning box
-        update_dcel();
+    // create the Voronoi diagram without the object graph, the consumer walks
+    // the DCEL through the integer indices of dcel()
+    public static Voronoi_diagram compact(int N, double[] xc, double[] yc) {
+        return new Voronoi_diagram(N, xc, yc, true, false);
     }
 
-    // generate the Voronoi diagram
-    public void generateVoronoi() {
+    // the DCEL of the diagram as primitive arrays
+    public Dcel_view dcel() {
+        return dcel;
+    }
 
-        // get the first valid event, while deleting the ones that are invalid
-        while (!pq.isEmpty()) {
-            Event e = pq.delMax();
-            while (!e.valid) {
-                if (pq.isEmpty()) {
-                    break;
-                }
-                else {
-                    e = pq.delMax();
-                }
-            }
-            if (e.valid) {
+    // the faces of the object graph, face i is the cell of site i, or null
+    // without the object graph. addSite() grows the array by doubling and
+    // removeSite() keeps its room, so after an edit only the first
+    // faceCount() entries are faces and the rest are null
+    public Face[] faces() {
+        return vor_faces;
+    }
 
-                // handle site event
-                if (e.site_event) {
-                    handleSiteEvent(e);
-                }
+    // the number of faces in faces(), N with the object graph and 0 without
+    public int faceCount() {
+        return vor_faces == null ? 0 : N;
+    }
 
-                // handle circle event
-                if (e.circle_event) {
-                    handleCircleEvent(e);
+    // the index of the site whose cell contains (x, y), the nearest site.
+    // The index is built by the first call, any number of threads can query
+    public int locate(double x, double y) {
+        return locator().locate(x, y);
+    }
 
-                }
-            }
-        }
+    // find the site nearest to every query (qx[q], qy[q]) and store it in
+    // out[q], the queries are answered in parallel on the common pool
+    public void locateAll(double[] qx, double[] qy, int[] out) {
+        locator().locateAll(qx, qy, out);
+    }
 
+    // the sites that share a voronoi edge, in compressed sparse row form
+    public Site_graph site_graph() {
+        return new Site_graph(dcel);
     }
 
-    // update the DCEL (Doubly Connected Edge List)
-    public void update_dcel() {
+    // the nearest neighbors and the minimum spanning tree of the sites
+    public Site_analytics analytics() {
+        return new Site_analytics(N, xc, yc, site_graph());
+    }
 
-        // go through all the faces
-        for (int i = 0; i < N; i++) {
-            Face current_face = vor_faces[i];
-            Half_Edge current = current_face.half_edge;
-            Half_Edge start = current_face.half_edge;
-
-            // detect if the face is infinte
-            boolean flag = false;
-            while (current.next != null) {
-                current = current.next;
-                if (current.equals(start)) {
-                    flag = true;
-                    break;
+    // the Delaunay triangulation of the sites, read off the DCEL
+    public Delaunay delaunay() {
+        return new Delaunay(dcel);
+    }
 
+    // the point location index, built by the first call
+    Point_locator locator() {
+        Point_locator l = locator;
+        if (l == null) {
+            synchronized (this) {
+                l = locator;
+                if (l == null) {
+                    l = new Point_locator(N, xc, yc, dcel);
+                    locator = l;
                 }
-
             }
+        }
+        return l;
+    }
 
+    // insert the site (x, y) into the finished diagram and return its index,
+    // which is N before the call. Only the faces around the new cell are
+    // changed. The first edit copies the site arrays
+    public int addSite(double x, double y) {
+        if (editor == null) editor = new Voronoi_editor(this);
+        return editor.add_site(x, y);
+    }
 
-            // if face is infinite stop and continue the loop
-            if (flag) continue;
+    // remove site i from the finished diagram, the last site takes the
+    // index i. Returns the old index of the site that moved to i, or -1 if
+    // i was the last site. Only the neighbors of the face are changed
+    public int removeSite(int i) {
+        if (editor == null) editor = new Voronoi_editor(this);
+        return editor.remove_site(i);
+    }
 
+    // move every site i to (x[i], y[i]) and repair the diagram with flips
+    // of its Delaunay edges, on the common ForkJoinPool. Returns the number
+    // of flips, or -1 if the step was too large or could not be repaired and
+    // the diagram was built again. The sites keep their indices
+    public int moveSites(double[] x, double[] y) {
+        return moveSites(x, y, ForkJoinPool.commonPool());
+    }
 
-            // find the two infinite half-edges of that face
-            Half_Edge edge_1 = current;
-            Half_Edge edge_2 = current_face.half_edge;
-            while (edge_2.prev != null) {
-                edge_2 = edge_2.prev;
-            }
+    // move every site i to (x[i], y[i]), on the pool, see moveSites(x, y)
+    public int moveSites(double[] x, double[] y, ForkJoinPool pool) {
+        if (kinetic == null) kinetic = new Kinetic_voronoi(this);
+        return kinetic.move(x, y, pool);
+    }
 
-            // take their vertices which are not infinite
-            Vertex v_2 = edge_2.origin;
-            Vertex v_1 = edge_1.destination;
+    // the number of moves of moveSites() under the motion limit that could
+    // not be repaired in place and built the diagram again
+    public int moveFallbacks() {
+        return kinetic == null ? 0 : kinetic.fallbacks();
+    }
 
+    // build the diagram again from the N sites, after an edit that cannot
+    // be made in place. The object graph is built if the diagram has one
+    void rebuild() {
+        Voronoi_diagram d = new Voronoi_diagram(N, xc, yc, true, vor_faces != null);
+        dcel = d.dcel;
+        objects = d.objects;
+        vor_edges = d.vor_edges;
+        vor_vertices = d.vor_vertices;
+        vor_faces = d.vor_faces;
+        vor_half_edges = d.vor_half_edges;
+        order = d.order;
+        pq = d.pq;
+        tree = d.tree;
+        first_vertical = d.first_vertical;
+        x0 = d.x0;
+        x1 = d.x1;
+        y0 = d.y0;
+        y1 = d.y1;
+        editor = null;
+        locator = null;
+    }
 
-            // the vertices of the box
-            Vertex lb = new Vertex(x0, y0);
-            Vertex rb = new Vertex(x1, y0);
-            Vertex lu = new Vertex(x0, y1);
-            Vertex ru = new Vertex(x1, y1);
+    // make the diagram ready to build the N sites (xc, yc) with the buffers
+    // of the last build, as Voronoi_builder does: the DCEL, the event queue,
+    // the nodes of the beachline and the lists of the object graph are
+    // emptied and reused. order holds the sites in the order of the sweep
+    void reset(int N, double[] xc, double[] yc, int[] order) {
+        this.N = N;
+        this.xc = xc;
+        this.yc = yc;
+        this.order = order;
+        dcel.reset(N);
+        first_vertical = -1;
+        vor_edges.clear();
+        vor_vertices.clear();
+        vor_half_edges.clear();
+        vor_faces = null;
+        pq.clear();
+        tree.reset(xc, yc);
+        tree.finger = local_order();
+        ycurr = 0;
+        locator = null;
+        editor = null;
+        kinetic = null;
+    }
 
-            // add the vertices of the box
-            vor_vertices.add(lb);
-            vor_vertices.add(rb);
-            vor_vertices.add(lu);
-            vor_vertices.add(ru);
+    // write the DCEL and the sites to a file that Mapped_dcel.open() maps
+    public void save(String file) throws IOException {
+        Mapped_dcel.write(dcel, xc, yc, file);
+    }
 
+    // run all the phases of the construction
+    void build() {
 
-            // cut the infinite edges with the bounding box with considering cases for the
-            // position of the the two infinite edges on the infinte face
+        // generate the voronoi diagram
+        generateVoronoi();
 
-            // case if the cut lies on a side of the bouding box
-            boolean indicator = (v_1.yc == y1 && v_2.yc == y1) || (v_1.yc == y0 && v_2.yc == y0)
-                    || (v_1.xc == x0 && v_2.xc == x0) || (v_1.xc == x1 && v_2.xc == x1);
 
-            if (indicator) {
-                Half_Edge newedge = new Half_Edge(0, 0);
-                newedge.box_edge = true;
-                edge_1.next = newedge;
-                newedge.prev = edge_1;
-                edge_2.prev = newedge;
-                newedge.next = edge_2;
-                newedge.origin = v_1;
-                newedge.destination = v_2;
-                newedge.incidentFace = current_face;
+        // initialize the bounding box parameters
+        double[] a = bounding_box();
+        x0 = a[0];
+        x1 = a[1];
+        y0 = a[2];
+        y1 = a[3];
 
-                vor_half_edges.add(newedge);
+        // cut the edges
+        cut_edges(tree.root);
 
-            }
+        // cut the first edge if it vertical and neccessary
+        cut_first_edge();
 
-            // case if the cut contains the upper right angle
-            if (v_1.xc == x1 && v_2.yc == y1) {
-                Half_Edge newedge_1 = new Half_Edge(0, 0);
-                Half_Edge newedge_2 = new Half_Edge(0, 0);
-                newedge_2.incidentFace = current_face;
-                newedge_1.incidentFace = current_face;
-                newedge_1.box_edge = true;
-                newedge_2.box_edge = true;
-
-                edge_1.next = newedge_1;
-                newedge_1.prev = edge_1;
-                newedge_1.next = newedge_2;
-                newedge_2.prev = newedge_1;
-                newedge_2.next = edge_2;
-                edge_2.prev = newedge_2;
-
-                newedge_1.origin = v_1;
-                newedge_1.destination = ru;
-                newedge_2.origin = ru;
-                newedge_2.destination = v_2;
-
-                vor_half_edges.add(newedge_1);
-                vor_half_edges.add(newedge_2);
-            }
+        // a streaming DCEL has no faces to close
+        if (dcel.recycle) return;
 
+        // update the DCEL with the edges on the boudning box
+        update_dcel();
 
-            // case if the cut contains the upper left angle
-            if (v_1.yc == y1 && v_2.xc == x0) {
-                Half_Edge newedge_1 = new Half_Edge(0, 0);
-                Half_Edge newedge_2 = new Half_Edge(0, 0);
-                newedge_2.incidentFace = current_face;
-                newedge_1.incidentFace = current_face;
-                newedge_1.box_edge = true;
-                newedge_2.box_edge = true;
-
-                edge_1.next = newedge_1;
-                newedge_1.prev = edge_1;
-                newedge_1.next = newedge_2;
-                newedge_2.prev = newedge_1;
-                newedge_2.next = edge_2;
-                edge_2.prev = newedge_2;
-
-                newedge_1.origin = v_1;
-                newedge_1.destination = lu;
-                newedge_2.origin = lu;
-                newedge_2.destination = v_2;
-
-                vor_half_edges.add(newedge_1);
-                vor_half_edges.add(newedge_2);
-            }
+        // build the object graph if the consumer uses it
+        if (objects) build_object_graph();
+    }
 
-            // case if the cut contains the bottom left angle
-            if (v_1.xc == x0 && v_2.yc == y0) {
-                Half_Edge newedge_1 = new Half_Edge(0, 0);
-                Half_Edge newedge_2 = new Half_Edge(0, 0);
-                newedge_2.incidentFace = current_face;
-                newedge_1.incidentFace = current_face;
-                newedge_1.box_edge = true;
-                newedge_2.box_edge = true;
-
-                edge_1.next = newedge_1;
-                newedge_1.prev = edge_1;
-                newedge_1.next = newedge_2;
-                newedge_2.prev = newedge_1;
-                newedge_2.next = edge_2;
-                edge_2.prev = newedge_2;
-
-                newedge_1.origin = v_1;
-                newedge_1.destination = lb;
-                newedge_2.origin = lb;
-                newedge_2.destination = v_2;
-
-                vor_half_edges.add(newedge_1);
-                vor_half_edges.add(newedge_2);
-            }
+    // generate the Voronoi diagram
+    public void generateVoronoi() {
 
-            // case if the cut contains the bottom right angle
-            if (v_1.yc == y0 && v_2.xc == x1) {
-                Half_Edge newedge_1 = new Half_Edge(0, 0);
-                Half_Edge newedge_2 = new Half_Edge(0, 0);
-                newedge_2.incidentFace = current_face;
-                newedge_1.incidentFace = current_face;
-                newedge_1.box_edge = true;
-                newedge_2.box_edge = true;
-
-                edge_1.next = newedge_1;
-                newedge_1.prev = edge_1;
-                newedge_1.next = newedge_2;
-                newedge_2.prev = newedge_1;
-                newedge_2.next = edge_2;
-                edge_2.prev = newedge_2;
-
-                newedge_1.origin = v_1;
-                newedge_1.destination = rb;
-                newedge_2.origin = rb;
-                newedge_2.destination = v_2;
-                vor_half_edges.add(newedge_1);
-                vor_half_edges.add(newedge_2);
+        // merge the sorted sites with the queue of the circle events, invalid
+        // circle events are removed from the queue as soon as they become
+        // invalid, so every event on the queue is valid
+        int s = 0; // the next site in the order of the sweep
+        while (s < N || !pq.isEmpty()) {
+
+            // the site goes first if it ties with the top circle event
+            boolean site_first = s < N;
+            if (site_first && !pq.isEmpty()) {
+                int top = pq.maxIndex();
+                int i = order[s];
+                site_first = Event_queue.compare(yc[i], xc[i], pq.y(top), pq.x(top)) >= 0;
             }
 
-            // 4 cases if the cut passes through two opposite sides of the bounding box
-            if (v_1.xc == x1 && v_2.xc == x0) {
-
-                Half_Edge newedge_1 = new Half_Edge(0, 0);
-                Half_Edge newedge_2 = new Half_Edge(0, 0);
-                Half_Edge newedge_3 = new Half_Edge(0, 0);
-
-
-                newedge_1.box_edge = true;
-                newedge_2.box_edge = true;
-                newedge_3.box_edge = true;
-
-
-                edge_1.next = newedge_1;
-                newedge_1.prev = edge_1;
-                newedge_1.next = newedge_2;
-                newedge_2.prev = newedge_1;
-                newedge_2.next = newedge_3;
-                newedge_3.prev = newedge_2;
-                newedge_3.next = edge_2;
-                edge_2.prev = newedge_3;
-
-                newedge_1.origin = v_1;
-                newedge_1.destination = ru;
-                newedge_2.origin = ru;
-                newedge_2.destination = lu;
-                newedge_3.origin = lu;
-                newedge_3.destination = v_2;
-
-                vor_half_edges.add(newedge_1);
-                vor_half_edges.add(newedge_2);
-                vor_half_edges.add(newedge_3);
+            // handle site event
+            if (site_first) {
+                int i = order[s++];
+                handleSiteEvent(i, yc[i]);
+            }
 
+            // handle circle event
+            else {
+                int e = pq.delMax();
+                Arc node = pq.node(e);
+                node.event = -1;
+                handleCircleEvent(node, pq.y(e));
             }
+        }
 
-            if (v_1.yc == y1 && v_2.yc == y0) {
+    }
 
-                Half_Edge newedge_1 = new Half_Edge(0, 0);
-                Half_Edge newedge_2 = new Half_Edge(0, 0);
-                Half_Edge newedge_3 = new Half_Edge(0, 0);
+    // update the DCEL (Doubly Connected Edge List)
+    public void update_dcel() {
 
+        // the vertices of the box
+        int lb = dcel.add_vertex(x0, y0);
+        int rb = dcel.add_vertex(x1, y0);
+        int lu = dcel.add_vertex(x0, y1);
+        int ru = dcel.add_vertex(x1, y1);
 
-                newedge_1.box_edge = true;
-                newedge_2.box_edge = true;
-                newedge_3.box_edge = true;
+        // go through all the faces
+        for (int i = 0; i < N; i++) {
+            close_infinite_face(i, lb, rb, lu, ru);
+        }
+    }
 
+    // close the face i with edges on the bounding box if it is infinite, the
+    // corners of the box are lb, rb, lu and ru
+    public void close_infinite_face(int i, int lb, int rb, int lu, int ru) {
+        int start = dcel.face_edge[i];
+        if (start == -1) return;
+        int current = start;
+
+        // detect if the face is infinte
+        boolean flag = false;
+        while (dcel.next[current] != -1) {
+            current = dcel.next[current];
+            if (current == start) {
+                flag = true;
+                break;
 
-                edge_1.next = newedge_1;
-                newedge_1.prev = edge_1;
-                newedge_1.next = newedge_2;
-                newedge_2.prev = newedge_1;
-                newedge_2.next = newedge_3;
-                newedge_3.prev = newedge_2;
-                newedge_3.next = edge_2;
-                edge_2.prev = newedge_3;
+            }
 
-                newedge_1.origin = v_1;
-                newedge_1.destination = lu;
-                newedge_2.origin = lu;
-                newedge_2.destination = lb;
-                newedge_3.origin = lb;
-                newedge_3.destination = v_2;
+        }
 
-                vor_half_edges.add(newedge_1);
-                vor_half_edges.add(newedge_2);
-                vor_half_edges.add(newedge_3);
 
-            }
+        // if face is finite there is nothing to do
+        if (flag) return;
 
-            if (v_1.xc == x0 && v_2.xc == x1) {
 
-                Half_Edge newedge_1 = new Half_Edge(0, 0);
-                Half_Edge newedge_2 = new Half_Edge(0, 0);
-                Half_Edge newedge_3 = new Half_Edge(0, 0);
+        // find the two infinite half-edges of that face
+        int edge_1 = current;
+        int edge_2 = start;
+        while (dcel.prev[edge_2] != -1) {
+            edge_2 = dcel.prev[edge_2];
+        }
 
+        // take their vertices which are not infinite
+        int v_2 = dcel.origin[edge_2];
+        int v_1 = dcel.destination(edge_1);
+        double v_1x = dcel.vx[v_1];
+        double v_1y = dcel.vy[v_1];
+        double v_2x = dcel.vx[v_2];
+        double v_2y = dcel.vy[v_2];
 
-                newedge_1.box_edge = true;
-                newedge_2.box_edge = true;
-                newedge_3.box_edge = true;
 
+        // cut the infinite edges with the bounding box with considering cases for the
+        // position of the the two infinite edges on the infinte face
 
-                edge_1.next = newedge_1;
-                newedge_1.prev = edge_1;
-                newedge_1.next = newedge_2;
-                newedge_2.prev = newedge_1;
-                newedge_2.next = newedge_3;
-                newedge_3.prev = newedge_2;
-                newedge_3.next = edge_2;
-                edge_2.prev = newedge_3;
+        // case if the cut lies on a side of the bouding box
+        boolean indicator = (v_1y == y1 && v_2y == y1) || (v_1y == y0 && v_2y == y0)
+                || (v_1x == x0 && v_2x == x0) || (v_1x == x1 && v_2x == x1);
 
-                newedge_1.origin = v_1;
-                newedge_1.destination = lb;
-                newedge_2.origin = lb;
-                newedge_2.destination = rb;
-                newedge_3.origin = rb;
-                newedge_3.destination = v_2;
+        if (indicator) close_face(i, edge_1, edge_2);
 
-                vor_half_edges.add(newedge_1);
-                vor_half_edges.add(newedge_2);
-                vor_half_edges.add(newedge_3);
+        // case if the cut contains the upper right angle
+        if (v_1x == x1 && v_2y == y1) close_face(i, edge_1, edge_2, ru);
 
-            }
+        // case if the cut contains the upper left angle
+        if (v_1y == y1 && v_2x == x0) close_face(i, edge_1, edge_2, lu);
 
-            if (v_1.yc == y0 && v_2.yc == y1) {
+        // case if the cut contains the bottom left angle
+        if (v_1x == x0 && v_2y == y0) close_face(i, edge_1, edge_2, lb);
 
-                Half_Edge newedge_1 = new Half_Edge(0, 0);
-                Half_Edge newedge_2 = new Half_Edge(0, 0);
-                Half_Edge newedge_3 = new Half_Edge(0, 0);
+        // case if the cut contains the bottom right angle
+        if (v_1y == y0 && v_2x == x1) close_face(i, edge_1, edge_2, rb);
 
+        // 4 cases if the cut passes through two opposite sides of the bounding box
+        if (v_1x == x1 && v_2x == x0) close_face(i, edge_1, edge_2, ru, lu);
+        if (v_1y == y1 && v_2y == y0) close_face(i, edge_1, edge_2, lu, lb);
+        if (v_1x == x0 && v_2x == x1) close_face(i, edge_1, edge_2, lb, rb);
+        if (v_1y == y0 && v_2y == y1) close_face(i, edge_1, edge_2, rb, ru);
 
-                newedge_1.box_edge = true;
-                newedge_2.box_edge = true;
-                newedge_3.box_edge = true;
+        // 4 cases if the cut leaves out an angle of the box and contains the rest
+        if (v_1x == x1 && v_2y == y0) close_face(i, edge_1, edge_2, ru, lu, lb);
+        if (v_1y == y1 && v_2x == x1) close_face(i, edge_1, edge_2, lu, lb, rb);
+        if (v_1x == x0 && v_2y == y1) close_face(i, edge_1, edge_2, lb, rb, ru);
+        if (v_1y == y0 && v_2x == x0) close_face(i, edge_1, edge_2, rb, ru, lu);
+    }
 
+    // close the infinite face f with half-edges on the bounding box that go
+    // from the end of edge_1 through the given corners of the box to the
+    // start of edge_2
+    public void close_face(int f, int edge_1, int edge_2, int... corners) {
+        int newedge = dcel.add_box_half_edge(f);
+        dcel.origin[newedge] = dcel.destination(edge_1);
+        dcel.link(edge_1, newedge);
+
+        for (int corner : corners) {
+            int e = dcel.add_box_half_edge(f);
+            dcel.origin[e] = corner;
+            dcel.link(newedge, e);
+            newedge = e;
+        }
+        dcel.link(newedge, edge_2);
+    }
 
-                edge_1.next = newedge_1;
-                newedge_1.prev = edge_1;
-                newedge_1.next = newedge_2;
-                newedge_2.prev = newedge_1;
-                newedge_2.next = newedge_3;
-                newedge_3.prev = newedge_2;
-                newedge_3.next = edge_2;
-                edge_2.prev = newedge_3;
+    // build the object graph of the DCEL from the primitive arrays
+    public void build_object_graph() {
 
-                newedge_1.origin = v_1;
-                newedge_1.destination = rb;
-                newedge_2.origin = rb;
-                newedge_2.destination = ru;
-                newedge_3.origin = ru;
-                newedge_3.destination = v_2;
+        // the faces
+        vor_faces = new Face[N];
+        for (int i = 0; i < N; i++) {
+            Face face = new Face();
+            face.index = i;
+            vor_faces[i] = face;
+        }
 
-                vor_half_edges.add(newedge_1);
-                vor_half_edges.add(newedge_2);
-                vor_half_edges.add(newedge_3);
+        // the vertices
+        Vertex[] vertices = new Vertex[dcel.vertex_count];
+        for (int v = 0; v < dcel.vertex_count; v++) {
+            vertices[v] = new Vertex(dcel.vx[v], dcel.vy[v]);
+            vor_vertices.add(vertices[v]);
+        }
 
+        // the half-edges, the slope and bias are copied from their edge
+        Half_Edge[] half_edges = new Half_Edge[dcel.half_edge_count];
+        for (int h = 0; h < dcel.half_edge_count; h++) {
+            int e = dcel.edge[h];
+            Half_Edge half_edge;
+            if (e == -1) {
+                half_edge = new Half_Edge(0, 0);
+                half_edge.box_edge = true;
             }
-
-
-            // 4 cases if the cut leaves out an angle of the box and contains the rest
-            if (v_1.xc == x1 && v_2.yc == y0) {
-                Half_Edge newedge_1 = new Half_Edge(0, 0);
-                Half_Edge newedge_2 = new Half_Edge(0, 0);
-                Half_Edge newedge_3 = new Half_Edge(0, 0);
-                Half_Edge newedge_4 = new Half_Edge(0, 0);
-
-                newedge_1.box_edge = true;
-                newedge_2.box_edge = true;
-                newedge_3.box_edge = true;
-                newedge_4.box_edge = true;
-
-                edge_1.next = newedge_1;
-                newedge_1.prev = edge_1;
-                newedge_1.next = newedge_2;
-                newedge_2.prev = newedge_1;
-                newedge_2.next = newedge_3;
-                newedge_3.prev = newedge_2;
-                newedge_3.next = newedge_4;
-                newedge_4.prev = newedge_3;
-                newedge_4.next = edge_2;
-                edge_2.prev = newedge_4;
-
-                newedge_1.origin = v_1;
-                newedge_1.destination = ru;
-                newedge_2.origin = ru;
-                newedge_2.destination = lu;
-                newedge_3.origin = lu;
-                newedge_3.destination = lb;
-                newedge_4.origin = lb;
-                newedge_4.destination = v_2;
-
-                vor_half_edges.add(newedge_1);
-                vor_half_edges.add(newedge_2);
-                vor_half_edges.add(newedge_3);
-                vor_half_edges.add(newedge_4);
+            else {
+                half_edge = new Half_Edge(dcel.m[e], dcel.b[e]);
             }
+            half_edge.incidentFace = vor_faces[dcel.face[h]];
+            half_edges[h] = half_edge;
+            vor_half_edges.add(half_edge);
+        }
 
-            if (v_1.yc == y1 && v_2.xc == x1) {
-                Half_Edge newedge_1 = new Half_Edge(0, 0);
-                Half_Edge newedge_2 = new Half_Edge(0, 0);
-                Half_Edge newedge_3 = new Half_Edge(0, 0);
-                Half_Edge newedge_4 = new Half_Edge(0, 0);
-
-                newedge_1.box_edge = true;
-                newedge_2.box_edge = true;
-                newedge_3.box_edge = true;
-                newedge_4.box_edge = true;
-
-                edge_1.next = newedge_1;
-                newedge_1.prev = edge_1;
-                newedge_1.next = newedge_2;
-                newedge_2.prev = newedge_1;
-                newedge_2.next = newedge_3;
-                newedge_3.prev = newedge_2;
-                newedge_3.next = newedge_4;
-                newedge_4.prev = newedge_3;
-                newedge_4.next = edge_2;
-                edge_2.prev = newedge_4;
-
-                newedge_1.origin = v_1;
-                newedge_1.destination = lu;
-                newedge_2.origin = lu;
-                newedge_2.destination = lb;
-                newedge_3.origin = lb;
-                newedge_3.destination = rb;
-                newedge_4.origin = rb;
-                newedge_4.destination = v_2;
-
-                vor_half_edges.add(newedge_1);
-                vor_half_edges.add(newedge_2);
-                vor_half_edges.add(newedge_3);
-                vor_half_edges.add(newedge_4);
+        // the references between the half-edges and to the vertices
+        for (int h = 0; h < dcel.half_edge_count; h++) {
+            Half_Edge half_edge = half_edges[h];
+            int origin = dcel.origin[h];
+            int destination = dcel.destination(h);
+            if (origin != -1) {
+                half_edge.origin = vertices[origin];
+                if (vertices[origin].half_edge == null) vertices[origin].half_edge = half_edge;
             }
+            if (destination != -1) half_edge.destination = vertices[destination];
+            if (dcel.twin[h] != -1) half_edge.twin = half_edges[dcel.twin[h]];
+            if (dcel.next[h] != -1) half_edge.next = half_edges[dcel.next[h]];
+            if (dcel.prev[h] != -1) half_edge.prev = half_edges[dcel.prev[h]];
+        }
 
-            if (v_1.xc == x0 && v_2.yc == y1) {
-                Half_Edge newedge_1 = new Half_Edge(0, 0);
-                Half_Edge newedge_2 = new Half_Edge(0, 0);
-                Half_Edge newedge_3 = new Half_Edge(0, 0);
-                Half_Edge newedge_4 = new Half_Edge(0, 0);
-
-                newedge_1.box_edge = true;
-                newedge_2.box_edge = true;
-                newedge_3.box_edge = true;
-                newedge_4.box_edge = true;
-
-                edge_1.next = newedge_1;
-                newedge_1.prev = edge_1;
-                newedge_1.next = newedge_2;
-                newedge_2.prev = newedge_1;
-                newedge_2.next = newedge_3;
-                newedge_3.prev = newedge_2;
-                newedge_3.next = newedge_4;
-                newedge_4.prev = newedge_3;
-                newedge_4.next = edge_2;
-                edge_2.prev = newedge_4;
-
-                newedge_1.origin = v_1;
-                newedge_1.destination = lb;
-                newedge_2.origin = lb;
-                newedge_2.destination = rb;
-                newedge_3.origin = rb;
-                newedge_3.destination = ru;
-                newedge_4.origin = ru;
-                newedge_4.destination = v_2;
-
-                vor_half_edges.add(newedge_1);
-                vor_half_edges.add(newedge_2);
-                vor_half_edges.add(newedge_3);
-                vor_half_edges.add(newedge_4);
-            }
+        // the voronoi edges
+        for (int e = 0; e < dcel.edge_count; e++) {
+            Voronoi_edge vor_edge = new Voronoi_edge(dcel.m[e], dcel.b[e]);
+            vor_edge.vertical = dcel.vertical[e];
+            vor_edge.upper_edge = dcel.upper_edge[e];
+            vor_edge.edge_one = half_edges[dcel.edge_half_edge[e]];
+            vor_edge.edge_two = vor_edge.edge_one.twin;
+            vor_edges.add(vor_edge);
+        }
 
-            if (v_1.yc == y0 && v_2.xc == x0) {
-                Half_Edge newedge_1 = new Half_Edge(0, 0);
-                Half_Edge newedge_2 = new Half_Edge(0, 0);
-                Half_Edge newedge_3 = new Half_Edge(0, 0);
-                Half_Edge newedge_4 = new Half_Edge(0, 0);
-
-                newedge_1.box_edge = true;
-                newedge_2.box_edge = true;
-                newedge_3.box_edge = true;
-                newedge_4.box_edge = true;
-
-                edge_1.next = newedge_1;
-                newedge_1.prev = edge_1;
-                newedge_1.next = newedge_2;
-                newedge_2.prev = newedge_1;
-                newedge_2.next = newedge_3;
-                newedge_3.prev = newedge_2;
-                newedge_3.next = newedge_4;
-                newedge_4.prev = newedge_3;
-                newedge_4.next = edge_2;
-                edge_2.prev = newedge_4;
-
-                newedge_1.origin = v_1;
-                newedge_1.destination = rb;
-                newedge_2.origin = rb;
-                newedge_2.destination = ru;
-                newedge_3.origin = ru;
-                newedge_3.destination = lu;
-                newedge_4.origin = lu;
-                newedge_4.destination = v_2;
-
-                vor_half_edges.add(newedge_1);
-                vor_half_edges.add(newedge_2);
-                vor_half_edges.add(newedge_3);
-                vor_half_edges.add(newedge_4);
-            }
+        // the references from the faces
+        for (int i = 0; i < N; i++) {
+            if (dcel.face_edge[i] != -1) vor_faces[i].half_edge = half_edges[dcel.face_edge[i]];
         }
     }
 
 
     // cuts the first vertical edge if the first two sites have the same y-coordinate
     public void cut_first_edge() {
-        if (first_vertical == null) return;
+        if (first_vertical == -1) return;
 
         // get the 2 half-edges of that voronoi edge
-        Half_Edge half_edge_1 = first_vertical.edge_one;
-        Half_Edge half_edge_2 = first_vertical.edge_two;
+        int half_edge_1 = dcel.edge_half_edge[first_vertical];
+        int half_edge_2 = dcel.twin[half_edge_1];
 
-        // get the finite end of the voronoi edge
-        Vertex vertex;
-        if (half_edge_1.origin == null) {
-            vertex = half_edge_1.destination;
-        }
-        else {
-            vertex = half_edge_1.origin;
-        }
+        // nothing to do if the edge was already cut
+        if (dcel.origin[half_edge_1] != -1 && dcel.origin[half_edge_2] != -1) return;
 
-        Vertex on_box = new Vertex(first_vertical.m, y1);
+        double x = dcel.m[first_vertical];
+        int on_box = add_vertex(x, y1, dcel.face[half_edge_1], dcel.face[half_edge_2], -1);
 
         // update the half_edge pointers
-        if (half_edge_1.origin == null) {
-            half_edge_1.origin = on_box;
-            half_edge_2.destination = on_box;
+        if (dcel.origin[half_edge_1] == -1) {
+            dcel.set_origin(half_edge_1, on_box, x, y1);
         }
-        if (half_edge_1.destination == null) {
-            half_edge_2.origin = on_box;
-            half_edge_1.destination = on_box;
+        if (dcel.origin[half_edge_2] == -1) {
+            dcel.set_origin(half_edge_2, on_box, x, y1);
         }
-
-        // add the new vertex to the list of vertices
-        vor_vertices.add(on_box);
-
-
+        edge_done(first_vertical);
     }
 
     // cut all infinite edges with the bounding box
     // these adge corrspond to the internal nodes left in the tree after generating the voronoi diagram
-    public void cut_edges(Node node) {
-        if (!node.internal) return; // if the node is internal return
+    public void cut_edges(Node tree_node) {
+        if (!tree_node.internal) return; // if the node is not internal return
+        Breakpoint node = (Breakpoint) tree_node;
 
-        Voronoi_edge vor_edge = node.vor_edge; // get the voronoi edge that this node represents
+        int vor_edge = node.vor_edge; // get the voronoi edge that this node represents
 
         // get the 2 half-edges of that voronoi edge
-        Half_Edge half_edge_1 = vor_edge.edge_one;
-        Half_Edge half_edge_2 = vor_edge.edge_two;
+        int half_edge_1 = dcel.edge_half_edge[vor_edge];
+        int half_edge_2 = dcel.twin[half_edge_1];
+        int site_1 = dcel.face[half_edge_1];
+        int site_2 = dcel.face[half_edge_2];
+
+        // an edge traced by two breakpoints is complete after the first one
+        boolean complete = dcel.origin[half_edge_1] != -1 && dcel.origin[half_edge_2] != -1;
 
 
         // check if the voronoi edge is the perpendicular bisector of the topmost 2 points with the same y-coordinate
-        if (vor_edge.upper_edge) {
-            double[] a = intersection_box(x0, x1, y0, y1, vor_edge);
-            Vertex v = new Vertex(a[2], a[3]);
-            if (half_edge_1.origin == null) {
-                half_edge_1.origin = v;
-                half_edge_2.destination = v;
+        if (dcel.upper_edge[vor_edge]) {
+            intersection_box(vor_edge);
+            int v = add_vertex(geo.bx, geo.by, site_1, site_2, -1);
+            if (dcel.origin[half_edge_1] == -1) {
+                dcel.set_origin(half_edge_1, v, geo.bx, geo.by);
             }
             else {
-                half_edge_2.origin = v;
-                half_edge_1.destination = v;
+                dcel.set_origin(half_edge_2, v, geo.bx, geo.by);
             }
         }
 
@@ -671,91 +611,55 @@ public class Voronoi_diagram {
         else {
 
             // check if the voronoi edge is infinite in both directions
-            if (half_edge_1.origin == null && half_edge_1.destination == null) {
-
-                double[] a = intersection_box(x0, x1, y0, y1, vor_edge);
-                Vertex v1 = new Vertex(a[0], a[1]);
-                Vertex v2 = new Vertex(a[2], a[3]);
-
-                half_edge_1.origin = v1;
-                half_edge_1.destination = v2;
-                half_edge_2.destination = v1;
-                half_edge_2.origin = v2;
-                vor_vertices.add(v1);
-                vor_vertices.add(v2);
+            if (dcel.origin[half_edge_1] == -1 && dcel.origin[half_edge_2] == -1) {
+
+                intersection_box(vor_edge);
+                dcel.set_origin(half_edge_1, add_vertex(geo.ax, geo.ay, site_1, site_2, -1), geo.ax, geo.ay);
+                dcel.set_origin(half_edge_2, add_vertex(geo.bx, geo.by, site_1, site_2, -1), geo.bx, geo.by);
             }
 
             // handle the case where the voronoi edge has exactly one finite end of the voronoi edge
             else {
 
-                // get the finite end of the voronoi edge
-                Vertex vertex;
-                if (half_edge_1.origin == null) {
-                    vertex = half_edge_1.destination;
-                }
-                else {
-                    vertex = half_edge_1.origin;
-                }
-
-
                 // get the parameter of the line traced by the intersection node
-                double m = vor_edge.m;
-                double b = vor_edge.b;
+                double m = dcel.m[vor_edge];
+                double b = dcel.b[vor_edge];
 
                 // find the coordinates of a point on the infinite edge ray
                 double x_c = node.xc_int(ycurr - 1);
                 double y_c = m * x_c + b;
 
-                // find the interseaction points with the bounding box
-                double[] a = intersection_box(x0, x1, y0, y1, vor_edge);
-
-                // get the points of intersection of the voronoi edge with the boudning box
-                Vertex one = new Vertex(a[0], a[1]);
-                Vertex two = new Vertex(a[2], a[3]);
-
-                // find a point on_ray on the infinite ray starting from vertex along vor_edge
-                Vertex on_ray;
-
                 // handle case if the vor_edge is vertical
-                if (vor_edge.vertical) {
-                    on_ray = new Vertex(x_c, node.yc_int(ycurr - 1));
+                if (dcel.vertical[vor_edge]) {
+                    y_c = node.yc_int(ycurr - 1);
                 }
 
-                // handle case if the vor_edge is not vertical
-                else {
-                    on_ray = new Vertex(x_c, y_c);
-                }
+                // find the interseaction points with the bounding box
+                intersection_box(vor_edge);
 
 
-                // distances from on_ray to the intersection points from the boudning box
-                double d1 = squared_distance(one, on_ray);
-                double d2 = squared_distance(two, on_ray);
+                // distances from the point on the ray to the intersection points from the boudning box
+                double d1 = Geometry.squared_distance(geo.ax, geo.ay, x_c, y_c);
+                double d2 = Geometry.squared_distance(geo.bx, geo.by, x_c, y_c);
 
 
                 // determine which point of the 2 intersection points will be new vertex on the infinite edge (one or two)
-                if (d1 >= d2) {
-                    vor_edge.infinity_point = two;
-                }
-                else {
-                    vor_edge.infinity_point = one;
-                }
+                double x = d1 >= d2 ? geo.bx : geo.ax;
+                double y = d1 >= d2 ? geo.by : geo.ay;
+                int infinity_point = add_vertex(x, y, site_1, site_2, -1);
 
 
                 // update the half_edge pointers
-                if (half_edge_1.origin == null) {
-                    half_edge_1.origin = vor_edge.infinity_point;
-                    half_edge_2.destination = vor_edge.infinity_point;
+                if (dcel.origin[half_edge_1] == -1) {
+                    dcel.set_origin(half_edge_1, infinity_point, x, y);
                 }
-                if (half_edge_1.destination == null) {
-                    half_edge_2.origin = vor_edge.infinity_point;
-                    half_edge_1.destination = vor_edge.infinity_point;
+                else if (dcel.origin[half_edge_2] == -1) {
+                    dcel.set_origin(half_edge_2, infinity_point, x, y);
                 }
-
-                // add the new vertex to the list of vertices
-                vor_vertices.add(vor_edge.infinity_point);
             }
 
         }
+        if (!complete) edge_done(vor_edge);
 
 
         cut_edges(node.left); // call the function on the left child
@@ -781,12 +685,19 @@ public class Voronoi_diagram {
 
         }
 
-        // fit all the veritices of the voronoi diagram
-        for (int i = 0; i < vor_vertices.size(); i++) {
-            if (vor_vertices.get(i).xc < x0) x0 = vor_vertices.get(i).xc;
-            if (vor_vertices.get(i).xc > x1) x1 = vor_vertices.get(i).xc;
-            if (vor_vertices.get(i).yc < y0) y0 = vor_vertices.get(i).yc;
-            if (vor_vertices.get(i).yc > y1) y1 = vor_vertices.get(i).yc;
+        // fit all the veritices of the voronoi diagram, a streaming DCEL
+        // only has their extent
+        if (dcel.recycle && dcel.vertex_count > 0) {
+            x0 = Math.min(x0, dcel.x_min);
+            x1 = Math.max(x1, dcel.x_max);
+            y0 = Math.min(y0, dcel.y_min);
+            y1 = Math.max(y1, dcel.y_max);
+        }
+        for (int i = 0; i < dcel.vertex_count && !dcel.recycle; i++) {
+            if (dcel.vx[i] < x0) x0 = dcel.vx[i];
+            if (dcel.vx[i] > x1) x1 = dcel.vx[i];
+            if (dcel.vy[i] < y0) y0 = dcel.vy[i];
+            if (dcel.vy[i] > y1) y1 = dcel.vy[i];
         }
 
         // store the parameters of the boudning box in an array
@@ -799,11 +710,26 @@ public class Voronoi_diagram {
 
     }
 
-    // handle Site event
-    public void handleSiteEvent(Event e) {
-        int i = e.index; // the index of the site event
+    // are consecutive sites of the sweep order close in x, as in data scanned
+    // row by row. The mean gap in x is compared with the gap of sqrt(N) sites
+    // spread evenly over the x-range, uniform sites have a gap about sqrt(N)/3
+    // times larger
+    public boolean local_order() {
+        if (N < 2) return false;
+        double x_min = xc[0];
+        double x_max = xc[0];
+        double gaps = 0;
+        for (int k = 1; k < N; k++) {
+            gaps += Math.abs(xc[order[k]] - xc[order[k - 1]]);
+            if (xc[k] < x_min) x_min = xc[k];
+            if (xc[k] > x_max) x_max = xc[k];
+        }
+        double mean_gap = gaps / (N - 1);
+        return mean_gap * Math.sqrt(N) <= 4 * (x_max - x_min);
+    }
 
-        double y = e.p.y(); // the y-cooridnate of the site event
+    // handle the site event of site i, with the sweepline at y
+    public void handleSiteEvent(int i, double y) {
         ycurr = y; // update the current state of the sweepline
 
         // check if tree is empty and insert
@@ -811,90 +737,78 @@ public class Voronoi_diagram {
             tree.root = tree.insert(tree.root, i, y);
         }
         else {
-            Node node_above = tree.get(tree.root, i, y); // get the arc above the new point
+            Arc node_above = tree.search(i, y); // get the arc above the new point
 
 
             // create a vornoi edge out of the prependicular bisector
             int j = node_above.point;
-            double[] ar = perpendicular_bisector(xc[i], yc[i], xc[j], yc[j]);
-            Voronoi_edge vor_edge = new Voronoi_edge(ar[0], ar[1]);
+            geo.bisector(xc[i], yc[i], xc[j], yc[j]);
+
+            // add the voronoi edge and its 2 half-edges to the DCEL, the
+            // half-edge on the side of site i comes first, the edge is
+            // vertical if the 2 sites have the same y-coordinate
+            int vor_edge = dcel.add_edge(geo.m, geo.b, geo.vertical, i, j);
 
             // detect the case if the first two points on the event queue have the same y-coordinate
             if ((tree.size == 1) && (yc[i] == yc[j])) {
-                vor_edge.upper_edge = true;
-                vor_edge.vertical = true;
+                dcel.upper_edge[vor_edge] = true;
+                dcel.vertical[vor_edge] = true;
                 first_vertical = vor_edge;
             }
 
-            // detect the case if the new voronoi edge is vetical
-            if (ar[2] == 1) {
-                vor_edge.vertical = true;
 
-            }
+            // remove the circle event of the above arc
+            remove_circle_event(node_above);
 
 
-            // invalidate the circle event of the above arc
-            if (node_above.event != null) {
-                node_above.event.valid = false;
-            }
-
-
-            tree.root = tree.insert(tree.root, i, y); // insert the new arc
+            tree.insert(node_above, i); // insert the new arc below the arc above it
 
 
             // check if the size is 3 and handle a special if the first 2 sites have the same y-coordinate
             if (tree.size() == 3) {
-                Node X = tree.most_recent;
+                Breakpoint X = (Breakpoint) tree.most_recent;
                 X.vor_edge = vor_edge;
 
             }
 
             // handle the other cases
             else {
-                Node current = tree.most_recent; // get the most recent
-                Node next_1 = current.next;
-                Node next_2 = next_1.next;
-                Node prev_1 = current.prev;
-                Node prev_2 = prev_1.prev;
+                Arc current = (Arc) tree.most_recent; // get the most recent
+                Arc next_1 = current.next;
+                Arc next_2 = next_1.next;
+                Arc prev_1 = current.prev;
+                Arc prev_2 = prev_1.prev;
 
                 // set references to the voronoi edge these break points trace out
-                Node X = current.left_intersection;
-                Node Y = current.right_intersection;
+                Breakpoint X = current.left_intersection;
+                Breakpoint Y = current.right_intersection;
                 X.vor_edge = vor_edge;
                 Y.vor_edge = vor_edge;
 
                 // handle potential circle events that may occur
                 if (next_2 != null) {
-                    Node A = current.right_intersection;
-                    Node B = next_1.right_intersection;
+                    Breakpoint A = current.right_intersection;
+                    Breakpoint B = next_1.right_intersection;
 
                     int a = current.point;
                     int b = next_1.point;
                     int c = next_2.point;
 
-                    if (is_convergent(A, B, xc, yc, y)) {
-                        double y_lowest = lowest_yc(a, b, c, xc, yc);
-                        Event newevent = new Event(y_lowest, circle(a, b, c, xc, yc)[1], next_1);
-                        next_1.event = newevent;
-                        newevent.circle_event = true;
-                        pq.insert(newevent);
+                    if (is_convergent(A, B)) {
+                        add_circle_event(next_1, a, b, c);
 
                     }
 
                 }
                 if (prev_2 != null) {
-                    Node A = prev_2.right_intersection;
-                    Node B = prev_1.right_intersection;
+                    Breakpoint A = prev_2.right_intersection;
+                    Breakpoint B = prev_1.right_intersection;
                     int a = prev_2.point;
                     int b = prev_1.point;
                     int c = current.point;
 
-                    if (is_convergent(A, B, xc, yc, y)) {
-                        double y_lowest = lowest_yc(a, b, c, xc, yc);
-                        Event newevent = new Event(y_lowest, circle(a, b, c, xc, yc)[1], prev_1);
-                        prev_1.event = newevent;
-                        newevent.circle_event = true;
-                        pq.insert(newevent);
+                    if (is_convergent(A, B)) {
+                        add_circle_event(prev_1, a, b, c);
 
 
                     }
@@ -902,62 +816,30 @@ public class Voronoi_diagram {
             }
 
 
-            // update the DCEL with new half-edges and a voronoi edge
-            Half_Edge half_edge_1 = new Half_Edge(ar[0], ar[1]);
-            Half_Edge half_edge_2 = new Half_Edge(ar[0], ar[1]);
-
-
-            // set up twin references
-            half_edge_1.twin = half_edge_2;
-            half_edge_2.twin = half_edge_1;
-
-            // set up incidences with the faces
-            half_edge_1.incidentFace = vor_faces[i];
-            half_edge_2.incidentFace = vor_faces[j];
-
-            // set up references to the half-edges
-            vor_edge.edge_one = half_edge_1;
-            vor_edge.edge_two = half_edge_2;
-
             // set up a ref from the face to the half edge
-            vor_faces[i].half_edge = half_edge_1;
-            vor_faces[j].half_edge = half_edge_2;
-
-
-            // add the new half-edges
-            vor_half_edges.add(half_edge_1);
-            vor_half_edges.add(half_edge_2);
-
-            // add the voronoi edge to the DCEL
-            vor_edges.add(vor_edge);
-
-
+            if (!dcel.recycle) {
+                int half_edge_1 = dcel.edge_half_edge[vor_edge];
+                dcel.face_edge[i] = half_edge_1;
+                dcel.face_edge[j] = dcel.twin[half_edge_1];
+            }
         }
     }
 
 
-    // handle a circle event
-    public void handleCircleEvent(Event e) {
-        double y = e.p.y(); // get the position of the sweepline
-
-        ycurr = y; // update its current position
+    // handle the circle event of the arc current, with the sweepline at y
+    public void handleCircleEvent(Arc current, double y) {
+        ycurr = y; // update the current position of the sweepline
 
         // get the site nodes correposing to the circle event
-        Node current = e.node;
-        Node prev = current.prev;
-        Node next = current.next;
+        Arc prev = current.prev;
+        Arc next = current.next;
 
 
         // get the two voronoi edges that will converge at a voronoi vertex
-        Node X = current.left_intersection;
-        Node Y = current.right_intersection;
-        Voronoi_edge vor_edge_left = X.vor_edge;
-        Voronoi_edge vor_edge_right = Y.vor_edge;
-
-
-        // create the voronoi vertex by intesecting the voronoi edges
-        double[] ar = intersection_point(vor_edge_left, vor_edge_right);
-        Vertex vertex = new Vertex(ar[0], ar[1]);
+        Breakpoint X = current.left_intersection;
+        Breakpoint Y = current.right_intersection;
+        int vor_edge_left = X.vor_edge;
+        int vor_edge_right = Y.vor_edge;
 
 
         // get the 3 sites that surround the vertex
@@ -966,481 +848,156 @@ public class Voronoi_diagram {
         int index2 = next.point;
 
 
-        // get the existing half_edges
-        Half_Edge one_ = vor_edge_left.get_half_edge(index);
-        Half_Edge two_ = vor_edge_right.get_half_edge(index);
-        Half_Edge three_ = vor_edge_right.get_half_edge(index2);
-        Half_Edge six_ = vor_edge_left.get_half_edge(index1);
-
-
-        // create the new voronoi edge that starts to be traced out (the bisector of sites index1 and index2)
-        double[] arr = perpendicular_bisector(xc[index1], yc[index1], xc[index2], yc[index2]);
-        Voronoi_edge vor_edge = new Voronoi_edge(arr[0], arr[1]);
-
-
-        // check if the edge if vertical and handle the case
-        if (arr[2] == 1) {
-
-            vor_edge.vertical = true;
-
-        }
-
+        // create the voronoi vertex by intesecting the voronoi edges
+        intersection_point(vor_edge_left, vor_edge_right);
+        double x = geo.x;
+        double y_vertex = geo.y;
+        int vertex = add_vertex(x, y_vertex, index1, index, index2);
 
-        // create the new 2 half-edges for the new voronoi edge
-        Half_Edge four_ = new Half_Edge(arr[0], arr[1]);
-        Half_Edge five_ = new Half_Edge(arr[0], arr[1]);
 
-        // update face refrences
-        four_.incidentFace = vor_faces[index2];
-        five_.incidentFace = vor_faces[index1];
+        // get the existing half_edges
+        int one_ = dcel.get_half_edge(vor_edge_left, index);
+        int two_ = dcel.get_half_edge(vor_edge_right, index);
+        int three_ = dcel.get_half_edge(vor_edge_right, index2);
+        int six_ = dcel.get_half_edge(vor_edge_left, index1);
 
-        // update twin references
-        five_.twin = four_;
-        four_.twin = five_;
 
-        // update vor edge refrences
-        vor_edge.edge_one = four_;
-        vor_edge.edge_two = five_;
+        // create the new voronoi edge that starts to be traced out (the bisector of sites index1 and index2)
+        // with its 2 half-edges, four_ on the side of index2 and five_ on the side of index1
+        geo.bisector(xc[index1], yc[index1], xc[index2], yc[index2]);
+        int vor_edge = dcel.add_edge(geo.m, geo.b, geo.vertical, index2, index1);
+        int four_ = dcel.edge_half_edge[vor_edge];
+        int five_ = dcel.twin[four_];
 
 
         // update the half-edges prev and next references
-        one_.next = two_;
-        two_.prev = one_;
-        one_.destination = vertex;
-        two_.origin = vertex;
+        dcel.link(one_, two_);
+        dcel.link(three_, four_);
+        dcel.link(five_, six_);
 
-        four_.prev = three_;
-        three_.next = four_;
-        four_.origin = vertex;
-        three_.destination = vertex;
+        // the vertex is the origin of two_, four_ and six_ and the destination of their twins
+        dcel.set_origin(two_, vertex, x, y_vertex);
+        dcel.set_origin(four_, vertex, x, y_vertex);
+        dcel.set_origin(six_, vertex, x, y_vertex);
 
-        six_.prev = five_;
-        five_.next = six_;
-        six_.origin = vertex;
-        five_.destination = vertex;
+        // the edges that end at the vertex are complete
+        edge_done(vor_edge_left);
+        edge_done(vor_edge_right);
 
-        // update reference from a vertex to a half-edge
-        vertex.half_edge = two_;
 
-        // update the DCEL
-
-        // add the new half-edge
-        vor_half_edges.add(four_);
-        vor_half_edges.add(five_);
-
-        // add the new vor edge
-        vor_edges.add(vor_edge);
-
-        // add the new voronoi vertex
-        vor_vertices.add(vertex);
-
-
-        // invalidate possible circle event events
-        if (current.event != null) {
-            current.event.valid = false;
-        }
-        if (prev.event != null) {
-            prev.event.valid = false;
-        }
-        if (next.event != null) {
-            next.event.valid = false;
-        }
+        // the circle events of prev and next are no longer valid, they are
+        // rescheduled or removed from the queue below
 
         tree.delete(
                 current); // delete the node corresponding to the disappearing arc on the beach-line
 
-        Node c_node = tree.most_recent; // get a reference to the most recent node
+        Arc c_node = (Arc) tree.most_recent; // get a reference to the most recent node
 
 
         c_node.right_intersection.vor_edge = vor_edge; // set the refrence to the new vor edge
 
         // check for potential new circle events
-        Node next_n = c_node.next;
-        Node next_n_1 = next_n.next;
-        Node prev_n = c_node.prev;
+        Arc next_n = c_node.next;
+        Arc next_n_1 = next_n.next;
+        Arc prev_n = c_node.prev;
 
 
         if (prev_n != null) {
-            Node A = prev_n.right_intersection;
-            Node B = c_node.right_intersection;
+            Breakpoint A = prev_n.right_intersection;
+            Breakpoint B = c_node.right_intersection;
             int a = prev_n.point;
             int b = c_node.point;
             int c = next_n.point;
 
-            if (is_convergent(A, B, xc, yc, y)) {
-                double y_lowest = lowest_yc(a, b, c, xc, yc);
-                Event newevent = new Event(y_lowest, circle(a, b, c, xc, yc)[1], c_node);
-                c_node.event = newevent;
-                newevent.circle_event = true;
-                pq.insert(newevent);
+            if (is_convergent(A, B)) {
+                add_circle_event(c_node, a, b, c);
+            }
+            else {
+                remove_circle_event(c_node);
             }
         }
+        else {
+            remove_circle_event(c_node);
+        }
         if (next_n_1 != null) {
-            Node A = c_node.right_intersection;
-            Node B = next_n.right_intersection;
+            Breakpoint A = c_node.right_intersection;
+            Breakpoint B = next_n.right_intersection;
             int a = c_node.point;
             int b = next_n.point;
             int c = next_n_1.point;
 
-            if (is_convergent(A, B, xc, yc, y)) {
-                double y_lowest = lowest_yc(a, b, c, xc, yc);
-                Event newevent = new Event(y_lowest, circle(a, b, c, xc, yc)[1], next_n);
-                next_n.event = newevent;
-                newevent.circle_event = true;
-                pq.insert(newevent);
-
-
+            if (is_convergent(A, B)) {
+                add_circle_event(next_n, a, b, c);
+            }
+            else {
+                remove_circle_event(next_n);
             }
         }
-
-    }
-
-
-    // return the y-coordinate of the midpoint of two points
-    public double mid_point_y(int i, int j, double[] xc, double[] yc) {
-        return (yc[i] + yc[j]) / 2;
-    }
-
-    // compute the sqaured distance between two points
-    public double squared_distance(double xa, double ya, double xb, double yb) {
-        return (xa - xb) * (xa - xb) + (ya - yb) * (ya - yb);
-    }
-
-    // compute the squared distance between Vertex a and Vertex b
-    public double squared_distance(Vertex a, Vertex b) {
-        return (a.xc - b.xc) * (a.xc - b.xc) + (a.yc - b.yc) * (a.yc - b.yc);
-    }
-
-    // compute the perpendicular bisector of two points
-    public double[] perpendicular_bisector(double x1, double y1, double x2, double y2) {
-        if (y1 == y2) {
-            double[] a = new double[3];
-            a[0] = (x1 + x2) / 2;
-            a[2] = 1;
-            return a;
+        else {
+            remove_circle_event(next_n);
         }
 
-        double m = -(x2 - x1) / (y2 - y1);
-        double b = (y1 + y2) / 2 - m * (x1 + x2) / 2;
-        double[] ar = new double[3];
-        ar[0] = m;
-        ar[1] = b;
-        ar[2] = 0;
-        return ar;
-    }
-
-
-    // compute the intersection point of two lines with slopes m1, m2 and biases b1, b2 resp.
-    public double[] intersection_point(double m1, double b1, double m2, double b2) {
-        double[] a = new double[2];
-        a[0] = (b2 - b1) / (m1 - m2);
-        a[1] = m1 * a[0] + b1;
-        return a;
     }
 
 
-    // compute the intersection point of two voronoi edges
-    public double[] intersection_point(Voronoi_edge e1, Voronoi_edge e2) {
-        double[] a = new double[2];
-        if (e1.vertical) {
-            double m1 = e1.m;
-
-            double m2 = e2.m;
-            double b2 = e2.b;
-
-            a[0] = m1;
-            a[1] = m2 * m1 + b2;
-
+    // schedule the circle event of the arc node whose sites are a, b, c. If
+    // the arc already has a circle event it is moved to the new position
+    public void add_circle_event(Arc node, int a, int b, int c) {
+        geo.circle(xc[a], yc[a], xc[b], yc[b], xc[c], yc[c]);
+        if (node.event != -1) {
+            pq.changeKey(node.event, geo.lowest, geo.cx);
         }
-        if (e2.vertical) {
-            double m2 = e2.m;
-
-            double m1 = e1.m;
-            double b1 = e1.b;
-
-            a[0] = m2;
-            a[1] = m1 * m2 + b1;
-
+        else {
+            node.event = pq.insert(node, geo.lowest, geo.cx);
         }
-        if (!e1.vertical && !e2.vertical) {
-
-            a = intersection_point(e1.m, e1.b, e2.m, e2.b);
+    }
 
+    // remove the circle event of the arc node from the queue if it has one
+    public void remove_circle_event(Arc node) {
+        if (node.event != -1) {
+            pq.delete(node.event);
+            node.event = -1;
         }
-
-        return a;
-
-
     }
 
-    // does x lie in [a,b]
-    public boolean lies_in(double x, double a, double b) {
-        return (x >= a) && (x <= b);
-
+    // add the vertex at (x, y) where the cells of the sites a, b and c meet to
+    // the DCEL and report it, c is -1 on the bounding box
+    private int add_vertex(double x, double y, int a, int b, int c) {
+        int v = dcel.add_vertex(x, y);
+        if (listener != null) listener.vertex(v, x, y, a, b, c);
+        return v;
     }
 
-
-    // compute the intersection of a line with a bounding box
-    // the first one is the lower one
-    public double[] intersection_box(double x1, double x2, double y1, double y2,
-                                     Voronoi_edge edge) {
-        double[] ar = new double[4];
-
-        if (edge.vertical) {
-            ar[0] = edge.m;
-            ar[1] = y1;
-            ar[2] = edge.m;
-            ar[3] = y2;
-
-        }
-        else {
-            double m = edge.m;
-            double b = edge.b;
-
-
-            double i_y1 = (y1 - b) / m;
-            double i_y2 = (y2 - b) / m;
-            double i_x1 = (m * x1 + b);
-            double i_x2 = m * x2 + b;
-
-            if (lies_in(i_y1, x1, x2) && lies_in(i_y2, x1, x2)) {
-
-                ar[0] = i_y1;
-                ar[1] = y1;
-                ar[2] = i_y2;
-                ar[3] = y2;
-            }
-            if (lies_in(i_y1, x1, x2) && lies_in(i_x1, y1, y2)) {
-                ar[0] = i_y1;
-                ar[1] = y1;
-                ar[2] = x1;
-                ar[3] = i_x1;
-            }
-            if (lies_in(i_y1, x1, x2) && lies_in(i_x2, y1, y2)) {
-                ar[0] = i_y1;
-                ar[1] = y1;
-                ar[2] = x2;
-                ar[3] = i_x2;
-            }
-
-            if (lies_in(i_y2, x1, x2) && lies_in(i_x1, y1, y2)) {
-                ar[0] = x1;
-                ar[1] = i_x1;
-                ar[2] = i_y2;
-                ar[3] = y2;
-            }
-            if (lies_in(i_y2, x1, x2) && lies_in(i_x2, y1, y2)) {
-                ar[0] = x2;
-                ar[1] = i_x2;
-                ar[2] = i_y2;
-                ar[3] = y2;
-
-            }
-            if (lies_in(i_x2, y1, y2) && lies_in(i_x1, y1, y2)) {
-
-                if (i_x1 > i_x2) {
-                    ar[0] = x2;
-                    ar[1] = i_x2;
-                    ar[2] = x1;
-                    ar[3] = i_x1;
-
-                }
-                else {
-                    ar[0] = x1;
-                    ar[1] = i_x1;
-                    ar[2] = x2;
-                    ar[3] = i_x2;
-
-
-                }
-
-            }
-        }
-
-        return ar;
+    // report the voronoi edge e once both of its ends are known, a streaming
+    // DCEL then reuses it. The first vertical edge is kept until it is cut
+    private void edge_done(int e) {
+        if (listener == null) return;
+        int h = dcel.edge_half_edge[e];
+        int t = dcel.twin[h];
+        if (dcel.origin[h] == -1 || dcel.origin[t] == -1) return;
+        listener.edge(dcel.face[h], dcel.face[t], dcel.origin[h], dcel.origin_x(h),
+                      dcel.origin_y(h), dcel.origin[t], dcel.origin_x(t), dcel.origin_y(t));
+        if (dcel.recycle && e != first_vertical) dcel.release_edge(e);
     }
 
-    // ccw function
-    public static int ccw(Vertex a, Vertex b, Vertex c) {
-        double xa = a.xc;
-        double ya = a.yc;
-        double xb = b.xc;
-        double yb = b.yc;
-        double xc = c.xc;
-        double yc = c.yc;
-
-
-        double det = -(xa * (yb - yc) + xb * (yc - ya) + xc * (ya - yb));
-        if (det != 0) {
-            if (det < 0) return -1;
-            else return 1;
-        }
-        else {
-            if (((xb - xa) * (xc - xa) < 0) || ((yb - ya) * (yc - ya) < 0)) {
-                return -2;
-            }
-            else {
-
-                if (Math.abs(xb - xa) + Math.abs(yb - ya) >= Math.abs(xc - xa) + Math
-                        .abs(yc - ya)) {
-                    return 0;
-                }
-                else return 2;
-
-            }
-        }
+    // compute the intersection point of two voronoi edges into geo.x, geo.y
+    public void intersection_point(int e1, int e2) {
+        geo.intersection(dcel.m[e1], dcel.b[e1], dcel.vertical[e1],
+                         dcel.m[e2], dcel.b[e2], dcel.vertical[e2]);
     }
 
+    // compute the intersection of a voronoi edge with the bounding box into
+    // geo.ax, geo.ay (the lower point) and geo.bx, geo.by
+    public void intersection_box(int edge) {
+        geo.intersection_box(x0, x1, y0, y1, dcel.m[edge], dcel.b[edge], dcel.vertical[edge]);
+    }
 
     // do the voronoi edges of A and B converge
-    public boolean is_convergent(Node A, Node B, double[] xc, double[] yc, double y) {
+    public boolean is_convergent(Breakpoint A, Breakpoint B) {
         int a = A.left_point.point;
         int b = A.right_point.point;
         int c = B.right_point.point;
-
-        double x1 = xc[a];
-        double y1 = yc[a];
-        double x2 = xc[b];
-        double y2 = yc[b];
-        double x3 = xc[c];
-        double y3 = yc[c];
-        Vertex a_ = new Vertex(x1, y1);
-        Vertex b_ = new Vertex(x2, y2);
-        Vertex c_ = new Vertex(x3, y3);
-
-        return ccw(c_, b_, a_) == -1;
-    }
-
-    // get the center and radius of a circle through 3 points
-    public double[] circle(int a, int b, int c, double[] xc, double[] yc) {
-        double x1 = xc[a];
-        double y1 = yc[a];
-        double x2 = xc[b];
-        double y2 = yc[b];
-        double x3 = xc[c];
-        double y3 = yc[c];
-
-        double x12 = x1 - x2;
-        double x13 = x1 - x3;
-
-
-        double y12 = y1 - y2;
-        double y13 = y1 - y3;
-
-        double y31 = y3 - y1;
-        double y21 = y2 - y1;
-
-        double x31 = x3 - x1;
-        double x21 = x2 - x1;
-
-        // x1^2 - x3^2
-        double sx13 = (x1 * x1 -
-                x3 * x3);
-
-        // y1^2 - y3^2
-        double sy13 = (y1 * y1 -
-                y3 * y3);
-
-        double sx21 = (x2 * x2 -
-                x1 * x1);
-
-        double sy21 = (y2 * y2 -
-                y1 * y1);
-
-        double f = ((sx13) * (x12)
-                + (sy13) * (x12)
-                + (sx21) * (x13)
-                + (sy21) * (x13))
-                / (2 * ((y31) * (x12) - (y21) * (x13)));
-        double g = ((sx13) * (y12)
-                + (sy13) * (y12)
-                + (sx21) * (y13)
-                + (sy21) * (y13))
-                / (2 * ((x31) * (y12) - (x21) * (y13)));
-
-        double p = -Math.pow(x1, 2) - Math.pow(y1, 2) -
-                2 * g * x1 - 2 * f * y1;
-
-        // eqn of circle be x^2 + y^2 + 2*g*x + 2*f*y + c = 0
-        // where centre is (h = -g, k = -f) and radius r
-        // as r^2 = h^2 + k^2 - c
-        double h = -g;
-        double k = -f;
-        double sqr_of_r = h * h + k * k - p;
-
-        // r is the radius
-        double r = Math.sqrt(sqr_of_r);
-
-        double[] ar = new double[3];
-        ar[0] = r;
-        ar[1] = h;
-        ar[2] = k;
-
-        return ar;
-    }
-
-    // get the lowest y-coordinate on a circle through 3 points
-    public double lowest_yc(int a, int b, int c, double[] xc, double[] yc) {
-        double x1 = xc[a];
-        double y1 = yc[a];
-        double x2 = xc[b];
-        double y2 = yc[b];
-        double x3 = xc[c];
-        double y3 = yc[c];
-
-        double x12 = x1 - x2;
-        double x13 = x1 - x3;
-
-
-        double y12 = y1 - y2;
-        double y13 = y1 - y3;
-
-        double y31 = y3 - y1;
-        double y21 = y2 - y1;
-
-        double x31 = x3 - x1;
-        double x21 = x2 - x1;
-
-        // x1^2 - x3^2
-        double sx13 = (x1 * x1 -
-                x3 * x3);
-
-        // y1^2 - y3^2
-        double sy13 = (y1 * y1 -
-                y3 * y3);
-
-        double sx21 = (x2 * x2 -
-                x1 * x1);
-
-        double sy21 = (y2 * y2 -
-                y1 * y1);
-
-        double f = ((sx13) * (x12)
-                + (sy13) * (x12)
-                + (sx21) * (x13)
-                + (sy21) * (x13))
-                / (2 * ((y31) * (x12) - (y21) * (x13)));
-        double g = ((sx13) * (y12)
-                + (sy13) * (y12)
-                + (sx21) * (y13)
-                + (sy21) * (y13))
-                / (2 * ((x31) * (y12) - (x21) * (y13)));
-
-        double p = -Math.pow(x1, 2) - Math.pow(y1, 2) -
-                2 * g * x1 - 2 * f * y1;
-
-        // eqn of circle be x^2 + y^2 + 2*g*x + 2*f*y + c = 0
-        // where centre is (h = -g, k = -f) and radius r
-        // as r^2 = h^2 + k^2 - c
-        double h = -g;
-        double k = -f;
-        double sqr_of_r = h * h + k * k - p;
-
-        // r is the radius
-        double r = Math.sqrt(sqr_of_r);
-        return k - r;
-
-
+        return Geometry.is_convergent(xc[a], yc[a], xc[b], yc[b], xc[c], yc[c]);
     }
 
 
@@ -1478,6 +1035,14 @@ public class Voronoi_diagram {
         // }
 
 
+        // // 4. Binary input, written by Site_file.write() or converted from
+        // // the text input with: java Site_file convert sites.txt sites.bin
+        // double[][] sites = Site_file.read("sites.bin");
+        // int N = sites[0].length;
+        // double[] xc = sites[0];
+        // double[] yc = sites[1];
+
+
         // 3. Custom input, wirte the input yourself
         // int N = 5;
         // double[] xc = new double[N];
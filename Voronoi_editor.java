@@ -0,0 +1,1103 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Edits a finished Voronoi diagram in place. addSite()
+ *  inserts a site without running the sweep again. The face that contains
+ *  the new site p is found with a greedy walk over the faces from a coarse
+ *  grid of start faces. The cell of p is carved out of the faces around
+ *  it: in every such face g the vertices closer to p than to g form one
+ *  run of the face cycle, from the half-edge h1 that enters the region of
+ *  p to the half-edge h2 that leaves it. The half-edges between them are
+ *  deleted, h1 and h2 are cut where they cross the bisector of p and g and
+ *  a new voronoi edge on that bisector closes g. The twin of h1 leads to
+ *  the next face around p. If h1 is on the bounding box, the cell of p
+ *  follows the box instead, through the corners of the box it contains, to
+ *  the next face whose box half-edge leaves the region. The cycle of p is
+ *  the twins of the new edges and the new box half-edges, in the order in
+ *  which the faces are visited.
+ *
+ *  removeSite() deletes a face and shares its region among its neighbors.
+ *  The sites j_k across the cycle of the face form a polygon around it and
+ *  the Delaunay triangles that fill it are found by cutting ears: a convex
+ *  corner whose circle contains none of the other neighbors. The center of
+ *  every triangle is a new voronoi vertex, every diagonal is a new edge
+ *  between the centers of its two triangles, and the edge between j_k and
+ *  j_k+1 now ends at the center of the triangle on its side. The last site
+ *  takes the index of the removed one. A face on the bounding box, whose
+ *  site is on the convex hull, is removed by building the diagram again.
+ *
+ *  The faces are first walked without changing anything, then the DCEL is
+ *  spliced and the deleted vertices, half-edges and edges are filled with
+ *  the last ones of their arrays, so the arrays stay dense. The object
+ *  graph, if the diagram has one, follows the same moves and only the
+ *  objects on the touched faces are updated. The work depends on the
+ *  number of faces around p, not on N. A site outside of the bounding box,
+ *  or a walk that finds the faces inconsistent because of rounding, builds
+ *  the diagram again from all the sites.
+ *
+ **************************************************************************** */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class Voronoi_editor {
+
+    Voronoi_diagram diagram; // the diagram that is edited
+    Compact_dcel dcel; // its DCEL
+
+    int[] vertex_edge; // a half-edge that leaves every vertex
+
+    // the grid of start faces over the sites
+    double grid_x; // the lower left corner of the grid
+    double grid_y;
+    int columns;
+    int rows;
+    double cell_x;
+    double cell_y;
+    int[] hint; // a site near every grid cell
+    int hint_sites; // the number of sites when the grid was built
+
+    // the marks of the current edit, valid if they contain the epoch
+    int epoch;
+    int[] vertex_mark; // 2 * epoch + 1 if the vertex is closer to p, 2 * epoch if not
+    int[] face_mark; // epoch if the face is around p
+    int[] dead_mark; // epoch if the half-edge is deleted
+
+    // the faces around p in counterclockwise order, the half-edges h1 and
+    // h2 of every face and the points where they cross the bisector
+    int K;
+    int[] plan_face = new int[16];
+    int[] plan_in = new int[16]; // h1, enters the region of p
+    int[] plan_out = new int[16]; // h2, leaves the region of p
+    double[] in_x = new double[16]; // the crossing on h1
+    double[] in_y = new double[16];
+    boolean[] out_box = new boolean[16]; // is the crossing on h2 reached along the box
+    double[] out_x = new double[16]; // the crossing on h2 if so
+    double[] out_y = new double[16];
+    int[] corner_first = new int[17]; // the corners of the box after the crossing on h1
+    Int_list corners = new Int_list();
+
+    // the deleted elements and the new ones of the current edit
+    Int_list dead_half_edges = new Int_list();
+    Int_list dead_edges = new Int_list();
+    Int_list dead_vertices = new Int_list();
+    int[] in_vertex = new int[16];
+    int[] out_vertex = new int[16];
+    int[] new_edge = new int[16];
+    Int_list cycle = new Int_list();
+
+    // the removed face: its half-edges h_k, the site j_k across every one
+    // and the half-edges of j_k before and after the twin of h_k
+    int D;
+    int[] ring_half_edge = new int[16];
+    int[] ring_site = new int[16];
+    int[] ring_in = new int[16]; // ends at the vertex of h_k and h_k+1
+    int[] ring_out = new int[16]; // starts at the vertex of h_k-1 and h_k
+    int[] ring_prev = new int[16]; // the polygon of the sites not clipped yet
+    int[] ring_next = new int[16];
+    int[] chain = new int[16]; // the number of new half-edges of j_k
+
+    // the triangles of the hole left by the removed face, the sites of
+    // triangle t are at the positions 3t, 3t + 1 and 3t + 2 of the ring,
+    // counterclockwise. Their centers are the new vertices
+    int T;
+    int[] triangle = new int[48];
+    double[] center_x = new double[16];
+    double[] center_y = new double[16];
+    int[] center_vertex = new int[16];
+    int[] triangle_of = new int[256]; // the triangle left of u -> v at u * D + v
+    int[] diagonal_half_edge = new int[256]; // the new half-edge of j_u on the diagonal u, v
+    Int_list diagonals = new Int_list(); // the new diagonals as pairs u, v
+
+
+    // an editor of the finished diagram
+    public Voronoi_editor(Voronoi_diagram diagram) {
+        this.diagram = diagram;
+        this.dcel = diagram.dcel;
+        if (dcel.recycle) throw new IllegalStateException("The diagram was not retained");
+
+        // the sites are copied once, the editor grows them
+        diagram.xc = Arrays.copyOf(diagram.xc, Math.max(2 * diagram.N, 16));
+        diagram.yc = Arrays.copyOf(diagram.yc, Math.max(2 * diagram.N, 16));
+
+        vertex_edge = new int[dcel.vx.length];
+        Arrays.fill(vertex_edge, -1);
+        for (int h = 0; h < dcel.half_edge_count; h++) {
+            if (dcel.origin[h] != -1) vertex_edge[dcel.origin[h]] = h;
+        }
+        vertex_mark = new int[dcel.vx.length];
+        face_mark = new int[dcel.face_edge.length];
+        dead_mark = new int[dcel.origin.length];
+        grid();
+    }
+
+    // add the site (x, y) to the diagram, its index is the old number of
+    // sites
+    public int add_site(double x, double y) {
+        return add_site(x, y, -1);
+    }
+
+    // add the site (x, y), the walk to its face starts at face start if it
+    // is not -1, else at the site of its grid cell
+    int add_site(double x, double y, int start) {
+        if (Double.isNaN(x) || Double.isNaN(y)) throw new IllegalArgumentException("The site is NaN");
+        int N = diagram.N;
+        if (N == diagram.xc.length) {
+            diagram.xc = Arrays.copyOf(diagram.xc, 2 * N);
+            diagram.yc = Arrays.copyOf(diagram.yc, 2 * N);
+        }
+
+        // the box can only be made larger by the sweep
+        if (!(x > diagram.x0 && x < diagram.x1 && y > diagram.y0 && y < diagram.y1)) {
+            diagram.xc[N] = x;
+            diagram.yc[N] = y;
+            diagram.N++;
+            diagram.rebuild();
+            return N;
+        }
+
+        int f0 = nearest_face(start == -1 ? Math.min(hint[cell(x, y)], N - 1) : start, x, y);
+        if (diagram.xc[f0] == x && diagram.yc[f0] == y) {
+            throw new IllegalArgumentException("The site " + x + ", " + y + " is already in the diagram");
+        }
+        diagram.xc[N] = x;
+        diagram.yc[N] = y;
+        diagram.N++;
+
+        next_epoch();
+        if (!plan(f0, x, y)) {
+            diagram.rebuild();
+            return N;
+        }
+        apply(N);
+        if (diagram.N > 2 * hint_sites) grid();
+        else hint[cell(x, y)] = N;
+        return N;
+    }
+
+    // remove site i from the diagram. The last site takes the index i, as
+    // the DCEL fills its deleted slots. Returns the old index of the site
+    // that moved to i, or -1 if i was the last site
+    public int remove_site(int i) {
+        int N = diagram.N;
+        if (i < 0 || i >= N) throw new IllegalArgumentException("No site " + i);
+        if (N == 1) throw new IllegalStateException("Cannot remove the last site");
+        int moved = i == N - 1 ? -1 : N - 1;
+
+        next_epoch();
+        if (N <= 4 || !plan_removal(i)) {
+            diagram.xc[i] = diagram.xc[N - 1];
+            diagram.yc[i] = diagram.yc[N - 1];
+            diagram.N--;
+            diagram.rebuild();
+            return moved;
+        }
+        apply_removal(i);
+        return moved;
+    }
+
+    // read the cycle of face i and triangulate the polygon of its neighbors.
+    // Nothing is changed. Returns false if the face is on the bounding box,
+    // or if the cycle or the triangles are not consistent
+    private boolean plan_removal(int i) {
+        D = 0;
+        int first = dcel.face_edge[i];
+        int h = first;
+        do {
+            if (!closed(h) || dcel.twin[h] == -1) return false;
+            int j = dcel.face[dcel.twin[h]];
+            if (face_mark[j] == epoch) return false;
+            face_mark[j] = epoch;
+            if (D == ring_site.length) grow_ring();
+            ring_half_edge[D] = h;
+            ring_site[D] = j;
+            D++;
+            h = dcel.next[h];
+            if (D > dcel.half_edge_count) return false;
+        } while (h != first);
+        if (D < 3) return false;
+
+        // the edge between j_k and j_k+1 that ends at the vertex of h_k and
+        // h_k+1
+        for (int k = 0; k < D; k++) {
+            int t = dcel.twin[ring_half_edge[k]];
+            int u = dcel.twin[ring_half_edge[(k + 1) % D]];
+            ring_in[k] = dcel.prev[t];
+            ring_out[k] = dcel.next[t];
+            if (!closed(ring_in[k]) || !closed(ring_out[k])) return false;
+            if (dcel.twin[ring_in[k]] != dcel.next[u] || dcel.twin[ring_in[k]] == -1) return false;
+        }
+        return triangulate();
+    }
+
+    // triangulate the polygon of the sites j_k by cutting ears. An ear is
+    // a convex corner whose circle has none of the sites inside, it is a
+    // Delaunay triangle of the sites left when the face is removed. If
+    // rounding leaves no such ear the convex ear whose circle is the least
+    // violated is cut
+    private boolean triangulate() {
+        if (triangle_of.length < D * D) {
+            triangle_of = new int[D * D];
+            diagonal_half_edge = new int[D * D];
+        }
+        Arrays.fill(triangle_of, 0, D * D, -1);
+        for (int k = 0; k < D; k++) {
+            ring_next[k] = (k + 1) % D;
+            ring_prev[k] = (k + D - 1) % D;
+        }
+        T = 0;
+        diagonals.clear();
+        int left = D;
+        int b = 0;
+        while (left > 3) {
+            int best = -1;
+            double least = Double.POSITIVE_INFINITY;
+            for (int s = 0; s < left; s++, b = ring_next[b]) {
+                int a = ring_prev[b];
+                int c = ring_next[b];
+                if (area(a, b, c) <= 0) continue;
+                double violation = Double.NEGATIVE_INFINITY;
+                for (int q = 0; q < D; q++) {
+                    if (q != a && q != b && q != c) violation = Math.max(violation, incircle(a, b, c, q));
+                }
+                if (violation <= 0) {
+                    best = b;
+                    break;
+                }
+                if (violation < least) {
+                    least = violation;
+                    best = b;
+                }
+            }
+            if (best == -1) return false;
+            int a = ring_prev[best];
+            int c = ring_next[best];
+            add_triangle(a, best, c);
+            diagonals.add(a);
+            diagonals.add(c);
+            ring_next[a] = c;
+            ring_prev[c] = a;
+            left--;
+            b = c;
+        }
+        int a = ring_prev[b];
+        int c = ring_next[b];
+        if (area(a, b, c) <= 0) return false;
+        add_triangle(a, b, c);
+        return true;
+    }
+
+    // twice the signed area of the triangle of the ring positions a, b, c
+    private double area(int a, int b, int c) {
+        double[] xc = diagram.xc;
+        double[] yc = diagram.yc;
+        int u = ring_site[a];
+        int v = ring_site[b];
+        int w = ring_site[c];
+        return Geometry.area(xc[u], yc[u], xc[v], yc[v], xc[w], yc[w]);
+    }
+
+    // the in-circle test of the ring position q and the triangle a, b, c
+    private double incircle(int a, int b, int c, int q) {
+        double[] xc = diagram.xc;
+        double[] yc = diagram.yc;
+        int u = ring_site[a];
+        int v = ring_site[b];
+        int w = ring_site[c];
+        int z = ring_site[q];
+        return Geometry.incircle(xc[u], yc[u], xc[v], yc[v], xc[w], yc[w], xc[z], yc[z]);
+    }
+
+    // add the triangle of the ring positions a, b, c and its center
+    private void add_triangle(int a, int b, int c) {
+        if (3 * T + 3 > triangle.length) triangle = Arrays.copyOf(triangle, 2 * triangle.length);
+        if (T == center_x.length) {
+            center_x = Arrays.copyOf(center_x, 2 * T);
+            center_y = Arrays.copyOf(center_y, 2 * T);
+            center_vertex = Arrays.copyOf(center_vertex, 2 * T);
+        }
+        triangle[3 * T] = a;
+        triangle[3 * T + 1] = b;
+        triangle[3 * T + 2] = c;
+        triangle_of[a * D + b] = T;
+        triangle_of[b * D + c] = T;
+        triangle_of[c * D + a] = T;
+        double[] xc = diagram.xc;
+        double[] yc = diagram.yc;
+        int u = ring_site[a];
+        int v = ring_site[b];
+        int w = ring_site[c];
+        diagram.geo.circle(xc[u], yc[u], xc[v], yc[v], xc[w], yc[w]);
+        center_x[T] = diagram.geo.cx;
+        center_y[T] = diagram.geo.cy;
+        T++;
+    }
+
+    // make the ring arrays larger
+    private void grow_ring() {
+        int n = 2 * ring_site.length;
+        ring_half_edge = Arrays.copyOf(ring_half_edge, n);
+        ring_site = Arrays.copyOf(ring_site, n);
+        ring_in = Arrays.copyOf(ring_in, n);
+        ring_out = Arrays.copyOf(ring_out, n);
+        ring_prev = Arrays.copyOf(ring_prev, n);
+        ring_next = Arrays.copyOf(ring_next, n);
+        chain = Arrays.copyOf(chain, n);
+    }
+
+    // replace face i by the triangles of the plan: the center of every
+    // triangle is a vertex, the edge between j_k and j_k+1 now ends at the
+    // center of the triangle on its side and every diagonal is a new edge
+    private void apply_removal(int i) {
+        int H = dcel.half_edge_count;
+        int E = dcel.edge_count;
+        dead_half_edges.clear();
+        dead_edges.clear();
+        dead_vertices.clear();
+        for (int k = 0; k < D; k++) {
+            int h = ring_half_edge[k];
+            dead_half_edges.add(h);
+            dead_half_edges.add(dcel.twin[h]);
+            dead_edges.add(dcel.edge[h]);
+            dead_vertices.add(dcel.origin[h]);
+        }
+
+        // the centers, in the slots of the deleted vertices
+        for (int t = 0; t < T; t++) center_vertex[t] = new_vertex(center_x[t], center_y[t]);
+        for (int k = 0; k < D; k++) {
+            set_origin(dcel.twin[ring_in[k]], center_vertex[triangle_of[k * D + (k + 1) % D]]);
+        }
+
+        // the diagonals, the half-edge of j_u goes from the center of the
+        // triangle right of u -> v to the one left of it
+        Geometry geo = diagram.geo;
+        for (int d = 0; d < diagonals.n; d += 2) {
+            int u = diagonals.a[d];
+            int v = diagonals.a[d + 1];
+            int a = ring_site[u];
+            int b = ring_site[v];
+            geo.bisector(diagram.xc[a], diagram.yc[a], diagram.xc[b], diagram.yc[b]);
+            int e = dcel.add_edge(geo.m, geo.b, geo.vertical, a, b);
+            int hu = dcel.edge_half_edge[e];
+            int hv = dcel.twin[hu];
+            set_origin(hu, center_vertex[triangle_of[v * D + u]]);
+            set_origin(hv, center_vertex[triangle_of[u * D + v]]);
+            diagonal_half_edge[u * D + v] = hu;
+            diagonal_half_edge[v * D + u] = hv;
+        }
+
+        // the cycle of j_k goes around the triangles of position k from the
+        // one left of k -> k + 1 to the one left of k - 1 -> k
+        for (int k = 0; k < D; k++) {
+            int last = ring_in[k];
+            int before = (k + D - 1) % D;
+            int current = (k + 1) % D;
+            chain[k] = 0;
+            while (true) {
+                int t = triangle_of[k * D + current];
+                int w = triangle[3 * t] + triangle[3 * t + 1] + triangle[3 * t + 2] - k - current;
+                if (w == before) break;
+                int h = diagonal_half_edge[k * D + w];
+                dcel.link(last, h);
+                last = h;
+                current = w;
+                chain[k]++;
+            }
+            dcel.link(last, ring_out[k]);
+            dcel.face_edge[ring_site[k]] = ring_in[k];
+        }
+
+        boolean objects = diagram.vor_faces != null;
+        if (objects) {
+            for (int t = 0; t < T; t++) {
+                diagram.vor_vertices.set(center_vertex[t], new Vertex(center_x[t], center_y[t]));
+            }
+            for (int h = H; h < dcel.half_edge_count; h++) diagram.vor_half_edges.add(new Half_Edge(0, 0));
+            for (int e = E; e < dcel.edge_count; e++) diagram.vor_edges.add(new Voronoi_edge(0, 0));
+        }
+        dcel.face_edge[i] = -1;
+        compact(objects);
+
+        // the last face takes the index i
+        int last = diagram.N - 1;
+        if (i != last) {
+            move_face(last, i);
+            diagram.xc[i] = diagram.xc[last];
+            diagram.yc[i] = diagram.yc[last];
+            if (objects) {
+                diagram.vor_faces[i] = diagram.vor_faces[last];
+                diagram.vor_faces[i].index = i;
+            }
+            for (int k = 0; k < D; k++) if (ring_site[k] == last) ring_site[k] = i;
+        }
+        if (objects) diagram.vor_faces[last] = null;
+        dcel.face_edge[last] = -1;
+        dcel.face_count--;
+        diagram.N--;
+
+        // the half-edges of j_k from the one before the twin of h_k to the
+        // one after it changed
+        if (objects) {
+            for (int k = 0; k < D; k++) {
+                int h = dcel.face_edge[ring_site[k]];
+                for (int c = 0; c < chain[k] + 2; c++) {
+                    update_objects(h);
+                    h = dcel.next[h];
+                }
+                diagram.vor_faces[ring_site[k]].half_edge = diagram.vor_half_edges.get(dcel.face_edge[ring_site[k]]);
+            }
+        }
+        diagram.locator = null;
+    }
+
+    // give the half-edges of face s the index f, the cycle may be open on
+    // degenerate inputs
+    private void move_face(int s, int f) {
+        int first = dcel.face_edge[s];
+        dcel.face_edge[f] = first;
+        int h = first;
+        while (h != -1) {
+            dcel.face[h] = f;
+            h = dcel.next[h];
+            if (h == first) return;
+        }
+        for (h = first == -1 ? -1 : dcel.prev[first]; h != -1; h = dcel.prev[h]) dcel.face[h] = f;
+    }
+
+    // start a new edit, the marks of the old ones are no longer valid
+    void next_epoch() {
+        if (vertex_mark.length < dcel.vx.length) vertex_mark = Arrays.copyOf(vertex_mark, dcel.vx.length);
+        if (face_mark.length < dcel.face_edge.length) face_mark = Arrays.copyOf(face_mark, dcel.face_edge.length);
+        if (dead_mark.length < dcel.origin.length) dead_mark = Arrays.copyOf(dead_mark, dcel.origin.length);
+        if (++epoch == 1 << 30) {
+            epoch = 1;
+            Arrays.fill(vertex_mark, 0);
+            Arrays.fill(face_mark, 0);
+            Arrays.fill(dead_mark, 0);
+        }
+    }
+
+    // size the grid over the sites, about one cell per site, and store a
+    // site in every cell. An empty cell takes the site of the cell before
+    // it, the walk from there finds the nearest site
+    void grid() {
+        int N = diagram.N;
+        double[] xc = diagram.xc;
+        double[] yc = diagram.yc;
+        double x1 = xc[0];
+        double y1 = yc[0];
+        grid_x = x1;
+        grid_y = y1;
+        for (int i = 1; i < N; i++) {
+            grid_x = Math.min(grid_x, xc[i]);
+            x1 = Math.max(x1, xc[i]);
+            grid_y = Math.min(grid_y, yc[i]);
+            y1 = Math.max(y1, yc[i]);
+        }
+        double w = Math.max(x1 - grid_x, Double.MIN_NORMAL);
+        double h = Math.max(y1 - grid_y, Double.MIN_NORMAL);
+        double side = Math.sqrt(w * h / N);
+        columns = (int) Math.max(1, Math.min(Math.ceil(w / side), N));
+        rows = (int) Math.max(1, Math.min(Math.ceil(h / side), N));
+        while ((long) columns * rows > 4L * N + 4) {
+            if (columns > rows) columns = (columns + 1) / 2;
+            else rows = (rows + 1) / 2;
+        }
+        cell_x = w / columns;
+        cell_y = h / rows;
+        hint = new int[columns * rows];
+        Arrays.fill(hint, -1);
+        for (int i = 0; i < N; i++) hint[cell(xc[i], yc[i])] = i;
+        int last = 0;
+        for (int c = 0; c < hint.length; c++) {
+            if (hint[c] == -1) hint[c] = last;
+            else last = hint[c];
+        }
+        hint_sites = N;
+    }
+
+    // the grid cell of (x, y), the points outside of the grid are in the
+    // closest cell on its border
+    private int cell(double x, double y) {
+        int c = (int) ((x - grid_x) / cell_x);
+        int r = (int) ((y - grid_y) / cell_y);
+        c = Math.max(0, Math.min(c, columns - 1));
+        r = Math.max(0, Math.min(r, rows - 1));
+        return r * columns + c;
+    }
+
+    // walk from face f to the neighbor whose site is closest to (x, y) until
+    // there is none closer, which is the face that contains (x, y)
+    int nearest_face(int f, double x, double y) {
+        double[] xc = diagram.xc;
+        double[] yc = diagram.yc;
+        double best = Geometry.squared_distance(x, y, xc[f], yc[f]);
+        while (true) {
+            int next = f;
+            int first = dcel.face_edge[f];
+            int h = first;
+            do {
+                int t = dcel.twin[h];
+                if (t != -1) {
+                    int g = dcel.face[t];
+                    double d = Geometry.squared_distance(x, y, xc[g], yc[g]);
+                    if (d < best) {
+                        best = d;
+                        next = g;
+                    }
+                }
+                h = dcel.next[h];
+            } while (h != first && h != -1);
+            if (next == f) return f;
+            f = next;
+        }
+    }
+
+    // is vertex v closer to the new site than to the site of face g. The
+    // answer is kept for the whole edit, so all the faces of v agree on it
+    private boolean inside(int v, int g) {
+        if (vertex_mark[v] >> 1 == epoch) return (vertex_mark[v] & 1) == 1;
+        boolean in = distance(v, diagram.N - 1) < distance(v, g);
+        vertex_mark[v] = 2 * epoch + (in ? 1 : 0);
+        return in;
+    }
+
+    // the squared distance from vertex v to site i
+    private double distance(int v, int i) {
+        return Geometry.squared_distance(dcel.vx[v], dcel.vy[v], diagram.xc[i], diagram.yc[i]);
+    }
+
+    // is vertex v a corner of the bounding box
+    private boolean corner(int v) {
+        return (dcel.vx[v] == diagram.x0 || dcel.vx[v] == diagram.x1)
+                && (dcel.vy[v] == diagram.y0 || dcel.vy[v] == diagram.y1);
+    }
+
+    // the point where the segment from vertex a, outside of the region of
+    // the new site, to vertex b inside of it crosses the bisector of the
+    // new site and site g, stored in in_x[k], in_y[k] or out_x[k], out_y[k]
+    private void crossing(int a, int b, int g, int k, boolean out) {
+        int p = diagram.N - 1;
+        double fa = distance(a, p) - distance(a, g);
+        double fb = distance(b, p) - distance(b, g);
+        double s = fa - fb > 0 ? fa / (fa - fb) : 0.5;
+        s = Math.max(0, Math.min(s, 1));
+        double x = dcel.vx[a] + s * (dcel.vx[b] - dcel.vx[a]);
+        double y = dcel.vy[a] + s * (dcel.vy[b] - dcel.vy[a]);
+        if (out) {
+            out_x[k] = x;
+            out_y[k] = y;
+        }
+        else {
+            in_x[k] = x;
+            in_y[k] = y;
+        }
+    }
+
+    // walk the faces around the new site, which is in face f0, and store
+    // them in the plan. Nothing is changed. Returns false if the faces do
+    // not agree on the region of the new site
+    private boolean plan(int f0, double x, double y) {
+        K = 0;
+        corners.clear();
+        int steps = dcel.half_edge_count;
+
+        // the half-edge of f0 that leaves the region
+        int h2 = -1;
+        int first = dcel.face_edge[f0];
+        int h = first;
+        do {
+            if (!closed(h)) return false;
+            if (inside(dcel.origin[h], f0) && !inside(dcel.destination(h), f0)) h2 = h;
+            h = dcel.next[h];
+        } while (h != first);
+        if (h2 == -1) return false;
+        int start = h2;
+
+        int g = f0;
+        boolean box = false; // is g reached along the box
+        while (true) {
+            if (face_mark[g] == epoch) return false;
+            face_mark[g] = epoch;
+
+            // the run of vertices in the region ends with h2, it starts
+            // after h1 and the rest of the cycle is outside
+            int h1 = dcel.prev[h2];
+            while (closed(h1) && inside(dcel.origin[h1], g)) {
+                h1 = dcel.prev[h1];
+                if (h1 == h2 || --steps < 0) return false;
+            }
+            if (!closed(h1)) return false;
+            for (int k = dcel.next[h2]; k != h1; k = dcel.next[k]) {
+                if (!closed(k) || inside(dcel.origin[k], g) || --steps < 0) return false;
+            }
+
+            if (K + 1 == plan_face.length) grow_plan();
+            plan_face[K] = g;
+            plan_in[K] = h1;
+            plan_out[K] = h2;
+            out_box[K] = box;
+            crossing(dcel.origin[h1], dcel.destination(h1), g, K, false);
+            corner_first[K] = corners.n;
+
+            // the next face is across h1, or along the box from h1 to the
+            // first box half-edge that leaves the region
+            int next;
+            if (dcel.edge[h1] != -1) {
+                h2 = dcel.twin[h1];
+                box = false;
+            }
+            else {
+                int n = dcel.next[h1];
+                while (true) {
+                    while (closed(n) && dcel.edge[n] != -1) {
+                        n = dcel.next[dcel.twin[n]];
+                        if (--steps < 0) return false;
+                    }
+                    if (!closed(n)) return false;
+                    if (corner(dcel.origin[n])) corners.add(dcel.origin[n]);
+                    if (!inside(dcel.destination(n), dcel.face[n])) break;
+                    n = dcel.next[n];
+                }
+                h2 = n;
+                box = true;
+            }
+            next = dcel.face[h2];
+            if (box) crossing(dcel.destination(h2), dcel.origin[h2], next, next == f0 ? 0 : K + 1, true);
+            K++;
+            corner_first[K] = corners.n;
+            if (next == f0) {
+                if (h2 != start) return false;
+                out_box[0] = box;
+                break;
+            }
+            g = next;
+        }
+
+        // the edges inside the region are deleted, both of their faces must
+        // be around the new site
+        for (int k = 0; k < K; k++) {
+            for (int m = dcel.next[plan_in[k]]; m != plan_out[k]; m = dcel.next[m]) {
+                if (dcel.twin[m] != -1 && face_mark[dcel.face[dcel.twin[m]]] != epoch) return false;
+            }
+        }
+        return true;
+    }
+
+    // is h a half-edge of a closed face cycle, the sweep leaves a face
+    // open on some degenerate inputs
+    private boolean closed(int h) {
+        return h != -1 && dcel.next[h] != -1 && dcel.prev[h] != -1 && dcel.origin[h] != -1;
+    }
+
+    // make the plan arrays larger
+    private void grow_plan() {
+        int n = 2 * plan_face.length;
+        plan_face = Arrays.copyOf(plan_face, n);
+        plan_in = Arrays.copyOf(plan_in, n);
+        plan_out = Arrays.copyOf(plan_out, n);
+        in_x = Arrays.copyOf(in_x, n);
+        in_y = Arrays.copyOf(in_y, n);
+        out_box = Arrays.copyOf(out_box, n);
+        out_x = Arrays.copyOf(out_x, n);
+        out_y = Arrays.copyOf(out_y, n);
+        corner_first = Arrays.copyOf(corner_first, n + 1);
+        in_vertex = Arrays.copyOf(in_vertex, n);
+        out_vertex = Arrays.copyOf(out_vertex, n);
+        new_edge = Arrays.copyOf(new_edge, n);
+    }
+
+    // carve the cell of the new site p out of the faces of the plan
+    private void apply(int p) {
+        int V = dcel.vertex_count;
+        int H = dcel.half_edge_count;
+        int E = dcel.edge_count;
+        dead_half_edges.clear();
+        dead_edges.clear();
+        dead_vertices.clear();
+
+        // the vertices in the region other than the corners of the box, and
+        // the half-edges and edges between them
+        for (int k = 0; k < K; k++) {
+            for (int m = dcel.next[plan_in[k]]; ; m = dcel.next[m]) {
+                int v = dcel.origin[m];
+                if (vertex_mark[v] == 2 * epoch + 1) {
+                    vertex_mark[v] = 2 * epoch; // collected
+                    if (!corner(v)) dead_vertices.add(v);
+                }
+                if (m == plan_out[k]) break;
+                if (dead_mark[m] == epoch) continue;
+                dead_mark[m] = epoch;
+                dead_half_edges.add(m);
+                int t = dcel.twin[m];
+                if (t != -1) {
+                    dead_mark[t] = epoch;
+                    dead_half_edges.add(t);
+                    dead_edges.add(dcel.edge[m]);
+                }
+            }
+        }
+
+        // the face of p and the vertices where its cell crosses the old
+        // edges, in the slots of the deleted vertices first
+        int f = dcel.add_face();
+        if (f != p) throw new IllegalStateException("The faces and the sites differ");
+        for (int k = 0; k < K; k++) {
+            in_vertex[k] = new_vertex(in_x[k], in_y[k]);
+            if (out_box[k]) out_vertex[k] = new_vertex(out_x[k], out_y[k]);
+        }
+        for (int k = 0; k < K; k++) {
+            if (!out_box[k]) out_vertex[k] = in_vertex[(k + K - 1) % K];
+        }
+
+        // close every face with an edge on the bisector of p and its site
+        Geometry geo = diagram.geo;
+        for (int k = 0; k < K; k++) {
+            int g = plan_face[k];
+            int h1 = plan_in[k];
+            int h2 = plan_out[k];
+            geo.bisector(diagram.xc[p], diagram.yc[p], diagram.xc[g], diagram.yc[g]);
+            int e = dcel.add_edge(geo.m, geo.b, geo.vertical, g, p);
+            int n = dcel.edge_half_edge[e];
+            int t = dcel.twin[n];
+            new_edge[k] = e;
+            set_origin(n, in_vertex[k]);
+            set_origin(t, out_vertex[k]);
+            set_origin(h2, out_vertex[k]);
+            if (dcel.twin[h1] != -1) set_origin(dcel.twin[h1], in_vertex[k]);
+            dcel.link(h1, n);
+            dcel.link(n, h2);
+            dcel.face_edge[g] = n;
+        }
+
+        // the cycle of p: the twin of every new edge, then the box from its
+        // end through the corners to the start of the next one
+        cycle.clear();
+        for (int k = 0; k < K; k++) {
+            cycle.add(dcel.twin[dcel.edge_half_edge[new_edge[k]]]);
+            if (dcel.edge[plan_in[k]] != -1) continue;
+            int b = dcel.add_box_half_edge(p);
+            set_origin(b, in_vertex[k]);
+            cycle.add(b);
+            for (int c = corner_first[k]; c < corner_first[k + 1]; c++) {
+                b = dcel.add_box_half_edge(p);
+                set_origin(b, corners.a[c]);
+                cycle.add(b);
+            }
+        }
+        for (int c = 0; c < cycle.n; c++) dcel.link(cycle.a[c], cycle.a[(c + 1) % cycle.n]);
+        dcel.face_edge[p] = cycle.a[0];
+
+        // the object graph has new objects at the new indices
+        boolean objects = diagram.vor_faces != null;
+        if (objects) {
+            for (int v = V; v < dcel.vertex_count; v++) diagram.vor_vertices.add(null);
+            for (int k = 0; k < K; k++) {
+                diagram.vor_vertices.set(in_vertex[k], new Vertex(in_x[k], in_y[k]));
+                if (out_box[k]) diagram.vor_vertices.set(out_vertex[k], new Vertex(out_x[k], out_y[k]));
+            }
+            for (int h = H; h < dcel.half_edge_count; h++) diagram.vor_half_edges.add(new Half_Edge(0, 0));
+            for (int e = E; e < dcel.edge_count; e++) diagram.vor_edges.add(new Voronoi_edge(0, 0));
+        }
+
+        compact(objects);
+
+        if (objects) {
+            if (p == diagram.vor_faces.length) {
+                diagram.vor_faces = Arrays.copyOf(diagram.vor_faces, 2 * p);
+            }
+            Face face = new Face();
+            face.index = p;
+            diagram.vor_faces[p] = face;
+            // the half-edges that changed are h1, h2 and the new edge of
+            // every face, and the cycle of p
+            for (int k = 0; k < K; k++) {
+                int g = plan_face[k];
+                int n = dcel.face_edge[g];
+                update_objects(dcel.prev[n]);
+                update_objects(n);
+                update_objects(dcel.next[n]);
+                diagram.vor_faces[g].half_edge = diagram.vor_half_edges.get(n);
+            }
+            int first = dcel.face_edge[p];
+            int h = first;
+            do {
+                update_objects(h);
+                h = dcel.next[h];
+            } while (h != first);
+            diagram.vor_faces[p].half_edge = diagram.vor_half_edges.get(first);
+        }
+        diagram.locator = null;
+    }
+
+    // a vertex at (x, y) in the slot of a deleted vertex if there is one
+    private int new_vertex(double x, double y) {
+        if (dead_vertices.n == 0) {
+            int v = dcel.add_vertex(x, y);
+            if (v >= vertex_edge.length) vertex_edge = Arrays.copyOf(vertex_edge, dcel.vx.length);
+            return v;
+        }
+        int v = dead_vertices.a[--dead_vertices.n];
+        dcel.vx[v] = x;
+        dcel.vy[v] = y;
+        return v;
+    }
+
+    // set the origin of half-edge h to vertex v
+    private void set_origin(int h, int v) {
+        dcel.origin[h] = v;
+        vertex_edge[v] = h;
+    }
+
+    // fill the slots of the deleted half-edges, edges and vertices with the
+    // last ones of their arrays, from the highest slot down so that the
+    // last one is never deleted
+    void compact(boolean objects) {
+        dead_half_edges.sort();
+        for (int k = dead_half_edges.n - 1; k >= 0; k--) {
+            int last = --dcel.half_edge_count;
+            int h = dead_half_edges.a[k];
+            if (h != last) move_half_edge(last, h, objects);
+        }
+        dead_edges.sort();
+        for (int k = dead_edges.n - 1; k >= 0; k--) {
+            int last = --dcel.edge_count;
+            int e = dead_edges.a[k];
+            if (e != last) move_edge(last, e, objects);
+        }
+        dead_vertices.sort();
+        for (int k = dead_vertices.n - 1; k >= 0; k--) {
+            int last = --dcel.vertex_count;
+            int v = dead_vertices.a[k];
+            if (v != last) move_vertex(last, v, objects);
+        }
+        if (objects) {
+            truncate(diagram.vor_half_edges, dcel.half_edge_count);
+            truncate(diagram.vor_edges, dcel.edge_count);
+            truncate(diagram.vor_vertices, dcel.vertex_count);
+        }
+    }
+
+    // remove the elements of the list from n on
+    private static <T> void truncate(ArrayList<T> list, int n) {
+        list.subList(n, list.size()).clear();
+    }
+
+    // move half-edge s to slot h and update the references to it
+    private void move_half_edge(int s, int h, boolean objects) {
+        dcel.origin[h] = dcel.origin[s];
+        dcel.twin[h] = dcel.twin[s];
+        dcel.next[h] = dcel.next[s];
+        dcel.prev[h] = dcel.prev[s];
+        dcel.face[h] = dcel.face[s];
+        dcel.edge[h] = dcel.edge[s];
+        if (dcel.twin[h] != -1) dcel.twin[dcel.twin[h]] = h;
+        if (dcel.prev[h] != -1) dcel.next[dcel.prev[h]] = h;
+        if (dcel.next[h] != -1) dcel.prev[dcel.next[h]] = h;
+        if (dcel.face_edge[dcel.face[h]] == s) dcel.face_edge[dcel.face[h]] = h;
+        int e = dcel.edge[h];
+        if (e != -1 && dcel.edge_half_edge[e] == s) dcel.edge_half_edge[e] = h;
+        int v = dcel.origin[h];
+        if (v != -1 && vertex_edge[v] == s) vertex_edge[v] = h;
+        if (objects) diagram.vor_half_edges.set(h, diagram.vor_half_edges.get(s));
+    }
+
+    // move edge s to slot e and update its half-edges
+    private void move_edge(int s, int e, boolean objects) {
+        dcel.m[e] = dcel.m[s];
+        dcel.b[e] = dcel.b[s];
+        dcel.vertical[e] = dcel.vertical[s];
+        dcel.upper_edge[e] = dcel.upper_edge[s];
+        int h = dcel.edge_half_edge[s];
+        dcel.edge_half_edge[e] = h;
+        dcel.edge[h] = e;
+        dcel.edge[dcel.twin[h]] = e;
+        if (objects) diagram.vor_edges.set(e, diagram.vor_edges.get(s));
+    }
+
+    // move vertex s to slot v and update the half-edges that leave it, they
+    // are found by turning around s in both directions from one of them
+    private void move_vertex(int s, int v, boolean objects) {
+        dcel.vx[v] = dcel.vx[s];
+        dcel.vy[v] = dcel.vy[s];
+        int start = vertex_edge[s];
+        vertex_edge[v] = start;
+        int h = start;
+        do {
+            dcel.origin[h] = v;
+            if (dcel.twin[h] == -1) break;
+            h = dcel.next[dcel.twin[h]];
+        } while (h != start);
+        for (h = start; dcel.twin[dcel.prev[h]] != -1; ) {
+            h = dcel.twin[dcel.prev[h]];
+            if (h == start) break;
+            dcel.origin[h] = v;
+        }
+        if (objects) diagram.vor_vertices.set(v, diagram.vor_vertices.get(s));
+    }
+
+    // update the objects of half-edge h, of its origin and of its edge from
+    // the arrays
+    void update_objects(int h) {
+        ArrayList<Half_Edge> half_edges = diagram.vor_half_edges;
+        ArrayList<Vertex> vertices = diagram.vor_vertices;
+        Half_Edge half_edge = half_edges.get(h);
+        int e = dcel.edge[h];
+        half_edge.box_edge = e == -1;
+        half_edge.m = e == -1 ? 0 : dcel.m[e];
+        half_edge.b = e == -1 ? 0 : dcel.b[e];
+        half_edge.origin = vertices.get(dcel.origin[h]);
+        half_edge.destination = vertices.get(dcel.destination(h));
+        half_edge.twin = dcel.twin[h] == -1 ? null : half_edges.get(dcel.twin[h]);
+        half_edge.next = half_edges.get(dcel.next[h]);
+        half_edge.prev = half_edges.get(dcel.prev[h]);
+        half_edge.incidentFace = diagram.vor_faces[dcel.face[h]];
+        half_edge.origin.half_edge = half_edges.get(vertex_edge[dcel.origin[h]]);
+        if (e != -1) {
+            Voronoi_edge edge = diagram.vor_edges.get(e);
+            edge.m = dcel.m[e];
+            edge.b = dcel.b[e];
+            edge.vertical = dcel.vertical[e];
+            edge.upper_edge = dcel.upper_edge[e];
+            edge.edge_one = half_edges.get(dcel.edge_half_edge[e]);
+            edge.edge_two = half_edges.get(dcel.twin[dcel.edge_half_edge[e]]);
+        }
+    }
+
+    // a growable list of ints
+    static class Int_list {
+        int[] a = new int[16];
+        int n;
+
+        // add v at the end
+        void add(int v) {
+            if (n == a.length) a = Arrays.copyOf(a, 2 * n);
+            a[n++] = v;
+        }
+
+        // remove all the elements
+        void clear() {
+            n = 0;
+        }
+
+        // sort the elements
+        void sort() {
+            Arrays.sort(a, 0, n);
+        }
+    }
+
+
+    // unit testing
+    public static void main(String[] args) {
+        int N = 2000;
+        int M = 500;
+        if (args.length > 0) N = Integer.parseInt(args[0]);
+        if (args.length > 1) M = Integer.parseInt(args[1]);
+        java.util.Random random = new java.util.Random(451);
+        double[] xc = new double[N + M];
+        double[] yc = new double[N + M];
+        for (int i = 0; i < N + M; i++) {
+            xc[i] = random.nextDouble();
+            yc[i] = random.nextDouble();
+        }
+
+        // insert M sites one at a time, with the object graph
+        Voronoi_diagram diagram = new Voronoi_diagram(N, Arrays.copyOf(xc, N), Arrays.copyOf(yc, N));
+        long start = System.nanoTime();
+        for (int i = N; i < N + M; i++) diagram.addSite(xc[i], yc[i]);
+        double time = (System.nanoTime() - start) / 1e6;
+
+        // the triangles of the diagram built from all the sites, except the
+        // ones whose voronoi vertex is outside of the box of the edited
+        // diagram, the new diagram has a larger box
+        Voronoi_diagram built = Voronoi_diagram.compact(N + M, xc, yc);
+        System.out.printf("%d insertions in %.1f ms%n", M, time);
+        System.out.println("same triangles as a new diagram: " + same_triangles(diagram, built));
+        System.out.println("consistent: " + diagram.editor.check());
+        Face[] faces = diagram.faces();
+        int live = 0;
+        for (int i = 0; i < diagram.faceCount(); i++) if (faces[i] != null && faces[i].index == i) live++;
+        int spare = 0;
+        for (int i = diagram.faceCount(); i < faces.length; i++) if (faces[i] == null) spare++;
+        System.out.println("faces: " + live + " of " + diagram.N + ", spare room " + spare
+                                   + " of " + (faces.length - diagram.faceCount()));
+
+        // remove M random sites, the last site takes the index of the
+        // removed one
+        int n = N + M;
+        start = System.nanoTime();
+        for (int k = 0; k < M; k++) {
+            int i = random.nextInt(n);
+            if (diagram.removeSite(i) != -1) {
+                xc[i] = xc[n - 1];
+                yc[i] = yc[n - 1];
+            }
+            n--;
+        }
+        time = (System.nanoTime() - start) / 1e6;
+        built = Voronoi_diagram.compact(n, xc, yc);
+        System.out.printf("%d removals in %.1f ms%n", M, time);
+        System.out.println("same triangles as a new diagram: " + same_triangles(diagram, built));
+        System.out.println("consistent: " + (diagram.editor == null || diagram.editor.check()));
+    }
+
+    // are the triangles of diagram a the ones of diagram b whose circle
+    // has its center in the box of a
+    static boolean same_triangles(Voronoi_diagram a, Voronoi_diagram b) {
+        java.util.HashSet<String> set = new java.util.HashSet<>();
+        Delaunay d = a.delaunay();
+        for (int t = 0; t < d.triangle_count(); t++) set.add(triangle_key(d, t));
+        d = b.delaunay();
+        int count = 0;
+        Geometry geo = new Geometry();
+        for (int t = 0; t < d.triangle_count(); t++) {
+            int i = d.triangle(t, 0);
+            int j = d.triangle(t, 1);
+            int k = d.triangle(t, 2);
+            geo.circle(b.xc[i], b.yc[i], b.xc[j], b.yc[j], b.xc[k], b.yc[k]);
+            if (geo.cx < a.x0 || geo.cx > a.x1 || geo.cy < a.y0 || geo.cy > a.y1) continue;
+            if (!set.contains(triangle_key(d, t))) return false;
+            count++;
+        }
+        return count == set.size();
+    }
+
+    // the sites of triangle t, from the smallest
+    private static String triangle_key(Delaunay d, int t) {
+        int[] s = { d.triangle(t, 0), d.triangle(t, 1), d.triangle(t, 2) };
+        int k = s[0] < s[1] ? (s[0] < s[2] ? 0 : 2) : (s[1] < s[2] ? 1 : 2);
+        return s[k] + " " + s[(k + 1) % 3] + " " + s[(k + 2) % 3];
+    }
+
+    // check the references of the DCEL and of the object graph
+    boolean check() {
+        for (int h = 0; h < dcel.half_edge_count; h++) {
+            int t = dcel.twin[h];
+            if (t != -1 && (dcel.twin[t] != h || dcel.edge[t] != dcel.edge[h])) return false;
+            if (dcel.prev[dcel.next[h]] != h || dcel.face[dcel.next[h]] != dcel.face[h]) return false;
+            if (dcel.destination(h) != dcel.origin[dcel.next[h]]) return false;
+            if (dcel.origin[h] < 0 || dcel.origin[h] >= dcel.vertex_count) return false;
+            if (dcel.edge[h] >= dcel.edge_count) return false;
+        }
+        for (int e = 0; e < dcel.edge_count; e++) {
+            if (dcel.edge[dcel.edge_half_edge[e]] != e) return false;
+        }
+        for (int v = 0; v < dcel.vertex_count; v++) {
+            if (dcel.origin[vertex_edge[v]] != v) return false;
+        }
+        if (diagram.vor_faces == null) return true;
+        if (diagram.vor_half_edges.size() != dcel.half_edge_count) return false;
+        for (int h = 0; h < dcel.half_edge_count; h++) {
+            Half_Edge half_edge = diagram.vor_half_edges.get(h);
+            if (half_edge.next != diagram.vor_half_edges.get(dcel.next[h])) return false;
+            if (half_edge.origin != diagram.vor_vertices.get(dcel.origin[h])) return false;
+            if (half_edge.destination != diagram.vor_vertices.get(dcel.destination(h))) return false;
+            if (dcel.twin[h] != -1 && half_edge.twin != diagram.vor_half_edges.get(dcel.twin[h])) return false;
+            if (half_edge.origin.xc != dcel.vx[dcel.origin[h]]) return false;
+            if (half_edge.incidentFace.index != dcel.face[h]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,24 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Receives the Voronoi diagram while the sweep builds it. A
+ *  vertex is reported when the circle event that creates it is handled, and
+ *  a voronoi edge as soon as both of its ends are known: at a circle event
+ *  for the finite edges and when the infinite edges are cut with the
+ *  bounding box at the end of the sweep. The vertices are numbered in the
+ *  order in which they are created, as in the DCEL of the diagram.
+ *
+ **************************************************************************** */
+
+public interface Voronoi_listener {
+
+    // the vertex v at (x, y) where the cells of the sites a, b and c meet,
+    // c is -1 for a vertex on the bounding box
+    void vertex(int v, double x, double y, int a, int b, int c);
+
+    // the voronoi edge between the cells of the sites a and b is complete, on
+    // the side of a it goes from vertex v at (x1, y1) to vertex w at (x2, y2)
+    void edge(int a, int b, int v, double x1, double y1, int w, double x2, double y2);
+}
@@ -0,0 +1,953 @@
+/* *****************************************************************************
+ *  Name:    Atanas Dinev
+ *  NetID:   adinev
+ *  Course:  COS 451
+ *
+ *  Description:  Sharded construction of the Voronoi diagram with worker
+ *  processes. The coordinator splits the sites into vertical strips as the
+ *  parallel build does and launches one worker JVM per strip. A worker
+ *  reads the sites of its strip, its halo, the convex layers and the
+ *  convex hull from a file, runs the sequential sweep, certifies the cells
+ *  of the strip and writes them to another file with the number of
+ *  vertices, half-edges and edges they create. A vertex is certified if
+ *  its circle does not reach the part of the hull beyond the halo, where
+ *  all the sites the worker did not sweep are, so the sweep state, the
+ *  DCEL of a shard and almost all the certification only live in its
+ *  worker. The few circles that do reach it, mostly the large circles of
+ *  the cells along the hull, are reported to the coordinator, which checks
+ *  them against the sites in their range of the order by x. A strip whose
+ *  halo was too small is relaunched with a doubled halo and a worker that
+ *  fails is relaunched on the same file.
+ *
+ *  The coordinator only keeps the sites, their order by x and the convex
+ *  layers. From the counts of the workers it knows the size of the DCEL
+ *  before any cell is stitched: it creates the Mapped_dcel file, streams
+ *  the cells of one strip at a time into it, links the seams through the
+ *  mapped arrays and a mapped scratch file and closes the infinite faces
+ *  with the bounding box. Inputs that cannot be split or certified
+ *  (degenerate inputs) are built sequentially by a single worker, which
+ *  writes the file itself.
+ *
+ *  Usage: java Voronoi_shard [N] [shards]
+ *  Builds the diagram of N random sites with the given number of workers
+ *  and compares it with the sequential diagram.
+ *
+ *  The workers run as: java Voronoi_shard worker <sites file> <cells file>
+ *  and java Voronoi_shard whole <sites file> <DCEL file>
+ *
+ **************************************************************************** */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+public class Voronoi_shard {
+
+    static final int ATTEMPTS = 3; // the launches of a worker on the same file
+    static final int UNCERTAIN = 256; // the most circles a worker leaves to the coordinator
+
+    int N; // number of sites
+    double[] xc; // the x-coordinates of the sites
+    double[] yc; // the y-coordinates of the sites
+    int shards; // the number of strips and worker processes
+    String[] jvm_options; // options of the worker JVMs, e.g. -Xmx8g
+
+    Parallel_voronoi builder; // the strips and the convex layers
+    int[] hull_rank; // the position in by_x of every site of builder.hull_sites
+    int[] hull_chain; // the convex hull counterclockwise, as indices into hull_sites
+    Open_cell[][] open_cells; // the infinite cells of every strip
+    double y_min; // the range of the y-coordinates of the sites
+    double y_max;
+    int launches; // the number of worker processes launched
+    boolean whole; // was the diagram built by a single worker
+
+    // the DCEL being stitched and the scratch arrays of the stitching
+    Mapped_dcel out;
+    IntBuffer across; // the site across every half-edge
+    IntBuffer cell_deg; // the number of half-edges of every cell
+    ByteBuffer cell_open; // is the cell infinite
+    volatile boolean failed; // could the seams not be linked
+
+
+    // an infinite cell of a strip, as reported by its worker
+    static class Open_cell {
+        int g; // the site
+        int j; // the site across the first half-edge, which comes from infinity
+        int l; // the site across the second half-edge
+        int q; // the site across the last half-edge, which goes to infinity
+        double x; // the vertex at the end of the first half-edge
+        double y;
+    }
+
+
+    // prepare the sharded build of the diagram of N sites
+    public Voronoi_shard(int N, double[] xc, double[] yc, int shards, String... jvm_options) {
+        if (shards < 1) throw new IllegalArgumentException("Need at least one shard");
+        this.N = N;
+        this.xc = xc;
+        this.yc = yc;
+        this.shards = shards;
+        this.jvm_options = jvm_options;
+    }
+
+    // build the diagram with the workers, write its DCEL and the sites to
+    // file and map it. The diagram never is in the heap of the coordinator
+    public Mapped_dcel build(String file) throws IOException {
+        builder = new Parallel_voronoi(N, xc, yc, ForkJoinPool.commonPool());
+        File dir = Files.createTempDirectory("voronoi_shard").toFile();
+        try {
+            if (!builder.split(Math.min(shards, N / Parallel_voronoi.MIN_STRIP))
+                    || builder.hull_sites.length == 0) {
+                whole(file, dir);
+                return Mapped_dcel.open(file);
+            }
+            prepare();
+            List<Parallel_voronoi.Strip> pending = new ArrayList<>(Arrays.asList(builder.strips));
+            while (!pending.isEmpty() && !builder.failed) {
+                pending = round(pending, dir);
+            }
+            if (builder.failed || !stitch(file, dir)) whole(file, dir);
+        }
+        finally {
+            out = null;
+            across = null;
+            cell_deg = null;
+            cell_open = null;
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) f.delete();
+            }
+            dir.delete();
+        }
+        return Mapped_dcel.open(file);
+    }
+
+    // keep the positions of the sites of the convex layers and the hull, and
+    // drop the grid and the ranks of the split, which the workers replace
+    private void prepare() {
+        int[] hull = builder.hull_sites;
+        hull_rank = new int[hull.length];
+        Map<Integer, Integer> index = new HashMap<>();
+        for (int t = 0; t < hull.length; t++) {
+            hull_rank[t] = builder.rank[hull[t]];
+            index.put(hull[t], t);
+        }
+        int count = 0;
+        int p = hull[0];
+        do {
+            count++;
+            p = builder.hull_next[p];
+        } while (p != hull[0]);
+        hull_chain = new int[count];
+        for (int t = 0; t < count; t++) {
+            hull_chain[t] = index.get(p);
+            p = builder.hull_next[p];
+        }
+        open_cells = new Open_cell[builder.strips.length][];
+        y_min = Double.POSITIVE_INFINITY;
+        y_max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < N; i++) {
+            y_min = Math.min(y_min, yc[i]);
+            y_max = Math.max(y_max, yc[i]);
+        }
+        builder.rank = null;
+        builder.hull_prev = null;
+        builder.hull_next = null;
+        builder.grid_start = null;
+        builder.grid_sites = null;
+    }
+
+    // sweep the pending strips in worker processes, returns the strips that
+    // were not certified, with their halo doubled
+    private List<Parallel_voronoi.Strip> round(List<Parallel_voronoi.Strip> pending, File dir)
+            throws IOException {
+        int W = pending.size();
+        Process[] workers = new Process[W];
+        int[] sites = new int[W];
+        File[] input = new File[W];
+        File[] cells = new File[W];
+        for (int w = 0; w < W; w++) {
+            int s = index(pending.get(w));
+            input[w] = new File(dir, "sites_" + s);
+            cells[w] = new File(dir, "cells_" + s);
+            sites[w] = write_sites(input[w], pending.get(w));
+            workers[w] = launch("worker", input[w], cells[w]);
+        }
+
+        List<Parallel_voronoi.Strip> retry = new ArrayList<>();
+        for (int w = 0; w < W; w++) {
+            Parallel_voronoi.Strip strip = pending.get(w);
+            await(workers[w], "worker", input[w], cells[w]);
+            strip.swept += sites[w];
+            try (DataInputStream in = open(cells[w])) {
+                if (read_head(in, strip, index(strip), true)) continue;
+            }
+            builder.grow_halo(strip);
+            retry.add(strip);
+        }
+        return retry;
+    }
+
+    // the position of the strip in builder.strips
+    private int index(Parallel_voronoi.Strip strip) {
+        return Arrays.asList(builder.strips).indexOf(strip);
+    }
+
+    // build the diagram of all the sites sequentially in one worker, which
+    // writes the DCEL file
+    private void whole(String file, File dir) throws IOException {
+        File input = new File(dir, "sites");
+        Site_file.write(input.getPath(), N, xc, yc);
+        File output = new File(file);
+        await(launch("whole", input, output), "whole", input, output);
+        whole = true;
+    }
+
+    // start a worker JVM on the same class path
+    private Process launch(String mode, File input, File output) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(Arrays.asList(jvm_options));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("Voronoi_shard");
+        command.add(mode);
+        command.add(input.getPath());
+        command.add(output.getPath());
+        launches++;
+        return new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    // wait for a worker to finish, a worker that fails is launched again on
+    // the same files up to ATTEMPTS times
+    private void await(Process worker, String mode, File input, File output) throws IOException {
+        int attempts = 1;
+        int code;
+        while ((code = exit(worker)) != 0) {
+            if (attempts++ == ATTEMPTS)
+                throw new IOException("Worker failed " + ATTEMPTS + " times, last exit code " + code);
+            worker = launch(mode, input, output);
+        }
+    }
+
+    // the exit code of a worker
+    private static int exit(Process worker) throws IOException {
+        try {
+            return worker.waitFor();
+        }
+        catch (InterruptedException e) {
+            worker.destroy();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a worker");
+        }
+    }
+
+    // write the sites of a shard: the number of sites, the first cell of the
+    // strip, the number of cells of the strip and the x-coordinates beyond
+    // which the sites were not swept (infinite if there are none), then the
+    // sites, their coordinates and the convex hull as positions in the file.
+    // Returns the number of sites
+    private int write_sites(File file, Parallel_voronoi.Strip strip) throws IOException {
+        int[] by_x = builder.by_x;
+        int[] hull = builder.hull_sites;
+        int a = Math.max(0, strip.lo - strip.halo);
+        int b = Math.min(N, strip.hi + strip.halo);
+        double left = a > 0 ? Math.nextUp((float) xc[by_x[a - 1]]) : Double.NEGATIVE_INFINITY;
+        double right = b < N ? Math.nextDown((float) xc[by_x[b]]) : Double.POSITIVE_INFINITY;
+
+        // the sites of the convex layers that are not in the strip or its
+        // halo come after it, as in Parallel_voronoi.local_sites()
+        int n = b - a;
+        int[] position = new int[hull.length];
+        for (int t = 0; t < hull.length; t++) {
+            if (hull_rank[t] >= a && hull_rank[t] < b) position[t] = hull_rank[t] - a;
+            else position[t] = n++;
+        }
+        int[] sites = Arrays.copyOfRange(by_x, a, a + n);
+        for (int t = 0; t < hull.length; t++) {
+            if (position[t] >= b - a) sites[position[t]] = hull[t];
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(n);
+            out.writeInt(Parallel_voronoi.first_cell(strip));
+            out.writeInt(strip.hi - strip.lo);
+            out.writeDouble(left);
+            out.writeDouble(right);
+            for (int p : sites) out.writeInt(p);
+            for (int p : sites) out.writeDouble(xc[p]);
+            for (int p : sites) out.writeDouble(yc[p]);
+            out.writeInt(hull_chain.length);
+            for (int t : hull_chain) out.writeInt(position[t]);
+        }
+        return n;
+    }
+
+    // a buffered stream of a file
+    private static DataInputStream open(File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    // read the head of the cells of strip s written by a worker: the counts,
+    // the extent, the circles left to the coordinator, which are checked if
+    // check is true, and the infinite cells. Returns false if the cells were
+    // not certified
+    private boolean read_head(DataInputStream in, Parallel_voronoi.Strip strip, int s,
+                              boolean check) throws IOException {
+        if (!in.readBoolean()) return false;
+        int a = Math.max(0, strip.lo - strip.halo);
+        int b = Math.min(N, strip.hi + strip.halo);
+        int uncertain = in.readInt();
+        for (int t = 0; t < uncertain; t++) {
+            int g = in.readInt();
+            double x = in.readDouble();
+            double y = in.readDouble();
+            if (check && !empty_circle(x, y, g, a, b)) return false;
+        }
+        strip.entries = in.readInt();
+        strip.vertices = in.readInt();
+        strip.edges = in.readInt();
+        strip.x_min = in.readDouble();
+        strip.x_max = in.readDouble();
+        strip.y_min = in.readDouble();
+        strip.y_max = in.readDouble();
+        Open_cell[] open = new Open_cell[in.readInt()];
+        for (int t = 0; t < open.length; t++) {
+            open[t] = new Open_cell();
+            open[t].g = builder.by_x[strip.lo + in.readInt()];
+            open[t].j = in.readInt();
+            open[t].l = in.readInt();
+            open[t].q = in.readInt();
+            open[t].x = in.readDouble();
+            open[t].y = in.readDouble();
+        }
+        open_cells[s] = open;
+        return true;
+    }
+
+    // is no site that was not swept for a strip (the sites outside
+    // by_x[a..b)) closer to the vertex (x, y) than its site g. The sites are
+    // searched in the range of the order by x where the circle meets the
+    // range of the y-coordinates of the sites
+    private boolean empty_circle(double x, double y, int g, int a, int b) {
+        double r2 = Geometry.squared_distance(x, y, xc[g], yc[g]);
+        double limit = r2 * (1 - Parallel_voronoi.EPS);
+        double dy = Math.max(0, Math.max(y_min - y, y - y_max));
+        if (dy * dy >= r2) return true;
+        double w = Math.sqrt(r2 - dy * dy);
+        int lo = rank(Math.nextDown((float) (x - w)));
+        int hi = rank(Math.nextUp((float) (x + w)));
+        for (int k = lo; k < Math.min(hi, a); k++) {
+            int i = builder.by_x[k];
+            if (Geometry.squared_distance(x, y, xc[i], yc[i]) < limit) return false;
+        }
+        for (int k = Math.max(lo, b); k < hi; k++) {
+            int i = builder.by_x[k];
+            if (Geometry.squared_distance(x, y, xc[i], yc[i]) < limit) return false;
+        }
+        return true;
+    }
+
+    // the first position in by_x of a site whose x-coordinate rounded to a
+    // float is larger than f
+    private int rank(float f) {
+        int lo = 0;
+        int hi = N;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if ((float) xc[builder.by_x[mid]] <= f) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // stitch the certified strips into the DCEL file. The counts of the
+    // workers and the closing of the infinite faces give the size of the
+    // file, then the cells of the strips are streamed into it one strip at a
+    // time and the seams are linked on the mapped arrays. Returns false if
+    // the cells do not fit
+    private boolean stitch(String file, File dir) throws IOException {
+        Parallel_voronoi.Strip[] strips = builder.strips;
+        int half_edges = 0;
+        int vertices = 0;
+        int edges = 0;
+        double x_min = Double.POSITIVE_INFINITY;
+        double x_max = Double.NEGATIVE_INFINITY;
+        double y_min = Double.POSITIVE_INFINITY;
+        double y_max = Double.NEGATIVE_INFINITY;
+        List<Open_cell> open = new ArrayList<>();
+        for (int s = 0; s < strips.length; s++) {
+            Parallel_voronoi.Strip strip = strips[s];
+            strip.half_edge_base = half_edges;
+            strip.vertex_base = vertices;
+            strip.edge_base = edges;
+            half_edges += strip.entries;
+            vertices += strip.vertices;
+            edges += strip.edges;
+            x_min = Math.min(x_min, strip.x_min);
+            x_max = Math.max(x_max, strip.x_max);
+            y_min = Math.min(y_min, strip.y_min);
+            y_max = Math.max(y_max, strip.y_max);
+            open.addAll(Arrays.asList(open_cells[s]));
+        }
+        Voronoi_diagram box = close_box(open, x_min - 0.1, x_max + 0.1, y_min - 0.1, y_max + 0.1);
+        if (box == null) return false;
+
+        int box_half_edges = box.dcel.half_edge_count - 2 * open.size();
+        out = Mapped_dcel.create(file, N, vertices + box.dcel.vertex_count,
+                                 half_edges + box_half_edges, edges, true);
+        out.site_x.put(0, xc, 0, N);
+        out.site_y.put(0, yc, 0, N);
+        scratch(new File(dir, "scratch"), half_edges);
+
+        // create the vertices and edges owned by the cells, then link
+        for (int s = 0; s < strips.length; s++) {
+            try (DataInputStream in = open(new File(dir, "cells_" + s))) {
+                create(in, strips[s], s);
+            }
+        }
+        builder.pool.submit(() -> IntStream.range(0, strips.length).parallel()
+                                           .forEach(s -> link(strips[s]))).join();
+        if (failed) return false;
+        write_box(box, open, vertices, half_edges);
+        return true;
+    }
+
+    // map the scratch arrays of the stitching into a file
+    private void scratch(File file, int half_edges) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            long degrees = 4L * half_edges;
+            long flags = degrees + 4L * N;
+            across = map(channel, 0, degrees).asIntBuffer();
+            cell_deg = map(channel, degrees, 4L * N).asIntBuffer();
+            cell_open = map(channel, flags, N);
+        }
+    }
+
+    // map bytes of the channel from position for writing
+    private static ByteBuffer map(FileChannel channel, long position, long bytes)
+            throws IOException {
+        if (bytes > Integer.MAX_VALUE) throw new IOException("A scratch array is over 2 GB");
+        return channel.map(FileChannel.MapMode.READ_WRITE, position, bytes)
+                      .order(ByteOrder.nativeOrder());
+    }
+
+    // read the cells of a strip from the file of its worker and write their
+    // half-edges and the vertices and voronoi edges that belong to them into
+    // the DCEL file
+    private void create(DataInputStream in, Parallel_voronoi.Strip strip, int s)
+            throws IOException {
+        read_head(in, strip, s, false);
+        int cells = strip.hi - strip.lo;
+        int[] deg = new int[cells];
+        boolean[] open = new boolean[cells];
+        int[] sites = new int[strip.entries];
+        double[] ox = new double[strip.entries];
+        double[] oy = new double[strip.entries];
+        for (int c = 0; c < cells; c++) deg[c] = in.readInt();
+        for (int c = 0; c < cells; c++) open[c] = in.readBoolean();
+        for (int k = 0; k < strip.entries; k++) sites[k] = in.readInt();
+        for (int k = 0; k < strip.entries; k++) ox[k] = in.readDouble();
+        for (int k = 0; k < strip.entries; k++) oy[k] = in.readDouble();
+
+        int vertex = strip.vertex_base;
+        int edge = strip.edge_base;
+        int k = 0;
+        for (int c = 0; c < cells; c++) {
+            int g = builder.by_x[strip.lo + c];
+            int base = k;
+            out.face_edge.put(g, strip.half_edge_base + base);
+            cell_deg.put(g, deg[c]);
+            cell_open.put(g, (byte) (open[c] ? 1 : 0));
+            for (; k < base + deg[c]; k++) {
+                int h = strip.half_edge_base + k;
+                int j = sites[k];
+                across.put(h, j);
+                out.origin.put(h, -1);
+                out.twin.put(h, -1);
+                out.edge.put(h, -1);
+                out.face.put(h, g);
+
+                // the links on the face
+                if (k > base) out.prev.put(h, h - 1);
+                else if (open[c]) out.prev.put(h, -1);
+                else out.prev.put(h, h + deg[c] - 1);
+                if (k < base + deg[c] - 1) out.next.put(h, h + 1);
+                else if (open[c]) out.next.put(h, -1);
+                else out.next.put(h, h - deg[c] + 1);
+
+                // the vertex at the origin
+                int l = sites[Parallel_voronoi.previous(k, base, deg[c], open[c])];
+                if (!Double.isNaN(ox[k]) && g < j && g < l) {
+                    out.vx.put(vertex, ox[k]);
+                    out.vy.put(vertex, oy[k]);
+                    out.origin.put(h, vertex++);
+                }
+
+                // the voronoi edge
+                if (g < j) {
+                    int e = edge++;
+                    strip.geo.bisector(xc[g], yc[g], xc[j], yc[j]);
+                    out.m.put(e, strip.geo.m);
+                    out.b.put(e, strip.geo.b);
+                    out.vertical.put(e, (byte) (strip.geo.vertical ? 1 : 0));
+                    out.edge_half_edge.put(e, h);
+                    out.edge.put(h, e);
+                }
+            }
+        }
+    }
+
+    // set the twins and the vertices and edges that belong to other cells of
+    // the half-edges of the cells of the strip, as Parallel_voronoi.link()
+    private void link(Parallel_voronoi.Strip strip) {
+        for (int c = 0; c < strip.hi - strip.lo && !failed; c++) {
+            int g = builder.by_x[strip.lo + c];
+            int base = out.face_edge.get(g);
+            int deg = cell_deg.get(g);
+            boolean open = cell_open.get(g) != 0;
+            for (int h = base; h < base + deg; h++) {
+                int j = across.get(h);
+                int twin = find(j, g, -1);
+                if (twin == -1) {
+                    failed = true;
+                    return;
+                }
+                out.twin.put(h, twin);
+                if (out.edge.get(h) == -1) out.edge.put(h, out.edge.get(twin));
+
+                // the vertex belongs to the smallest of the 3 sites around it
+                if ((h > base || !open) && out.origin.get(h) == -1) {
+                    int l = across.get(Parallel_voronoi.previous(h, base, deg, open));
+                    int v;
+                    if (j < l) v = find(j, l, g);
+                    else v = find(l, g, j);
+                    if (v == -1 || out.origin.get(v) == -1) {
+                        failed = true;
+                        return;
+                    }
+                    out.origin.put(h, out.origin.get(v));
+                }
+            }
+        }
+    }
+
+    // the half-edge of the cell of site o across which is site p and, if q is
+    // not -1, whose previous half-edge is across site q. Returns -1 if there
+    // is none
+    private int find(int o, int p, int q) {
+        int base = out.face_edge.get(o);
+        int deg = cell_deg.get(o);
+        boolean open = cell_open.get(o) != 0;
+        for (int h = base; h < base + deg; h++) {
+            if (across.get(h) != p) continue;
+            if (q == -1) return h;
+            if (h == base && open) continue;
+            int before = h > base ? h - 1 : base + deg - 1;
+            if (across.get(before) == q) return h;
+        }
+        return -1;
+    }
+
+    // close the infinite cells with the bounding box in a small DCEL of their
+    // infinite half-edges, as Parallel_voronoi.close() does on the whole
+    // DCEL: half-edges 2t and 2t + 1 stand for the first and the last
+    // half-edge of the t-th infinite cell, vertex t is where the first one
+    // leaves the box and the corners of the box come after them. Returns
+    // null if the infinite cells do not fit
+    private Voronoi_diagram close_box(List<Open_cell> open, double x0, double x1, double y0,
+                                      double y1) {
+        int count = open.size();
+        Map<Integer, Integer> index = new HashMap<>();
+        for (int t = 0; t < count; t++) index.put(open.get(t).g, t);
+        Compact_dcel d = new Compact_dcel(count, count + 4, 4 * count + 8, 1);
+        Voronoi_diagram box = new Voronoi_diagram(count, null, null, d);
+        box.x0 = x0;
+        box.x1 = x1;
+        box.y0 = y0;
+        box.y1 = y1;
+        Geometry geo = box.geo;
+        for (int t = 0; t < count; t++) {
+            Open_cell cell = open.get(t);
+            int g = cell.g;
+            int j = cell.j;
+            int l = cell.l;
+            Integer u = index.get(cell.q);
+            if (u == null) return null;
+
+            // the edge goes away from the third site l at its vertex
+            double ux = -(yc[j] - yc[g]);
+            double uy = xc[j] - xc[g];
+            if (ux * (xc[g] - xc[l]) + uy * (yc[g] - yc[l]) < 0) {
+                ux = -ux;
+                uy = -uy;
+            }
+            int a = Math.min(g, j);
+            int c = Math.max(g, j);
+            geo.bisector(xc[a], yc[a], xc[c], yc[c]);
+            geo.intersection_box(x0, x1, y0, y1, geo.m, geo.b, geo.vertical);
+            double da = (geo.ax - cell.x) * ux + (geo.ay - cell.y) * uy;
+            double db = (geo.bx - cell.x) * ux + (geo.by - cell.y) * uy;
+            if (da > db) d.add_vertex(geo.ax, geo.ay);
+            else d.add_vertex(geo.bx, geo.by);
+
+            int first = d.add_box_half_edge(t);
+            int last = d.add_box_half_edge(t);
+            d.origin[first] = t;
+            d.link(first, last);
+            d.face_edge[t] = first;
+            d.twin[last] = 2 * u;
+        }
+
+        int lb = d.add_vertex(x0, y0);
+        int rb = d.add_vertex(x1, y0);
+        int lu = d.add_vertex(x0, y1);
+        int ru = d.add_vertex(x1, y1);
+        for (int t = 0; t < count; t++) {
+            box.close_infinite_face(t, lb, rb, lu, ru);
+        }
+        return box;
+    }
+
+    // write the vertices and half-edges on the bounding box of close_box()
+    // into the DCEL file after the vertices and half-edges of the cells
+    private void write_box(Voronoi_diagram box, List<Open_cell> open, int vertex_base,
+                           int half_edge_base) {
+        Compact_dcel d = box.dcel;
+        int count = open.size();
+        for (int v = 0; v < d.vertex_count; v++) {
+            out.vx.put(vertex_base + v, d.vx[v]);
+            out.vy.put(vertex_base + v, d.vy[v]);
+        }
+        for (int t = 0; t < count; t++) {
+            out.origin.put(out.face_edge.get(open.get(t).g), vertex_base + t);
+            out.prev.put(half_edge(2 * t, open, half_edge_base),
+                         half_edge(d.prev[2 * t], open, half_edge_base));
+            out.next.put(half_edge(2 * t + 1, open, half_edge_base),
+                         half_edge(d.next[2 * t + 1], open, half_edge_base));
+        }
+        for (int h = 2 * count; h < d.half_edge_count; h++) {
+            int k = half_edge(h, open, half_edge_base);
+            out.origin.put(k, vertex_base + d.origin[h]);
+            out.twin.put(k, -1);
+            out.edge.put(k, -1);
+            out.face.put(k, open.get(d.face[h]).g);
+            out.next.put(k, half_edge(d.next[h], open, half_edge_base));
+            out.prev.put(k, half_edge(d.prev[h], open, half_edge_base));
+        }
+    }
+
+    // the half-edge of the DCEL file of the half-edge h of close_box()
+    private int half_edge(int h, List<Open_cell> open, int half_edge_base) {
+        if (h == -1) return -1;
+        int count = open.size();
+        if (h >= 2 * count) return half_edge_base + h - 2 * count;
+        int g = open.get(h / 2).g;
+        int first = out.face_edge.get(g);
+        if (h % 2 == 0) return first;
+        return first + cell_deg.get(g) - 1;
+    }
+
+    // the worker: sweep the sites of the input file, certify the cells of
+    // the strip and write them to the output file. The sites across the
+    // half-edges are written as the sites of the input file
+    static void worker(String input, String output) throws IOException {
+        int n;
+        int first_cell;
+        int cells;
+        double left;
+        double right;
+        int[] sites;
+        double[] lx;
+        double[] ly;
+        int[] chain;
+        try (DataInputStream in = open(new File(input))) {
+            n = in.readInt();
+            first_cell = in.readInt();
+            cells = in.readInt();
+            left = in.readDouble();
+            right = in.readDouble();
+            sites = new int[n];
+            lx = new double[n];
+            ly = new double[n];
+            for (int k = 0; k < n; k++) sites[k] = in.readInt();
+            for (int k = 0; k < n; k++) lx[k] = in.readDouble();
+            for (int k = 0; k < n; k++) ly[k] = in.readDouble();
+            chain = new int[in.readInt()];
+            for (int t = 0; t < chain.length; t++) chain[t] = in.readInt();
+        }
+
+        Voronoi_diagram local = new Voronoi_diagram(n, lx, ly, false, false);
+        local.generateVoronoi();
+        Parallel_voronoi.Strip strip = new Parallel_voronoi.Strip();
+        strip.hi = cells;
+        int[] uncertain = null;
+        if (Parallel_voronoi.cells(strip, local.dcel, first_cell))
+            uncertain = certify(strip, first_cell, sites, lx, ly, chain, left, right);
+        boolean certified = uncertain != null;
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(output), 1 << 16))) {
+            out.writeBoolean(certified);
+            if (!certified) return;
+
+            // the vertices whose circle the coordinator checks
+            out.writeInt(uncertain[0]);
+            for (int t = 1; t < 2 * uncertain[0]; t += 2) {
+                int k = uncertain[t];
+                out.writeInt(sites[uncertain[t + 1]]);
+                out.writeDouble(strip.ox[k]);
+                out.writeDouble(strip.oy[k]);
+            }
+            out.writeInt(strip.entries);
+            out.writeInt(strip.vertices);
+            out.writeInt(strip.edges);
+            out.writeDouble(strip.x_min);
+            out.writeDouble(strip.x_max);
+            out.writeDouble(strip.y_min);
+            out.writeDouble(strip.y_max);
+
+            // the infinite cells
+            int count = 0;
+            for (int c = 0; c < cells; c++) {
+                if (strip.open[c]) count++;
+            }
+            out.writeInt(count);
+            int base = 0;
+            for (int c = 0; c < cells; base += strip.deg[c], c++) {
+                if (!strip.open[c]) continue;
+                out.writeInt(c);
+                out.writeInt(sites[strip.across[base]]);
+                out.writeInt(sites[strip.across[base + 1]]);
+                out.writeInt(sites[strip.across[base + strip.deg[c] - 1]]);
+                out.writeDouble(strip.ox[base + 1]);
+                out.writeDouble(strip.oy[base + 1]);
+            }
+
+            for (int c = 0; c < cells; c++) out.writeInt(strip.deg[c]);
+            for (int c = 0; c < cells; c++) out.writeBoolean(strip.open[c]);
+            for (int k = 0; k < strip.entries; k++) out.writeInt(sites[strip.across[k]]);
+            for (int k = 0; k < strip.entries; k++) out.writeDouble(strip.ox[k]);
+            for (int k = 0; k < strip.entries; k++) out.writeDouble(strip.oy[k]);
+        }
+    }
+
+    // certify the cells of the strip in the worker and count the vertices
+    // and edges they create and their extent. An infinite cell belongs to a
+    // site on the hull with its neighbours on the hull across its infinite
+    // edges, and the circle of every vertex does not reach the parts of the
+    // hull left of left and right of right, which hold all the sites that
+    // were not swept. Nothing is checked if all the sites were swept.
+    // Returns the vertices whose circle does reach them, as the number of
+    // them followed by the half-edge and the site of each, or null if the
+    // cells are not certified or there are more than UNCERTAIN of them
+    private static int[] certify(Parallel_voronoi.Strip strip, int first_cell, int[] sites,
+                                   double[] lx, double[] ly, int[] chain, double left,
+                                   double right) {
+        int n = sites.length;
+        boolean all = left == Double.NEGATIVE_INFINITY && right == Double.POSITIVE_INFINITY;
+        int[] hull_prev = new int[n];
+        int[] hull_next = new int[n];
+        Arrays.fill(hull_prev, -1);
+        Arrays.fill(hull_next, -1);
+        double[] px = new double[chain.length];
+        double[] py = new double[chain.length];
+        for (int t = 0; t < chain.length; t++) {
+            int p = chain[t];
+            int q = chain[(t + 1) % chain.length];
+            hull_next[p] = q;
+            hull_prev[q] = p;
+            px[t] = lx[p];
+            py[t] = ly[p];
+        }
+        double[][] beyond_left = clip(px, py, left, false);
+        double[][] beyond_right = clip(px, py, right, true);
+        int[] uncertain = new int[2 * UNCERTAIN + 1];
+
+        strip.vertices = 0;
+        strip.edges = 0;
+        int base = 0;
+        for (int c = 0; c < strip.hi; base += strip.deg[c], c++) {
+            int g = first_cell + c; // the site
+            int deg = strip.deg[c];
+            boolean open = strip.open[c];
+            strip.x_min = Math.min(strip.x_min, lx[g]);
+            strip.x_max = Math.max(strip.x_max, lx[g]);
+            strip.y_min = Math.min(strip.y_min, ly[g]);
+            strip.y_max = Math.max(strip.y_max, ly[g]);
+
+            if (open && !all) {
+                if (hull_next[g] == -1) return null;
+                int p = strip.across[base];
+                int q = strip.across[base + deg - 1];
+                boolean same = (p == hull_prev[g] && q == hull_next[g])
+                        || (p == hull_next[g] && q == hull_prev[g]);
+                if (!same) return null;
+            }
+
+            for (int k = base; k < base + deg; k++) {
+                int j = strip.across[k];
+                if (sites[g] < sites[j]) strip.edges++;
+                if (Double.isNaN(strip.ox[k])) continue;
+                double x = strip.ox[k];
+                double y = strip.oy[k];
+                if (!all) {
+                    double r = Math.sqrt(Geometry.squared_distance(x, y, lx[g], ly[g]))
+                            * (1 + Parallel_voronoi.EPS)
+                            + Parallel_voronoi.EPS * (Math.abs(x) + Math.abs(y));
+                    if ((x - r < left && reaches(beyond_left, x, y, r))
+                            || (x + r > right && reaches(beyond_right, x, y, r))) {
+                        if (uncertain[0] == UNCERTAIN) return null;
+                        uncertain[2 * uncertain[0] + 1] = k;
+                        uncertain[2 * uncertain[0] + 2] = g;
+                        uncertain[0]++;
+                    }
+                }
+
+                // the vertices created by the cell
+                int l = strip.across[Parallel_voronoi.previous(k, base, deg, open)];
+                if (sites[g] < sites[j] && sites[g] < sites[l]) {
+                    strip.vertices++;
+                    strip.x_min = Math.min(strip.x_min, x);
+                    strip.x_max = Math.max(strip.x_max, x);
+                    strip.y_min = Math.min(strip.y_min, y);
+                    strip.y_max = Math.max(strip.y_max, y);
+                }
+            }
+        }
+        return uncertain;
+    }
+
+    // the part of the convex polygon (px, py) on the side x <= limit of a
+    // vertical line, or x >= limit if right is true, returns { x, y }
+    private static double[][] clip(double[] px, double[] py, double limit, boolean right) {
+        int k = px.length;
+        double[] x = new double[k + 2];
+        double[] y = new double[k + 2];
+        int n = 0;
+        for (int t = 0; t < k; t++) {
+            int u = (t + 1) % k;
+            boolean in_t = right ? px[t] >= limit : px[t] <= limit;
+            boolean in_u = right ? px[u] >= limit : px[u] <= limit;
+            if (in_t) {
+                x[n] = px[t];
+                y[n++] = py[t];
+            }
+            if (in_t != in_u) {
+                x[n] = limit;
+                y[n++] = py[t] + (limit - px[t]) * (py[u] - py[t]) / (px[u] - px[t]);
+            }
+        }
+        return new double[][] { Arrays.copyOf(x, n), Arrays.copyOf(y, n) };
+    }
+
+    // does the open disk of radius r around (x, y) meet the convex polygon
+    // { px, py } (counterclockwise)
+    private static boolean reaches(double[][] polygon, double x, double y, double r) {
+        double[] px = polygon[0];
+        double[] py = polygon[1];
+        int k = px.length;
+        if (k == 0) return false;
+        boolean inside = k >= 3;
+        for (int t = 0; t < k; t++) {
+            int u = (t + 1) % k;
+            double ex = px[u] - px[t];
+            double ey = py[u] - py[t];
+            double wx = x - px[t];
+            double wy = y - py[t];
+            if (ex * wy - ey * wx < 0) inside = false;
+
+            // the distance to the side
+            double length = ex * ex + ey * ey;
+            double s = length > 0 ? Math.max(0, Math.min(1, (wx * ex + wy * ey) / length)) : 0;
+            double dx = wx - s * ex;
+            double dy = wy - s * ey;
+            if (dx * dx + dy * dy < r * r) return true;
+        }
+        return inside;
+    }
+
+    // the worker of a degenerate input: build the diagram of the sites of
+    // the input file sequentially and write its DCEL file
+    static void whole(String input, String output) throws IOException {
+        double[][] sites = Site_file.read(input);
+        int n = sites[0].length;
+        new Voronoi_diagram(n, sites[0], sites[1], true, false).save(output);
+    }
+
+
+    // unit testing
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("worker")) {
+            worker(args[1], args[2]);
+            return;
+        }
+        if (args.length == 3 && args[0].equals("whole")) {
+            whole(args[1], args[2]);
+            return;
+        }
+
+        int N = 50000;
+        int shards = 4;
+        if (args.length > 0) N = Integer.parseInt(args[0]);
+        if (args.length > 1) shards = Integer.parseInt(args[1]);
+        double[] xc = new double[N];
+        double[] yc = new double[N];
+        java.util.Random random = new java.util.Random(451);
+        for (int i = 0; i < N; i++) {
+            xc[i] = random.nextDouble();
+            yc[i] = random.nextDouble();
+        }
+
+        File file = File.createTempFile("voronoi", ".dcel");
+        Voronoi_shard sharded = new Voronoi_shard(N, xc, yc, shards);
+        Mapped_dcel mapped = sharded.build(file.getPath());
+        Voronoi_diagram read = new Voronoi_diagram(N, xc, yc, mapped.to_compact());
+        Voronoi_diagram sequential = new Voronoi_diagram(N, xc, yc, true, false);
+        System.out.println("workers launched: " + sharded.launches);
+        System.out.println("sharded: " + !sharded.whole);
+        System.out.println("same diagram: " + Arrays.equals(Parallel_voronoi.faces(sequential),
+                                                            Parallel_voronoi.faces(read)));
+
+        // sites on a circle are all on the hull and are built by one worker
+        int M = 1000;
+        double[] cx = new double[M];
+        double[] cy = new double[M];
+        for (int i = 0; i < M; i++) {
+            cx[i] = Math.cos(2 * Math.PI * i / M);
+            cy[i] = Math.sin(2 * Math.PI * i / M);
+        }
+        Voronoi_shard circle = new Voronoi_shard(M, cx, cy, shards);
+        read = new Voronoi_diagram(M, cx, cy, circle.build(file.getPath()).to_compact());
+        sequential = new Voronoi_diagram(M, cx, cy, true, false);
+        file.delete();
+        System.out.println("circle, one worker: " + circle.whole + ", same diagram: "
+                                   + Arrays.equals(Parallel_voronoi.faces(sequential),
+                                                   Parallel_voronoi.faces(read)));
+    }
+}